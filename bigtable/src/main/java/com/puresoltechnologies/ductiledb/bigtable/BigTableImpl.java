@@ -2,6 +2,7 @@ package com.puresoltechnologies.ductiledb.bigtable;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
@@ -9,6 +10,11 @@ import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -84,13 +90,49 @@ public class BigTableImpl implements BigTable {
 	logger.info("Table engine '" + tableDescriptor.getName() + "' started in " + stopWatch.getMillis() + "ms.");
     }
 
+    /**
+     * This method opens the column families in parallel, so that their commit logs
+     * are recovered concurrently.
+     */
     private void openColumnFamilies() throws IOException {
-	Iterable<File> directories = storage.list(tableDescriptor.getDirectory());
-	for (File directory : directories) {
+	List<File> directories = new ArrayList<>();
+	for (File directory : storage.list(tableDescriptor.getDirectory())) {
 	    if (storage.isDirectory(directory)) {
-		ColumnFamilyImpl engine = (ColumnFamilyImpl) ColumnFamily.reopen(storage, directory);
+		directories.add(directory);
+	    }
+	}
+	if (directories.isEmpty()) {
+	    return;
+	}
+	ExecutorService openExecutor = Executors.newFixedThreadPool(
+		Math.min(directories.size(), Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+		    @Override
+		    public Thread newThread(Runnable r) {
+			return new Thread(r, "ductiledb-table-open");
+		    }
+		});
+	try {
+	    List<Future<ColumnFamily>> futures = new ArrayList<>();
+	    for (File directory : directories) {
+		futures.add(openExecutor.submit(() -> ColumnFamily.reopen(storage, directory)));
+	    }
+	    for (Future<ColumnFamily> future : futures) {
+		ColumnFamilyImpl engine = (ColumnFamilyImpl) future.get();
 		columnFamilyEngines.put(engine.getName(), engine);
 	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted while opening column families.", e);
+	} catch (ExecutionException e) {
+	    Throwable cause = e.getCause();
+	    if (cause instanceof IOException) {
+		throw (IOException) cause;
+	    } else if (cause instanceof RuntimeException) {
+		throw (RuntimeException) cause;
+	    }
+	    throw new IOException("Could not open column families.", cause);
+	} finally {
+	    openExecutor.shutdown();
 	}
     }
 
@@ -1,10 +1,23 @@
 package com.puresoltechnologies.ductiledb.columnfamily;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -39,6 +52,166 @@ public class ColumnFamilyCreateAndReopenIT {
 	}
     }
 
+    @Test
+    public void testPutAndIncrementAreMergedAcrossReopen() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("/" + ColumnFamilyCreateAndReopenIT.class.getSimpleName()
+		+ ".testPutAndIncrementAreMergedAcrossReopen");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	ColumnFamilyDescriptor columnFamilyDescriptor = new ColumnFamilyDescriptor(Key.of("cf"), directory);
+	try (ColumnFamily store = ColumnFamily.create(storage, columnFamilyDescriptor, new LogStoreConfiguration())) {
+	    ColumnMap columnMap = new ColumnMap();
+	    columnMap.put(Key.of("Column1"), ColumnValue.of("Value1"));
+	    store.put(Key.of("Row"), columnMap);
+	    columnMap = new ColumnMap();
+	    columnMap.put(Key.of("Column2"), ColumnValue.of("Value2"));
+	    store.put(Key.of("Row"), columnMap);
+	    assertEquals(5l, store.incrementColumnValue(Key.of("Row"), Key.of("Counter"), 5l, 1l));
+	    assertEquals(6l, store.incrementColumnValue(Key.of("Row"), Key.of("Counter"), 5l, 1l));
+	}
+	try (ColumnFamily store = ColumnFamily.reopen(storage, directory)) {
+	    ColumnMap row = store.get(Key.of("Row"));
+	    assertEquals("Value1", Bytes.toString(row.get(Key.of("Column1")).getBytes()));
+	    assertEquals("Value2", Bytes.toString(row.get(Key.of("Column2")).getBytes()));
+	    assertEquals(6l, row.get(Key.of("Counter")).toLong());
+	    assertEquals(8l, store.incrementColumnValue(Key.of("Row"), Key.of("Counter"), 5l, 2l));
+	}
+    }
+
+    @Test
+    public void testConcurrentIncrements() throws IOException, InterruptedException, ExecutionException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File(
+		"/" + ColumnFamilyCreateAndReopenIT.class.getSimpleName() + ".testConcurrentIncrements");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStoreConfiguration logStoreConfiguration = new LogStoreConfiguration();
+	logStoreConfiguration.setMaxCommitLogSize(16 * 1024);
+	ColumnFamilyDescriptor columnFamilyDescriptor = new ColumnFamilyDescriptor(Key.of("cf"), directory,
+		1024 * 1024);
+	Key row = Key.of("Row");
+	Key counter = Key.of("Counter");
+	try (ColumnFamily store = ColumnFamily.create(storage, columnFamilyDescriptor, logStoreConfiguration)) {
+	    assertEquals(1l, store.incrementColumnValue(row, counter, 1l, 1l));
+	}
+	int threadCount = 4;
+	int incrementCount = 500;
+	ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+	try (ColumnFamily store = ColumnFamily.reopen(storage, directory)) {
+	    // The counter is not in the memtable anymore, so the increments start as operands.
+	    List<Future<long[]>> futures = new ArrayList<>();
+	    for (int thread = 0; thread < threadCount; ++thread) {
+		futures.add(executorService.submit(() -> {
+		    long[] values = new long[incrementCount];
+		    for (int i = 0; i < incrementCount; ++i) {
+			values[i] = store.incrementColumnValue(row, counter, 1l, 1l);
+		    }
+		    return values;
+		}));
+	    }
+	    Set<Long> allValues = new HashSet<>();
+	    for (Future<long[]> future : futures) {
+		long[] values = future.get();
+		for (int i = 0; i < values.length; ++i) {
+		    if (i > 0) {
+			assertTrue(values[i - 1] < values[i]);
+		    }
+		    assertTrue("Value " + values[i] + " was returned twice.", allValues.add(values[i]));
+		}
+	    }
+	    long lastValue = 1l + threadCount * incrementCount;
+	    for (long value = 2l; value <= lastValue; ++value) {
+		assertTrue(allValues.contains(value));
+	    }
+	    assertEquals(lastValue, store.get(row).get(counter).toLong());
+	} finally {
+	    executorService.shutdown();
+	}
+	try (ColumnFamily store = ColumnFamily.reopen(storage, directory)) {
+	    assertEquals(1l + threadCount * incrementCount, store.get(row).get(counter).toLong());
+	}
+    }
+
+    @Test
+    public void testRowCache() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("/" + ColumnFamilyCreateAndReopenIT.class.getSimpleName() + ".testRowCache");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	ColumnFamilyDescriptor columnFamilyDescriptor = new ColumnFamilyDescriptor(Key.of("cf"), directory,
+		1024 * 1024);
+	Key row = Key.of("Row");
+	try (ColumnFamily store = ColumnFamily.create(storage, columnFamilyDescriptor, new LogStoreConfiguration())) {
+	    RowCache rowCache = ((ColumnFamilyImpl) store).getRowCache();
+	    ColumnMap columnMap = new ColumnMap();
+	    columnMap.put(Key.of("Column1"), ColumnValue.of("Value1"));
+	    columnMap.put(Key.of("Column2"), ColumnValue.of("Value2"));
+	    store.put(row, columnMap);
+	    assertEquals(columnMap, store.get(row));
+	    assertEquals(columnMap, store.get(row));
+	    assertEquals(1, rowCache.getHits());
+
+	    assertEquals(5l, store.incrementColumnValue(row, Key.of("Counter"), 5l, 1l));
+	    assertEquals(5l, store.get(row).get(Key.of("Counter")).toLong());
+	    assertEquals(6l, store.incrementColumnValue(row, Key.of("Counter"), 5l, 1l));
+	    assertEquals(6l, store.get(row).get(Key.of("Counter")).toLong());
+
+	    store.delete(row, Collections.singleton(Key.of("Column1")));
+	    assertNull(store.get(row).get(Key.of("Column1")));
+
+	    store.delete(row);
+	    assertTrue(store.get(row).isEmpty());
+	}
+	try (ColumnFamily store = ColumnFamily.reopen(storage, directory)) {
+	    assertEquals(1024 * 1024, store.getDescriptor().getRowCacheSize());
+	    assertNotNull(((ColumnFamilyImpl) store).getRowCache());
+	}
+    }
+
+    @Test
+    public void testMultiGet() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("/" + ColumnFamilyCreateAndReopenIT.class.getSimpleName() + ".testMultiGet");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	ColumnFamilyDescriptor columnFamilyDescriptor = new ColumnFamilyDescriptor(Key.of("cf"), directory,
+		1024 * 1024);
+	try (ColumnFamily store = ColumnFamily.create(storage, columnFamilyDescriptor, new LogStoreConfiguration())) {
+	    for (int i = 0; i < 100; ++i) {
+		ColumnMap columnMap = new ColumnMap();
+		columnMap.put(Key.of("Column"), ColumnValue.of(i));
+		store.put(Key.of(i), columnMap);
+	    }
+	    RowCache rowCache = ((ColumnFamilyImpl) store).getRowCache();
+	    // Row 10 is cached, so it is not read from the store.
+	    store.get(Key.of(10));
+	    List<Key> rowKeys = Arrays.asList(Key.of(50), Key.of(10), Key.of(200), Key.of(0));
+	    List<ColumnMap> columnMaps = store.get(rowKeys);
+	    assertEquals(4, columnMaps.size());
+	    assertEquals(50, columnMaps.get(0).get(Key.of("Column")).toInt());
+	    assertEquals(10, columnMaps.get(1).get(Key.of("Column")).toInt());
+	    assertTrue(columnMaps.get(2).isEmpty());
+	    assertEquals(0, columnMaps.get(3).get(Key.of("Column")).toInt());
+	    assertEquals(1, rowCache.getHits());
+	    // The rows read are cached now.
+	    assertEquals(columnMaps, store.get(rowKeys));
+	    assertEquals(5, rowCache.getHits());
+	}
+    }
+
     @Test(expected = IOException.class)
     public void testDoubleCreationNotAllowed() throws IOException {
 	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
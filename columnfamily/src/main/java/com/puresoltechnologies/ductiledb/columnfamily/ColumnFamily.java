@@ -3,7 +3,10 @@ package com.puresoltechnologies.ductiledb.columnfamily;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.puresoltechnologies.ductiledb.columnfamily.index.SecondaryIndexDescriptor;
@@ -65,6 +68,31 @@ public interface ColumnFamily extends Closeable {
      */
     public ColumnMap get(Key rowKey);
 
+    /**
+     * This method retrieves the columns of many rows at once. The rows are read
+     * in key order with one probe of each part of the store, which is much
+     * cheaper than a get per row.
+     * 
+     * @param rowKeys
+     *            are the keys of the rows. Duplicates are allowed.
+     * @return A list of the rows in the order of the keys is returned. Rows not
+     *         found are returned as empty {@link ColumnMap}s.
+     */
+    public List<ColumnMap> get(Collection<Key> rowKeys);
+
+    /**
+     * This method retrieves the columns of many rows like
+     * {@link #get(Collection)}, but reads ranges of the keys in parallel.
+     * 
+     * @param rowKeys
+     *            are the keys of the rows. Duplicates are allowed.
+     * @param executorService
+     *            is the thread pool to read the ranges.
+     * @return A list of the rows in the order of the keys is returned. Rows not
+     *         found are returned as empty {@link ColumnMap}s.
+     */
+    public List<ColumnMap> get(Collection<Key> rowKeys, ExecutorService executorService);
+
     /**
      * This method returns a scanner for the column family.
      * 
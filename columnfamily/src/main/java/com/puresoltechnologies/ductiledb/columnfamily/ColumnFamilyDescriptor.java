@@ -12,14 +12,21 @@ public class ColumnFamilyDescriptor {
     private final Key name;
     private final File directory;
     private final File indexDirectory;
+    private final long rowCacheSize;
+
+    public ColumnFamilyDescriptor(Key name, File directory) {
+	this(name, directory, 0);
+    }
 
     @JsonCreator
     public ColumnFamilyDescriptor(//
 	    @JsonProperty("name") Key name, //
-	    @JsonProperty("directory") File directory) {
+	    @JsonProperty("directory") File directory, //
+	    @JsonProperty("rowCacheSize") long rowCacheSize) {
 	this.name = name;
 	this.directory = directory;
 	this.indexDirectory = new File(directory, "indizes");
+	this.rowCacheSize = rowCacheSize;
 	if (!directory.isAbsolute()) {
 	    throw new IllegalArgumentException("An absolute path to directory is needed.");
 	}
@@ -38,6 +45,16 @@ public class ColumnFamilyDescriptor {
 	return indexDirectory;
     }
 
+    /**
+     * Returns the size of the row cache of the column family. The row cache keeps
+     * decoded rows and should only be enabled for column families with hot rows.
+     *
+     * @return The size in bytes is returned. 0 disables the row cache.
+     */
+    public final long getRowCacheSize() {
+	return rowCacheSize;
+    }
+
     @Override
     public String toString() {
 	return "column family:" + name;
@@ -49,6 +66,7 @@ public class ColumnFamilyDescriptor {
 	int result = 1;
 	result = prime * result + ((directory == null) ? 0 : directory.hashCode());
 	result = prime * result + ((name == null) ? 0 : name.hashCode());
+	result = prime * result + (int) (rowCacheSize ^ (rowCacheSize >>> 32));
 	return result;
     }
 
@@ -71,6 +89,8 @@ public class ColumnFamilyDescriptor {
 		return false;
 	} else if (!name.equals(other.name))
 	    return false;
+	if (rowCacheSize != other.rowCacheSize)
+	    return false;
 	return true;
     }
 
@@ -2,11 +2,17 @@ package com.puresoltechnologies.ductiledb.columnfamily;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +53,7 @@ public class ColumnFamilyImpl implements ColumnFamily {
     private final Map<String, SecondaryIndexEngineImpl> indizes = new HashMap<>();
     private final Map<String, SecondaryIndexDescriptor> indexDescriptors = new HashMap<>();
     private FullIndexEngine fullIndex = null;
+    private final RowCache rowCache;
 
     ColumnFamilyImpl(Storage storage, ColumnFamilyDescriptor columnFamilyDescriptor,
 	    LogStoreConfiguration configuration) throws IOException {
@@ -63,7 +70,10 @@ public class ColumnFamilyImpl implements ColumnFamily {
     private ColumnFamilyImpl(LogStructuredStoreImpl store, ColumnFamilyDescriptor columnFamilyDescriptor)
 	    throws IOException {
 	this.store = store;
+	this.store.setMergeOperator(new ColumnMapMergeOperator());
 	this.columnFamilyDescriptor = columnFamilyDescriptor;
+	long rowCacheSize = columnFamilyDescriptor.getRowCacheSize();
+	this.rowCache = rowCacheSize > 0 ? new RowCache(rowCacheSize) : null;
 	this.indexDirectory = new File(store.getDirectory(), "indizes");
 	this.fullIndexDirectory = new File(store.getDirectory(), "full_index");
 	open();
@@ -147,15 +157,96 @@ public class ColumnFamilyImpl implements ColumnFamily {
 	return "CFEngine:" + columnFamilyDescriptor.getName();
     }
 
+    /**
+     * Returns the row cache of this column family.
+     * 
+     * @return A {@link RowCache} is returned or <code>null</code> in case the row
+     *         cache is disabled in the {@link ColumnFamilyDescriptor}.
+     */
+    public RowCache getRowCache() {
+	return rowCache;
+    }
+
     @Override
     public ColumnMap get(Key rowKey) {
 	try {
-	    return ColumnMap.fromBytes(store.get(rowKey));
+	    if (rowCache == null) {
+		return ColumnMap.fromBytes(store.get(rowKey));
+	    }
+	    ColumnMap columnMap = rowCache.get(rowKey);
+	    if (columnMap == null) {
+		long stamp = rowCache.getStamp(rowKey);
+		columnMap = ColumnMap.fromBytes(store.get(rowKey));
+		rowCache.put(rowKey, columnMap, stamp);
+	    }
+	    return columnMap;
+	} catch (IOException e) {
+	    throw new StorageException("Could not read data.", e);
+	}
+    }
+
+    @Override
+    public List<ColumnMap> get(Collection<Key> rowKeys) {
+	return get(rowKeys, () -> store.get(rowKeys), missingKeys -> store.get(missingKeys));
+    }
+
+    @Override
+    public List<ColumnMap> get(Collection<Key> rowKeys, ExecutorService executorService) {
+	return get(rowKeys, () -> store.get(rowKeys, executorService),
+		missingKeys -> store.get(missingKeys, executorService));
+    }
+
+    /**
+     * Reads many rows. The rows found in the row cache are not read from the
+     * store.
+     *
+     * @param reader
+     *            reads all rows from the store. It is used without row cache.
+     * @param missingRowsReader
+     *            reads the rows missing in the row cache from the store.
+     */
+    private List<ColumnMap> get(Collection<Key> rowKeys, Supplier<List<byte[]>> reader,
+	    Function<List<Key>, List<byte[]>> missingRowsReader) {
+	try {
+	    List<ColumnMap> columnMaps = new ArrayList<>(rowKeys.size());
+	    if (rowCache == null) {
+		for (byte[] value : reader.get()) {
+		    columnMaps.add(ColumnMap.fromBytes(value));
+		}
+		return columnMaps;
+	    }
+	    List<Key> missingKeys = new ArrayList<>();
+	    List<Integer> missingPositions = new ArrayList<>();
+	    List<Long> stamps = new ArrayList<>();
+	    for (Key rowKey : rowKeys) {
+		ColumnMap columnMap = rowCache.get(rowKey);
+		if (columnMap == null) {
+		    missingKeys.add(rowKey);
+		    missingPositions.add(columnMaps.size());
+		    stamps.add(rowCache.getStamp(rowKey));
+		}
+		columnMaps.add(columnMap);
+	    }
+	    if (!missingKeys.isEmpty()) {
+		List<byte[]> values = missingRowsReader.apply(missingKeys);
+		for (int i = 0; i < missingKeys.size(); ++i) {
+		    ColumnMap columnMap = ColumnMap.fromBytes(values.get(i));
+		    rowCache.put(missingKeys.get(i), columnMap, stamps.get(i));
+		    columnMaps.set(missingPositions.get(i), columnMap);
+		}
+	    }
+	    return columnMaps;
 	} catch (IOException e) {
 	    throw new StorageException("Could not read data.", e);
 	}
     }
 
+    private void invalidateRow(Key rowKey) {
+	if (rowCache != null) {
+	    rowCache.invalidate(rowKey);
+	}
+    }
+
     @Override
     public ColumnFamilyScanner getScanner(Key startRowKey, Key endRowKey) {
 	return new ColumnFamilyScanner() {
@@ -195,14 +286,10 @@ public class ColumnFamilyImpl implements ColumnFamily {
 
     @Override
     public void put(Key rowKey, ColumnMap columnMap) {
+	// The columns are merged into the row without reading it.
+	store.merge(rowKey, ColumnMapMergeOperator.createSetOperand(columnMap));
+	invalidateRow(rowKey);
 	try {
-	    ColumnMap data = get(rowKey);
-	    if (data == null) {
-		data = columnMap;
-	    } else {
-		data.putAll(columnMap);
-	    }
-	    store.put(rowKey, data.toBytes());
 	    if (hasIndizes()) {
 		for (Entry<String, SecondaryIndexDescriptor> indexDescriptorEntry : indexDescriptors.entrySet()) {
 		    if (indexDescriptorEntry.getValue().matchesColumns(columnMap.getColumnKeySet())) {
@@ -231,6 +318,7 @@ public class ColumnFamilyImpl implements ColumnFamily {
     @Override
     public void delete(Key rowKey) {
 	store.delete(rowKey);
+	invalidateRow(rowKey);
 	if (hasIndizes()) {
 	    ColumnMap columnMap = get(rowKey);
 	    for (Entry<String, SecondaryIndexDescriptor> indexDescriptorEntry : indexDescriptors.entrySet()) {
@@ -243,19 +331,11 @@ public class ColumnFamilyImpl implements ColumnFamily {
 
     @Override
     public void delete(Key rowKey, Set<Key> columns) {
-	ColumnMap columnMap = get(rowKey);
-	for (Key column : columns) {
-	    columnMap.remove(column);
-	}
-	if (columnMap.isEmpty()) {
-	    store.delete(rowKey);
-	} else {
-	    try {
-		store.put(rowKey, columnMap.toBytes());
-	    } catch (IOException e) {
-		throw new StorageException("Could not delete data.", e);
-	    }
-	}
+	// The index row keys are built from the values before the removal.
+	ColumnMap columnMap = hasIndizes() ? get(rowKey) : null;
+	// The columns are removed without reading the row, so concurrent merges are kept.
+	store.merge(rowKey, ColumnMapMergeOperator.createRemoveOperand(columns));
+	invalidateRow(rowKey);
 	if (hasIndizes()) {
 	    for (Entry<String, SecondaryIndexDescriptor> indexDescriptorEntry : indexDescriptors.entrySet()) {
 		if (indexDescriptorEntry.getValue().matchesColumns(new ColumnKeySet(columns))) {
@@ -343,29 +423,19 @@ public class ColumnFamilyImpl implements ColumnFamily {
 
     @Override
     public long incrementColumnValue(Key rowKey, Key column, long startValue, long incrementValue) {
-	long result = startValue;
-	store.getWriteLock().lock();
+	/*
+	 * The increment is written as merge operand. The store returns the row this
+	 * very increment leads to, so concurrent increments get distinct results
+	 * without a lock.
+	 */
+	byte[] row = store.mergeAndGet(rowKey, ColumnMapMergeOperator.createAddOperand(column, startValue, incrementValue));
+	invalidateRow(rowKey);
 	try {
-	    ColumnMap columnMap = get(rowKey);
-	    if (columnMap != null) {
-		ColumnValue oldValueBytes = columnMap.get(column);
-		if (oldValueBytes != null) {
-		    long oldValue = Bytes.toLong(oldValueBytes.getBytes());
-		    result = oldValue + incrementValue;
-		}
-	    } else {
-		columnMap = new ColumnMap();
-	    }
-	    columnMap.put(column, ColumnValue.of(Bytes.fromLong(result)));
-	    try {
-		store.writeCommitLog(rowKey, null, columnMap.toBytes());
-	    } catch (IOException e) {
-		throw new StorageException("Could not increment column value.", e);
-	    }
-	} finally {
-	    store.getWriteLock().unlock();
+	    ColumnValue value = ColumnMap.fromBytes(row).get(column);
+	    return Bytes.toLong(value.getBytes());
+	} catch (IOException e) {
+	    throw new StorageException("Could not read data.", e);
 	}
-	return result;
     }
 
     @Override
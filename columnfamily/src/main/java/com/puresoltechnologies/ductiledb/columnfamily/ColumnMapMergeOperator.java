@@ -0,0 +1,159 @@
+package com.puresoltechnologies.ductiledb.columnfamily;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map.Entry;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.MergeOperator;
+import com.puresoltechnologies.ductiledb.storage.api.StorageException;
+
+/**
+ * This {@link MergeOperator} merges column operations into the {@link ColumnMap}
+ * of a row. An operand is a {@link ColumnMap} whose values are prefixed with
+ * the type of the operation:
+ * <ul>
+ * <li>{@link #SET}: The value following the type replaces the column (union of
+ * the column maps).</li>
+ * <li>{@link #ADD}: A start value and an increment follow as 8 byte long values.
+ * The increment is added to an existing column, otherwise the column is set to
+ * the start value. See
+ * {@link ColumnFamily#incrementColumnValue(Key, Key, long, long)}.</li>
+ * <li>{@link #REMOVE}: The column is removed. See
+ * {@link ColumnFamily#delete(Key, java.util.Set)}.</li>
+ * </ul>
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class ColumnMapMergeOperator implements MergeOperator {
+
+    static final byte SET = 0;
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+
+    /**
+     * Creates an operand which sets the given columns.
+     */
+    public static byte[] createSetOperand(ColumnMap columnMap) {
+	ColumnMap operand = new ColumnMap();
+	for (Entry<Key, ColumnValue> column : columnMap.entrySet()) {
+	    operand.put(column.getKey(), set(column.getValue()));
+	}
+	return toBytes(operand);
+    }
+
+    /**
+     * Creates an operand which increments the given column.
+     */
+    public static byte[] createAddOperand(Key column, long startValue, long incrementValue) {
+	ColumnMap operand = new ColumnMap();
+	operand.put(column, add(startValue, incrementValue));
+	return toBytes(operand);
+    }
+
+    /**
+     * Creates an operand which removes the given columns.
+     */
+    public static byte[] createRemoveOperand(Collection<Key> columns) {
+	ColumnMap operand = new ColumnMap();
+	for (Key column : columns) {
+	    operand.put(column, ColumnValue.of(new byte[] { REMOVE }));
+	}
+	return toBytes(operand);
+    }
+
+    @Override
+    public byte[] merge(byte[] value, byte[] operand) {
+	ColumnMap columnMap = fromBytes(value);
+	for (Entry<Key, ColumnValue> column : fromBytes(operand).entrySet()) {
+	    Key columnKey = column.getKey();
+	    byte[] operation = column.getValue().getBytes();
+	    if (operation[0] == ADD) {
+		ColumnValue oldValue = columnMap.get(columnKey);
+		long result = oldValue != null ? Bytes.toLong(oldValue.getBytes()) + getIncrement(operation)
+			: getStartValue(operation);
+		columnMap.put(columnKey, ColumnValue.of(Bytes.fromLong(result)));
+	    } else if (operation[0] == REMOVE) {
+		columnMap.remove(columnKey);
+	    } else {
+		columnMap.put(columnKey, ColumnValue.of(getSetValue(operation), column.getValue().getTombstone()));
+	    }
+	}
+	return toBytes(columnMap);
+    }
+
+    @Override
+    public byte[] mergeOperands(byte[] olderOperand, byte[] newerOperand) {
+	ColumnMap operand = fromBytes(olderOperand);
+	for (Entry<Key, ColumnValue> column : fromBytes(newerOperand).entrySet()) {
+	    Key columnKey = column.getKey();
+	    byte[] operation = column.getValue().getBytes();
+	    ColumnValue olderValue = operand.get(columnKey);
+	    if ((operation[0] == ADD) && (olderValue != null)) {
+		byte[] olderOperation = olderValue.getBytes();
+		long increment = getIncrement(operation);
+		if (olderOperation[0] == ADD) {
+		    operand.put(columnKey,
+			    add(getStartValue(olderOperation) + increment, getIncrement(olderOperation) + increment));
+		} else if (olderOperation[0] == REMOVE) {
+		    // The column is started again after its removal.
+		    operand.put(columnKey, set(ColumnValue.of(Bytes.fromLong(getStartValue(operation)))));
+		} else {
+		    operand.put(columnKey,
+			    set(ColumnValue.of(Bytes.fromLong(Bytes.toLong(getSetValue(olderOperation)) + increment))));
+		}
+	    } else {
+		operand.put(columnKey, column.getValue());
+	    }
+	}
+	return toBytes(operand);
+    }
+
+    private static ColumnValue set(ColumnValue value) {
+	byte[] bytes = value.getBytes();
+	byte[] operation = new byte[bytes.length + 1];
+	operation[0] = SET;
+	System.arraycopy(bytes, 0, operation, 1, bytes.length);
+	return ColumnValue.of(operation, value.getTombstone());
+    }
+
+    private static ColumnValue add(long startValue, long incrementValue) {
+	byte[] operation = new byte[17];
+	operation[0] = ADD;
+	System.arraycopy(Bytes.fromLong(startValue), 0, operation, 1, 8);
+	System.arraycopy(Bytes.fromLong(incrementValue), 0, operation, 9, 8);
+	return ColumnValue.of(operation);
+    }
+
+    private static byte[] getSetValue(byte[] operation) {
+	byte[] value = new byte[operation.length - 1];
+	System.arraycopy(operation, 1, value, 0, value.length);
+	return value;
+    }
+
+    private static long getStartValue(byte[] operation) {
+	return Bytes.toLong(operation, 1);
+    }
+
+    private static long getIncrement(byte[] operation) {
+	return Bytes.toLong(operation, 9);
+    }
+
+    private static ColumnMap fromBytes(byte[] bytes) {
+	try {
+	    return ColumnMap.fromBytes(bytes);
+	} catch (IOException e) {
+	    throw new StorageException("Could not read column map.", e);
+	}
+    }
+
+    private static byte[] toBytes(ColumnMap columnMap) {
+	try {
+	    return columnMap.toBytes();
+	} catch (IOException e) {
+	    throw new StorageException("Could not write column map.", e);
+	}
+    }
+
+}
@@ -0,0 +1,220 @@
+package com.puresoltechnologies.ductiledb.columnfamily;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.puresoltechnologies.ductiledb.logstore.Key;
+
+/**
+ * This is the cache of decoded rows of a single column family. The rows are
+ * kept as {@link ColumnMap}s, so hot rows neither need to be read from the store
+ * nor need to be decoded again. The size of the cache is limited by the
+ * estimated number of bytes of the rows.
+ *
+ * Rows are written without reading them, so a write can only invalidate the
+ * cached row. To not put a row read before a concurrent write into the cache
+ * after the write invalidated it, a reader takes a stamp with
+ * {@link #getStamp(Key)} before it reads the row from the store. The row is
+ * only put into the cache in case no invalidation happened for the stamp of the
+ * row since then. Each segment has {@link #STAMPS_PER_SEGMENT} stamps selected
+ * by the hash of the row key, so a write only keeps a small fraction of the
+ * other rows from being cached during its reads.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class RowCache {
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final int STAMPS_PER_SEGMENT = 256;
+
+    /**
+     * This is a segment of the cache with its own LRU and stamps.
+     */
+    private static class Segment {
+
+	private final long capacity;
+	private final LinkedHashMap<Key, ColumnMap> rows = new LinkedHashMap<>(16, 0.75f, true);
+	private final long[] stamps = new long[STAMPS_PER_SEGMENT];
+	private long size = 0;
+
+	Segment(long capacity) {
+	    this.capacity = capacity;
+	}
+
+	synchronized ColumnMap get(Key rowKey) {
+	    return rows.get(rowKey);
+	}
+
+	synchronized long getStamp(Key rowKey) {
+	    return stamps[getStampIndex(rowKey)];
+	}
+
+	synchronized void put(Key rowKey, ColumnMap columnMap, long stamp) {
+	    if (stamps[getStampIndex(rowKey)] != stamp) {
+		return;
+	    }
+	    long rowSize = estimateSize(rowKey, columnMap);
+	    if (rowSize > capacity) {
+		return;
+	    }
+	    ColumnMap replaced = rows.put(rowKey, columnMap);
+	    if (replaced != null) {
+		size -= estimateSize(rowKey, replaced);
+	    }
+	    size += rowSize;
+	    Iterator<Entry<Key, ColumnMap>> iterator = rows.entrySet().iterator();
+	    while (size > capacity) {
+		Entry<Key, ColumnMap> eldest = iterator.next();
+		iterator.remove();
+		size -= estimateSize(eldest.getKey(), eldest.getValue());
+	    }
+	}
+
+	synchronized void invalidate(Key rowKey) {
+	    stamps[getStampIndex(rowKey)]++;
+	    ColumnMap removed = rows.remove(rowKey);
+	    if (removed != null) {
+		size -= estimateSize(rowKey, removed);
+	    }
+	}
+
+	synchronized long getSize() {
+	    return size;
+	}
+    }
+
+    /**
+     * Estimates the number of bytes of a row. The estimate is the size of the
+     * serialized row plus the row key.
+     */
+    static long estimateSize(Key rowKey, ColumnMap columnMap) {
+	long size = rowKey.getBytes().length + 4;
+	for (Entry<Key, ColumnValue> column : columnMap.entrySet()) {
+	    size += 4 + column.getKey().getBytes().length + 12 + 4 + column.getValue().getBytes().length;
+	}
+	return size;
+    }
+
+    private static int getHash(Key rowKey) {
+	return rowKey.hashCode() & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the index of the stamp of a row within its segment. The segment
+     * is selected by the lower part of the hash, so the stamp is selected by the
+     * upper part.
+     */
+    private static int getStampIndex(Key rowKey) {
+	return (getHash(rowKey) / SEGMENT_COUNT) % STAMPS_PER_SEGMENT;
+    }
+
+    private static ColumnMap copy(ColumnMap columnMap) {
+	ColumnMap copy = new ColumnMap();
+	copy.putAll(columnMap);
+	return copy;
+    }
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param size
+     *            is the size of the cache in bytes.
+     */
+    public RowCache(long size) {
+	super();
+	for (int i = 0; i < SEGMENT_COUNT; ++i) {
+	    segments[i] = new Segment(size / SEGMENT_COUNT);
+	}
+    }
+
+    private Segment getSegment(Key rowKey) {
+	return segments[getHash(rowKey) % SEGMENT_COUNT];
+    }
+
+    /**
+     * Returns a cached row.
+     *
+     * @param rowKey
+     *            is the key of the row.
+     * @return A copy of the cached row is returned, which can be modified by the
+     *         caller. <code>null</code> is returned in case the row is not
+     *         cached.
+     */
+    public ColumnMap get(Key rowKey) {
+	ColumnMap columnMap = getSegment(rowKey).get(rowKey);
+	if (columnMap == null) {
+	    misses.increment();
+	    return null;
+	}
+	hits.increment();
+	return copy(columnMap);
+    }
+
+    /**
+     * Returns the stamp to be used for {@link #put(Key, ColumnMap, long)}. It
+     * needs to be taken before the row is read from the store.
+     *
+     * @param rowKey
+     *            is the key of the row to be read.
+     * @return The current stamp of the row is returned.
+     */
+    public long getStamp(Key rowKey) {
+	return getSegment(rowKey).getStamp(rowKey);
+    }
+
+    /**
+     * Puts a row read from the store into the cache.
+     *
+     * @param rowKey
+     *            is the key of the row.
+     * @param columnMap
+     *            is the row. A copy is put into the cache, so the caller can
+     *            keep using the map.
+     * @param stamp
+     *            is the stamp taken with {@link #getStamp(Key)} before the row
+     *            was read. The row is not cached in case a row with the same
+     *            stamp was invalidated in the meantime.
+     */
+    public void put(Key rowKey, ColumnMap columnMap, long stamp) {
+	getSegment(rowKey).put(rowKey, copy(columnMap), stamp);
+    }
+
+    /**
+     * Removes a row from the cache. This method needs to be called after the row
+     * was written to the store.
+     *
+     * @param rowKey
+     *            is the key of the row.
+     */
+    public void invalidate(Key rowKey) {
+	getSegment(rowKey).invalidate(rowKey);
+    }
+
+    /**
+     * Returns the estimated number of bytes currently cached.
+     *
+     * @return The size in bytes is returned.
+     */
+    public long getSize() {
+	long size = 0;
+	for (Segment segment : segments) {
+	    size += segment.getSize();
+	}
+	return size;
+    }
+
+    public long getHits() {
+	return hits.sum();
+    }
+
+    public long getMisses() {
+	return misses.sum();
+    }
+
+}
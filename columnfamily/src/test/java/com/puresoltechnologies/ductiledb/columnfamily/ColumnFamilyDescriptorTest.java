@@ -25,4 +25,16 @@ public class ColumnFamilyDescriptorTest {
 	assertEquals(descriptor, descriptor2);
     }
 
+    @Test
+    public void testSerializationWithRowCache() throws IOException {
+	ObjectMapper objectMapper = DefaultObjectMapper.getInstance();
+	ColumnFamilyDescriptor descriptor = new ColumnFamilyDescriptor(Key.of("ColumnFamilyName"),
+		new File("/Directory"), 1024 * 1024);
+
+	String jsonString = objectMapper.writeValueAsString(descriptor);
+	ColumnFamilyDescriptor descriptor2 = objectMapper.readValue(jsonString, ColumnFamilyDescriptor.class);
+	assertEquals(descriptor, descriptor2);
+	assertEquals(1024 * 1024, descriptor2.getRowCacheSize());
+    }
+
 }
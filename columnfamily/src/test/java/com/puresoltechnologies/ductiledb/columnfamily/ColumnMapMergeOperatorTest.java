@@ -0,0 +1,95 @@
+package com.puresoltechnologies.ductiledb.columnfamily;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.ductiledb.logstore.Key;
+
+public class ColumnMapMergeOperatorTest {
+
+    private final ColumnMapMergeOperator operator = new ColumnMapMergeOperator();
+
+    @Test
+    public void testSetIsUnion() throws IOException {
+	ColumnMap row = new ColumnMap();
+	row.put(Key.of("a"), ColumnValue.of(1l));
+	row.put(Key.of("b"), ColumnValue.of(2l));
+	ColumnMap columns = new ColumnMap();
+	columns.put(Key.of("b"), ColumnValue.of(3l));
+	columns.put(Key.of("c"), ColumnValue.of(4l));
+	ColumnMap result = ColumnMap
+		.fromBytes(operator.merge(row.toBytes(), ColumnMapMergeOperator.createSetOperand(columns)));
+	assertEquals(3, result.size());
+	assertEquals(1l, result.get(Key.of("a")).toLong());
+	assertEquals(3l, result.get(Key.of("b")).toLong());
+	assertEquals(4l, result.get(Key.of("c")).toLong());
+    }
+
+    @Test
+    public void testAdd() throws IOException {
+	Key column = Key.of("counter");
+	byte[] add = ColumnMapMergeOperator.createAddOperand(column, 1l, 2l);
+	// The start value is used for missing columns.
+	ColumnMap result = ColumnMap.fromBytes(operator.merge(null, add));
+	assertEquals(1l, result.get(column).toLong());
+	result = ColumnMap.fromBytes(operator.merge(result.toBytes(), add));
+	assertEquals(3l, result.get(column).toLong());
+    }
+
+    @Test
+    public void testRemoveKeepsOtherColumns() throws IOException {
+	ColumnMap row = new ColumnMap();
+	row.put(Key.of("a"), ColumnValue.of(1l));
+	row.put(Key.of("b"), ColumnValue.of(2l));
+	byte[] remove = ColumnMapMergeOperator.createRemoveOperand(Arrays.asList(Key.of("a")));
+	// A counter increment committed concurrently to the removal is kept.
+	byte[] add = ColumnMapMergeOperator.createAddOperand(Key.of("b"), 0l, 3l);
+	ColumnMap result = ColumnMap.fromBytes(operator.merge(operator.merge(row.toBytes(), add), remove));
+	assertEquals(1, result.size());
+	assertNull(result.get(Key.of("a")));
+	assertEquals(5l, result.get(Key.of("b")).toLong());
+	// An increment after the removal starts the column again.
+	add = ColumnMapMergeOperator.createAddOperand(Key.of("a"), 7l, 1l);
+	result = ColumnMap.fromBytes(operator.merge(row.toBytes(), operator.mergeOperands(remove, add)));
+	assertEquals(7l, result.get(Key.of("a")).toLong());
+    }
+
+    @Test
+    public void testMergeOperandsIsAssociative() throws IOException {
+	Key column = Key.of("counter");
+	byte[] add1 = ColumnMapMergeOperator.createAddOperand(column, 10l, 1l);
+	byte[] add2 = ColumnMapMergeOperator.createAddOperand(column, 20l, 2l);
+	ColumnMap columns = new ColumnMap();
+	columns.put(column, ColumnValue.of(100l));
+	byte[] set = ColumnMapMergeOperator.createSetOperand(columns);
+
+	byte[] remove = ColumnMapMergeOperator.createRemoveOperand(Arrays.asList(column));
+
+	byte[][] operands = new byte[][] { add1, add2, set, add1, remove, add2, remove, set };
+	ColumnMap existing = new ColumnMap();
+	existing.put(column, ColumnValue.of(5l));
+	for (byte[] value : new byte[][] { null, existing.toBytes() }) {
+	    for (int split = 1; split < operands.length; ++split) {
+		byte[] sequential = value;
+		for (byte[] operand : operands) {
+		    sequential = operator.merge(sequential, operand);
+		}
+		byte[] combined = operands[0];
+		for (int i = 1; i < split; ++i) {
+		    combined = operator.mergeOperands(combined, operands[i]);
+		}
+		byte[] partial = operator.merge(value, combined);
+		for (int i = split; i < operands.length; ++i) {
+		    partial = operator.merge(partial, operands[i]);
+		}
+		assertEquals(ColumnMap.fromBytes(sequential), ColumnMap.fromBytes(partial));
+	    }
+	}
+    }
+
+}
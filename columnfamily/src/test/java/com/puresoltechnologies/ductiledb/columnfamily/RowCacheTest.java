@@ -0,0 +1,92 @@
+package com.puresoltechnologies.ductiledb.columnfamily;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.ductiledb.logstore.Key;
+
+public class RowCacheTest {
+
+    private static ColumnMap createRow(String value) {
+	ColumnMap columnMap = new ColumnMap();
+	columnMap.put(Key.of("Column"), ColumnValue.of(value));
+	return columnMap;
+    }
+
+    @Test
+    public void testCachedRowsAreCopies() {
+	RowCache rowCache = new RowCache(1024 * 1024);
+	Key rowKey = Key.of("Row");
+	ColumnMap row = createRow("Value");
+	rowCache.put(rowKey, row, rowCache.getStamp(rowKey));
+	row.put(Key.of("Column2"), ColumnValue.of("Value2"));
+
+	ColumnMap cached = rowCache.get(rowKey);
+	assertEquals(createRow("Value"), cached);
+	cached.remove(Key.of("Column"));
+	assertEquals(createRow("Value"), rowCache.get(rowKey));
+	assertEquals(2, rowCache.getHits());
+    }
+
+    @Test
+    public void testInvalidation() {
+	RowCache rowCache = new RowCache(1024 * 1024);
+	Key rowKey = Key.of("Row");
+	rowCache.put(rowKey, createRow("Value"), rowCache.getStamp(rowKey));
+	rowCache.invalidate(rowKey);
+	assertNull(rowCache.get(rowKey));
+	assertEquals(0, rowCache.getSize());
+	assertEquals(1, rowCache.getMisses());
+    }
+
+    @Test
+    public void testRowReadBeforeInvalidationIsNotCached() {
+	RowCache rowCache = new RowCache(1024 * 1024);
+	Key rowKey = Key.of("Row");
+	long stamp = rowCache.getStamp(rowKey);
+	// A concurrent write happens while the old row is read.
+	rowCache.invalidate(rowKey);
+	rowCache.put(rowKey, createRow("OldValue"), stamp);
+	assertNull(rowCache.get(rowKey));
+	rowCache.put(rowKey, createRow("NewValue"), rowCache.getStamp(rowKey));
+	assertEquals(createRow("NewValue"), rowCache.get(rowKey));
+    }
+
+    @Test
+    public void testInvalidationOfOtherRowsDoesNotPreventCaching() {
+	RowCache rowCache = new RowCache(1024 * 1024);
+	int cached = 0;
+	for (int i = 0; i < 1000; ++i) {
+	    Key rowKey = Key.of(i);
+	    long stamp = rowCache.getStamp(rowKey);
+	    // Other rows are written while the row is read.
+	    for (int j = 1; j <= 20; ++j) {
+		rowCache.invalidate(Key.of(1000 * j + i));
+	    }
+	    rowCache.put(rowKey, createRow("Value" + i), stamp);
+	    if (rowCache.get(rowKey) != null) {
+		cached++;
+	    }
+	}
+	assertTrue("Only " + cached + " rows were cached.", cached > 950);
+    }
+
+    @Test
+    public void testSizeLimit() {
+	long size = 16 * 1024;
+	RowCache rowCache = new RowCache(size);
+	for (int i = 0; i < 10000; ++i) {
+	    Key rowKey = Key.of(i);
+	    rowCache.put(rowKey, createRow("Value" + i), rowCache.getStamp(rowKey));
+	    assertTrue(rowCache.getSize() <= size);
+	}
+	Key rowKey = Key.of(9999);
+	assertNotNull(rowCache.get(rowKey));
+	assertTrue(rowCache.getSize() > size / 2);
+    }
+
+}
@@ -276,10 +276,15 @@ public class ColumnFamilyEngineIT extends AbstractColumnFamiliyEngineTest {
 	    long currentOffset = -1;
 	    Iterator<IndexEntry> indexIterator = index.iterator();
 	    Iterator<Row> dataIterator = reader.iterator();
-	    while (indexIterator.hasNext() && dataIterator.hasNext()) {
+	    while (indexIterator.hasNext()) {
 		IndexEntry indexEntry = indexIterator.next();
-		Row dataEntry = dataIterator.next();
 		Key rowKey = indexEntry.getRowKey();
+		// The index only contains the first row of each block.
+		Row dataEntry = null;
+		while (dataIterator.hasNext() && ((dataEntry == null) || !rowKey.equals(dataEntry.getKey()))) {
+		    dataEntry = dataIterator.next();
+		}
+		assertNotNull(dataEntry);
 		assertEquals(rowKey, dataEntry.getKey());
 		long offset = indexEntry.getOffset();
 		assertTrue(currentOffset < offset);
@@ -0,0 +1,324 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.io.filter.CommitLogFilenameFilter;
+import com.puresoltechnologies.ductiledb.storage.api.StorageException;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageConfiguration;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
+import com.puresoltechnologies.ductiledb.stores.os.OSStorage;
+
+/**
+ * This test checks the group commit and what the {@link CommitLogDurability}
+ * modes keep after a crash. A crash is simulated by copying the files of an
+ * open store: rows which are not flushed are only buffered within the process,
+ * so they are missing in the copy.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class CommitLogDurabilityIT {
+
+    private static final int THREAD_COUNT = 8;
+    private static final long FLUSH_MILLIS = 200;
+
+    /**
+     * This storage counts the flushes of commit logs. Each flush takes some
+     * time, so concurrent writers queue up in the meantime.
+     */
+    private static class FlushCountingStorage extends OSStorage {
+
+	private final AtomicInteger flushes = new AtomicInteger(0);
+
+	public FlushCountingStorage(StorageConfiguration configuration) {
+	    super(configuration);
+	}
+
+	@Override
+	public StorageOutputStream overwrite(File file) throws IOException {
+	    StorageOutputStream outputStream = super.overwrite(file);
+	    if (!new CommitLogFilenameFilter().accept(file.getParentFile(), file.getName())) {
+		return outputStream;
+	    }
+	    return new StorageOutputStream(new FilterOutputStream(outputStream) {
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+		    out.write(b, off, len);
+		}
+
+		@Override
+		public void flush() throws IOException {
+		    flushes.incrementAndGet();
+		    try {
+			TimeUnit.MILLISECONDS.sleep(FLUSH_MILLIS);
+		    } catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		    }
+		    super.flush();
+		}
+	    }, getConfiguration().getBlockSize());
+	}
+
+	public int getFlushes() {
+	    return flushes.get();
+	}
+    }
+
+    private static Storage createStorage() throws IOException {
+	Storage storage = new OSStorage(LogStructuredStoreTestUtils.createStorageConfiguration());
+	storage.initialize();
+	return storage;
+    }
+
+    private static void removeDirectory(Storage storage, File directory) throws IOException {
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+    }
+
+    /**
+     * Runs one write of each thread at once and returns the number of commit log
+     * flushes they caused.
+     */
+    private static int writeConcurrently(CommitLogDurability durability, String name)
+	    throws IOException, InterruptedException, ExecutionException {
+	try (FlushCountingStorage storage = new FlushCountingStorage(
+		LogStructuredStoreTestUtils.createStorageConfiguration())) {
+	    storage.initialize();
+	    File directory = new File("CommitLogDurabilityIT." + name);
+	    removeDirectory(storage, directory);
+	    LogStoreConfiguration configuration = new LogStoreConfiguration();
+	    configuration.setCommitLogDurability(durability);
+	    ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+	    try (LogStructuredStore store = LogStructuredStore.create(storage, directory, configuration)) {
+		store.open();
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Void>> futures = new ArrayList<>();
+		for (int thread = 0; thread < THREAD_COUNT; ++thread) {
+		    int i = thread;
+		    futures.add(executorService.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+			    start.await();
+			    store.put(Key.of(i), Bytes.fromInt(i));
+			    return null;
+			}
+		    }));
+		}
+		int flushesBefore = storage.getFlushes();
+		start.countDown();
+		for (Future<Void> future : futures) {
+		    future.get();
+		}
+		int flushes = storage.getFlushes() - flushesBefore;
+		for (int i = 0; i < THREAD_COUNT; ++i) {
+		    assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+		}
+		return flushes;
+	    } finally {
+		executorService.shutdown();
+	    }
+	}
+    }
+
+    @Test
+    public void testGroupCommit() throws IOException, InterruptedException, ExecutionException {
+	int flushes = writeConcurrently(CommitLogDurability.GROUP, "testGroupCommit");
+	// The writers queued during the first flush are committed in one group.
+	assertTrue("Expected less than " + (THREAD_COUNT / 2) + " flushes, but got " + flushes + ".",
+		flushes < THREAD_COUNT / 2);
+    }
+
+    @Test
+    public void testFlushPerWrite() throws IOException, InterruptedException, ExecutionException {
+	int flushes = writeConcurrently(CommitLogDurability.FLUSH_PER_WRITE, "testFlushPerWrite");
+	assertTrue("Expected at least " + THREAD_COUNT + " flushes, but got " + flushes + ".",
+		flushes >= THREAD_COUNT);
+    }
+
+    @Test
+    public void testFailedGroupFailsAllWriters() throws IOException, InterruptedException {
+	try (FlushCountingStorage storage = new FlushCountingStorage(
+		LogStructuredStoreTestUtils.createStorageConfiguration())) {
+	    storage.initialize();
+	    File directory = new File("CommitLogDurabilityIT.testFailedGroupFailsAllWriters");
+	    removeDirectory(storage, directory);
+	    LogStoreConfiguration configuration = new LogStoreConfiguration();
+	    configuration.setCommitLogDurability(CommitLogDurability.GROUP);
+	    ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT + 1);
+	    try (LogStructuredStore store = LogStructuredStore.create(storage, directory, configuration)) {
+		store.setMergeOperator(new CounterMergeOperator());
+		store.open();
+		Key counterKey = Key.of(THREAD_COUNT);
+		store.put(counterKey, Bytes.fromLong(1000));
+		// The first writer flushes while the others are queued into one group.
+		Future<Void> first = executorService.submit(() -> {
+		    store.put(Key.of(0), Bytes.fromInt(0));
+		    return null;
+		});
+		Thread.sleep(FLUSH_MILLIS / 4);
+		// The counter operand is too short, so folding it fails.
+		Future<Void> invalidOperand = executorService.submit(() -> {
+		    store.merge(counterKey, new byte[2]);
+		    return null;
+		});
+		List<Future<Void>> futures = new ArrayList<>();
+		for (int thread = 1; thread < THREAD_COUNT; ++thread) {
+		    int i = thread;
+		    futures.add(executorService.submit(() -> {
+			store.put(Key.of(i), Bytes.fromInt(i));
+			return null;
+		    }));
+		}
+		try {
+		    invalidOperand.get();
+		    fail("The invalid operand is expected to fail.");
+		} catch (ExecutionException e) {
+		    assertTrue(e.getCause() instanceof StorageException);
+		}
+		futures.add(0, first);
+		int failed = 0;
+		for (int i = 0; i < THREAD_COUNT; ++i) {
+		    try {
+			futures.get(i).get();
+			// A successful write needs to be readable.
+			assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+		    } catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof StorageException);
+			failed++;
+		    }
+		}
+		assertTrue("Expected the writers grouped with the invalid operand to fail.", failed > 0);
+		assertEquals(1000, Bytes.toLong(store.get(counterKey)));
+		// The store accepts writes after the failed group.
+		store.put(Key.of(0), Bytes.fromInt(4711));
+		assertEquals(4711, Bytes.toInt(store.get(Key.of(0))));
+	    } finally {
+		executorService.shutdown();
+	    }
+	}
+    }
+
+    @Test
+    public void testWritesAfterCloseAreRejected() throws IOException {
+	try (Storage storage = createStorage()) {
+	    File directory = new File("CommitLogDurabilityIT.testWritesAfterCloseAreRejected");
+	    removeDirectory(storage, directory);
+	    LogStructuredStore store = LogStructuredStore.create(storage, directory, new LogStoreConfiguration());
+	    store.open();
+	    store.put(Key.of(0), Bytes.fromInt(0));
+	    store.close();
+	    try {
+		store.put(Key.of(1), Bytes.fromInt(1));
+		fail("Writes to a closed store are expected to fail.");
+	    } catch (StorageException e) {
+		// expected
+	    }
+	}
+    }
+
+    /**
+     * Copies the files of the store like they are on disk at the moment.
+     */
+    private static void copyDirectory(Storage storage, File source, File target) throws IOException {
+	removeDirectory(storage, target);
+	Path sourcePath = new File(storage.getStorageDirectory(), source.getPath()).toPath();
+	Path targetPath = new File(storage.getStorageDirectory(), target.getPath()).toPath();
+	try (Stream<Path> paths = Files.walk(sourcePath)) {
+	    for (Path path : (Iterable<Path>) paths::iterator) {
+		Files.copy(path, targetPath.resolve(sourcePath.relativize(path)));
+	    }
+	}
+    }
+
+    /**
+     * Writes some rows without closing the store and opens a copy of its files
+     * taken right after the last write returned.
+     *
+     * @return The number of rows found in the copy is returned.
+     */
+    private static int writeAndCrash(CommitLogDurability durability, long flushInterval, long waitMillis,
+	    String name) throws IOException, InterruptedException {
+	int rowCount = 10;
+	try (Storage storage = createStorage()) {
+	    File directory = new File("CommitLogDurabilityIT." + name);
+	    File crashedDirectory = new File("CommitLogDurabilityIT." + name + ".crashed");
+	    removeDirectory(storage, directory);
+	    LogStoreConfiguration configuration = new LogStoreConfiguration();
+	    configuration.setCommitLogDurability(durability);
+	    configuration.setCommitLogFlushInterval(flushInterval);
+	    try (LogStructuredStore store = LogStructuredStore.create(storage, directory, configuration)) {
+		store.open();
+		for (int i = 0; i < rowCount; ++i) {
+		    store.put(Key.of(i), Bytes.fromInt(i));
+		}
+		Thread.sleep(waitMillis);
+		copyDirectory(storage, directory, crashedDirectory);
+	    }
+	    try (LogStructuredStore store = LogStructuredStore.open(storage, crashedDirectory)) {
+		store.open();
+		int found = 0;
+		for (int i = 0; i < rowCount; ++i) {
+		    byte[] value = store.get(Key.of(i));
+		    if (value != null) {
+			assertEquals(i, Bytes.toInt(value));
+			found++;
+		    } else {
+			// The rows are written in order, so only the newest rows may be lost.
+			for (int j = i + 1; j < rowCount; ++j) {
+			    assertNull(store.get(Key.of(j)));
+			}
+			break;
+		    }
+		}
+		return found;
+	    }
+	}
+    }
+
+    @Test
+    public void testCrashWithFlushPerWrite() throws IOException, InterruptedException {
+	assertEquals(10, writeAndCrash(CommitLogDurability.FLUSH_PER_WRITE, 100, 0, "testCrashWithFlushPerWrite"));
+    }
+
+    @Test
+    public void testCrashWithGroupCommit() throws IOException, InterruptedException {
+	assertEquals(10, writeAndCrash(CommitLogDurability.GROUP, 100, 0, "testCrashWithGroupCommit"));
+    }
+
+    @Test
+    public void testCrashWithPeriodicFlushBeforeFlush() throws IOException, InterruptedException {
+	// The rows fit into the write buffer and are not flushed within the hour.
+	assertEquals(0, writeAndCrash(CommitLogDurability.PERIODIC, TimeUnit.HOURS.toMillis(1), 0,
+		"testCrashWithPeriodicFlushBeforeFlush"));
+    }
+
+    @Test
+    public void testCrashWithPeriodicFlushAfterFlush() throws IOException, InterruptedException {
+	assertEquals(10, writeAndCrash(CommitLogDurability.PERIODIC, 100, 1000, "testCrashWithPeriodicFlushAfterFlush"));
+    }
+
+}
@@ -0,0 +1,332 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.codec.DeflateBlockCodec;
+import com.puresoltechnologies.ductiledb.logstore.codec.NoneBlockCodec;
+import com.puresoltechnologies.ductiledb.logstore.data.BlockDataFileWriter;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileReader;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileStatistics;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileVerifier;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileWriter;
+import com.puresoltechnologies.ductiledb.logstore.index.BloomFilter;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexEntry;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexFileReader;
+import com.puresoltechnologies.ductiledb.logstore.io.SSTableBuilder;
+import com.puresoltechnologies.ductiledb.logstore.io.SSTableIndexIterator;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+
+public class DataFileIT extends AbstractLogStructuredStoreTest {
+
+    private static final int NUMBER_OF_ROWS = 10000;
+
+    private final Storage storage = getStorage();
+
+    private File createDataFile(String name) {
+	File dataFile = new File(name);
+	if (storage.exists(dataFile)) {
+	    storage.delete(dataFile);
+	}
+	return dataFile;
+    }
+
+    private static Key createRowKey(int i) {
+	// Keys with long common prefixes like the ones of edges and indizes.
+	return Key.of(String.format("vertex:4711:edge:out:knows:%08d", i));
+    }
+
+    private static Instant createTombstone(int i) {
+	return i % 10 == 0 ? Instant.ofEpochSecond(1000000 + i, i) : null;
+    }
+
+    @Test
+    public void testBlockDataFile() throws IOException {
+	File dataFile = createDataFile("DataFileIT.testBlockDataFile.data");
+	long[] offsets = new long[NUMBER_OF_ROWS];
+	try (BlockDataFileWriter writer = new BlockDataFileWriter(storage, dataFile, 4096,
+		new NoneBlockCodec())) {
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		offsets[i] = writer.writeRow(createRowKey(i), createTombstone(i), Bytes.fromInt(i));
+	    }
+	}
+	DataFileStatistics statistics = DataFileStatistics.read(storage, dataFile);
+	assertEquals(NUMBER_OF_ROWS, statistics.getRowCount());
+	assertEquals(NUMBER_OF_ROWS / 10, statistics.getTombstoneCount());
+	assertEquals(35 * NUMBER_OF_ROWS, statistics.getKeyBytes());
+	assertEquals(4 * NUMBER_OF_ROWS, statistics.getValueBytes());
+	assertEquals(createRowKey(0), statistics.getMinKey());
+	assertEquals(createRowKey(NUMBER_OF_ROWS - 1), statistics.getMaxKey());
+	assertEquals(NUMBER_OF_ROWS, statistics.getKeySizes().getTotalCount());
+	assertEquals(63, statistics.getKeySizes().getPercentile(0.5));
+	assertEquals(7, statistics.getValueSizes().getPercentile(0.99));
+	long distinctKeys = statistics.getDistinctKeys().estimate();
+	assertTrue("Distinct keys: " + distinctKeys, Math.abs(distinctKeys - NUMBER_OF_ROWS) < NUMBER_OF_ROWS / 10);
+	try (DataFileReader reader = new DataFileReader(storage, dataFile)) {
+	    assertEquals(2, reader.getFormatVersion());
+	    Iterator<Row> iterator = reader.iterator();
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		assertTrue(iterator.hasNext());
+		Row row = iterator.next();
+		assertEquals(createRowKey(i), row.getKey());
+		assertEquals(createTombstone(i), row.getTombstone());
+		assertEquals(i, Bytes.toInt(row.getData()));
+	    }
+	    assertTrue(!iterator.hasNext());
+	}
+	try (DataFileReader reader = new DataFileReader(storage, dataFile)) {
+	    // Lookups in any order only read the block of the row.
+	    for (int i = NUMBER_OF_ROWS - 1; i >= 0; --i) {
+		Row row = reader.readRow(new IndexEntry(createRowKey(i), dataFile, offsets[i]));
+		assertNotNull(row);
+		assertEquals(createRowKey(i), row.getKey());
+		assertEquals(i, Bytes.toInt(row.getData()));
+	    }
+	    assertNull(reader.readRow(new IndexEntry(Key.of("vertex:4711:edge:out:knows"), dataFile, offsets[0])));
+	}
+    }
+
+    @Test
+    public void testBlockDataFileIsSmallerThanVersion1() throws IOException {
+	File version1File = createDataFile("DataFileIT.testBlockDataFileIsSmallerThanVersion1.v1.data");
+	try (DataFileWriter writer = new DataFileWriter(storage, version1File)) {
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		writer.writeRow(createRowKey(i), createTombstone(i), Bytes.fromInt(i));
+	    }
+	}
+	File version2File = createDataFile("DataFileIT.testBlockDataFileIsSmallerThanVersion1.v2.data");
+	try (BlockDataFileWriter writer = new BlockDataFileWriter(storage, version2File, 4096,
+		new NoneBlockCodec())) {
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		writer.writeRow(createRowKey(i), createTombstone(i), Bytes.fromInt(i));
+	    }
+	}
+	long version1Size = storage.getFileStatus(version1File).getLength();
+	long version2Size = storage.getFileStatus(version2File).getLength();
+	assertTrue("Blocks with prefix compressed keys are expected to be less than half the size.",
+		2 * version2Size < version1Size);
+    }
+
+    private static byte[] createValue(int i) {
+	// Values with repeated class names like serialized vertex properties.
+	return Bytes.fromString("com.puresoltechnologies.ductiledb.core.graph.Property:name=property" + i
+		+ ";type=java.lang.String;value=value" + (i % 100));
+    }
+
+    @Test
+    public void testCompressedBlockDataFile() throws IOException {
+	File uncompressedFile = createDataFile("DataFileIT.testCompressedBlockDataFile.none.data");
+	try (BlockDataFileWriter writer = new BlockDataFileWriter(storage, uncompressedFile, 4096,
+		new NoneBlockCodec())) {
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		writer.writeRow(createRowKey(i), createTombstone(i), createValue(i));
+	    }
+	}
+	File dataFile = createDataFile("DataFileIT.testCompressedBlockDataFile.deflate.data");
+	long[] offsets = new long[NUMBER_OF_ROWS];
+	try (BlockDataFileWriter writer = new BlockDataFileWriter(storage, dataFile, 4096,
+		new DeflateBlockCodec())) {
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		offsets[i] = writer.writeRow(createRowKey(i), createTombstone(i), createValue(i));
+	    }
+	}
+	DataFileStatistics uncompressedStatistics = DataFileStatistics.read(storage, uncompressedFile);
+	assertEquals(NoneBlockCodec.ID, uncompressedStatistics.getCodecId());
+	assertEquals(1.0, uncompressedStatistics.getCompressionRatio(), 0.0);
+	DataFileStatistics statistics = DataFileStatistics.read(storage, dataFile);
+	assertEquals(DeflateBlockCodec.ID, statistics.getCodecId());
+	assertEquals(uncompressedStatistics.getBlockCount(), statistics.getBlockCount());
+	assertEquals(uncompressedStatistics.getBlockBytes(), statistics.getBlockBytes());
+	assertTrue("Compression ratio: " + statistics.getCompressionRatio(), statistics.getCompressionRatio() < 0.5);
+	assertTrue(storage.getFileStatus(dataFile).getLength() < storage.getFileStatus(uncompressedFile).getLength());
+
+	try (DataFileReader reader = new DataFileReader(storage, dataFile)) {
+	    Iterator<Row> iterator = reader.iterator();
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		assertTrue(iterator.hasNext());
+		Row row = iterator.next();
+		assertEquals(createRowKey(i), row.getKey());
+		assertEquals(createTombstone(i), row.getTombstone());
+		assertArrayEquals(createValue(i), row.getData());
+	    }
+	    assertTrue(!iterator.hasNext());
+	    for (int i = NUMBER_OF_ROWS - 1; i >= 0; i -= 7) {
+		Row row = reader.readRow(new IndexEntry(createRowKey(i), dataFile, offsets[i]));
+		assertArrayEquals(createValue(i), row.getData());
+	    }
+	}
+    }
+
+    private void flipByte(File file, int position) throws IOException {
+	ByteArrayOutputStream content = new ByteArrayOutputStream();
+	try (InputStream inputStream = storage.open(file)) {
+	    byte[] buffer = new byte[8192];
+	    int len;
+	    while ((len = inputStream.read(buffer)) >= 0) {
+		content.write(buffer, 0, len);
+	    }
+	}
+	byte[] bytes = content.toByteArray();
+	bytes[position] ^= 0x01;
+	storage.delete(file);
+	try (OutputStream outputStream = storage.create(file)) {
+	    outputStream.write(bytes);
+	}
+    }
+
+    @Test
+    public void testBlockChecksums() throws IOException {
+	File directory = new File("DataFileIT.testBlockChecksums");
+	if (!storage.exists(directory)) {
+	    storage.createDirectory(directory);
+	}
+	File dataFile = createDataFile(new File(directory, "DB-checksums.data").getPath());
+	long[] offsets = new long[NUMBER_OF_ROWS];
+	try (BlockDataFileWriter writer = new BlockDataFileWriter(storage, dataFile, 4096,
+		new NoneBlockCodec())) {
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		offsets[i] = writer.writeRow(createRowKey(i), createTombstone(i), Bytes.fromInt(i));
+	    }
+	}
+	DataFileStatistics statistics = DataFileVerifier.verify(storage, dataFile);
+	assertEquals(DataFileStatistics.read(storage, dataFile).getBlockCount(), statistics.getBlockCount());
+	assertTrue(DataFileVerifier.verifyDirectory(storage, directory).isEmpty());
+
+	/*
+	 * The value of the first row follows the file header (8 bytes), the block
+	 * header (13 bytes), the lengths and flags (4 bytes), the tombstone (12
+	 * bytes) and the key (35 bytes).
+	 */
+	flipByte(dataFile, 8 + 13 + 4 + 12 + 35 + 3);
+	try {
+	    DataFileVerifier.verify(storage, dataFile);
+	    fail("The broken block was expected to be detected.");
+	} catch (IOException e) {
+	    assertTrue(e.getMessage(), e.getMessage().contains("checksum"));
+	}
+	try (DataFileReader reader = new DataFileReader(storage, dataFile)) {
+	    reader.readRow(new IndexEntry(createRowKey(0), dataFile, offsets[0]));
+	    fail("The broken block was expected to be detected.");
+	} catch (IOException e) {
+	    assertTrue(e.getMessage(), e.getMessage().contains("checksum"));
+	}
+	try (DataFileReader reader = new DataFileReader(storage, dataFile, false)) {
+	    Row row = reader.readRow(new IndexEntry(createRowKey(0), dataFile, offsets[0]));
+	    assertEquals(1, Bytes.toInt(row.getData()));
+	    row = reader.readRow(new IndexEntry(createRowKey(NUMBER_OF_ROWS - 1), dataFile,
+		    offsets[NUMBER_OF_ROWS - 1]));
+	    assertEquals(NUMBER_OF_ROWS - 1, Bytes.toInt(row.getData()));
+	}
+    }
+
+    @Test
+    public void testVersion1DataFileIsReadable() throws IOException {
+	File dataFile = createDataFile("DataFileIT.testVersion1DataFileIsReadable.data");
+	long[] offsets = new long[NUMBER_OF_ROWS];
+	try (DataFileWriter writer = new DataFileWriter(storage, dataFile)) {
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		offsets[i] = writer.getPosition();
+		writer.writeRow(createRowKey(i), createTombstone(i), Bytes.fromInt(i));
+	    }
+	}
+	assertNull(DataFileStatistics.read(storage, dataFile));
+	try (DataFileReader reader = new DataFileReader(storage, dataFile)) {
+	    assertEquals(1, reader.getFormatVersion());
+	    Iterator<Row> iterator = reader.iterator();
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		Row row = iterator.next();
+		assertEquals(createRowKey(i), row.getKey());
+		assertEquals(createTombstone(i), row.getTombstone());
+	    }
+	    for (int i = NUMBER_OF_ROWS - 1; i >= 0; --i) {
+		Row row = reader.readRow(new IndexEntry(createRowKey(i), dataFile, offsets[i]));
+		assertEquals(createRowKey(i), row.getKey());
+		assertEquals(i, Bytes.toInt(row.getData()));
+	    }
+	}
+    }
+
+    @Test
+    public void testSparseIndex() throws IOException {
+	File directory = new File("DataFileIT.testSparseIndex");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	storage.createDirectory(directory);
+	File metadataFile;
+	try (SSTableBuilder builder = new SSTableBuilder(storage, directory, "DB", 8192, Long.MAX_VALUE, 10, 4096,
+		new NoneBlockCodec(), false)) {
+	    for (int i = 0; i < NUMBER_OF_ROWS; i += 2) {
+		builder.write(createRowKey(i), createTombstone(i), Bytes.fromInt(i));
+	    }
+	    metadataFile = builder.finish();
+	}
+	File dataFile = new File(directory, "DB-0" + LogStructuredStore.DATA_FILE_SUFFIX);
+	DataFileStatistics statistics = DataFileStatistics.read(storage, dataFile);
+	// The index has one entry per block, which points to the block.
+	int indexEntries = 0;
+	try (IndexFileReader indexReader = new IndexFileReader(storage, DataFileSet.getIndexName(dataFile));
+		DataFileReader dataReader = new DataFileReader(storage, dataFile)) {
+	    for (IndexEntry indexEntry : indexReader) {
+		assertEquals(indexEntry.getRowKey(), dataReader.readRow(indexEntry).getKey());
+		indexEntries++;
+	    }
+	}
+	assertEquals(statistics.getBlockCount(), indexEntries);
+	assertTrue(indexEntries < NUMBER_OF_ROWS / 20);
+	// The Bloom filter still contains all rows.
+	BloomFilter bloomFilter = BloomFilter.read(storage, dataFile);
+	for (int i = 0; i < NUMBER_OF_ROWS; i += 2) {
+	    assertTrue(bloomFilter.mightContain(createRowKey(i)));
+	}
+	try (DataFileSet dataFileSet = new DataFileSet(storage, directory, metadataFile)) {
+	    List<Key> rowKeys = new ArrayList<>();
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		Row row = dataFileSet.getRow(createRowKey(i));
+		if (i % 2 == 0) {
+		    assertEquals(i, Bytes.toInt(row.getData()));
+		} else {
+		    assertNull(row);
+		}
+		rowKeys.add(createRowKey(i));
+	    }
+	    List<Row> rows = dataFileSet.getRows(rowKeys);
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		if (i % 2 == 0) {
+		    assertEquals(i, Bytes.toInt(rows.get(i).getData()));
+		} else {
+		    assertNull(rows.get(i));
+		}
+	    }
+	    // The index iterator provides all rows from the start key on.
+	    try (SSTableIndexIterator iterator = new SSTableIndexIterator(dataFileSet, createRowKey(1001),
+		    createRowKey(8000))) {
+		for (int i = 1002; i <= 8000; i += 2) {
+		    assertTrue(iterator.hasNext());
+		    assertEquals(createRowKey(i), iterator.next().getRowKey());
+		}
+		assertFalse(iterator.hasNext());
+	    }
+	}
+    }
+
+}
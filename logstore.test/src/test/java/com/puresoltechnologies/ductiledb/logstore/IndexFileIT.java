@@ -0,0 +1,120 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexEntry;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexEntryIterator;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexFileReader;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexFileWriter;
+import com.puresoltechnologies.ductiledb.logstore.io.DuctileDBOutputStream;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+
+public class IndexFileIT extends AbstractLogStructuredStoreTest {
+
+    private static final int NUMBER_OF_ENTRIES = 10000;
+
+    private final Storage storage = getStorage();
+
+    private File createIndexFile(String name) {
+	File indexFile = new File(name);
+	if (storage.exists(indexFile)) {
+	    storage.delete(indexFile);
+	}
+	return indexFile;
+    }
+
+    @Test
+    public void testBlockIndexLookup() throws IOException {
+	File indexFile = createIndexFile("IndexFileIT.testBlockIndexLookup.index");
+	try (IndexFileWriter writer = new IndexFileWriter(storage, indexFile, new File("IndexFileIT.data"))) {
+	    for (int i = 0; i < NUMBER_OF_ENTRIES; ++i) {
+		writer.writeIndexEntry(Key.of(2 * i), 100 * i);
+	    }
+	}
+	try (IndexFileReader reader = new IndexFileReader(storage, indexFile)) {
+	    // Lookups in any order only read the block of the key.
+	    for (int i = NUMBER_OF_ENTRIES - 1; i >= 0; --i) {
+		IndexEntry indexEntry = reader.get(Key.of(2 * i));
+		assertNotNull(indexEntry);
+		assertEquals(100 * i, indexEntry.getOffset());
+		assertNull(reader.get(Key.of(2 * i + 1)));
+	    }
+	    assertNull(reader.get(Key.of(-1)));
+	}
+	try (IndexFileReader reader = new IndexFileReader(storage, indexFile)) {
+	    IndexEntryIterator iterator = reader.iterator(Key.of(5001), null);
+	    iterator.gotoStart(Key.of(5001));
+	    for (int i = 2501; i < NUMBER_OF_ENTRIES; ++i) {
+		assertEquals(Key.of(2 * i), iterator.next().getRowKey());
+	    }
+	    assertFalse(iterator.hasNext());
+	}
+    }
+
+    @Test
+    public void testConcurrentFind() throws IOException, InterruptedException {
+	File indexFile = createIndexFile("IndexFileIT.testConcurrentFind.index");
+	try (IndexFileWriter writer = new IndexFileWriter(storage, indexFile, new File("IndexFileIT.data"))) {
+	    for (int i = 0; i < NUMBER_OF_ENTRIES; ++i) {
+		writer.writeIndexEntry(Key.of(2 * i), 100 * i);
+	    }
+	}
+	try (IndexFileReader reader = new IndexFileReader(storage, indexFile)) {
+	    Thread[] threads = new Thread[4];
+	    AtomicInteger failures = new AtomicInteger();
+	    for (int t = 0; t < threads.length; ++t) {
+		int start = t;
+		threads[t] = new Thread(() -> {
+		    try {
+			for (int i = start; i < NUMBER_OF_ENTRIES; i += 3) {
+			    IndexEntry indexEntry = reader.find(Key.of(2 * i));
+			    assertEquals(100 * i, indexEntry.getOffset());
+			    assertNull(reader.find(Key.of(2 * i + 1)));
+			}
+		    } catch (IOException | AssertionError | NullPointerException e) {
+			failures.incrementAndGet();
+		    }
+		});
+		threads[t].start();
+	    }
+	    for (Thread thread : threads) {
+		thread.join();
+	    }
+	    assertEquals(0, failures.get());
+	    assertNull(reader.find(Key.of(-1)));
+	}
+    }
+
+    @Test
+    public void testIndexWithoutFencePointers() throws IOException {
+	File indexFile = createIndexFile("IndexFileIT.testIndexWithoutFencePointers.index");
+	String dataFile = "IndexFileIT.data";
+	try (DuctileDBOutputStream outputStream = new DuctileDBOutputStream(storage.create(indexFile))) {
+	    outputStream.writeData(Bytes.fromInt(dataFile.length()));
+	    outputStream.writeData(Bytes.fromString(dataFile));
+	    for (int i = 0; i < 100; ++i) {
+		IndexFileWriter.writeIndexEntry(outputStream, Key.of(i), 10 * i);
+	    }
+	}
+	try (IndexFileReader reader = new IndexFileReader(storage, indexFile)) {
+	    for (int i = 0; i < 100; ++i) {
+		reader.reset();
+		IndexEntry indexEntry = reader.get(Key.of(i));
+		assertNotNull(indexEntry);
+		assertEquals(new File(dataFile), indexEntry.getDataFile());
+		assertEquals(10 * i, indexEntry.getOffset());
+	    }
+	}
+    }
+
+}
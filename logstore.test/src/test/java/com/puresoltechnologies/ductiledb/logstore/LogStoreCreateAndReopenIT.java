@@ -1,17 +1,39 @@
 package com.puresoltechnologies.ductiledb.logstore;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Timer;
 import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileStatistics;
+import com.puresoltechnologies.ductiledb.logstore.data.SizeHistogram;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileWriter;
+import com.puresoltechnologies.ductiledb.logstore.io.filter.CommitLogFilenameFilter;
+import com.puresoltechnologies.ductiledb.storage.api.StorageException;
 import com.puresoltechnologies.ductiledb.storage.api.StorageFactory;
 import com.puresoltechnologies.ductiledb.storage.spi.Storage;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageConfiguration;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageInputStream;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
+import com.puresoltechnologies.ductiledb.stores.os.OSStorage;
 
 public class LogStoreCreateAndReopenIT {
 
@@ -34,6 +56,746 @@ public class LogStoreCreateAndReopenIT {
 	}
     }
 
+    @Test
+    public void testCloseWithoutOpen() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testCloseWithoutOpen");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	// The store has no data files before it is opened.
+	LogStructuredStore.create(storage, directory, new LogStoreConfiguration()).close();
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    store.put(Key.of("Key"), Bytes.fromString("Value"));
+	}
+	LogStructuredStore.open(storage, directory).close();
+    }
+
+    @Test(timeout = 60000)
+    public void testReadAfterClose() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testReadAfterClose");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStructuredStore store = LogStructuredStore.create(storage, directory, new LogStoreConfiguration());
+	store.open();
+	store.put(Key.of("Key"), Bytes.fromString("Value"));
+	store.close();
+	try {
+	    store.get(Key.of("Key"));
+	    fail("Reads of a closed store are not possible.");
+	} catch (StorageException e) {
+	    // expected
+	}
+    }
+
+    @Test
+    public void testWriteBatchRecovery() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testWriteBatchRecovery");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, new LogStoreConfiguration())) {
+	    store.open();
+	    store.put(Key.of("Key"), Bytes.fromString("Value"));
+	    store.write(new WriteBatch().put(Key.of("Batch1"), Bytes.fromString("Value1")).put(Key.of("Batch2"),
+		    Bytes.fromString("Value2")));
+	}
+	// Simulate a crash in the middle of a write batch.
+	File commitLog = new File(directory, LogStructuredStore.COMMIT_LOG_PREFIX + "-1000000000000"
+		+ LogStructuredStore.DATA_FILE_SUFFIX);
+	try (DataFileWriter writer = new DataFileWriter(storage, commitLog)) {
+	    writer.writeBatchMarker(3);
+	    writer.writeRow(Key.of("Batch3"), null, Bytes.fromString("Value3"));
+	    writer.writeRow(Key.of("Batch4"), null, Bytes.fromString("Value4"));
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    assertEquals("Value", Bytes.toString(store.get(Key.of("Key"))));
+	    assertEquals("Value1", Bytes.toString(store.get(Key.of("Batch1"))));
+	    assertEquals("Value2", Bytes.toString(store.get(Key.of("Batch2"))));
+	    assertNull(store.get(Key.of("Batch3")));
+	    assertNull(store.get(Key.of("Batch4")));
+	}
+    }
+
+    @Test
+    public void testCheckpointRecovery() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testCheckpointRecovery");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	storeConfiguration.setCommitLogCheckpointInterval(1);
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+	    store.open();
+	    for (int i = 0; i < 10; ++i) {
+		store.put(Key.of(i), Bytes.fromInt(i));
+	    }
+	}
+	File commitLog = null;
+	for (File file : storage.list(directory, new CommitLogFilenameFilter())) {
+	    commitLog = file;
+	}
+	assertNotNull(commitLog);
+	assertTrue(storage.exists(CommitLogRecovery.getCheckpointName(commitLog)));
+	/*
+	 * Keep only the first five checkpoint records, each with one index entry of
+	 * 28 bytes. The rows behind are read from the commit log.
+	 */
+	File checkpoint = CommitLogRecovery.getCheckpointName(commitLog);
+	byte[] records = new byte[5 * 28];
+	try (StorageInputStream inputStream = storage.open(checkpoint)) {
+	    int read = 0;
+	    while (read < records.length) {
+		read += inputStream.read(records, read, records.length - read);
+	    }
+	}
+	storage.delete(checkpoint);
+	try (StorageOutputStream outputStream = storage.create(checkpoint)) {
+	    outputStream.write(records);
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    for (int i = 0; i < 10; ++i) {
+		assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+	    }
+	}
+	assertFalse(storage.exists(CommitLogRecovery.getCheckpointName(commitLog)));
+    }
+
+    @Test
+    public void testCommitLogSegmentRecycling() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testCommitLogSegmentRecycling");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	storeConfiguration.setMaxCommitLogSize(4 * 1024);
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+	    store.open();
+	    Counter recycled = (Counter) store.getMetric(LogStructuredStoreMetric.COMMIT_LOG_SEGMENTS_RECYCLED);
+	    for (int round = 0; (round < 20) || ((recycled.getCount() == 0) && (round < 200)); ++round) {
+		for (int i = 0; i < 100; ++i) {
+		    store.put(Key.of(i), Bytes.fromInt(round * 100 + i));
+		}
+	    }
+	    assertTrue("No commit log segment was recycled.", recycled.getCount() > 0);
+	}
+	// Stale records of recycled segments must not be replayed.
+	int lastRound;
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    lastRound = Bytes.toInt(store.get(Key.of(0))) / 100;
+	    assertTrue(lastRound >= 19);
+	    for (int i = 0; i < 100; ++i) {
+		assertEquals(lastRound * 100 + i, Bytes.toInt(store.get(Key.of(i))));
+	    }
+	}
+    }
+
+    @Test
+    public void testCommitLogSegmentsWithoutOverwrite() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	// Like HDFS, the storage can neither overwrite nor rename files.
+	try (Storage storage = new OSStorage(configuration) {
+	    @Override
+	    public StorageOutputStream overwrite(File file) throws IOException {
+		throw new UnsupportedOperationException("Files cannot be overwritten.");
+	    }
+
+	    @Override
+	    public void rename(File source, File target) throws IOException {
+		throw new UnsupportedOperationException("Files cannot be renamed.");
+	    }
+	}) {
+	    storage.initialize();
+	    File directory = new File("LogStoreCreateAndReopenIT.testCommitLogSegmentsWithoutOverwrite");
+	    if (storage.exists(directory)) {
+		storage.removeDirectory(directory, true);
+	    }
+	    LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	    storeConfiguration.setMaxCommitLogSize(4 * 1024);
+	    storeConfiguration.setCommitLogPreallocation(true);
+	    try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+		store.open();
+		Counter allocated = (Counter) store.getMetric(LogStructuredStoreMetric.COMMIT_LOG_SEGMENTS_ALLOCATED);
+		Counter recycled = (Counter) store.getMetric(LogStructuredStoreMetric.COMMIT_LOG_SEGMENTS_RECYCLED);
+		for (int round = 0; round < 20; ++round) {
+		    for (int i = 0; i < 100; ++i) {
+			store.put(Key.of(i), Bytes.fromInt(round * 100 + i));
+		    }
+		}
+		assertTrue(allocated.getCount() > 1);
+		assertEquals(0, recycled.getCount());
+		// Compacted commit logs are deleted instead of being kept for recycling.
+		List<File> commitLogs = new ArrayList<>();
+		storage.list(directory, new CommitLogFilenameFilter()).forEach(commitLogs::add);
+		assertTrue(commitLogs.size() < allocated.getCount());
+		assertFalse(storage.exists(new File(directory, CommitLogSegmentManager.SPARE_SEGMENT_NAME)));
+	    }
+	    try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+		store.open();
+		for (int i = 0; i < 100; ++i) {
+		    assertEquals(1900 + i, Bytes.toInt(store.get(Key.of(i))));
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void testPendingCompactionBytesOfPreallocatedSegments() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testPendingCompactionBytesOfPreallocatedSegments");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	storeConfiguration.setMaxCommitLogSize(1024 * 1024);
+	storeConfiguration.setCommitLogPreallocation(true);
+	// Only a preallocated segment counted with its file length reaches the stop threshold.
+	storeConfiguration.setSlowdownPendingCompactionBytes(128 * 1024);
+	storeConfiguration.setStopPendingCompactionBytes(256 * 1024);
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+	    store.open();
+	    Timer stoppedWrites = (Timer) store.getMetric(LogStructuredStoreMetric.WRITE_STOPPED_TIMER);
+	    for (int round = 0; round < 10; ++round) {
+		for (int i = 0; i < 100; ++i) {
+		    store.put(Key.of(i), Bytes.fromInt(round * 100 + i));
+		}
+		// Rolls over the commit log long before its segment is full.
+		((LogStructuredStoreImpl) store).runCompaction();
+	    }
+	    for (int i = 0; i < 1000; ++i) {
+		store.put(Key.of(i), Bytes.fromInt(i));
+	    }
+	    assertEquals(0, stoppedWrites.getCount());
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    assertEquals(999, Bytes.toInt(store.get(Key.of(999))));
+	}
+    }
+
+    /**
+     * Creates a storage which fails to create the given number of index files.
+     */
+    private static Storage createStorageFailingIndexFiles(StorageConfiguration configuration,
+	    AtomicInteger indexFileFailures) throws IOException {
+	Storage storage = new OSStorage(configuration) {
+	    @Override
+	    public StorageOutputStream create(File file) throws IOException {
+		if (file.getName().endsWith(LogStructuredStore.INDEX_FILE_SUFFIX)
+			&& (indexFileFailures.getAndDecrement() > 0)) {
+		    throw new IOException("Index file '" + file + "' cannot be created.");
+		}
+		return super.create(file);
+	    }
+	};
+	storage.initialize();
+	return storage;
+    }
+
+    @Test
+    public void testMemtableFlushIsRetried() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	AtomicInteger indexFileFailures = new AtomicInteger(0);
+	try (Storage storage = createStorageFailingIndexFiles(configuration, indexFileFailures)) {
+	    File directory = new File("LogStoreCreateAndReopenIT.testMemtableFlushIsRetried");
+	    if (storage.exists(directory)) {
+		storage.removeDirectory(directory, true);
+	    }
+	    try (LogStructuredStore store = LogStructuredStore.create(storage, directory,
+		    new LogStoreConfiguration())) {
+		store.open();
+		for (int i = 0; i < 100; ++i) {
+		    store.put(Key.of(i), Bytes.fromInt(i));
+		}
+		indexFileFailures.set(2);
+		((LogStructuredStoreImpl) store).runCompaction();
+		for (int i = 100; i < 200; ++i) {
+		    store.put(Key.of(i), Bytes.fromInt(i));
+		}
+	    }
+	    assertTrue(indexFileFailures.get() < 0);
+	    try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+		store.open();
+		for (int i = 0; i < 200; ++i) {
+		    assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void testNoMemtableIsFlushedAfterFailedFlush() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	AtomicInteger indexFileFailures = new AtomicInteger(0);
+	try (Storage storage = createStorageFailingIndexFiles(configuration, indexFileFailures)) {
+	    File directory = new File("LogStoreCreateAndReopenIT.testNoMemtableIsFlushedAfterFailedFlush");
+	    if (storage.exists(directory)) {
+		storage.removeDirectory(directory, true);
+	    }
+	    try (LogStructuredStore store = LogStructuredStore.create(storage, directory,
+		    new LogStoreConfiguration())) {
+		store.open();
+		for (int i = 0; i < 100; ++i) {
+		    store.put(Key.of(i), Bytes.fromInt(i));
+		}
+		// The first flush fails with all of its retries, the following ones would succeed.
+		indexFileFailures.set(6);
+		((LogStructuredStoreImpl) store).runCompaction();
+		// The rows are overwritten while the first flush is retried.
+		for (int i = 0; i < 100; ++i) {
+		    store.put(Key.of(i), Bytes.fromInt(-i));
+		}
+		((LogStructuredStoreImpl) store).runCompaction();
+	    }
+	    // The newer commit log must not be compacted before the older one.
+	    try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+		store.open();
+		for (int i = 0; i < 100; ++i) {
+		    assertEquals(-i, Bytes.toInt(store.get(Key.of(i))));
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void testFailedMemtableFlushRejectsWrites() throws IOException, InterruptedException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	AtomicInteger indexFileFailures = new AtomicInteger(0);
+	try (Storage storage = createStorageFailingIndexFiles(configuration, indexFileFailures)) {
+	    File directory = new File("LogStoreCreateAndReopenIT.testFailedMemtableFlushRejectsWrites");
+	    if (storage.exists(directory)) {
+		storage.removeDirectory(directory, true);
+	    }
+	    int count = 100;
+	    try (LogStructuredStore store = LogStructuredStore.create(storage, directory,
+		    new LogStoreConfiguration())) {
+		store.open();
+		for (int i = 0; i < count; ++i) {
+		    store.put(Key.of(i), Bytes.fromInt(i));
+		}
+		indexFileFailures.set(Integer.MAX_VALUE);
+		((LogStructuredStoreImpl) store).runCompaction();
+		try {
+		    // The flush is retried for several seconds before writes are rejected.
+		    for (; count < 1000; ++count) {
+			store.put(Key.of(count), Bytes.fromInt(count));
+			Thread.sleep(100);
+		    }
+		    fail("Writes are expected to be rejected after the memtable flush failed.");
+		} catch (StorageException e) {
+		    // expected
+		}
+		// The rows of the memtable which was not flushed are still read.
+		for (int i = 0; i < count; ++i) {
+		    assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+		}
+	    }
+	    indexFileFailures.set(0);
+	    // The commit log is indexed on next start.
+	    try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+		store.open();
+		for (int i = 0; i < count; ++i) {
+		    assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+		}
+		store.put(Key.of(count), Bytes.fromInt(count));
+	    }
+	}
+    }
+
+    @Test
+    public void testMergeOperandsAcrossCompactionsAndReopen() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testMergeOperandsAcrossCompactionsAndReopen");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	storeConfiguration.setMaxCommitLogSize(4 * 1024);
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+	    store.setMergeOperator(new CounterMergeOperator());
+	    store.open();
+	    for (int i = 0; i < 100; i += 2) {
+		store.put(Key.of(i), Bytes.fromLong(1000));
+	    }
+	    // The commit logs roll over and are compacted while the operands are written.
+	    for (int round = 1; round <= 30; ++round) {
+		for (int i = 0; i < 100; ++i) {
+		    store.merge(Key.of(i), Bytes.fromLong(1));
+		}
+		assertEquals(1000 + round, Bytes.toLong(store.get(Key.of(0))));
+		assertEquals(round, Bytes.toLong(store.get(Key.of(1))));
+	    }
+	    store.delete(Key.of(98));
+	    store.merge(Key.of(98), Bytes.fromLong(5));
+	    assertEquals(5, Bytes.toLong(store.get(Key.of(98))));
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.setMergeOperator(new CounterMergeOperator());
+	    store.open();
+	    for (int i = 0; i < 98; ++i) {
+		assertEquals(i % 2 == 0 ? 1030 : 30, Bytes.toLong(store.get(Key.of(i))));
+	    }
+	    assertEquals(5, Bytes.toLong(store.get(Key.of(98))));
+	    try (RowScanner scanner = store.getScanner(null, null)) {
+		int count = 0;
+		while (scanner.hasNext()) {
+		    Row row = scanner.next();
+		    assertFalse(row.isMergeOperand());
+		    assertEquals(Bytes.toLong(store.get(row.getKey())), Bytes.toLong(row.getData()));
+		    count++;
+		}
+		assertEquals(100, count);
+	    }
+	}
+    }
+
+    @Test
+    public void testBloomFiltersSkipAbsentRows() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testBloomFiltersSkipAbsentRows");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	storeConfiguration.setMaxCommitLogSize(16 * 1024);
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+	    store.open();
+	    for (int i = 0; i < 2000; i += 2) {
+		store.put(Key.of(i), Bytes.fromInt(i));
+	    }
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    for (int i = 0; i < 2000; i += 2) {
+		assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+	    }
+	    // The absent rows are within the key ranges of the files.
+	    for (int i = 1; i < 2000; i += 2) {
+		assertNull(store.get(Key.of(i)));
+	    }
+	    Counter useful = (Counter) store.getMetric(LogStructuredStoreMetric.BLOOM_FILTER_USEFUL);
+	    Counter useless = (Counter) store.getMetric(LogStructuredStoreMetric.BLOOM_FILTER_USELESS);
+	    assertTrue(useful.getCount() >= 900);
+	    assertTrue(useless.getCount() < useful.getCount() / 10);
+	}
+    }
+
+    @Test
+    public void testDataFileStatisticsAreLoadedOnOpen() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testDataFileStatisticsAreLoadedOnOpen");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	storeConfiguration.setMaxCommitLogSize(16 * 1024);
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+	    store.open();
+	    for (int i = 0; i < 2000; ++i) {
+		store.put(Key.of(i), Bytes.fromLong(i));
+	    }
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    Map<File, DataFileStatistics> statistics = store.getDataFileStatistics();
+	    assertFalse(statistics.isEmpty());
+	    long rowCount = 0;
+	    for (DataFileStatistics dataFileStatistics : statistics.values()) {
+		rowCount += dataFileStatistics.getRowCount();
+		assertEquals(0, dataFileStatistics.getTombstoneCount());
+		assertEquals(4 * dataFileStatistics.getRowCount(), dataFileStatistics.getKeyBytes());
+		assertEquals(8 * dataFileStatistics.getRowCount(), dataFileStatistics.getValueBytes());
+		assertEquals(dataFileStatistics.getRowCount(),
+			dataFileStatistics.getValueSizes().getCount(SizeHistogram.getBucket(8)));
+		assertTrue(dataFileStatistics.getMinKey().compareTo(dataFileStatistics.getMaxKey()) <= 0);
+	    }
+	    assertTrue("Rows in data files: " + rowCount, (rowCount > 0) && (rowCount <= 2000));
+	}
+    }
+
+    @Test
+    public void testBlockCache() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testBlockCache");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	storeConfiguration.setMaxCommitLogSize(16 * 1024);
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+	    store.open();
+	    for (int i = 0; i < 1000; ++i) {
+		store.put(Key.of(i), Bytes.fromInt(i));
+	    }
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    Counter hits = (Counter) store.getMetric(LogStructuredStoreMetric.BLOCK_CACHE_HITS);
+	    Counter misses = (Counter) store.getMetric(LogStructuredStoreMetric.BLOCK_CACHE_MISSES);
+	    for (int round = 0; round < 3; ++round) {
+		for (int i = 0; i < 1000; ++i) {
+		    assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+		}
+	    }
+	    assertTrue(misses.getCount() > 0);
+	    assertTrue(hits.getCount() > misses.getCount());
+	}
+    }
+
+    @Test
+    public void testConcurrentReadsWithoutBlockCache() throws IOException, InterruptedException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testConcurrentReadsWithoutBlockCache");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	storeConfiguration.setMaxCommitLogSize(16 * 1024);
+	storeConfiguration.setBlockCacheSize(0);
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+	    store.open();
+	    for (int i = 0; i < 2000; ++i) {
+		store.put(Key.of(i), Bytes.fromInt(i));
+	    }
+	}
+	// Reopening compacts the commit logs, so the rows are read from the data files.
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    Thread[] threads = new Thread[4];
+	    AtomicInteger failures = new AtomicInteger();
+	    for (int t = 0; t < threads.length; ++t) {
+		threads[t] = new Thread(() -> {
+		    try {
+			for (int round = 0; round < 3; ++round) {
+			    for (int i = 0; i < 2000; ++i) {
+				assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+			    }
+			}
+		    } catch (AssertionError | RuntimeException e) {
+			failures.incrementAndGet();
+		    }
+		});
+		threads[t].start();
+	    }
+	    for (Thread thread : threads) {
+		thread.join();
+	    }
+	    assertEquals(0, failures.get());
+	}
+    }
+
+    @Test
+    public void testMemoryMappedReads() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	configuration.getProperties().setProperty(OSStorage.MEMORY_MAPPED_READS_PROPERTY, "true");
+	try (Storage storage = new OSStorage(configuration)) {
+	    storage.initialize();
+	    File directory = new File("LogStoreCreateAndReopenIT.testMemoryMappedReads");
+	    if (storage.exists(directory)) {
+		storage.removeDirectory(directory, true);
+	    }
+	    LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	    storeConfiguration.setMaxCommitLogSize(16 * 1024);
+	    storeConfiguration.setBlockCacheSize(0);
+	    try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+		store.open();
+		for (int i = 0; i < 2000; ++i) {
+		    store.put(Key.of(i), Bytes.fromInt(i));
+		}
+	    }
+	    // Reopening compacts the commit logs, so the rows are read from the data files.
+	    try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+		store.open();
+		for (int i = 0; i < 2000; ++i) {
+		    assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+		}
+		// The compactions of the updates replace the mapped data files read before.
+		for (int i = 0; i < 2000; ++i) {
+		    store.put(Key.of(i), Bytes.fromInt(i + 1));
+		}
+	    }
+	    try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+		store.open();
+		for (int i = 0; i < 2000; ++i) {
+		    assertEquals(i + 1, Bytes.toInt(store.get(Key.of(i))));
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void testMultiGet() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testMultiGet");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	storeConfiguration.setMaxCommitLogSize(16 * 1024);
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+	    store.open();
+	    for (int i = 0; i < 2000; ++i) {
+		store.put(Key.of(i), Bytes.fromInt(i));
+	    }
+	}
+	// Reopening compacts the commit logs, so the rows are read from the data files.
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    // Updates and deletions in the memtable and the commit logs
+	    for (int i = 0; i < 2000; i += 3) {
+		store.put(Key.of(i), Bytes.fromInt(-i));
+	    }
+	    for (int i = 1; i < 2000; i += 7) {
+		store.delete(Key.of(i));
+	    }
+	    List<Key> rowKeys = new ArrayList<>();
+	    for (int i = 2499; i >= 0; i -= 2) {
+		rowKeys.add(Key.of(i));
+	    }
+	    // Duplicates are allowed.
+	    rowKeys.add(Key.of(3));
+	    List<byte[]> values = store.get(rowKeys);
+	    assertEquals(rowKeys.size(), values.size());
+	    for (int i = 0; i < rowKeys.size(); ++i) {
+		assertArrayEquals(store.get(rowKeys.get(i)), values.get(i));
+	    }
+	    assertArrayEquals(Bytes.fromInt(-3), values.get(values.size() - 1));
+	    assertNull(values.get(0));
+
+	    ExecutorService executorService = Executors.newFixedThreadPool(4);
+	    try {
+		List<byte[]> parallelValues = store.get(rowKeys, executorService);
+		assertEquals(rowKeys.size(), parallelValues.size());
+		for (int i = 0; i < rowKeys.size(); ++i) {
+		    assertArrayEquals(values.get(i), parallelValues.get(i));
+		}
+	    } finally {
+		executorService.shutdown();
+	    }
+	}
+    }
+
+    @Test
+    public void testScannerKeepsDataFilesReplacedByCompaction() throws IOException, InterruptedException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	configuration.getProperties().setProperty(OSStorage.MEMORY_MAPPED_READS_PROPERTY, "true");
+	try (Storage storage = new OSStorage(configuration)) {
+	    storage.initialize();
+	    File directory = new File("LogStoreCreateAndReopenIT.testScannerKeepsDataFilesReplacedByCompaction");
+	    if (storage.exists(directory)) {
+		storage.removeDirectory(directory, true);
+	    }
+	    LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	    storeConfiguration.setMaxCommitLogSize(16 * 1024);
+	    storeConfiguration.setBlockCacheSize(0);
+	    try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+		store.open();
+		for (int i = 0; i < 2000; ++i) {
+		    store.put(Key.of(i), Bytes.fromInt(i));
+		}
+	    }
+	    // Reopening compacts the commit logs, so the rows are read from the data files.
+	    try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+		store.open();
+		Counter compactions = (Counter) store.getMetric(LogStructuredStoreMetric.COMPACTION_COUNTER);
+		try (RowScanner scanner = store.getScanner(Key.of(0), Key.of(1999))) {
+		    assertEquals(0, Bytes.toInt(scanner.next().getData()));
+		    for (int i = 2000; i < 4000; ++i) {
+			store.put(Key.of(i), Bytes.fromInt(i));
+		    }
+		    long timeout = System.currentTimeMillis() + 60000;
+		    while ((compactions.getCount() == 0) && (System.currentTimeMillis() < timeout)) {
+			Thread.sleep(10);
+		    }
+		    assertTrue(compactions.getCount() > 0);
+		    // The scanner still reads the replaced data files.
+		    for (int i = 1; i < 2000; ++i) {
+			assertTrue(scanner.hasNext());
+			assertEquals(i, Bytes.toInt(scanner.next().getData()));
+		    }
+		    assertFalse(scanner.hasNext());
+		}
+		for (int i = 0; i < 4000; ++i) {
+		    assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void testReadsFromFlushedCommitLogsUseInMemoryIndexes() throws IOException {
+	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
+	Storage storage = StorageFactory.getStorageInstance(configuration);
+
+	File directory = new File("LogStoreCreateAndReopenIT.testReadsFromFlushedCommitLogsUseInMemoryIndexes");
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+	LogStoreConfiguration storeConfiguration = new LogStoreConfiguration();
+	storeConfiguration.setMaxCommitLogSize(16 * 1024);
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, storeConfiguration)) {
+	    ((LogStructuredStoreImpl) store).setRunCompactions(false);
+	    store.open();
+	    for (int i = 0; i < 1000; ++i) {
+		store.put(Key.of(i), Bytes.fromInt(i));
+	    }
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    ((LogStructuredStoreImpl) store).setRunCompactions(false);
+	    store.open();
+	    // The index files are only read on open.
+	    int indexFiles = 0;
+	    for (File commitLog : storage.list(directory, new CommitLogFilenameFilter())) {
+		File indexFile = DataFileSet.getIndexName(commitLog);
+		if (storage.exists(indexFile)) {
+		    storage.delete(indexFile);
+		    indexFiles++;
+		}
+	    }
+	    assertTrue(indexFiles > 1);
+	    for (int i = 0; i < 1000; ++i) {
+		assertEquals(i, Bytes.toInt(store.get(Key.of(i))));
+	    }
+	    assertNull(store.get(Key.of(1000)));
+	}
+    }
+
     @Test(expected = IOException.class)
     public void testDoubleCreationNotAllowed() throws IOException {
 	StorageConfiguration configuration = LogStructuredStoreTestUtils.createStorageConfiguration();
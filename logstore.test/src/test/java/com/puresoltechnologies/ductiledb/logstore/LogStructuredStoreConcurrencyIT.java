@@ -1,11 +1,14 @@
 package com.puresoltechnologies.ductiledb.logstore;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -13,6 +16,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
 import org.junit.Test;
 
@@ -127,4 +132,117 @@ public class LogStructuredStoreConcurrencyIT extends AbstractLogStructuredStoreT
 	time.getSnapshot().dump(System.out);
     }
 
+    /**
+     * Gets, multi-gets and scanners read a snapshot of the store without any
+     * store lock, so they must not wait for a writer holding the write lock nor
+     * for one queued behind it at the fair lock.
+     */
+    @Test(timeout = 60000)
+    public void testReadersDoNotBlockBehindWriters() throws Exception {
+	final int offset = 1000000;
+	List<Key> rowKeys = new ArrayList<>();
+	for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+	    store.put(Key.of(offset + i), Bytes.fromInt(i));
+	    rowKeys.add(Key.of(offset + i));
+	}
+	Lock writeLock = ((LogStructuredStoreImpl) store).getWriteLock();
+	ExecutorService fixedThreadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+	writeLock.lock();
+	try {
+	    Thread queuedWriter = new Thread(() -> {
+		writeLock.lock();
+		writeLock.unlock();
+	    });
+	    queuedWriter.start();
+	    while (queuedWriter.getState() != Thread.State.WAITING) {
+		Thread.sleep(1);
+	    }
+	    List<Future<Void>> futures = new ArrayList<>();
+	    for (int threadId = 0; threadId < THREAD_POOL_SIZE; threadId++) {
+		futures.add(fixedThreadPool.submit(() -> {
+		    for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+			assertEquals(i, Bytes.toInt(store.get(Key.of(offset + i))));
+		    }
+		    List<byte[]> values = store.get(rowKeys);
+		    for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+			assertEquals(i, Bytes.toInt(values.get(i)));
+		    }
+		    try (RowScanner scanner = store.getScanner(Key.of(offset), Key.of(offset + NUMBER_OF_VALUES - 1))) {
+			for (int i = 0; i < NUMBER_OF_VALUES; i++) {
+			    assertTrue(scanner.hasNext());
+			    assertEquals(i, Bytes.toInt(scanner.next().getData()));
+			}
+			assertFalse(scanner.hasNext());
+		    }
+		    return null;
+		}));
+	    }
+	    for (Future<Void> future : futures) {
+		future.get(30, TimeUnit.SECONDS);
+	    }
+	    assertTrue("The queued writer must still wait for the write lock.", queuedWriter.isAlive());
+	} finally {
+	    writeLock.unlock();
+	    fixedThreadPool.shutdown();
+	}
+    }
+
+    /**
+     * Readers run concurrently to writers, rollovers, flushes and compactions.
+     * As the snapshot is taken atomically, a row never disappears and never goes
+     * back to an older value.
+     */
+    @Test
+    public void testReadersSeeConsistentSnapshotsDuringRollovers() throws Exception {
+	final int offset = 2000000;
+	final int rowCount = 100;
+	final int updates = 1000;
+	Counter compactionCounter = (Counter) store.getMetric(LogStructuredStoreMetric.COMPACTION_COUNTER);
+	long oldNumOfCompations = compactionCounter.getCount();
+	for (int i = 0; i < rowCount; i++) {
+	    store.put(Key.of(offset + i), Bytes.fromInt(0));
+	}
+	AtomicBoolean writing = new AtomicBoolean(true);
+	ExecutorService fixedThreadPool = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+	try {
+	    Future<?> writer = fixedThreadPool.submit(() -> {
+		try {
+		    for (int update = 1; update <= updates; update++) {
+			for (int i = 0; i < rowCount; i++) {
+			    store.put(Key.of(offset + i), Bytes.fromInt(update));
+			}
+		    }
+		} finally {
+		    writing.set(false);
+		}
+	    });
+	    List<Future<Void>> readers = new ArrayList<>();
+	    for (int threadId = 0; threadId < THREAD_POOL_SIZE - 1; threadId++) {
+		readers.add(fixedThreadPool.submit(() -> {
+		    int[] lastValues = new int[rowCount];
+		    while (writing.get()) {
+			for (int i = 0; i < rowCount; i++) {
+			    byte[] value = store.get(Key.of(offset + i));
+			    assertNotNull(value);
+			    assertTrue(Bytes.toInt(value) >= lastValues[i]);
+			    lastValues[i] = Bytes.toInt(value);
+			}
+		    }
+		    return null;
+		}));
+	    }
+	    writer.get();
+	    for (Future<Void> reader : readers) {
+		reader.get();
+	    }
+	    for (int i = 0; i < rowCount; i++) {
+		assertEquals(updates, Bytes.toInt(store.get(Key.of(offset + i))));
+	    }
+	    assertTrue("No compactions were run, but this is the intention of the test.",
+		    oldNumOfCompations < compactionCounter.getCount());
+	} finally {
+	    fixedThreadPool.shutdown();
+	}
+    }
+
 }
@@ -3,9 +3,13 @@ package com.puresoltechnologies.ductiledb.logstore;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.Test;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+
 import com.puresoltechnologies.ductiledb.logstore.utils.ByteArrayComparator;
 
 public class LogStructuredStoreIT extends AbstractLogStructuredStoreTest {
@@ -47,4 +51,27 @@ public class LogStructuredStoreIT extends AbstractLogStructuredStoreTest {
 	assertNull(readValue);
     }
 
+    @Test
+    public void testWriteBatch() {
+	LogStructuredStore store = getStore();
+	store.put(Key.of(11l), new byte[] { 11 });
+
+	WriteBatch writeBatch = new WriteBatch();
+	writeBatch.put(Key.of(10l), new byte[] { 10 });
+	writeBatch.delete(Key.of(11l));
+	writeBatch.put(Key.of(12l), new byte[] { 12 });
+	writeBatch.put(Key.of(12l), new byte[] { 13 });
+	assertEquals(4, writeBatch.size());
+	store.write(writeBatch);
+
+	assertEquals(0, ByteArrayComparator.compareArrays(new byte[] { 10 }, store.get(Key.of(10l))));
+	assertNull(store.get(Key.of(11l)));
+	assertEquals(0, ByteArrayComparator.compareArrays(new byte[] { 13 }, store.get(Key.of(12l))));
+
+	Histogram batchSize = (Histogram) store.getMetric(LogStructuredStoreMetric.WRITE_BATCH_SIZE);
+	assertTrue(batchSize.getCount() > 0);
+	Timer batchTimer = (Timer) store.getMetric(LogStructuredStoreMetric.WRITE_BATCH_TIMER);
+	assertTrue(batchTimer.getCount() > 0);
+    }
+
 }
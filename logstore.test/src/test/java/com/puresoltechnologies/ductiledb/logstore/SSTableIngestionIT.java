@@ -0,0 +1,233 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.io.SSTableBuilder;
+import com.puresoltechnologies.ductiledb.storage.api.StorageException;
+import com.puresoltechnologies.ductiledb.storage.api.StorageFactory;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+
+public class SSTableIngestionIT {
+
+    private static Storage createStorage() throws IOException {
+	return StorageFactory.getStorageInstance(LogStructuredStoreTestUtils.createStorageConfiguration());
+    }
+
+    private static void removeDirectory(Storage storage, File directory) throws IOException {
+	if (storage.exists(directory)) {
+	    storage.removeDirectory(directory, true);
+	}
+    }
+
+    /**
+     * Creates a store with the rows from 0 to 999 and reopens it, so the rows
+     * are compacted into data files before anything is ingested.
+     */
+    private static LogStoreConfiguration createStore(Storage storage, File directory) throws IOException {
+	removeDirectory(storage, directory);
+	LogStoreConfiguration configuration = new LogStoreConfiguration();
+	configuration.setMaxCommitLogSize(16 * 1024);
+	configuration.setMaxDataFileSize(4 * 1024);
+	try (LogStructuredStore store = LogStructuredStore.create(storage, directory, configuration)) {
+	    store.open();
+	    for (int i = 0; i < 1000; ++i) {
+		store.put(Key.of(i), Bytes.fromInt(i));
+	    }
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	}
+	return configuration;
+    }
+
+    private static File build(Storage storage, File stagingDirectory, LogStoreConfiguration configuration, int from,
+	    int to, int value) throws IOException {
+	removeDirectory(storage, stagingDirectory);
+	storage.createDirectory(stagingDirectory);
+	try (SSTableBuilder builder = new SSTableBuilder(storage, stagingDirectory, "Ingest", configuration)) {
+	    for (int i = from; i < to; ++i) {
+		builder.write(Key.of(i), null, Bytes.fromInt(value));
+	    }
+	    builder.write(Key.of(to), Instant.now(), new byte[0]);
+	    assertEquals(to - from + 1, builder.getRowCount());
+	    File metadataFile = builder.finish();
+	    assertTrue(builder.getEntries().size() > 1);
+	    return metadataFile;
+	}
+    }
+
+    /**
+     * Returns the generations the current data files were written by.
+     */
+    private static Set<String> getGenerations(LogStructuredStore store) {
+	Set<String> generations = new HashSet<>();
+	for (File dataFile : store.getDataFileStatistics().keySet()) {
+	    String name = dataFile.getName();
+	    generations.add(name.substring(0, name.lastIndexOf('-')));
+	}
+	return generations;
+    }
+
+    private static void assertScan(LogStructuredStore store, int count) throws IOException {
+	try (RowScanner scanner = store.getScanner(null, null)) {
+	    for (int i = 0; i < count; ++i) {
+		assertTrue(scanner.hasNext());
+		assertEquals(Key.of(i), scanner.next().getKey());
+	    }
+	    while (scanner.hasNext()) {
+		assertTrue(scanner.next().wasDeleted());
+	    }
+	}
+    }
+
+    @Test
+    public void testIngestionOfDisjointFiles() throws IOException {
+	Storage storage = createStorage();
+	File directory = new File("SSTableIngestionIT.testIngestionOfDisjointFiles");
+	File stagingDirectory = new File("SSTableIngestionIT.testIngestionOfDisjointFiles.staging");
+	LogStoreConfiguration configuration = createStore(storage, directory);
+	File metadataFile = build(storage, stagingDirectory, configuration, 1000, 3000, -1);
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    store.ingestFiles(metadataFile);
+	    // The former data files are kept, the ingested ones are added.
+	    assertTrue(getGenerations(store).size() > 1);
+	    assertEquals(999, Bytes.toInt(store.get(Key.of(999))));
+	    assertEquals(-1, Bytes.toInt(store.get(Key.of(1000))));
+	    assertEquals(-1, Bytes.toInt(store.get(Key.of(2999))));
+	    assertNull(store.get(Key.of(3000)));
+	    assertScan(store, 3000);
+	}
+	assertFalse(storage.exists(metadataFile));
+	assertFalse(storage.list(stagingDirectory).iterator().hasNext());
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    assertScan(store, 3000);
+	    // A compaction continues with all data files.
+	    store.put(Key.of(3001), Bytes.fromInt(3001));
+	    store.delete(Key.of(0));
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    assertNull(store.get(Key.of(0)));
+	    assertEquals(-1, Bytes.toInt(store.get(Key.of(1500))));
+	    assertEquals(3001, Bytes.toInt(store.get(Key.of(3001))));
+	}
+    }
+
+    @Test
+    public void testIngestionOfOverlappingFiles() throws IOException {
+	Storage storage = createStorage();
+	File directory = new File("SSTableIngestionIT.testIngestionOfOverlappingFiles");
+	File stagingDirectory = new File("SSTableIngestionIT.testIngestionOfOverlappingFiles.staging");
+	LogStoreConfiguration configuration = createStore(storage, directory);
+	File metadataFile = build(storage, stagingDirectory, configuration, 500, 999, -1);
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    store.ingestFiles(metadataFile);
+	    // The rows were merged into new data files.
+	    assertEquals(1, getGenerations(store).size());
+	    assertEquals(499, Bytes.toInt(store.get(Key.of(499))));
+	    assertEquals(-1, Bytes.toInt(store.get(Key.of(500))));
+	    assertEquals(-1, Bytes.toInt(store.get(Key.of(998))));
+	    // The ingested tombstone deleted the row.
+	    assertNull(store.get(Key.of(999)));
+	    assertScan(store, 999);
+	}
+	assertFalse(storage.exists(metadataFile));
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    assertEquals(-1, Bytes.toInt(store.get(Key.of(700))));
+	    assertNull(store.get(Key.of(999)));
+	}
+    }
+
+    @Test
+    public void testIngestedRowsReplaceRowsWrittenBefore() throws IOException {
+	Storage storage = createStorage();
+	File directory = new File("SSTableIngestionIT.testIngestedRowsReplaceRowsWrittenBefore");
+	File stagingDirectory = new File("SSTableIngestionIT.testIngestedRowsReplaceRowsWrittenBefore.staging");
+	LogStoreConfiguration configuration = createStore(storage, directory);
+	File metadataFile = build(storage, stagingDirectory, configuration, 500, 999, -1);
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    // The rows are only in the memtable, so they would shadow the ingested rows.
+	    store.put(Key.of(600), Bytes.fromInt(600000));
+	    store.put(Key.of(1200), Bytes.fromInt(1200));
+	    store.ingestFiles(metadataFile);
+	    assertEquals(-1, Bytes.toInt(store.get(Key.of(600))));
+	    assertEquals(1200, Bytes.toInt(store.get(Key.of(1200))));
+	    // Rows written afterwards replace the ingested rows.
+	    store.put(Key.of(700), Bytes.fromInt(700000));
+	    assertEquals(700000, Bytes.toInt(store.get(Key.of(700))));
+	}
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    assertEquals(-1, Bytes.toInt(store.get(Key.of(600))));
+	    assertEquals(700000, Bytes.toInt(store.get(Key.of(700))));
+	}
+    }
+
+    @Test
+    public void testIngestionIsRejectedWithUncompactedCommitLogs() throws IOException {
+	Storage storage = createStorage();
+	File directory = new File("SSTableIngestionIT.testIngestionIsRejectedWithUncompactedCommitLogs");
+	File stagingDirectory = new File(
+		"SSTableIngestionIT.testIngestionIsRejectedWithUncompactedCommitLogs.staging");
+	LogStoreConfiguration configuration = createStore(storage, directory);
+	File metadataFile = build(storage, stagingDirectory, configuration, 500, 999, -1);
+	try (LogStructuredStore store = LogStructuredStore.open(storage, directory)) {
+	    store.open();
+	    ((LogStructuredStoreImpl) store).setRunCompactions(false);
+	    store.put(Key.of(600), Bytes.fromInt(600000));
+	    try {
+		store.ingestFiles(metadataFile);
+		fail("The commit log written before the ingestion is not compacted.");
+	    } catch (StorageException e) {
+		// expected
+	    }
+	    assertEquals(600000, Bytes.toInt(store.get(Key.of(600))));
+	    assertEquals(700, Bytes.toInt(store.get(Key.of(700))));
+	}
+	// The staged files are kept for another try.
+	assertTrue(storage.exists(metadataFile));
+    }
+
+    @Test
+    public void testBuilderRejectsUnsortedRows() throws IOException {
+	Storage storage = createStorage();
+	File stagingDirectory = new File("SSTableIngestionIT.testBuilderRejectsUnsortedRows");
+	removeDirectory(storage, stagingDirectory);
+	storage.createDirectory(stagingDirectory);
+	try (SSTableBuilder builder = new SSTableBuilder(storage, stagingDirectory, "Ingest",
+		new LogStoreConfiguration())) {
+	    builder.write(Key.of(2), null, Bytes.fromInt(2));
+	    try {
+		builder.write(Key.of(1), null, Bytes.fromInt(1));
+		fail("Unsorted rows are not allowed.");
+	    } catch (IllegalArgumentException e) {
+		// expected
+	    }
+	    try {
+		builder.write(Key.of(2), null, Bytes.fromInt(2));
+		fail("Duplicate rows are not allowed.");
+	    } catch (IllegalArgumentException e) {
+		// expected
+	    }
+	}
+    }
+
+}
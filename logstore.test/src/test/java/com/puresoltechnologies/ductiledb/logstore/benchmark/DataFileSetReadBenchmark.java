@@ -0,0 +1,111 @@
+package com.puresoltechnologies.ductiledb.logstore.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.codahale.metrics.Counter;
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.LogStoreConfiguration;
+import com.puresoltechnologies.ductiledb.logstore.LogStructuredStore;
+import com.puresoltechnologies.ductiledb.logstore.LogStructuredStoreTestUtils;
+import com.puresoltechnologies.ductiledb.logstore.Row;
+import com.puresoltechnologies.ductiledb.logstore.cache.BlockCache;
+import com.puresoltechnologies.ductiledb.logstore.cache.BlockCacheMetrics;
+import com.puresoltechnologies.ductiledb.logstore.cache.BlockCachedStorage;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
+import com.puresoltechnologies.ductiledb.storage.api.StorageFactory;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+
+/**
+ * This benchmark measures random gets from the data files of a
+ * {@link DataFileSet}. It is run with 1 to 8 threads to show how the reads of
+ * the same data files scale with the number of readers. Run it with
+ * {@link #main(String[])}.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataFileSetReadBenchmark {
+
+    private static final int NUMBER_OF_ROWS = 100000;
+    private static final File DIRECTORY = new File("DataFileSetReadBenchmark");
+
+    @Param({ "false", "true" })
+    public boolean blockCache;
+
+    private Storage storage;
+    private DataFileSet dataFileSet;
+
+    @Setup(Level.Trial)
+    public void createDataFiles() throws IOException {
+	storage = StorageFactory.getStorageInstance(LogStructuredStoreTestUtils.createStorageConfiguration());
+	if (storage.exists(DIRECTORY)) {
+	    storage.removeDirectory(DIRECTORY, true);
+	}
+	LogStoreConfiguration configuration = LogStructuredStoreTestUtils.createConfiguration();
+	try (LogStructuredStore store = LogStructuredStore.create(storage, DIRECTORY, configuration)) {
+	    store.open();
+	    for (int i = 0; i < NUMBER_OF_ROWS; ++i) {
+		store.put(Key.of(i), Bytes.fromString("Value of row " + i));
+	    }
+	}
+	// Reopening compacts the commit logs. Closing waits for the compactions.
+	try (LogStructuredStore store = LogStructuredStore.open(storage, DIRECTORY)) {
+	    store.open();
+	}
+	Storage readStorage = storage;
+	if (blockCache) {
+	    readStorage = new BlockCachedStorage(storage, new BlockCache(256 * 1024 * 1024),
+		    new BlockCacheMetrics(new Counter(), new Counter(), new Counter()));
+	}
+	dataFileSet = new DataFileSet(readStorage, DIRECTORY);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeDataFiles() throws IOException {
+	dataFileSet.close();
+	storage.removeDirectory(DIRECTORY, true);
+    }
+
+    @Benchmark
+    public Row get() throws IOException {
+	return dataFileSet.getRow(Key.of(ThreadLocalRandom.current().nextInt(NUMBER_OF_ROWS)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+	for (int threads : new int[] { 1, 2, 4, 8 }) {
+	    Options options = new OptionsBuilder() //
+		    .include(DataFileSetReadBenchmark.class.getSimpleName()) //
+		    .threads(threads) //
+		    .build();
+	    new Runner(options).run();
+	}
+    }
+
+}
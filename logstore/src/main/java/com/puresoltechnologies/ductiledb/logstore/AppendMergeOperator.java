@@ -0,0 +1,27 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+/**
+ * This {@link MergeOperator} appends the operands to the value. A missing
+ * value counts as empty.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
+public class AppendMergeOperator implements MergeOperator {
+
+    @Override
+    public byte[] merge(byte[] value, byte[] operand) {
+	if (value == null) {
+	    return operand;
+	}
+	return mergeOperands(value, operand);
+    }
+
+    @Override
+    public byte[] mergeOperands(byte[] olderOperand, byte[] newerOperand) {
+	byte[] result = new byte[olderOperand.length + newerOperand.length];
+	System.arraycopy(olderOperand, 0, result, 0, olderOperand.length);
+	System.arraycopy(newerOperand, 0, result, olderOperand.length, newerOperand.length);
+	return result;
+    }
+
+}
@@ -0,0 +1,30 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+/**
+ * This enum defines when the commit log of a {@link LogStructuredStore} is
+ * flushed to the underlying storage.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
+public enum CommitLogDurability {
+
+    /**
+     * Every single row or {@link WriteBatch} is flushed to the commit log on its
+     * own before the write returns.
+     */
+    FLUSH_PER_WRITE, //
+    /**
+     * Concurrent writers are grouped together. All rows written in the meantime
+     * are appended by one committer and flushed once before the writes return.
+     */
+    GROUP, //
+    /**
+     * Rows are appended to the commit log, but the flush is done periodically in
+     * the interval set with
+     * {@link LogStoreConfiguration#setCommitLogFlushInterval(long)}. Writes
+     * within the last interval may get lost on crash.
+     */
+    PERIODIC, //
+    ;
+
+}
@@ -0,0 +1,129 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class keeps the rows which were queued for the commit log together with
+ * their commit state. It is used by the group commit of
+ * {@link LogStructuredStoreImpl}. An entry contains either a single row or all
+ * rows of a {@link WriteBatch}.
+ *
+ * An entry of a single row can request its result: the row as written after
+ * folding it with the memtable. If the written row is still a merge operand,
+ * the store version it was written to is retained, so the older versions of
+ * the row can be read from it. The version is released by
+ * {@link #releaseWrittenVersion()}.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class CommitLogEntry {
+
+    private final List<Row> rows;
+    private final boolean batch;
+    private final boolean resultRequested;
+    private Row writtenRow = null;
+    private StoreVersion writtenVersion = null;
+    private volatile boolean committed = false;
+    private volatile Throwable failure = null;
+
+    CommitLogEntry(Key rowKey, Instant tombstone, byte[] data) {
+	this(Collections.singletonList(new Row(rowKey, tombstone, data)), false, false);
+    }
+
+    CommitLogEntry(Row row) {
+	this(row, false);
+    }
+
+    CommitLogEntry(Row row, boolean resultRequested) {
+	this(Collections.singletonList(row), false, resultRequested);
+    }
+
+    CommitLogEntry(WriteBatch writeBatch) {
+	this(new ArrayList<>(writeBatch.getRows()), true, false);
+    }
+
+    private CommitLogEntry(List<Row> rows, boolean batch, boolean resultRequested) {
+	super();
+	this.rows = rows;
+	this.batch = batch;
+	this.resultRequested = resultRequested;
+    }
+
+    public List<Row> getRows() {
+	return rows;
+    }
+
+    /**
+     * Returns whether the rows were written as {@link WriteBatch}. Batches are
+     * framed with batch markers in the commit log.
+     *
+     * @return <code>true</code> is returned in case of a batch.
+     */
+    public boolean isBatch() {
+	return batch;
+    }
+
+    public boolean isResultRequested() {
+	return resultRequested;
+    }
+
+    /**
+     * Returns the row as it was written to the commit log and the memtable.
+     *
+     * @return The {@link Row} is returned or <code>null</code> in case no result
+     *         was requested or the entry was not committed.
+     */
+    public Row getWrittenRow() {
+	return writtenRow;
+    }
+
+    /**
+     * Returns the store version the row was written to, if the written row is a
+     * merge operand.
+     *
+     * @return The retained {@link StoreVersion} is returned or <code>null</code>.
+     */
+    public StoreVersion getWrittenVersion() {
+	return writtenVersion;
+    }
+
+    /**
+     * Releases the retained store version, if there is one.
+     */
+    void releaseWrittenVersion() {
+	if (writtenVersion != null) {
+	    writtenVersion.release();
+	    writtenVersion = null;
+	}
+    }
+
+    public boolean isCommitted() {
+	return committed;
+    }
+
+    public Throwable getFailure() {
+	return failure;
+    }
+
+    /**
+     * Sets the result of the entry. This method is only to be called with the
+     * commit lock held and before the entry is set committed.
+     */
+    void setWritten(Row writtenRow, StoreVersion writtenVersion) {
+	this.writtenRow = writtenRow;
+	this.writtenVersion = writtenVersion;
+    }
+
+    void setCommitted() {
+	this.committed = true;
+    }
+
+    void setFailed(Throwable failure) {
+	this.failure = failure;
+	this.committed = true;
+    }
+
+}
@@ -0,0 +1,277 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.data.CommitLogSegmentReader;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexEntry;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexFileWriter;
+import com.puresoltechnologies.ductiledb.logstore.index.Memtable;
+import com.puresoltechnologies.ductiledb.logstore.io.DuctileDBOutputStream;
+import com.puresoltechnologies.ductiledb.storage.api.StorageException;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageInputStream;
+
+/**
+ * This class recovers commit logs which were not rolled over cleanly by creating
+ * their index files.
+ *
+ * The commit logs of all stores are replayed in parallel on one bounded thread
+ * pool, which is shared by all stores of the JVM. This way, opening many stores
+ * at once does not overload the storage.
+ *
+ * While a commit log is written, checkpoint records are appended to a
+ * checkpoint file next to it. Each record contains the commit log position up to
+ * which the commit log was flushed and the index entries of all rows written
+ * since the last record:
+ *
+ * <pre>
+ * [long position][int count]{[int key length][key][long offset]}*
+ * </pre>
+ *
+ * On recovery the checkpointed index entries are used and only the commit log
+ * behind the last complete checkpoint record is read.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class CommitLogRecovery {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommitLogRecovery.class);
+
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService recoveryExecutor = Executors.newFixedThreadPool(POOL_SIZE,
+	    new ThreadFactory() {
+		private final AtomicInteger threadCount = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(Runnable r) {
+		    Thread thread = new Thread(r, "ductiledb-commitlog-recovery-" + threadCount.incrementAndGet());
+		    thread.setDaemon(true);
+		    return thread;
+		}
+	    });
+
+    public static File getCheckpointName(File commitLog) {
+	return new File(commitLog.getParent(), commitLog.getName().replace(LogStructuredStore.DATA_FILE_SUFFIX,
+		LogStructuredStore.CHECKPOINT_FILE_SUFFIX));
+    }
+
+    /**
+     * This method creates the missing index files of the given commit logs in
+     * parallel and waits for all of them.
+     *
+     * @param storage
+     *            is the storage of the commit logs.
+     * @param commitLogs
+     *            are the commit logs to be recovered.
+     * @param bloomFilterBitsPerKey
+     *            is the number of bits per row key of the Bloom filters written
+     *            with the index files.
+     */
+    public static void recover(Storage storage, List<File> commitLogs, int bloomFilterBitsPerKey) {
+	List<Future<?>> futures = new ArrayList<>();
+	for (File commitLog : commitLogs) {
+	    futures.add(recoveryExecutor.submit(() -> createIndex(storage, commitLog, bloomFilterBitsPerKey)));
+	}
+	try {
+	    for (Future<?> future : futures) {
+		future.get();
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new StorageException("Interrupted while recovering commit logs.", e);
+	} catch (ExecutionException e) {
+	    Throwable cause = e.getCause();
+	    if (cause instanceof StorageException) {
+		throw (StorageException) cause;
+	    }
+	    throw new StorageException("Could not recover commit logs.", cause);
+	}
+    }
+
+    /**
+     * This method appends a checkpoint record for the given commit log.
+     *
+     * @param storage
+     *            is the storage of the commit log.
+     * @param commitLog
+     *            is the commit log.
+     * @param position
+     *            is the flushed commit log position covered by the record.
+     * @param indexEntries
+     *            are the index entries of all rows written since the last record.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public static void writeCheckpoint(Storage storage, File commitLog, long position, List<IndexEntry> indexEntries)
+	    throws IOException {
+	File checkpointFile = getCheckpointName(commitLog);
+	try (DuctileDBOutputStream outputStream = new DuctileDBOutputStream(
+		storage.exists(checkpointFile) ? storage.append(checkpointFile) : storage.create(checkpointFile))) {
+	    outputStream.writeData(Bytes.fromLong(position));
+	    outputStream.writeData(Bytes.fromInt(indexEntries.size()));
+	    for (IndexEntry indexEntry : indexEntries) {
+		IndexFileWriter.writeIndexEntry(outputStream, indexEntry.getRowKey(), indexEntry.getOffset());
+	    }
+	}
+    }
+
+    public static void deleteCheckpoint(Storage storage, File commitLog) {
+	File checkpointFile = getCheckpointName(commitLog);
+	if (storage.exists(checkpointFile)) {
+	    storage.delete(checkpointFile);
+	}
+    }
+
+    /**
+     * This method reads the checkpoint records of the commit log into the
+     * memtable.
+     *
+     * @return The commit log position covered by the last complete record is
+     *         returned.
+     */
+    private static long readCheckpoints(Storage storage, File commitLog, Memtable memtable) throws IOException {
+	File checkpointFile = getCheckpointName(commitLog);
+	if (!storage.exists(checkpointFile)) {
+	    return 0;
+	}
+	long position = 0;
+	try (StorageInputStream inputStream = storage.open(checkpointFile)) {
+	    while (true) {
+		byte[] header = readFully(inputStream, 12);
+		if (header == null) {
+		    break;
+		}
+		long recordPosition = Bytes.toLong(header);
+		int count = Bytes.toInt(header, 8);
+		List<IndexEntry> entries = new ArrayList<>(count);
+		for (int i = 0; i < count; ++i) {
+		    IndexEntry entry = readIndexEntry(inputStream, commitLog);
+		    if (entry == null) {
+			break;
+		    }
+		    entries.add(entry);
+		}
+		if (entries.size() < count) {
+		    logger.warn("Checkpoint file '" + checkpointFile + "' ends with a truncated record.");
+		    break;
+		}
+		entries.forEach(entry -> memtable.put(entry));
+		position = recordPosition;
+	    }
+	}
+	return position;
+    }
+
+    private static IndexEntry readIndexEntry(InputStream inputStream, File commitLog) throws IOException {
+	byte[] keyLength = readFully(inputStream, 4);
+	if (keyLength == null) {
+	    return null;
+	}
+	byte[] key = readFully(inputStream, Bytes.toInt(keyLength));
+	if (key == null) {
+	    return null;
+	}
+	byte[] offset = readFully(inputStream, 8);
+	if (offset == null) {
+	    return null;
+	}
+	return new IndexEntry(Key.of(key), commitLog, Bytes.toLong(offset));
+    }
+
+    private static byte[] readFully(InputStream inputStream, int length) throws IOException {
+	byte[] buffer = new byte[length];
+	int read = 0;
+	while (read < length) {
+	    int len = inputStream.read(buffer, read, length - read);
+	    if (len < 0) {
+		return null;
+	    }
+	    read += len;
+	}
+	return buffer;
+    }
+
+    /**
+     * This method creates the index of a commit log. Rows of write batches are
+     * only indexed if the whole batch was written. A truncated row at the end of
+     * the commit log is dropped, as well as everything behind the first invalid
+     * frame of a segment.
+     */
+    private static void createIndex(Storage storage, File commitLog, int bloomFilterBitsPerKey) {
+	File indexName = DataFileSet.getIndexName(commitLog);
+	try (CommitLogSegmentReader segmentReader = new CommitLogSegmentReader(storage, commitLog)) {
+	    Memtable memtable = new Memtable();
+	    long checkpointPosition = readCheckpoints(storage, commitLog, memtable);
+	    if (checkpointPosition > 0) {
+		logger.info("Recover '" + commitLog + "' from checkpoint at position " + checkpointPosition + ".");
+		segmentReader.seek(checkpointPosition);
+	    }
+	    List<IndexEntry> batchEntries = new ArrayList<>();
+	    boolean[] inBatch = new boolean[] { false };
+	    IntConsumer batchMarkerConsumer = rowCount -> {
+		if (rowCount > 0) {
+		    batchEntries.clear();
+		    inBatch[0] = true;
+		} else {
+		    batchEntries.forEach(entry -> memtable.put(entry));
+		    batchEntries.clear();
+		    inBatch[0] = false;
+		}
+	    };
+	    Row row = readRow(commitLog, segmentReader, batchMarkerConsumer);
+	    while (row != null) {
+		IndexEntry indexEntry = new IndexEntry(row.getKey(), commitLog, segmentReader.getRowOffset());
+		if (inBatch[0]) {
+		    batchEntries.add(indexEntry);
+		} else {
+		    memtable.put(indexEntry);
+		}
+		row = readRow(commitLog, segmentReader, batchMarkerConsumer);
+	    }
+	    if (inBatch[0]) {
+		logger.warn("Incomplete write batch with " + batchEntries.size() + " rows in '" + commitLog
+			+ "' is dropped.");
+	    }
+	    try (IndexFileWriter indexFileWriter = new IndexFileWriter(storage, indexName, commitLog,
+		    bloomFilterBitsPerKey)) {
+		for (IndexEntry entry : memtable) {
+		    indexFileWriter.writeIndexEntry(entry.getRowKey(), entry.getOffset());
+		}
+	    }
+	    deleteCheckpoint(storage, commitLog);
+	} catch (IOException e) {
+	    throw new StorageException("Could not create index for commit log '" + commitLog + "'.", e);
+	}
+    }
+
+    private static Row readRow(File commitLog, CommitLogSegmentReader segmentReader,
+	    IntConsumer batchMarkerConsumer) {
+	try {
+	    return segmentReader.readRow(batchMarkerConsumer);
+	} catch (IOException e) {
+	    logger.warn("Commit log '" + commitLog + "' ends with a truncated row which is dropped.", e);
+	    return null;
+	}
+    }
+
+    private CommitLogRecovery() {
+    }
+
+}
@@ -0,0 +1,297 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.puresoltechnologies.ductiledb.logstore.data.CommitLogSegmentWriter;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
+import com.puresoltechnologies.ductiledb.logstore.index.BloomFilter;
+import com.puresoltechnologies.ductiledb.logstore.io.filter.CommitLogFilenameFilter;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
+
+/**
+ * This class provides the segments for new commit logs. Instead of growing a
+ * new file write by write on each rollover, a segment is taken from one of
+ * these sources:
+ * <ol>
+ * <li>A compacted commit log is recycled. It is renamed and gets a new segment
+ * header, its content is left in place.</li>
+ * <li>A spare segment, which was preallocated in background, is taken.</li>
+ * <li>A new segment is allocated.</li>
+ * </ol>
+ * The header is always written before a file gets the name of the new commit
+ * log, so a crash never leaves a commit log behind whose stale records could be
+ * replayed.
+ *
+ * Storages which cannot overwrite or rename files get a new segment without
+ * preallocation for each commit log. Compacted commit logs are deleted then.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class CommitLogSegmentManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommitLogSegmentManager.class);
+
+    static final String SPARE_SEGMENT_NAME = "CommitLogSegment.spare";
+
+    private static final int ZERO_BLOCK_SIZE = 64 * 1024;
+
+    private final Storage storage;
+    private final File directory;
+    private final LogStoreConfiguration configuration;
+    private final LongSupplier segmentSize;
+    private final File spareSegment;
+    private final Counter allocatedSegments;
+    private final Counter recycledSegments;
+    /**
+     * These are the names of the commit logs which are still read by gets and
+     * scanners and must not be recycled, yet. The names are used, because the
+     * storage lists files with other paths than the store uses.
+     */
+    private final Map<String, Integer> retainedCommitLogs = new HashMap<>();
+    private boolean spareReady;
+    private boolean sparePending = false;
+    /**
+     * This flag is cleared as soon as the storage fails to overwrite or rename a
+     * file, because it does not support it.
+     */
+    private volatile boolean segmentsReusable = true;
+
+    CommitLogSegmentManager(Storage storage, File directory, LogStoreConfiguration configuration,
+	    LongSupplier segmentSize, Counter allocatedSegments, Counter recycledSegments) {
+	super();
+	this.storage = storage;
+	this.directory = directory;
+	this.configuration = configuration;
+	this.segmentSize = segmentSize;
+	this.spareSegment = new File(directory, SPARE_SEGMENT_NAME);
+	this.allocatedSegments = allocatedSegments;
+	this.recycledSegments = recycledSegments;
+	this.spareReady = storage.exists(spareSegment);
+    }
+
+    /**
+     * This method provides the segment for a new commit log and opens it for
+     * writing. Compacted commit logs are only recycled in case they are not
+     * retained anymore, so no get or scanner reads them concurrently.
+     *
+     * @param commitLog
+     *            is the name of the new commit log.
+     * @param executor
+     *            is the executor used to preallocate the next spare segment.
+     * @return A {@link CommitLogSegmentWriter} positioned behind the header is
+     *         returned.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    CommitLogSegmentWriter openSegment(File commitLog, Executor executor) throws IOException {
+	long segmentId = ThreadLocalRandom.current().nextLong();
+	if (segmentsReusable) {
+	    try {
+		return openReusableSegment(commitLog, segmentId, executor);
+	    } catch (UnsupportedOperationException e) {
+		logger.warn("Storage cannot overwrite or rename files, so commit log segments are neither recycled "
+			+ "nor preallocated anymore.", e);
+		segmentsReusable = false;
+		deleteIfExists(commitLog);
+		synchronized (this) {
+		    if (!sparePending) {
+			deleteIfExists(spareSegment);
+		    }
+		}
+	    }
+	}
+	deleteCompactedCommitLogs();
+	allocatedSegments.inc();
+	StorageOutputStream outputStream = storage.create(commitLog);
+	try {
+	    return new CommitLogSegmentWriter(outputStream, segmentId);
+	} catch (IOException e) {
+	    outputStream.close();
+	    throw e;
+	}
+    }
+
+    private CommitLogSegmentWriter openReusableSegment(File commitLog, long segmentId, Executor executor)
+	    throws IOException {
+	boolean recycled = recycleSegment(commitLog, segmentId);
+	if (!recycled && !takeSpareSegment(commitLog, segmentId)) {
+	    allocateSegment(commitLog, segmentId);
+	}
+	StorageOutputStream outputStream = storage.overwrite(commitLog);
+	CommitLogSegmentWriter writer;
+	try {
+	    writer = new CommitLogSegmentWriter(outputStream, segmentId);
+	} catch (IOException e) {
+	    outputStream.close();
+	    throw e;
+	}
+	if (recycled) {
+	    recycledSegments.inc();
+	} else {
+	    allocatedSegments.inc();
+	    prepareSpareSegment(executor);
+	}
+	return writer;
+    }
+
+    /**
+     * Marks the commit logs as read by gets or scanners.
+     */
+    synchronized void retain(Collection<File> commitLogs) {
+	commitLogs.forEach(commitLog -> retainedCommitLogs.merge(commitLog.getName(), 1, Integer::sum));
+    }
+
+    /**
+     * Releases the commit logs retained with {@link #retain(Collection)}.
+     */
+    synchronized void release(Collection<File> commitLogs) {
+	commitLogs.forEach(commitLog -> retainedCommitLogs.computeIfPresent(commitLog.getName(),
+		(name, count) -> count > 1 ? count - 1 : null));
+    }
+
+    private synchronized boolean isRetained(File commitLog) {
+	return retainedCommitLogs.containsKey(commitLog.getName());
+    }
+
+    private List<File> getCompactedCommitLogs() {
+	List<File> compactedCommitLogs = new ArrayList<>();
+	for (File file : storage.list(directory, new CommitLogFilenameFilter())) {
+	    if (storage.exists(LogStructuredStore.getCompactedName(file))) {
+		compactedCommitLogs.add(file);
+	    }
+	}
+	Collections.sort(compactedCommitLogs);
+	return compactedCommitLogs;
+    }
+
+    private boolean recycleSegment(File commitLog, long segmentId) {
+	for (File compactedCommitLog : getCompactedCommitLogs()) {
+	    if (isRetained(compactedCommitLog)) {
+		continue;
+	    }
+	    try {
+		writeHeader(compactedCommitLog, segmentId);
+		storage.rename(compactedCommitLog, commitLog);
+	    } catch (IOException e) {
+		logger.debug("Could not recycle " + compactedCommitLog.getName() + ".", e);
+		continue;
+	    }
+	    deleteCompanionFiles(compactedCommitLog);
+	    deleteIfExists(LogStructuredStore.getCompactedName(compactedCommitLog));
+	    logger.debug("Recycled " + compactedCommitLog.getName() + " as " + commitLog.getName() + ".");
+	    return true;
+	}
+	return false;
+    }
+
+    /**
+     * Deletes the compacted commit logs which are not retained anymore, if they
+     * cannot be recycled.
+     */
+    private void deleteCompactedCommitLogs() {
+	for (File compactedCommitLog : getCompactedCommitLogs()) {
+	    if (!isRetained(compactedCommitLog)) {
+		deleteCompanionFiles(compactedCommitLog);
+		deleteIfExists(compactedCommitLog);
+		deleteIfExists(LogStructuredStore.getCompactedName(compactedCommitLog));
+		logger.debug("Deleted " + compactedCommitLog.getName() + ".");
+	    }
+	}
+    }
+
+    /**
+     * Deletes the files written next to a commit log except for the marker of
+     * its compaction, which is deleted last by the callers.
+     */
+    private void deleteCompanionFiles(File commitLog) {
+	deleteIfExists(DataFileSet.getIndexName(commitLog));
+	deleteIfExists(BloomFilter.getBloomFilterName(commitLog));
+	deleteIfExists(CommitLogRecovery.getCheckpointName(commitLog));
+	deleteIfExists(DataFileSet.getMD5Name(commitLog));
+    }
+
+    private boolean takeSpareSegment(File commitLog, long segmentId) throws IOException {
+	synchronized (this) {
+	    if (!spareReady) {
+		return false;
+	    }
+	    spareReady = false;
+	}
+	writeHeader(spareSegment, segmentId);
+	storage.rename(spareSegment, commitLog);
+	return true;
+    }
+
+    private void allocateSegment(File commitLog, long segmentId) throws IOException {
+	try (StorageOutputStream outputStream = storage.create(commitLog)) {
+	    new CommitLogSegmentWriter(outputStream, segmentId);
+	    if (configuration.isCommitLogPreallocation()) {
+		writeZeros(outputStream, segmentSize.getAsLong() - CommitLogSegmentWriter.HEADER_SIZE);
+	    }
+	}
+    }
+
+    private synchronized void prepareSpareSegment(Executor executor) {
+	if (spareReady || sparePending || !configuration.isCommitLogPreallocation()) {
+	    return;
+	}
+	sparePending = true;
+	executor.execute(() -> {
+	    boolean ready = false;
+	    try {
+		if (storage.exists(spareSegment)) {
+		    storage.delete(spareSegment);
+		}
+		try (StorageOutputStream outputStream = storage.create(spareSegment)) {
+		    writeZeros(outputStream, segmentSize.getAsLong());
+		}
+		ready = true;
+	    } catch (IOException e) {
+		logger.warn("Could not preallocate commit log segment.", e);
+	    } finally {
+		synchronized (CommitLogSegmentManager.this) {
+		    spareReady = ready;
+		    sparePending = false;
+		}
+	    }
+	});
+    }
+
+    private void writeHeader(File segment, long segmentId) throws IOException {
+	try (StorageOutputStream outputStream = storage.overwrite(segment)) {
+	    new CommitLogSegmentWriter(outputStream, segmentId);
+	}
+    }
+
+    private void writeZeros(StorageOutputStream outputStream, long length) throws IOException {
+	byte[] zeros = new byte[ZERO_BLOCK_SIZE];
+	long remaining = length;
+	while (remaining > 0) {
+	    int len = (int) Math.min(remaining, zeros.length);
+	    outputStream.write(zeros, 0, len);
+	    remaining -= len;
+	}
+    }
+
+    private void deleteIfExists(File file) {
+	if (storage.exists(file)) {
+	    storage.delete(file);
+	}
+    }
+
+}
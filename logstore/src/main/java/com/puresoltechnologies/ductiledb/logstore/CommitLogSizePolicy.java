@@ -0,0 +1,106 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+/**
+ * This class calculates the size at which the commit log is rolled over. If
+ * {@link LogStoreConfiguration#getMaxCommitLogSize()} is set, it is used as
+ * static size. Otherwise the size is derived from the observations of former
+ * commit logs:
+ * <ul>
+ * <li>A commit log should be written for {@link #TARGET_ROLLOVER_INTERVAL}
+ * at the observed write rate, so slowly written stores do not roll over and
+ * compact constantly.</li>
+ * <li>A commit log should be written for at least
+ * {@link #COMPACTION_COST_FACTOR} times the duration of a compaction, so the
+ * compactions keep up with large ingests without rewriting the data files for
+ * each small commit log.</li>
+ * <li>The memtable of a commit log needs to fit into
+ * {@link LogStoreConfiguration#getMaxMemtableSize()} with the observed ratio of
+ * memtable memory to commit log bytes.</li>
+ * </ul>
+ * The result is kept between {@link LogStoreConfiguration#getMinCommitLogSize()}
+ * and {@link LogStoreConfiguration#getMaxAdaptiveCommitLogSize()}.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class CommitLogSizePolicy {
+
+    static final long TARGET_ROLLOVER_INTERVAL = 10000;
+    static final int COMPACTION_COST_FACTOR = 4;
+
+    /**
+     * This is the weight of a new observation for the moving averages.
+     */
+    private static final double SMOOTHING = 0.5;
+
+    private final LogStoreConfiguration configuration;
+    /**
+     * This is the write rate in bytes per millisecond.
+     */
+    private double writeRate = 0.0;
+    private double compactionMillis = 0.0;
+    private double memtableBytesPerCommitLogByte = 0.0;
+    private volatile long adaptiveSize;
+
+    CommitLogSizePolicy(LogStoreConfiguration configuration) {
+	super();
+	this.configuration = configuration;
+	this.adaptiveSize = configuration.getMinCommitLogSize();
+    }
+
+    /**
+     * Returns the size at which the current commit log is to be rolled over.
+     *
+     * @return The size in bytes is returned.
+     */
+    long getCommitLogSize() {
+	long staticSize = configuration.getMaxCommitLogSize();
+	return staticSize > 0 ? staticSize : adaptiveSize;
+    }
+
+    /**
+     * This method is called on rollover.
+     *
+     * @param commitLogBytes
+     *            is the size of the rolled over commit log.
+     * @param millis
+     *            is the time the commit log was written.
+     * @param memtableBytes
+     *            is the memory footprint of the memtable of the commit log.
+     */
+    synchronized void commitLogRolledOver(long commitLogBytes, long millis, long memtableBytes) {
+	if (commitLogBytes <= 0) {
+	    return;
+	}
+	writeRate = average(writeRate, (double) commitLogBytes / Math.max(1, millis));
+	memtableBytesPerCommitLogByte = average(memtableBytesPerCommitLogByte,
+		(double) memtableBytes / commitLogBytes);
+	update();
+    }
+
+    /**
+     * This method is called after each compaction.
+     *
+     * @param millis
+     *            is the duration of the compaction.
+     */
+    synchronized void compactionFinished(long millis) {
+	compactionMillis = average(compactionMillis, millis);
+	update();
+    }
+
+    private double average(double average, double value) {
+	return average == 0.0 ? value : (1.0 - SMOOTHING) * average + SMOOTHING * value;
+    }
+
+    private void update() {
+	double interval = Math.max(TARGET_ROLLOVER_INTERVAL, COMPACTION_COST_FACTOR * compactionMillis);
+	double size = writeRate * interval;
+	if (memtableBytesPerCommitLogByte > 0.0) {
+	    size = Math.min(size, configuration.getMaxMemtableSize() / memtableBytesPerCommitLogByte);
+	}
+	long minSize = configuration.getMinCommitLogSize();
+	long maxSize = Math.max(minSize, configuration.getMaxAdaptiveCommitLogSize());
+	adaptiveSize = Math.max(minSize, Math.min(maxSize, (long) size));
+    }
+
+}
@@ -3,28 +3,29 @@ package com.puresoltechnologies.ductiledb.logstore;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.puresoltechnologies.commons.misc.StopWatch;
-import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodec;
 import com.puresoltechnologies.ductiledb.logstore.data.DataFileReader;
 import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexEntry;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexEntryIterator;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexFileReader;
-import com.puresoltechnologies.ductiledb.logstore.io.SSTableWriter;
+import com.puresoltechnologies.ductiledb.logstore.io.MetaDataEntry;
+import com.puresoltechnologies.ductiledb.logstore.io.MetaDataFile;
+import com.puresoltechnologies.ductiledb.logstore.io.SSTableBuilder;
 import com.puresoltechnologies.ductiledb.logstore.io.filter.MetadataFilenameFilter;
 import com.puresoltechnologies.ductiledb.logstore.utils.LogStoreUtils;
 import com.puresoltechnologies.ductiledb.storage.api.StorageException;
 import com.puresoltechnologies.ductiledb.storage.spi.Storage;
-import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
 
 /**
  * This class is responsible for compaction of column families.
@@ -35,11 +36,24 @@ public class Compactor {
 
     private static final Logger logger = LoggerFactory.getLogger(Compactor.class);
 
-    public static void run(Storage storage, File directory, File commitLogFile, int bufferSize, long maxDataFileSize,
-	    int maxFileGenerations) {
+    /**
+     * Runs the compaction of a commit log. Merge operands of the commit log are
+     * folded with the data rows using the provided {@link MergeOperator}, so the
+     * data files never contain operands. A Bloom filter is written for each new
+     * data file with the given bits per key. The rows are packed into blocks of
+     * the given size, which are compressed with the given {@link BlockCodec}.
+     * The checksums of the blocks read are always verified, so broken blocks are
+     * not carried into the new data files. MD5 files are only written on
+     * request.
+     * 
+     * @return The metadata file of the new data files is returned.
+     */
+    public static File run(Storage storage, File directory, File commitLogFile, int bufferSize, long maxDataFileSize,
+	    int maxFileGenerations, int bloomFilterBitsPerKey, int dataBlockSize, BlockCodec blockCodec,
+	    boolean md5Files, MergeOperator mergeOperator) {
 	Compactor compactor = new Compactor(storage, directory, commitLogFile, bufferSize, maxDataFileSize,
-		maxFileGenerations);
-	compactor.runCompaction();
+		maxFileGenerations, bloomFilterBitsPerKey, dataBlockSize, blockCodec, md5Files, mergeOperator);
+	return compactor.runCompaction();
     }
 
     private final Storage storage;
@@ -48,12 +62,15 @@ public class Compactor {
     private final int bufferSize;
     private final long maxDataFileSize;
     private final int maxFileGenerations;
-
-    private int fileCount = 0;
-    private final TreeMap<File, List<IndexEntry>> index = new TreeMap<>();
+    private final int bloomFilterBitsPerKey;
+    private final int dataBlockSize;
+    private final BlockCodec blockCodec;
+    private final boolean md5Files;
+    private final MergeOperator mergeOperator;
 
     private Compactor(Storage storage, File directory, File commitLogFile, int bufferSize, long maxDataFileSize,
-	    int maxFileGenerations) {
+	    int maxFileGenerations, int bloomFilterBitsPerKey, int dataBlockSize, BlockCodec blockCodec,
+	    boolean md5Files, MergeOperator mergeOperator) {
 	super();
 	this.storage = storage;
 	this.directory = directory;
@@ -61,181 +78,192 @@ public class Compactor {
 	this.bufferSize = bufferSize;
 	this.maxDataFileSize = maxDataFileSize;
 	this.maxFileGenerations = maxFileGenerations;
+	this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+	this.dataBlockSize = dataBlockSize;
+	this.blockCodec = blockCodec;
+	this.md5Files = md5Files;
+	this.mergeOperator = mergeOperator;
     }
 
-    public void runCompaction() {
+    public File runCompaction() {
 	try {
-	    String baseFilename = LogStructuredStore.createBaseFilename(LogStructuredStore.DB_FILE_PREFIX);
+	    String baseFilename = createBaseFilename(storage, directory);
 	    logger.info("Start compaction for '" + commitLogFile + "' (new: " + baseFilename + ")...");
 	    StopWatch stopWatch = new StopWatch();
 	    stopWatch.start();
-	    performCompaction(baseFilename);
-	    writeMetaData(baseFilename);
+	    File metadataFile = performCompaction(baseFilename);
 	    stopWatch.stop();
 	    logger.info("Compaction for '" + commitLogFile + "' (new: " + baseFilename + ") finished in "
 		    + stopWatch.getMillis() + "ms.");
+	    return metadataFile;
 	} catch (IOException e) {
 	    throw new StorageException("Could not run compaction.", e);
 	}
     }
 
+    /**
+     * Creates the base filename of a new generation of data files. Compactions
+     * and ingestions can follow each other within a millisecond, so the name is
+     * checked against the existing metadata files.
+     */
+    static String createBaseFilename(Storage storage, File directory) {
+	String baseFilename;
+	do {
+	    baseFilename = LogStructuredStore.createBaseFilename(LogStructuredStore.DB_FILE_PREFIX);
+	} while (storage.exists(new File(directory, baseFilename + LogStructuredStore.METADATA_SUFFIX)));
+	return baseFilename;
+    }
+
     private List<File> findDataFiles() throws IOException {
-	List<String> timestamps = new ArrayList<>();
-	for (File file : storage.list(directory, new MetadataFilenameFilter())) {
-	    timestamps.add(LogStoreUtils.extractTimestampForMetadataFile(file.getName()));
-	}
+	deleteObsoleteGenerations(storage, directory, maxFileGenerations);
+	File latestMetadataFile = DataFileSet.getLatestMetaDataFile(storage, directory);
 	List<File> dataFiles = new ArrayList<>();
-	if (timestamps.size() > 0) {
-	    Collections.sort(timestamps);
-	    deleteObsoleteStorageFiles(timestamps);
-	    Collections.reverse(timestamps);
-	    String lastTimestamp = timestamps.get(0);
-	    for (File file : storage.list(directory, new FilenameFilter() {
-		@Override
-		public boolean accept(File dir, String name) {
-		    return name.startsWith(LogStructuredStore.DB_FILE_PREFIX + "-" + lastTimestamp)
-			    && name.endsWith(LogStructuredStore.DATA_FILE_SUFFIX);
+	if (latestMetadataFile != null) {
+	    for (MetaDataEntry entry : readDataFileEntries(storage, latestMetadataFile)) {
+		File dataFile = new File(directory, entry.getFileName());
+		if (storage.exists(dataFile)) {
+		    dataFiles.add(dataFile);
 		}
-	    })) {
-		dataFiles.add(file);
 	    }
-	    Collections.sort(dataFiles);
 	}
 	return dataFiles;
     }
 
-    private void deleteObsoleteStorageFiles(List<String> timestamps) {
-	while (timestamps.size() > maxFileGenerations) {
-	    String timestamp = timestamps.get(0);
+    /**
+     * Reads the entries of the non-empty data files of a generation.
+     * 
+     * @return The entries are returned sorted by their key ranges.
+     */
+    static List<MetaDataEntry> readDataFileEntries(Storage storage, File metadataFile) throws IOException {
+	List<MetaDataEntry> entries = new ArrayList<>();
+	for (MetaDataEntry entry : MetaDataFile.read(storage, metadataFile)) {
+	    if (!entry.isEmptyDataFile()) {
+		entries.add(entry);
+	    }
+	}
+	entries.sort((l, r) -> l.getStartKey().compareTo(r.getStartKey()));
+	return entries;
+    }
+
+    /**
+     * Deletes the oldest generations of data files, so only the given number of
+     * generations is kept. Generations may share data files, because ingested
+     * data files are added to a new generation without copying the data files
+     * of the former one. The files still listed by a kept generation are not
+     * deleted.
+     */
+    static void deleteObsoleteGenerations(Storage storage, File directory, int maxFileGenerations)
+	    throws IOException {
+	List<File> metadataFiles = new ArrayList<>();
+	storage.list(directory, new MetadataFilenameFilter()).forEach(metadataFiles::add);
+	if (metadataFiles.size() <= maxFileGenerations) {
+	    return;
+	}
+	Collections.sort(metadataFiles);
+	List<File> obsoleteMetadataFiles = metadataFiles.subList(0, metadataFiles.size() - maxFileGenerations);
+	Set<String> keptFiles = new HashSet<>();
+	for (File metadataFile : metadataFiles.subList(obsoleteMetadataFiles.size(), metadataFiles.size())) {
+	    for (MetaDataEntry entry : MetaDataFile.read(storage, metadataFile)) {
+		keptFiles.add(getBaseName(entry.getFileName()));
+	    }
+	}
+	for (File metadataFile : obsoleteMetadataFiles) {
+	    String prefix = LogStructuredStore.DB_FILE_PREFIX + "-"
+		    + LogStoreUtils.extractTimestampForMetadataFile(metadataFile.getName());
+	    Set<String> obsoleteFiles = new HashSet<>();
+	    for (MetaDataEntry entry : MetaDataFile.read(storage, metadataFile)) {
+		obsoleteFiles.add(getBaseName(entry.getFileName()));
+	    }
 	    for (File file : storage.list(directory, new FilenameFilter() {
 		@Override
 		public boolean accept(File dir, String name) {
-		    return name.startsWith(LogStructuredStore.DB_FILE_PREFIX + "-" + timestamp);
+		    return name.startsWith(LogStructuredStore.DB_FILE_PREFIX + "-")
+			    && (name.startsWith(prefix) || obsoleteFiles.contains(getBaseName(name)));
 		}
 	    })) {
-		storage.delete(file);
+		if (!keptFiles.contains(getBaseName(file.getName()))) {
+		    storage.delete(file);
+		}
 	    }
-	    timestamps.remove(timestamp);
 	}
     }
 
-    private void performCompaction(String baseFilename) throws IOException {
+    /**
+     * Returns the name of a file without its suffix, which is shared by a data
+     * file, its index file, Bloom filter and MD5 file.
+     */
+    private static String getBaseName(String fileName) {
+	int index = fileName.indexOf('.');
+	return index >= 0 ? fileName.substring(0, index) : fileName;
+    }
+
+    private File performCompaction(String baseFilename) throws IOException {
 	logger.info("Compacting " + commitLogFile + "' (new: " + baseFilename + ")...");
 	File indexFile = DataFileSet.getIndexName(commitLogFile);
 	try (DataFileReader commitLogReader = new DataFileReader(storage, commitLogFile);
-		IndexFileReader commitLogIndex = new IndexFileReader(storage, indexFile)) {
+		IndexFileReader commitLogIndex = new IndexFileReader(storage, indexFile);
+		SSTableBuilder builder = new SSTableBuilder(storage, directory, baseFilename, bufferSize,
+			maxDataFileSize, bloomFilterBitsPerKey, dataBlockSize, blockCodec, md5Files)) {
 	    IndexEntryIterator commitLogIndexIterator = commitLogIndex.iterator();
 	    List<File> dataFiles = findDataFiles();
-	    integrateCommitLog(commitLogIndexIterator, commitLogReader, dataFiles, baseFilename);
+	    integrateCommitLog(commitLogIndexIterator, commitLogReader, dataFiles, builder);
+	    logger.info("Creating meta data for " + commitLogFile + "' (new: " + baseFilename + ")...");
+	    return builder.finish();
 	}
     }
 
     private void integrateCommitLog(IndexEntryIterator commitLogIterator, DataFileReader commitLogReader,
-	    List<File> dataFiles, String baseFilename) throws IOException {
-	SSTableWriter writer = new SSTableWriter(storage, directory, baseFilename + "-" + fileCount, bufferSize);
+	    List<File> dataFiles, SSTableBuilder builder) throws IOException {
 	try {
 	    IndexEntry commitLogNext = commitLogIterator.next();
 	    for (File dataFile : dataFiles) {
 		try (DataFileReader rows = new DataFileReader(storage, dataFile)) {
 		    for (Row row : rows) {
 			Key dataRowKey = row.getKey();
-			if (commitLogNext != null) {
-			    if (dataRowKey.compareTo(commitLogNext.getRowKey()) == 0) {
-				writer = writeCommitLogEntry(commitLogReader, commitLogNext, writer, baseFilename);
-				commitLogNext = commitLogIterator.next();
-			    } else if (dataRowKey.compareTo(commitLogNext.getRowKey()) < 0) {
-				writer = writeDataEntry(writer, baseFilename, dataRowKey, row.getTombstone(),
-					row.getData());
-			    } else {
-				if (commitLogNext != null) {
-				    writer = writeCommitLogEntry(commitLogReader, commitLogNext, writer, baseFilename);
-				    commitLogNext = commitLogIterator.next();
-				}
-			    }
+			// Write all commit log rows in front of the current data row first.
+			while ((commitLogNext != null) && (commitLogNext.getRowKey().compareTo(dataRowKey) < 0)) {
+			    writeCommitLogEntry(commitLogReader, commitLogNext, null, builder);
+			    commitLogNext = commitLogIterator.next();
+			}
+			if ((commitLogNext != null) && (commitLogNext.getRowKey().compareTo(dataRowKey) == 0)) {
+			    // The commit log row replaces the data row or is merged into it.
+			    writeCommitLogEntry(commitLogReader, commitLogNext, row, builder);
+			    commitLogNext = commitLogIterator.next();
 			} else {
-			    writer = writeDataEntry(writer, baseFilename, dataRowKey, row.getTombstone(),
-				    row.getData());
+			    builder.write(dataRowKey, row.getTombstone(), row.getData());
 			}
 		    }
 		}
 	    }
 	    if (commitLogNext != null) {
-		writer = writeCommitLogEntry(commitLogReader, commitLogNext, writer, baseFilename);
+		writeCommitLogEntry(commitLogReader, commitLogNext, null, builder);
 		while (commitLogIterator.hasNext()) {
 		    commitLogNext = commitLogIterator.next();
-		    writer = writeCommitLogEntry(commitLogReader, commitLogNext, writer, baseFilename);
+		    writeCommitLogEntry(commitLogReader, commitLogNext, null, builder);
 		}
 	    }
 	} catch (Exception e) {
 	    logger.error("Could not integrate commit log.", e);
 	    throw e;
-	} finally {
-	    writer.close();
-	    addToIndex(writer);
 	}
     }
 
-    private SSTableWriter writeCommitLogEntry(DataFileReader commitLogReader, IndexEntry commitLogNext,
-	    SSTableWriter writer, String baseFilename) throws IOException, StorageException {
+    private void writeCommitLogEntry(DataFileReader commitLogReader, IndexEntry commitLogNext, Row dataRow,
+	    SSTableBuilder builder) throws IOException, StorageException {
 	Row row = commitLogReader.readRow(commitLogNext);
+	if (row.isMergeOperand()) {
+	    RowMerger rowMerger = new RowMerger(row.getKey(), mergeOperator);
+	    rowMerger.add(row);
+	    rowMerger.add(dataRow);
+	    row = rowMerger.getRow();
+	}
 	if (!row.wasDeleted()) {
 	    byte[] data = row.getData();
 	    if (data != null) {
-		writer = writeDataEntry(writer, baseFilename, row.getKey(), null, data);
+		builder.write(row.getKey(), null, data);
 	    }
 
 	}
-	return writer;
-    }
-
-    private SSTableWriter writeDataEntry(SSTableWriter writer, String baseFilename, Key rowKey, Instant tombstone,
-	    byte[] data) throws IOException, StorageException {
-	writer.write(rowKey, tombstone, data);
-	if (writer.getDataFileSize() >= maxDataFileSize) {
-	    writer.close();
-	    addToIndex(writer);
-	    fileCount++;
-	    writer = new SSTableWriter(storage, directory, baseFilename + "-" + fileCount, bufferSize);
-	}
-	return writer;
-    }
-
-    private void addToIndex(SSTableWriter writer) {
-	List<IndexEntry> indizes = index.get(writer.getDataFile());
-	if (indizes == null) {
-	    indizes = new ArrayList<>();
-	    index.put(writer.getDataFile(), indizes);
-	}
-	if (writer.hasIndexInformation()) {
-	    indizes.add(new IndexEntry(writer.getStartRowKey(), writer.getDataFile(), writer.getStartOffset()));
-	    indizes.add(new IndexEntry(writer.getEndRowKey(), writer.getDataFile(), writer.getEndOffset()));
-	}
-    }
-
-    private void writeMetaData(String baseFilename) throws IOException {
-	logger.info("Creating meta data for " + commitLogFile + "' (new: " + baseFilename + ")...");
-	try (StorageOutputStream stream = storage
-		.create(new File(directory, baseFilename + LogStructuredStore.METADATA_SUFFIX))) {
-	    stream.write(Bytes.fromInt(fileCount + 1)); // Number of files
-	    for (File file : index.keySet()) {
-		String fileName = file.getName();
-		stream.write(Bytes.fromInt(fileName.length()));
-		stream.write(Bytes.fromString(fileName));
-		List<IndexEntry> indexEntries = index.get(file);
-		Collections.sort(indexEntries);
-		for (IndexEntry entry : indexEntries) {
-		    Key rowKey = entry.getRowKey();
-		    stream.write(Bytes.fromInt(rowKey.getBytes().length));
-		    stream.write(rowKey.getBytes());
-
-		    long offset = entry.getOffset();
-		    stream.write(Bytes.fromLong(offset));
-		}
-	    }
-	} catch (Exception e) {
-	    logger.error("Could not write meta data.", e);
-	    throw e;
-	}
     }
 
 }
@@ -0,0 +1,24 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+
+/**
+ * This {@link MergeOperator} treats values and operands as 8 byte long values
+ * and adds the operands to the value. A missing value counts as 0.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
+public class CounterMergeOperator implements MergeOperator {
+
+    @Override
+    public byte[] merge(byte[] value, byte[] operand) {
+	long counter = value != null ? Bytes.toLong(value) : 0l;
+	return Bytes.fromLong(counter + Bytes.toLong(operand));
+    }
+
+    @Override
+    public byte[] mergeOperands(byte[] olderOperand, byte[] newerOperand) {
+	return Bytes.fromLong(Bytes.toLong(olderOperand) + Bytes.toLong(newerOperand));
+    }
+
+}
@@ -0,0 +1,296 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.puresoltechnologies.commons.misc.StopWatch;
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodec;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileReader;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
+import com.puresoltechnologies.ductiledb.logstore.index.BloomFilter;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexEntry;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexFileReader;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexFileWriter;
+import com.puresoltechnologies.ductiledb.logstore.io.MetaDataEntry;
+import com.puresoltechnologies.ductiledb.logstore.io.MetaDataFile;
+import com.puresoltechnologies.ductiledb.logstore.io.SSTableBuilder;
+import com.puresoltechnologies.ductiledb.logstore.io.SSTableWriter;
+import com.puresoltechnologies.ductiledb.storage.api.StorageException;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+
+/**
+ * This class adds data files written by a {@link SSTableBuilder} to the data
+ * files of a store. The result is a new generation of data files, which is
+ * published like the result of a compaction:
+ * <ul>
+ * <li>If the key ranges of the ingested data files do not overlap the key
+ * ranges of the current data files, the ingested data files are moved into
+ * the store and the new generation lists them together with the current data
+ * files, which are not copied. Only the index files and Bloom filters of the
+ * ingested data files are rewritten, because they contain the name of their
+ * data file. Their Bloom filters are moved, too.</li>
+ * <li>Otherwise, the ingested rows are merged with the rows of the current
+ * data files into new data files. Ingested rows replace the rows of the
+ * current data files with the same key and ingested tombstones delete
+ * them.</li>
+ * </ul>
+ * The ingested files are removed from the staging directory afterwards.
+ *
+ * Only the data files are changed. Rows in memtables and commit logs, which
+ * are not compacted, still shadow the ingested rows. So the store needs to
+ * compact the commit logs written before the ingestion first.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class FileIngestion {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileIngestion.class);
+
+    /**
+     * Runs the ingestion of the data files of a metadata file.
+     *
+     * @param metadataFile
+     *            is the metadata file written by a {@link SSTableBuilder}. It
+     *            needs to be located in another directory than the store, but
+     *            in the same storage.
+     * @return The metadata file of the new generation of data files is returned
+     *         or <code>null</code> in case there were no rows to ingest.
+     */
+    public static File run(Storage storage, File directory, File metadataFile, int bufferSize, long maxDataFileSize,
+	    int maxFileGenerations, int bloomFilterBitsPerKey, int dataBlockSize, BlockCodec blockCodec,
+	    boolean md5Files) {
+	FileIngestion ingestion = new FileIngestion(storage, directory, metadataFile, bufferSize, maxDataFileSize,
+		maxFileGenerations, bloomFilterBitsPerKey, dataBlockSize, blockCodec, md5Files);
+	return ingestion.runIngestion();
+    }
+
+    private final Storage storage;
+    private final File directory;
+    private final File metadataFile;
+    private final int bufferSize;
+    private final long maxDataFileSize;
+    private final int maxFileGenerations;
+    private final int bloomFilterBitsPerKey;
+    private final int dataBlockSize;
+    private final BlockCodec blockCodec;
+    private final boolean md5Files;
+
+    private FileIngestion(Storage storage, File directory, File metadataFile, int bufferSize, long maxDataFileSize,
+	    int maxFileGenerations, int bloomFilterBitsPerKey, int dataBlockSize, BlockCodec blockCodec,
+	    boolean md5Files) {
+	super();
+	this.storage = storage;
+	this.directory = directory;
+	this.metadataFile = metadataFile;
+	this.bufferSize = bufferSize;
+	this.maxDataFileSize = maxDataFileSize;
+	this.maxFileGenerations = maxFileGenerations;
+	this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+	this.dataBlockSize = dataBlockSize;
+	this.blockCodec = blockCodec;
+	this.md5Files = md5Files;
+    }
+
+    public File runIngestion() {
+	File stagingDirectory = metadataFile.getParentFile();
+	if ((stagingDirectory == null) || stagingDirectory.equals(directory)) {
+	    throw new IllegalArgumentException("Data files to be ingested need to be written into another directory "
+		    + "than the store directory '" + directory + "'.");
+	}
+	if (!storage.exists(metadataFile)) {
+	    throw new IllegalArgumentException("Metadata file '" + metadataFile + "' does not exist.");
+	}
+	try {
+	    logger.info("Start ingestion of '" + metadataFile + "'...");
+	    StopWatch stopWatch = new StopWatch();
+	    stopWatch.start();
+	    List<MetaDataEntry> ingestedEntries = Compactor.readDataFileEntries(storage, metadataFile);
+	    File newMetadataFile = null;
+	    if (!ingestedEntries.isEmpty()) {
+		Compactor.deleteObsoleteGenerations(storage, directory, maxFileGenerations);
+		File latestMetadataFile = DataFileSet.getLatestMetaDataFile(storage, directory);
+		List<MetaDataEntry> currentEntries = latestMetadataFile != null
+			? Compactor.readDataFileEntries(storage, latestMetadataFile)
+			: new ArrayList<>();
+		String baseFilename = Compactor.createBaseFilename(storage, directory);
+		if (overlaps(ingestedEntries, currentEntries)) {
+		    logger.info("Ingested data files overlap the current data files, merge them into '" + baseFilename
+			    + "'...");
+		    newMetadataFile = merge(ingestedEntries, currentEntries, baseFilename);
+		} else {
+		    logger.info("Move ingested data files into '" + baseFilename + "'...");
+		    newMetadataFile = move(ingestedEntries, currentEntries, baseFilename);
+		}
+	    }
+	    deleteStagedFiles(stagingDirectory);
+	    stopWatch.stop();
+	    logger.info("Ingestion of '" + metadataFile + "' (new: " + newMetadataFile + ") finished in "
+		    + stopWatch.getMillis() + "ms.");
+	    return newMetadataFile;
+	} catch (IOException e) {
+	    throw new StorageException("Could not ingest '" + metadataFile + "'.", e);
+	}
+    }
+
+    /**
+     * Checks whether any of the key ranges overlap. Both lists are sorted by
+     * their start keys and the key ranges of each list are disjoint.
+     */
+    static boolean overlaps(List<MetaDataEntry> ingestedEntries, List<MetaDataEntry> currentEntries) {
+	int i = 0;
+	int j = 0;
+	while ((i < ingestedEntries.size()) && (j < currentEntries.size())) {
+	    MetaDataEntry ingested = ingestedEntries.get(i);
+	    MetaDataEntry current = currentEntries.get(j);
+	    if (ingested.getEndKey().compareTo(current.getStartKey()) < 0) {
+		i++;
+	    } else if (current.getEndKey().compareTo(ingested.getStartKey()) < 0) {
+		j++;
+	    } else {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private File move(List<MetaDataEntry> ingestedEntries, List<MetaDataEntry> currentEntries, String baseFilename)
+	    throws IOException {
+	List<MetaDataEntry> entries = new ArrayList<>(currentEntries);
+	File stagingDirectory = metadataFile.getParentFile();
+	for (int num = 0; num < ingestedEntries.size(); ++num) {
+	    MetaDataEntry entry = ingestedEntries.get(num);
+	    File stagedDataFile = new File(stagingDirectory, entry.getFileName());
+	    File dataFile = new File(directory,
+		    LogStructuredStore.createFilename(baseFilename, num, LogStructuredStore.DATA_FILE_SUFFIX));
+	    storage.rename(stagedDataFile, dataFile);
+	    File indexFile = DataFileSet.getIndexName(dataFile);
+	    /*
+	     * The index only contains the first row of each block, so the Bloom
+	     * filter cannot be rebuilt from it. It does not contain the name of the
+	     * data file and is moved.
+	     */
+	    try (IndexFileReader stagedIndexReader = new IndexFileReader(storage,
+		    DataFileSet.getIndexName(stagedDataFile));
+		    IndexFileWriter indexWriter = new IndexFileWriter(storage, indexFile, dataFile)) {
+		for (IndexEntry indexEntry : stagedIndexReader) {
+		    indexWriter.writeIndexEntry(indexEntry.getRowKey(), indexEntry.getOffset());
+		}
+	    }
+	    File stagedBloomFilter = BloomFilter.getBloomFilterName(stagedDataFile);
+	    if (storage.exists(stagedBloomFilter)) {
+		storage.rename(stagedBloomFilter, BloomFilter.getBloomFilterName(dataFile));
+	    }
+	    if (md5Files) {
+		SSTableWriter.writeMD5File(storage, dataFile, indexFile);
+	    }
+	    entries.add(new MetaDataEntry(dataFile.getName(), entry.getStartKey(), entry.getStartOffset(),
+		    entry.getEndKey(), entry.getEndOffset()));
+	}
+	File newMetadataFile = new File(directory, baseFilename + LogStructuredStore.METADATA_SUFFIX);
+	MetaDataFile.write(storage, newMetadataFile, entries);
+	return newMetadataFile;
+    }
+
+    private File merge(List<MetaDataEntry> ingestedEntries, List<MetaDataEntry> currentEntries, String baseFilename)
+	    throws IOException {
+	try (RowIterator ingestedRows = new RowIterator(storage, metadataFile.getParentFile(), ingestedEntries);
+		RowIterator currentRows = new RowIterator(storage, directory, currentEntries);
+		SSTableBuilder builder = new SSTableBuilder(storage, directory, baseFilename, bufferSize,
+			maxDataFileSize, bloomFilterBitsPerKey, dataBlockSize, blockCodec, md5Files)) {
+	    Row ingested = ingestedRows.next();
+	    Row current = currentRows.next();
+	    while ((ingested != null) || (current != null)) {
+		int comparison;
+		if (ingested == null) {
+		    comparison = 1;
+		} else if (current == null) {
+		    comparison = -1;
+		} else {
+		    comparison = ingested.getKey().compareTo(current.getKey());
+		}
+		if (comparison <= 0) {
+		    // The ingested row replaces the current row or deletes it.
+		    if (!ingested.wasDeleted()) {
+			builder.write(ingested);
+		    }
+		    ingested = ingestedRows.next();
+		    if (comparison == 0) {
+			current = currentRows.next();
+		    }
+		} else {
+		    builder.write(current);
+		    current = currentRows.next();
+		}
+	    }
+	    return builder.finish();
+	}
+    }
+
+    private void deleteStagedFiles(File stagingDirectory) throws IOException {
+	for (MetaDataEntry entry : MetaDataFile.read(storage, metadataFile)) {
+	    File stagedDataFile = new File(stagingDirectory, entry.getFileName());
+	    deleteIfExists(stagedDataFile);
+	    deleteIfExists(DataFileSet.getIndexName(stagedDataFile));
+	    deleteIfExists(BloomFilter.getBloomFilterName(stagedDataFile));
+	    deleteIfExists(DataFileSet.getMD5Name(stagedDataFile));
+	}
+	storage.delete(metadataFile);
+    }
+
+    private void deleteIfExists(File file) {
+	if (storage.exists(file)) {
+	    storage.delete(file);
+	}
+    }
+
+    /**
+     * This iterator reads the rows of data files with disjoint key ranges one
+     * data file after the other.
+     */
+    private static class RowIterator implements AutoCloseable {
+
+	private final Storage storage;
+	private final File directory;
+	private final Iterator<MetaDataEntry> entries;
+	private DataFileReader reader = null;
+	private Iterator<Row> rows = null;
+
+	RowIterator(Storage storage, File directory, List<MetaDataEntry> entries) {
+	    super();
+	    this.storage = storage;
+	    this.directory = directory;
+	    this.entries = entries.iterator();
+	}
+
+	/**
+	 * Returns the next row or <code>null</code> after the last row.
+	 */
+	Row next() throws IOException {
+	    while ((rows == null) || !rows.hasNext()) {
+		close();
+		if (!entries.hasNext()) {
+		    return null;
+		}
+		reader = new DataFileReader(storage, new File(directory, entries.next().getFileName()));
+		rows = reader.iterator();
+	    }
+	    return rows.next();
+	}
+
+	@Override
+	public void close() throws IOException {
+	    if (reader != null) {
+		reader.close();
+		reader = null;
+		rows = null;
+	    }
+	}
+    }
+
+}
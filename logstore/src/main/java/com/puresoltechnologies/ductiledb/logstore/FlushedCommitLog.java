@@ -0,0 +1,293 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileReader;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
+import com.puresoltechnologies.ductiledb.logstore.index.BloomFilter;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexEntry;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexEntryIterator;
+import com.puresoltechnologies.ductiledb.logstore.index.IndexFileReader;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+
+/**
+ * This is a commit log which was flushed, but is not compacted into the data
+ * files, yet. Its index is kept in memory as sorted arrays and its Bloom filter
+ * is read once, so a get only needs to read the row from the commit log.
+ *
+ * The readers of the commit log are kept open for the following reads. The
+ * commit log is reference counted: the store holds one reference until the
+ * commit log is retired by its compaction and each get or scanner holds one
+ * via its {@link StoreVersion}. The readers are closed when the last reference
+ * is released. Until then, the commit log is retained at the
+ * {@link CommitLogSegmentManager}, so it is not recycled while it is read.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class FlushedCommitLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlushedCommitLog.class);
+
+    /**
+     * Creates the flushed commit log from the index entries of its memtable, which
+     * are sorted by row key.
+     *
+     * @param storage
+     *            is the storage to read the commit log from.
+     * @param segmentManager
+     *            is the segment manager which must not recycle the commit log
+     *            while it is read.
+     * @param commitLog
+     *            is the commit log file.
+     * @param indexEntries
+     *            are the index entries of the commit log.
+     * @param size
+     *            is the number of index entries.
+     * @return A {@link FlushedCommitLog} is returned.
+     * @throws IOException
+     *             is thrown in case the Bloom filter cannot be read.
+     */
+    static FlushedCommitLog create(Storage storage, CommitLogSegmentManager segmentManager, File commitLog,
+	    Iterable<IndexEntry> indexEntries, int size) throws IOException {
+	Key[] rowKeys = new Key[size];
+	long[] offsets = new long[size];
+	int count = 0;
+	for (IndexEntry indexEntry : indexEntries) {
+	    if (count == rowKeys.length) {
+		rowKeys = Arrays.copyOf(rowKeys, count * 2 + 1);
+		offsets = Arrays.copyOf(offsets, count * 2 + 1);
+	    }
+	    rowKeys[count] = indexEntry.getRowKey();
+	    offsets[count] = indexEntry.getOffset();
+	    count++;
+	}
+	if (count < rowKeys.length) {
+	    rowKeys = Arrays.copyOf(rowKeys, count);
+	    offsets = Arrays.copyOf(offsets, count);
+	}
+	return new FlushedCommitLog(storage, segmentManager, commitLog, rowKeys, offsets,
+		BloomFilter.read(storage, commitLog));
+    }
+
+    /**
+     * Reads the flushed commit log from its index file. This is used for the
+     * commit logs which are not compacted on start.
+     */
+    static FlushedCommitLog open(Storage storage, CommitLogSegmentManager segmentManager, File commitLog)
+	    throws IOException {
+	try (IndexFileReader indexFileReader = new IndexFileReader(storage, DataFileSet.getIndexName(commitLog))) {
+	    return create(storage, segmentManager, commitLog, indexFileReader, 1024);
+	}
+    }
+
+    private final Storage storage;
+    private final CommitLogSegmentManager segmentManager;
+    private final File commitLog;
+    private final Key[] rowKeys;
+    private final long[] offsets;
+    private final BloomFilter bloomFilter;
+    private final Deque<DataFileReader> idleReaders = new ArrayDeque<>();
+    private int references = 1;
+    private boolean retired = false;
+
+    private FlushedCommitLog(Storage storage, CommitLogSegmentManager segmentManager, File commitLog, Key[] rowKeys,
+	    long[] offsets, BloomFilter bloomFilter) {
+	super();
+	this.storage = storage;
+	this.segmentManager = segmentManager;
+	this.commitLog = commitLog;
+	this.rowKeys = rowKeys;
+	this.offsets = offsets;
+	this.bloomFilter = bloomFilter;
+	segmentManager.retain(Collections.singleton(commitLog));
+    }
+
+    File getCommitLogFile() {
+	return commitLog;
+    }
+
+    /**
+     * Returns the Bloom filter of the commit log.
+     *
+     * @return A {@link BloomFilter} is returned or <code>null</code> in case the
+     *         commit log has none.
+     */
+    BloomFilter getBloomFilter() {
+	return bloomFilter;
+    }
+
+    /**
+     * Returns the offset of the row in the commit log.
+     *
+     * @return The offset is returned or -1 in case the commit log does not contain
+     *         the row.
+     */
+    long getOffset(Key rowKey) {
+	int index = Arrays.binarySearch(rowKeys, rowKey);
+	return index >= 0 ? offsets[index] : -1;
+    }
+
+    /**
+     * Returns an iterator over the in-memory index of the given key range, so a
+     * scanner does not need to read the index file.
+     * 
+     * @param startRowKey
+     *            is the first key to be returned (inclusive). <code>null</code> is
+     *            used to start at the first entry.
+     * @param endRowKey
+     *            is the last key to be returned (inclusive). <code>null</code> is
+     *            used to iterate to the last entry.
+     * @return An {@link IndexEntryIterator} is returned.
+     */
+    IndexEntryIterator iterator(Key startRowKey, Key endRowKey) {
+	int start = 0;
+	if (startRowKey != null) {
+	    start = Arrays.binarySearch(rowKeys, startRowKey);
+	    if (start < 0) {
+		start = -(start + 1);
+	    }
+	}
+	int first = start;
+	return new IndexEntryIterator() {
+
+	    private int position = first;
+
+	    @Override
+	    public Key getStartRowKey() {
+		return startRowKey;
+	    }
+
+	    @Override
+	    public Key getEndRowKey() {
+		return endRowKey;
+	    }
+
+	    @Override
+	    protected IndexEntry findNext() {
+		if ((position >= rowKeys.length)
+			|| ((endRowKey != null) && (rowKeys[position].compareTo(endRowKey) > 0))) {
+		    return null;
+		}
+		IndexEntry indexEntry = new IndexEntry(rowKeys[position], commitLog, offsets[position]);
+		position++;
+		return indexEntry;
+	    }
+
+	};
+    }
+
+    /**
+     * Returns the offset of the last row of the commit log. This is used as size
+     * of commit logs which were not rolled over in this process, because their
+     * segments might be preallocated and the files are larger than the rows
+     * written.
+     *
+     * @return The offset is returned or 0 in case the commit log is empty.
+     */
+    long getLastOffset() {
+	long lastOffset = 0;
+	for (long offset : offsets) {
+	    lastOffset = Math.max(lastOffset, offset);
+	}
+	return lastOffset;
+    }
+
+    /**
+     * Reads the row at the given offset with one of the open readers. The caller
+     * needs to hold a reference taken with {@link #retain()}.
+     */
+    Row readRow(long offset) throws IOException {
+	DataFileReader reader = acquireReader();
+	try {
+	    return reader.readRow(offset);
+	} finally {
+	    releaseReader(reader);
+	}
+    }
+
+    /**
+     * Reads the rows at the given offsets with one reader. The offsets need to be
+     * sorted ascending, so the reader only seeks forward. The caller needs to
+     * hold a reference taken with {@link #retain()}.
+     * 
+     * @return The rows are returned in the order of the offsets.
+     */
+    Row[] readRows(long[] offsets) throws IOException {
+	DataFileReader reader = acquireReader();
+	try {
+	    return readRows(reader, offsets);
+	} finally {
+	    releaseReader(reader);
+	}
+    }
+
+    private static Row[] readRows(DataFileReader reader, long[] offsets) throws IOException {
+	Row[] rows = new Row[offsets.length];
+	for (int i = 0; i < offsets.length; ++i) {
+	    rows[i] = reader.readRow(offsets[i]);
+	}
+	return rows;
+    }
+
+    private synchronized DataFileReader acquireReader() throws IOException {
+	DataFileReader reader = idleReaders.poll();
+	return reader != null ? reader : new DataFileReader(storage, commitLog);
+    }
+
+    private synchronized void releaseReader(DataFileReader reader) {
+	idleReaders.push(reader);
+    }
+
+    /**
+     * Takes a reference, so the commit log can be read until {@link #release()}
+     * is called.
+     *
+     * @return <code>false</code> is returned in case the commit log was retired
+     *         and its readers are closed already.
+     */
+    synchronized boolean retain() {
+	if (references == 0) {
+	    return false;
+	}
+	references++;
+	return true;
+    }
+
+    /**
+     * Releases the reference of the store. This is called when the commit log is
+     * compacted into the data files or the store is closed.
+     */
+    synchronized void retire() {
+	if (!retired) {
+	    retired = true;
+	    release();
+	}
+    }
+
+    /**
+     * Releases a reference taken with {@link #retain()}.
+     */
+    synchronized void release() {
+	references--;
+	if (references == 0) {
+	    idleReaders.forEach(reader -> {
+		try {
+		    reader.close();
+		} catch (IOException e) {
+		    logger.warn("Could not close reader of " + commitLog.getName() + ".", e);
+		}
+	    });
+	    idleReaders.clear();
+	    segmentManager.release(Collections.singleton(commitLog));
+	}
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import java.io.File;
+
+import com.puresoltechnologies.ductiledb.logstore.index.Memtable;
+
+/**
+ * This is a memtable which was replaced on commit log rollover. It does not
+ * receive writes anymore and stays visible for reads until the background
+ * flusher has persisted the index of its commit log.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class ImmutableMemtable {
+
+    private final File commitLogFile;
+    private final long commitLogSize;
+    private final Memtable memtable;
+
+    ImmutableMemtable(File commitLogFile, long commitLogSize, Memtable memtable) {
+	super();
+	this.commitLogFile = commitLogFile;
+	this.commitLogSize = commitLogSize;
+	this.memtable = memtable;
+    }
+
+    public File getCommitLogFile() {
+	return commitLogFile;
+    }
+
+    /**
+     * Returns the number of bytes written to the commit log until the rollover.
+     * The file itself may be larger, because its segment was preallocated.
+     *
+     * @return The size is returned.
+     */
+    public long getCommitLogSize() {
+	return commitLogSize;
+    }
+
+    public Memtable getMemtable() {
+	return memtable;
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.puresoltechnologies.ductiledb.logstore;
 
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodecs;
+import com.puresoltechnologies.ductiledb.logstore.codec.NoneBlockCodec;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageConfiguration;
 
 /**
@@ -12,11 +14,39 @@ public class LogStoreConfiguration {
     private static final long ONE_MEGABYTE = 1024 * 1024;
     private static final long ONE_GIGABYTE = 1024 * ONE_MEGABYTE;
 
-    private long maxCommitLogSize = ONE_MEGABYTE;
+    private long maxCommitLogSize = 0;
+    private long minCommitLogSize = ONE_MEGABYTE;
+    private long maxAdaptiveCommitLogSize = 64 * ONE_MEGABYTE;
+    private long maxMemtableSize = 4 * ONE_MEGABYTE;
+    private boolean memtableOffHeap = false;
+    private int maxImmutableMemtables = 2;
     private long maxDataFileSize = ONE_GIGABYTE;
     private int bufferSize = -1;
     private int maxFileGenerations = 3;
+    private CommitLogDurability commitLogDurability = CommitLogDurability.GROUP;
+    private long commitLogFlushInterval = 100;
+    private long commitLogCheckpointInterval = 128 * 1024;
+    private boolean commitLogPreallocation = true;
+    private int slowdownPendingCompactions = 8;
+    private int stopPendingCompactions = 32;
+    private long slowdownPendingCompactionBytes = 64 * 1024 * 1024;
+    private long stopPendingCompactionBytes = 256 * 1024 * 1024;
+    private long maxWriteDelay = 100;
+    private int bloomFilterBitsPerKey = 10;
+    private long blockCacheSize = 64 * ONE_MEGABYTE;
+    private int dataBlockSize = 4096;
+    private String blockCodec = NoneBlockCodec.NAME;
+    private boolean verifyChecksums = true;
+    private boolean md5Files = false;
 
+    /**
+     * Returns the static commit log size at which the commit log is rolled over.
+     * A value less or equal to 0 lets the store size the commit logs adaptively
+     * between {@link #getMinCommitLogSize()} and
+     * {@link #getMaxAdaptiveCommitLogSize()}.
+     * 
+     * @return The size in bytes is returned.
+     */
     public long getMaxCommitLogSize() {
 	return maxCommitLogSize;
     }
@@ -25,6 +55,74 @@ public class LogStoreConfiguration {
 	this.maxCommitLogSize = maxCommitLogSize;
     }
 
+    /**
+     * Returns the lower bound of the adaptive commit log size.
+     * 
+     * @return The size in bytes is returned.
+     */
+    public long getMinCommitLogSize() {
+	return minCommitLogSize;
+    }
+
+    public void setMinCommitLogSize(long minCommitLogSize) {
+	this.minCommitLogSize = minCommitLogSize;
+    }
+
+    /**
+     * Returns the upper bound of the adaptive commit log size.
+     * 
+     * @return The size in bytes is returned.
+     */
+    public long getMaxAdaptiveCommitLogSize() {
+	return maxAdaptiveCommitLogSize;
+    }
+
+    public void setMaxAdaptiveCommitLogSize(long maxAdaptiveCommitLogSize) {
+	this.maxAdaptiveCommitLogSize = maxAdaptiveCommitLogSize;
+    }
+
+    /**
+     * Returns the maximum memory footprint of the memtable in bytes. If it is
+     * reached, the commit log is rolled over and the memtable is flushed.
+     * 
+     * @return The size in bytes is returned.
+     */
+    public long getMaxMemtableSize() {
+	return maxMemtableSize;
+    }
+
+    public void setMaxMemtableSize(long maxMemtableSize) {
+	this.maxMemtableSize = maxMemtableSize;
+    }
+
+    /**
+     * Returns whether the memtable keeps the row data off-heap.
+     * 
+     * @return <code>true</code> is returned for off-heap storage.
+     */
+    public boolean isMemtableOffHeap() {
+	return memtableOffHeap;
+    }
+
+    public void setMemtableOffHeap(boolean memtableOffHeap) {
+	this.memtableOffHeap = memtableOffHeap;
+    }
+
+    /**
+     * Returns the maximum number of immutable memtables waiting for the
+     * background flush. Writers which need to roll over the commit log are
+     * blocked until the flusher catches up.
+     * 
+     * @return The number of memtables is returned.
+     */
+    public int getMaxImmutableMemtables() {
+	return maxImmutableMemtables;
+    }
+
+    public void setMaxImmutableMemtables(int maxImmutableMemtables) {
+	this.maxImmutableMemtables = maxImmutableMemtables;
+    }
+
     public long getMaxDataFileSize() {
 	return maxDataFileSize;
     }
@@ -40,7 +138,8 @@ public class LogStoreConfiguration {
     public int getBufferSize() {
 	if (bufferSize <= 0) {
 	    int blockSize = StorageConfiguration.DEFAULT_BLOCKSIZE;
-	    this.bufferSize = ((int) (getMaxCommitLogSize() / 10) / blockSize) * blockSize;
+	    long commitLogSize = getMaxCommitLogSize() > 0 ? getMaxCommitLogSize() : getMinCommitLogSize();
+	    this.bufferSize = ((int) (commitLogSize / 10) / blockSize) * blockSize;
 	}
 	return bufferSize;
     }
@@ -53,14 +152,247 @@ public class LogStoreConfiguration {
 	this.maxFileGenerations = maxFileGenerations;
     }
 
+    public CommitLogDurability getCommitLogDurability() {
+	return commitLogDurability;
+    }
+
+    public void setCommitLogDurability(CommitLogDurability commitLogDurability) {
+	this.commitLogDurability = commitLogDurability;
+    }
+
+    /**
+     * Returns the flush interval in milliseconds which is used for
+     * {@link CommitLogDurability#PERIODIC}.
+     * 
+     * @return The interval in milliseconds is returned.
+     */
+    public long getCommitLogFlushInterval() {
+	return commitLogFlushInterval;
+    }
+
+    public void setCommitLogFlushInterval(long commitLogFlushInterval) {
+	this.commitLogFlushInterval = commitLogFlushInterval;
+    }
+
+    /**
+     * Returns the number of commit log bytes after which a checkpoint record is
+     * written. The checkpoints allow the recovery to skip the already indexed part
+     * of a commit log. A value less or equal to 0 disables checkpoints.
+     * 
+     * @return The interval in bytes is returned.
+     */
+    public long getCommitLogCheckpointInterval() {
+	return commitLogCheckpointInterval;
+    }
+
+    public void setCommitLogCheckpointInterval(long commitLogCheckpointInterval) {
+	this.commitLogCheckpointInterval = commitLogCheckpointInterval;
+    }
+
+    /**
+     * Returns whether new commit log segments are preallocated with the current
+     * commit log size. Compacted commit logs are recycled as segments in any
+     * case.
+     * 
+     * @return <code>true</code> is returned in case of preallocation.
+     */
+    public boolean isCommitLogPreallocation() {
+	return commitLogPreallocation;
+    }
+
+    public void setCommitLogPreallocation(boolean commitLogPreallocation) {
+	this.commitLogPreallocation = commitLogPreallocation;
+    }
+
+    /**
+     * Returns the number of commit logs waiting for compaction at which writes
+     * are delayed. A value less or equal to 0 disables the delay.
+     * 
+     * @return The number of commit logs is returned.
+     */
+    public int getSlowdownPendingCompactions() {
+	return slowdownPendingCompactions;
+    }
+
+    public void setSlowdownPendingCompactions(int slowdownPendingCompactions) {
+	this.slowdownPendingCompactions = slowdownPendingCompactions;
+    }
+
+    /**
+     * Returns the number of commit logs waiting for compaction at which writes
+     * are stopped until the compactions caught up.
+     * 
+     * @return The number of commit logs is returned.
+     */
+    public int getStopPendingCompactions() {
+	return stopPendingCompactions;
+    }
+
+    public void setStopPendingCompactions(int stopPendingCompactions) {
+	this.stopPendingCompactions = stopPendingCompactions;
+    }
+
+    /**
+     * Returns the size in bytes of the commit logs waiting for compaction at which
+     * writes are delayed. A value less or equal to 0 disables the delay.
+     * 
+     * @return The size in bytes is returned.
+     */
+    public long getSlowdownPendingCompactionBytes() {
+	return slowdownPendingCompactionBytes;
+    }
+
+    public void setSlowdownPendingCompactionBytes(long slowdownPendingCompactionBytes) {
+	this.slowdownPendingCompactionBytes = slowdownPendingCompactionBytes;
+    }
+
+    /**
+     * Returns the size in bytes of the commit logs waiting for compaction at which
+     * writes are stopped until the compactions caught up.
+     * 
+     * @return The size in bytes is returned.
+     */
+    public long getStopPendingCompactionBytes() {
+	return stopPendingCompactionBytes;
+    }
+
+    public void setStopPendingCompactionBytes(long stopPendingCompactionBytes) {
+	this.stopPendingCompactionBytes = stopPendingCompactionBytes;
+    }
+
+    /**
+     * Returns the delay in milliseconds applied to each write just before the
+     * stop thresholds are reached. Smaller delays are applied closer to the
+     * slowdown thresholds.
+     * 
+     * @return The delay in milliseconds is returned.
+     */
+    public long getMaxWriteDelay() {
+	return maxWriteDelay;
+    }
+
+    public void setMaxWriteDelay(long maxWriteDelay) {
+	this.maxWriteDelay = maxWriteDelay;
+    }
+
+    /**
+     * Returns the number of bits per row key of the Bloom filters written for the
+     * data files and the commit log indizes. 10 bits lead to a false positive rate
+     * of about 1%. A value less or equal to 0 disables the Bloom filters.
+     * 
+     * @return The number of bits is returned.
+     */
+    public int getBloomFilterBitsPerKey() {
+	return bloomFilterBitsPerKey;
+    }
+
+    public void setBloomFilterBitsPerKey(int bloomFilterBitsPerKey) {
+	this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+    }
+
+    /**
+     * Returns the size of the block cache for data files, index files and flushed
+     * commit logs. The cache is shared by all stores of a storage and is created
+     * with the size configured for the first store opened. A value less or equal
+     * to 0 disables the cache for the store.
+     * 
+     * @return The size in bytes is returned.
+     */
+    public long getBlockCacheSize() {
+	return blockCacheSize;
+    }
+
+    public void setBlockCacheSize(long blockCacheSize) {
+	this.blockCacheSize = blockCacheSize;
+    }
+
+    /**
+     * Returns the size of the blocks the rows of data files are packed into. A
+     * get reads the whole block of its row, so smaller blocks favor gets and
+     * larger blocks favor the prefix compression of the row keys and scans.
+     * 
+     * @return The size in bytes is returned.
+     */
+    public int getDataBlockSize() {
+	return dataBlockSize;
+    }
+
+    public void setDataBlockSize(int dataBlockSize) {
+	this.dataBlockSize = dataBlockSize;
+    }
+
+    /**
+     * Returns the name of the codec the blocks of the data files are compressed
+     * with (see {@link BlockCodecs}). A change only applies to data files written
+     * afterwards.
+     * 
+     * @return The name of the codec is returned.
+     */
+    public String getBlockCodec() {
+	return blockCodec;
+    }
+
+    public void setBlockCodec(String blockCodec) {
+	this.blockCodec = blockCodec;
+    }
+
+    /**
+     * Returns whether gets and scanners verify the checksums of the blocks of
+     * data files they read. Compactions verify the checksums in any case.
+     * 
+     * @return <code>true</code> is returned in case the checksums are verified.
+     */
+    public boolean isVerifyChecksums() {
+	return verifyChecksums;
+    }
+
+    public void setVerifyChecksums(boolean verifyChecksums) {
+	this.verifyChecksums = verifyChecksums;
+    }
+
+    /**
+     * Returns whether an MD5 file is written for each new data file and its
+     * index file. The sums are calculated from the files after they were
+     * written.
+     * 
+     * @return <code>true</code> is returned in case MD5 files are written.
+     */
+    public boolean isMd5Files() {
+	return md5Files;
+    }
+
+    public void setMd5Files(boolean md5Files) {
+	this.md5Files = md5Files;
+    }
+
     @Override
     public int hashCode() {
 	final int prime = 31;
 	int result = 1;
 	result = prime * result + bufferSize;
 	result = prime * result + (int) (maxCommitLogSize ^ (maxCommitLogSize >>> 32));
+	result = prime * result + (int) (minCommitLogSize ^ (minCommitLogSize >>> 32));
+	result = prime * result + (int) (maxAdaptiveCommitLogSize ^ (maxAdaptiveCommitLogSize >>> 32));
 	result = prime * result + (int) (maxDataFileSize ^ (maxDataFileSize >>> 32));
+	result = prime * result + (int) (maxMemtableSize ^ (maxMemtableSize >>> 32));
+	result = prime * result + (memtableOffHeap ? 1231 : 1237);
+	result = prime * result + maxImmutableMemtables;
 	result = prime * result + maxFileGenerations;
+	result = prime * result + ((commitLogDurability == null) ? 0 : commitLogDurability.hashCode());
+	result = prime * result + (int) (commitLogFlushInterval ^ (commitLogFlushInterval >>> 32));
+	result = prime * result + (int) (commitLogCheckpointInterval ^ (commitLogCheckpointInterval >>> 32));
+	result = prime * result + (commitLogPreallocation ? 1231 : 1237);
+	result = prime * result + slowdownPendingCompactions;
+	result = prime * result + stopPendingCompactions;
+	result = prime * result + (int) (slowdownPendingCompactionBytes ^ (slowdownPendingCompactionBytes >>> 32));
+	result = prime * result + (int) (stopPendingCompactionBytes ^ (stopPendingCompactionBytes >>> 32));
+	result = prime * result + (int) (maxWriteDelay ^ (maxWriteDelay >>> 32));
+	result = prime * result + bloomFilterBitsPerKey;
+	result = prime * result + (int) (blockCacheSize ^ (blockCacheSize >>> 32));
+	result = prime * result + dataBlockSize;
+	result = prime * result + ((blockCodec == null) ? 0 : blockCodec.hashCode());
+	result = prime * result + (verifyChecksums ? 1231 : 1237);
+	result = prime * result + (md5Files ? 1231 : 1237);
 	return result;
     }
 
@@ -77,10 +409,53 @@ public class LogStoreConfiguration {
 	    return false;
 	if (maxCommitLogSize != other.maxCommitLogSize)
 	    return false;
+	if (minCommitLogSize != other.minCommitLogSize)
+	    return false;
+	if (maxAdaptiveCommitLogSize != other.maxAdaptiveCommitLogSize)
+	    return false;
 	if (maxDataFileSize != other.maxDataFileSize)
 	    return false;
+	if (maxMemtableSize != other.maxMemtableSize)
+	    return false;
+	if (memtableOffHeap != other.memtableOffHeap)
+	    return false;
+	if (maxImmutableMemtables != other.maxImmutableMemtables)
+	    return false;
 	if (maxFileGenerations != other.maxFileGenerations)
 	    return false;
+	if (commitLogDurability != other.commitLogDurability)
+	    return false;
+	if (commitLogFlushInterval != other.commitLogFlushInterval)
+	    return false;
+	if (commitLogCheckpointInterval != other.commitLogCheckpointInterval)
+	    return false;
+	if (commitLogPreallocation != other.commitLogPreallocation)
+	    return false;
+	if (slowdownPendingCompactions != other.slowdownPendingCompactions)
+	    return false;
+	if (stopPendingCompactions != other.stopPendingCompactions)
+	    return false;
+	if (slowdownPendingCompactionBytes != other.slowdownPendingCompactionBytes)
+	    return false;
+	if (stopPendingCompactionBytes != other.stopPendingCompactionBytes)
+	    return false;
+	if (maxWriteDelay != other.maxWriteDelay)
+	    return false;
+	if (bloomFilterBitsPerKey != other.bloomFilterBitsPerKey)
+	    return false;
+	if (blockCacheSize != other.blockCacheSize)
+	    return false;
+	if (dataBlockSize != other.dataBlockSize)
+	    return false;
+	if (blockCodec == null) {
+	    if (other.blockCodec != null)
+		return false;
+	} else if (!blockCodec.equals(other.blockCodec))
+	    return false;
+	if (verifyChecksums != other.verifyChecksums)
+	    return false;
+	if (md5Files != other.md5Files)
+	    return false;
 	return true;
     }
 
@@ -3,9 +3,15 @@ package com.puresoltechnologies.ductiledb.logstore;
 import java.io.File;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import com.codahale.metrics.Metric;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileStatistics;
+import com.puresoltechnologies.ductiledb.logstore.io.SSTableBuilder;
 import com.puresoltechnologies.ductiledb.logstore.utils.DefaultObjectMapper;
 import com.puresoltechnologies.ductiledb.storage.spi.Storage;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageInputStream;
@@ -31,6 +37,8 @@ public interface LogStructuredStore extends StorageOperations, AutoCloseable {
     public static final String COMPACTED_FILE_SUFFIX = ".compacted";
     public static final String MD5_FILE_SUFFIX = ".md5";
     public static final String METADATA_SUFFIX = ".metadata";
+    public static final String CHECKPOINT_FILE_SUFFIX = ".checkpoint";
+    public static final String BLOOM_FILTER_SUFFIX = ".bloom";
 
     public static LogStructuredStore create(Storage storage, File directory, LogStoreConfiguration configuration)
 	    throws IOException {
@@ -105,6 +113,114 @@ public interface LogStructuredStore extends StorageOperations, AutoCloseable {
     @Override
     public void close();
 
+    /**
+     * This method sets the {@link MergeOperator} used to fold the merge operands
+     * of the store. It needs to be set before the store is opened, if the store
+     * contains merge operands.
+     * 
+     * @param mergeOperator
+     *            is the operator to be used.
+     */
+    public void setMergeOperator(MergeOperator mergeOperator);
+
+    public MergeOperator getMergeOperator();
+
+    /**
+     * This method writes a merge operand for the given row without reading the
+     * row. The operand is folded with the current value of the row by the
+     * {@link MergeOperator} of the store on read and during compaction.
+     * 
+     * @param rowKey
+     *            is the key of the row to be merged.
+     * @param operand
+     *            is the operand to be applied to the row.
+     */
+    public void merge(Key rowKey, byte[] operand);
+
+    /**
+     * This method writes a merge operand like {@link #merge(Key, byte[])} and
+     * returns the value of the row this very operand leads to. Concurrent merges
+     * of the same row are applied in commit order, so each of them gets its own
+     * result. Only the older versions of the row are read in case the memtable
+     * does not contain a put or delete of the row.
+     * 
+     * @param rowKey
+     *            is the key of the row to be merged.
+     * @param operand
+     *            is the operand to be applied to the row.
+     * @return The value of the row after the merge is returned.
+     */
+    public byte[] mergeAndGet(Key rowKey, byte[] operand);
+
+    /**
+     * This method applies all puts and deletes of the given {@link WriteBatch}
+     * atomically with one commit log append and flush.
+     * 
+     * @param writeBatch
+     *            is the batch to be written.
+     */
+    public void write(WriteBatch writeBatch);
+
+    /**
+     * This method reads many rows at once. The keys are sorted, so every part of
+     * the store is probed once in key order and every data file is read in one
+     * forward pass.
+     * 
+     * @param rowKeys
+     *            are the keys of the rows to be read. Duplicates are allowed.
+     * @return A list of the values in the order of the keys is returned. It
+     *         contains <code>null</code> for the rows not found.
+     */
+    public List<byte[]> get(Collection<Key> rowKeys);
+
+    /**
+     * This method reads many rows like {@link #get(Collection)}, but splits the
+     * sorted keys into ranges which are read in parallel.
+     * 
+     * @param rowKeys
+     *            are the keys of the rows to be read. Duplicates are allowed.
+     * @param executorService
+     *            is the thread pool to read the ranges.
+     * @return A list of the values in the order of the keys is returned. It
+     *         contains <code>null</code> for the rows not found.
+     */
+    public List<byte[]> get(Collection<Key> rowKeys, ExecutorService executorService);
+
+    /**
+     * This method adds data files written offline by a {@link SSTableBuilder}
+     * to the data files of the store. The ingested data files are published
+     * atomically as a new generation of data files, so reads see all of their
+     * rows or none. If their key ranges do not overlap the current data files,
+     * they are moved into the store without copying any data file. Otherwise,
+     * they are merged with the current data files and their rows replace the
+     * current rows with the same keys.
+     * 
+     * The memtable is rolled over and the commit logs written before are
+     * compacted first, so the ingested rows also replace the rows written
+     * before. Rows written while the ingestion runs take precedence over the
+     * ingested rows. In case a commit log written before cannot be compacted,
+     * the ingestion is rejected with a
+     * {@link com.puresoltechnologies.ductiledb.storage.api.StorageException}.
+     * 
+     * The ingestion runs in turn with the compactions. This method returns after
+     * the new data files are published. The ingested files are removed
+     * afterwards.
+     * 
+     * @param metadataFile
+     *            is the metadata file written by the builder. It needs to be
+     *            located in another directory of the storage of the store.
+     */
+    public void ingestFiles(File metadataFile);
+
+    /**
+     * This method returns the statistics of the current data files, which are
+     * read from the footers of the data files when they are opened.
+     * 
+     * @return An unmodifiable map is returned. Data files without statistics
+     *         are missing.
+     */
+    public Map<File, DataFileStatistics> getDataFileStatistics();
+
     /**
      * This method returns the metric defined with {@link LogStructuredStoreMetric}.
      * 
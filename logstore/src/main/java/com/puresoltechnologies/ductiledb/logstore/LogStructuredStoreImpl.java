@@ -1,16 +1,31 @@
 package com.puresoltechnologies.ductiledb.logstore;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -19,22 +34,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.Timer.Context;
 import com.puresoltechnologies.commons.misc.StopWatch;
 import com.puresoltechnologies.ductiledb.commons.Bytes;
-import com.puresoltechnologies.ductiledb.logstore.data.DataFileReader;
+import com.puresoltechnologies.ductiledb.logstore.cache.BlockCache;
+import com.puresoltechnologies.ductiledb.logstore.cache.BlockCacheMetrics;
+import com.puresoltechnologies.ductiledb.logstore.cache.BlockCachedStorage;
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodec;
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodecs;
+import com.puresoltechnologies.ductiledb.logstore.data.CommitLogSegmentWriter;
 import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
-import com.puresoltechnologies.ductiledb.logstore.data.DataFileWriter;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileStatistics;
+import com.puresoltechnologies.ductiledb.logstore.index.BloomFilter;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexEntry;
-import com.puresoltechnologies.ductiledb.logstore.index.IndexFileReader;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexFileWriter;
 import com.puresoltechnologies.ductiledb.logstore.index.Memtable;
 import com.puresoltechnologies.ductiledb.logstore.io.filter.CommitLogFilenameFilter;
 import com.puresoltechnologies.ductiledb.logstore.io.filter.MetadataFilenameFilter;
-import com.puresoltechnologies.ductiledb.logstore.io.filter.UsableCommitLogFilenameFilter;
 import com.puresoltechnologies.ductiledb.storage.api.StorageException;
 import com.puresoltechnologies.ductiledb.storage.spi.Storage;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
@@ -47,6 +68,17 @@ import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
 public class LogStructuredStoreImpl implements LogStructuredStore {
 
     private static final Logger logger = LoggerFactory.getLogger(LogStructuredStoreImpl.class);
+    /**
+     * This is the minimum number of keys read by one task of a parallel
+     * multi-get. Smaller ranges do not pay off the scheduling of the task.
+     */
+    private static final int MIN_KEYS_PER_GET_TASK = 64;
+    /**
+     * A failed memtable flush is retried this often. The delay before the first
+     * retry is doubled for each further retry.
+     */
+    private static final int MEMTABLE_FLUSH_RETRIES = 5;
+    private static final long MEMTABLE_FLUSH_RETRY_DELAY = 100;
 
     /**
      * This executor is used to run scheduled compactions as a single thread.
@@ -58,19 +90,86 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
 	}
     });
 
+    /**
+     * This executor is used to flush immutable memtables in background.
+     */
+    private final ExecutorService memtableFlushExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+	@Override
+	public Thread newThread(Runnable r) {
+	    return new Thread(r, "ductiledb-memtable-flush");
+	}
+    });
+
+    /**
+     * This executor is used to flush the commit log periodically in case
+     * {@link CommitLogDurability#PERIODIC} is configured.
+     */
+    private ScheduledExecutorService commitLogFlushExecutor = null;
+
+    /**
+     * This lock is only taken for structural changes like the commit log
+     * rollover. Gets and scanners do not take it, they read a snapshot of the
+     * {@link StoreVersion}.
+     */
     private final ReentrantReadWriteLock reentrantReadWriteLock = new ReentrantReadWriteLock(true);
     private final ReadLock readLock = reentrantReadWriteLock.readLock();
     private final WriteLock writeLock = reentrantReadWriteLock.writeLock();
 
-    private final Memtable memtable = new Memtable();
+    /**
+     * This lock is held by the thread which currently appends queued rows to the
+     * commit log. If the write lock is needed, too, it has to be acquired before
+     * this lock.
+     */
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Queue<CommitLogEntry> commitQueue = new ConcurrentLinkedQueue<>();
+
+    private final Semaphore immutableMemtableSlots;
+    /**
+     * These are the commit logs queued for compaction with their sizes.
+     */
+    private final Map<File, Long> pendingCompactions = new ConcurrentHashMap<>();
     private File commitLogFile = null;
-    private DataFileWriter commitLogWriter = null;
-    private DataFileSet dataSet = null;
+    private CommitLogSegmentWriter commitLogWriter = null;
+    private volatile long flushedCommitLogPosition = 0;
+    private long commitLogCreationTime = 0;
+    /**
+     * These are the index entries of the current commit log which are not
+     * written to a checkpoint, yet. It is guarded by the commit lock.
+     */
+    private List<IndexEntry> uncheckpointedEntries = new ArrayList<>();
+    private long checkpointPosition = 0;
+    /**
+     * This is the state read by gets and scanners: the active memtable, the
+     * immutable memtables, which are the memtables replaced on rollover and not
+     * flushed, yet, the flushed commit logs and the data files. It is only
+     * replaced by the synchronized publish methods. The active memtable is only
+     * replaced with the commit lock held, so writers use the memtable of the
+     * current version.
+     */
+    private volatile StoreVersion storeVersion = new StoreVersion(new Memtable(), null);
+    private volatile MergeOperator mergeOperator = null;
+    /**
+     * This flag is set before the version is retired on close, so reads stop
+     * retrying to acquire it.
+     */
+    private volatile boolean closed = false;
+    /**
+     * This is the failure of a memtable flush which did not succeed after all
+     * retries. Its memtable cannot be dropped, so writes are rejected afterwards
+     * instead of filling the memory. Reads continue to work.
+     */
+    private volatile StorageException flushFailure = null;
     private boolean runCompactions = true;
 
     private final Storage storage;
+    /**
+     * This is the storage used to read data files, index files and flushed
+     * commit logs. It reads via the shared {@link BlockCache} if it is enabled.
+     */
+    private final Storage readStorage;
     private final File directory;
     private final LogStoreConfiguration configuration;
+    private final BlockCodec blockCodec;
 
     /**
      * This field contains the {@link MetricRegistry} for the metrics of the store.
@@ -79,6 +178,13 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
     private final Counter compactionCounter;
     private final Timer compactionTime;
     private final Timer sstableGenerationTimer;
+    private final Histogram writeBatchSize;
+    private final Timer writeBatchTimer;
+    private final Counter usefulBloomFilterProbes;
+    private final Counter uselessBloomFilterProbes;
+    private final CommitLogSizePolicy commitLogSizePolicy;
+    private final CommitLogSegmentManager segmentManager;
+    private final WriteController writeController;
 
     LogStructuredStoreImpl(//
 	    Storage storage, //
@@ -88,9 +194,35 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
 	this.storage = storage;
 	this.directory = directory;
 	this.configuration = configuration;
+	this.blockCodec = BlockCodecs.get(configuration.getBlockCodec());
+	this.immutableMemtableSlots = new Semaphore(configuration.getMaxImmutableMemtables());
 	compactionCounter = registry.counter(LogStructuredStoreMetric.COMPACTION_COUNTER.name());
 	compactionTime = registry.timer(LogStructuredStoreMetric.COMPACTION_TIMER.name());
 	sstableGenerationTimer = registry.timer(LogStructuredStoreMetric.SSTABLE_GENERATION_TIMER.name());
+	writeBatchSize = registry.histogram(LogStructuredStoreMetric.WRITE_BATCH_SIZE.name());
+	writeBatchTimer = registry.timer(LogStructuredStoreMetric.WRITE_BATCH_TIMER.name());
+	usefulBloomFilterProbes = registry.counter(LogStructuredStoreMetric.BLOOM_FILTER_USEFUL.name());
+	uselessBloomFilterProbes = registry.counter(LogStructuredStoreMetric.BLOOM_FILTER_USELESS.name());
+	BlockCacheMetrics blockCacheMetrics = new BlockCacheMetrics(
+		registry.counter(LogStructuredStoreMetric.BLOCK_CACHE_HITS.name()),
+		registry.counter(LogStructuredStoreMetric.BLOCK_CACHE_MISSES.name()),
+		registry.counter(LogStructuredStoreMetric.BLOCK_CACHE_EVICTIONS.name()));
+	if (configuration.getBlockCacheSize() > 0) {
+	    readStorage = new BlockCachedStorage(storage,
+		    BlockCache.getSharedInstance(storage, configuration.getBlockCacheSize()), blockCacheMetrics);
+	} else {
+	    readStorage = storage;
+	}
+	commitLogSizePolicy = new CommitLogSizePolicy(configuration);
+	registry.register(LogStructuredStoreMetric.COMMIT_LOG_SIZE.name(),
+		(Gauge<Long>) () -> commitLogSizePolicy.getCommitLogSize());
+	segmentManager = new CommitLogSegmentManager(storage, directory, configuration,
+		() -> commitLogSizePolicy.getCommitLogSize(),
+		registry.counter(LogStructuredStoreMetric.COMMIT_LOG_SEGMENTS_ALLOCATED.name()),
+		registry.counter(LogStructuredStoreMetric.COMMIT_LOG_SEGMENTS_RECYCLED.name()));
+	writeController = new WriteController(configuration, () -> pendingCompactions.size(),
+		() -> pendingCompactions.values().stream().mapToLong(Long::longValue).sum(),
+		() -> storeVersion.getImmutableMemtables().size(), registry);
     }
 
     public final Storage getStorage() {
@@ -145,6 +277,16 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
 	return writeLock;
     }
 
+    @Override
+    public void setMergeOperator(MergeOperator mergeOperator) {
+	this.mergeOperator = mergeOperator;
+    }
+
+    @Override
+    public MergeOperator getMergeOperator() {
+	return mergeOperator;
+    }
+
     @Override
     public String toString() {
 	return "LogStructuredStore:" + directory.getPath();
@@ -155,13 +297,28 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
 	logger.info("Closing column family engine '" + toString() + "'...");
 	StopWatch stopWatch = new StopWatch();
 	stopWatch.start();
-	if (commitLogWriter != null) {
-	    try {
+	if (commitLogFlushExecutor != null) {
+	    commitLogFlushExecutor.shutdown();
+	    commitLogFlushExecutor = null;
+	}
+	commitLock.lock();
+	try {
+	    if (commitLogWriter != null) {
+		// The final checkpoint lets the next start skip reading the commit log.
+		checkpointCommitLog();
 		commitLogWriter.close();
 		commitLogWriter = null;
-	    } catch (IOException e) {
-		logger.warn("Could not cleanly close commit log.", e);
 	    }
+	} catch (IOException e) {
+	    logger.warn("Could not cleanly close commit log.", e);
+	} finally {
+	    commitLock.unlock();
+	}
+	memtableFlushExecutor.shutdown();
+	try {
+	    memtableFlushExecutor.awaitTermination(1, TimeUnit.MINUTES);
+	} catch (InterruptedException e) {
+	    logger.warn("Shutdown of memtable flush executor took too long.", e);
 	}
 	compactionExecutor.shutdown();
 	try {
@@ -169,6 +326,9 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
 	} catch (InterruptedException e) {
 	    logger.warn("Shutdown of sstable creation executor took too long.", e);
 	}
+	closed = true;
+	storeVersion.getFlushedCommitLogs().forEach(flushedCommitLog -> flushedCommitLog.retire());
+	retireDataSet(storeVersion.getDataSet());
 	stopWatch.stop();
 	logger.info("Column family engine '" + toString() + "' closed in " + stopWatch.getMillis() + "ms.");
     }
@@ -182,10 +342,13 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
 	    if (!storage.exists(directory)) {
 		storage.createDirectory(directory);
 	    }
-	    processExistingCommitLog();
-	    createEmptyCommitLog();
+	    // The data files are opened first, so compactions started for existing
+	    // commit logs publish their results on top of them.
 	    checkDataFiles();
 	    openDataFiles();
+	    processExistingCommitLog();
+	    createEmptyCommitLog();
+	    startPeriodicCommitLogFlush();
 	    stopWatch.stop();
 	    logger.info("Column family engine '" + toString() + "' started in " + stopWatch.getMillis() + "ms.");
 	} catch (IOException e) {
@@ -194,34 +357,25 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
     }
 
     private void processExistingCommitLog() throws IOException, StorageException {
-	for (File commitLog : storage.list(directory, new CommitLogFilenameFilter())) {
-	    File indexName = DataFileSet.getIndexName(commitLog);
-	    if (!storage.exists(indexName)) {
-		createIndex(commitLog, indexName);
+	List<File> commitLogs = new ArrayList<>();
+	storage.list(directory, new CommitLogFilenameFilter()).forEach(commitLog -> commitLogs.add(commitLog));
+	// Oldest commit logs need to be compacted first.
+	Collections.sort(commitLogs);
+	List<File> unindexedCommitLogs = new ArrayList<>();
+	for (File commitLog : commitLogs) {
+	    if (!storage.exists(DataFileSet.getIndexName(commitLog))) {
+		unindexedCommitLogs.add(commitLog);
+	    } else {
+		CommitLogRecovery.deleteCheckpoint(storage, commitLog);
 	    }
-	    runCompaction(commitLog);
 	}
-    }
-
-    private void createIndex(File commitLog, File indexName) {
-	try (DataFileReader dataFileReader = new DataFileReader(storage, commitLog)) {
-	    long offset = dataFileReader.getPosition();
-	    Row row = dataFileReader.readRow();
-	    Memtable memtable = new Memtable();
-	    while (row != null) {
-		if (row.getData() != null) {
-		    memtable.put(new IndexEntry(row.getKey(), indexName, offset));
-		}
-		offset = dataFileReader.getPosition();
-		row = dataFileReader.readRow();
+	CommitLogRecovery.recover(storage, unindexedCommitLogs, configuration.getBloomFilterBitsPerKey());
+	for (File commitLog : commitLogs) {
+	    if (!storage.exists(LogStructuredStore.getCompactedName(commitLog))) {
+		FlushedCommitLog flushedCommitLog = FlushedCommitLog.open(readStorage, segmentManager, commitLog);
+		publishRecoveredCommitLog(flushedCommitLog);
+		runCompaction(commitLog, flushedCommitLog.getLastOffset());
 	    }
-	    try (IndexFileWriter indexFileWriter = new IndexFileWriter(storage, indexName, commitLog)) {
-		for (IndexEntry entry : memtable) {
-		    indexFileWriter.writeIndexEntry(entry.getRowKey(), entry.getOffset());
-		}
-	    }
-	} catch (IOException e) {
-	    throw new StorageException("Could not create index for commit log '" + commitLog + "'.", e);
 	}
     }
 
@@ -231,15 +385,38 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
 		commitLogWriter.close();
 		commitLogWriter = null;
 	    }
-	    memtable.clear();
-	    commitLogFile = new File(directory,
-		    LogStructuredStore.createBaseFilename(COMMIT_LOG_PREFIX) + DATA_FILE_SUFFIX);
-	    commitLogWriter = new DataFileWriter(storage, commitLogFile);
+	    // Small commit logs can roll over twice within a millisecond.
+	    do {
+		commitLogFile = new File(directory,
+			LogStructuredStore.createBaseFilename(COMMIT_LOG_PREFIX) + DATA_FILE_SUFFIX);
+	    } while (storage.exists(commitLogFile));
+	    commitLogWriter = segmentManager.openSegment(commitLogFile, memtableFlushExecutor);
+	    commitLogCreationTime = System.currentTimeMillis();
+	    flushedCommitLogPosition = 0;
+	    uncheckpointedEntries = new ArrayList<>();
+	    checkpointPosition = 0;
 	} catch (IOException e) {
 	    throw new StorageException("Could not create empty " + commitLogFile.getName() + ".", e);
 	}
     }
 
+    private void startPeriodicCommitLogFlush() {
+	if (configuration.getCommitLogDurability() != CommitLogDurability.PERIODIC) {
+	    return;
+	}
+	long interval = configuration.getCommitLogFlushInterval();
+	commitLogFlushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+	    @Override
+	    public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, "ductiledb-commitlog-flush");
+		thread.setDaemon(true);
+		return thread;
+	    }
+	});
+	commitLogFlushExecutor.scheduleWithFixedDelay(() -> flushCommitLog(), interval, interval,
+		TimeUnit.MILLISECONDS);
+    }
+
     private void checkDataFiles() {
 	for (File file : storage.list(directory, new MetadataFilenameFilter())) {
 	    new DataFileSet(storage, directory, file).check();
@@ -248,7 +425,105 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
     }
 
     private void openDataFiles() {
-	dataSet = new DataFileSet(storage, directory);
+	publishVersion(new StoreVersion(new Memtable(configuration.isMemtableOffHeap()), openDataFileSet()));
+    }
+
+    private DataFileSet openDataFileSet() {
+	return new DataFileSet(readStorage, directory, usefulBloomFilterProbes, uselessBloomFilterProbes,
+		configuration.isVerifyChecksums());
+    }
+
+    private synchronized void publishVersion(StoreVersion version) {
+	storeVersion = version;
+    }
+
+    /**
+     * Replaces the active memtable by a new one. The former memtable becomes
+     * immutable within the same version, so reads always see its rows.
+     */
+    private synchronized void publishRollover(ImmutableMemtable immutableMemtable) {
+	storeVersion = storeVersion.rolledOver(immutableMemtable, new Memtable(configuration.isMemtableOffHeap()));
+    }
+
+    /**
+     * Replaces the flushed memtable by its commit log. This needs to happen after
+     * the index file of the commit log is written.
+     */
+    private synchronized void publishFlush(ImmutableMemtable immutableMemtable, FlushedCommitLog flushedCommitLog) {
+	storeVersion = storeVersion.flushed(immutableMemtable, flushedCommitLog);
+    }
+
+    private synchronized void publishRecoveredCommitLog(FlushedCommitLog flushedCommitLog) {
+	storeVersion = storeVersion.recovered(flushedCommitLog);
+    }
+
+    /**
+     * Publishes the data files written by the compaction of the given commit log
+     * and retires the commit log and the replaced data files. This needs to
+     * happen before the commit log is marked as compacted, because it might be
+     * recycled afterwards.
+     */
+    private synchronized void publishCompaction(File commitLog, DataFileSet dataSet) {
+	FlushedCommitLog flushedCommitLog = storeVersion.getFlushedCommitLog(commitLog);
+	DataFileSet replacedDataSet = storeVersion.getDataSet();
+	storeVersion = storeVersion.compacted(dataSet, commitLog);
+	if (flushedCommitLog != null) {
+	    flushedCommitLog.retire();
+	}
+	retireDataSet(replacedDataSet);
+    }
+
+    /**
+     * Publishes the data files of an ingestion and retires the replaced data
+     * files.
+     */
+    private synchronized void publishIngestion(DataFileSet dataSet) {
+	DataFileSet replacedDataSet = storeVersion.getDataSet();
+	storeVersion = storeVersion.ingested(dataSet);
+	retireDataSet(replacedDataSet);
+    }
+
+    /**
+     * Returns the current version with references to its commit logs and data
+     * files, which need to be released after use. No lock is taken: in case a
+     * compaction retired a part of the version after it was read, the version
+     * was replaced already and the next one is tried. The thread yields between
+     * the tries, so the compaction can publish the next version. Once the store
+     * is closed, its version is retired for good and the read fails.
+     */
+    private StoreVersion acquireVersion() {
+	while (true) {
+	    StoreVersion version = storeVersion;
+	    if (version.retain()) {
+		return version;
+	    }
+	    if (closed) {
+		throw new StorageException("Store '" + directory + "' is closed.");
+	    }
+	    Thread.yield();
+	}
+    }
+
+    /**
+     * Releases the readers of a data file set as soon as the running gets and
+     * scanners are finished. For memory mapped files, this releases the mappings.
+     * Stores which were never opened have no data set.
+     */
+    private void retireDataSet(DataFileSet dataSet) {
+	if (dataSet == null) {
+	    return;
+	}
+	try {
+	    dataSet.close();
+	} catch (IOException e) {
+	    logger.warn("Could not close readers of replaced data files.", e);
+	}
+    }
+
+    @Override
+    public Map<File, DataFileStatistics> getDataFileStatistics() {
+	DataFileSet dataSet = storeVersion.getDataSet();
+	return dataSet != null ? dataSet.getStatistics() : Collections.emptyMap();
     }
 
     @Override
@@ -257,8 +532,11 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
     }
 
     public void runCompaction() {
-	for (File commitLog : getCurrentCommitLogs()) {
-	    runCompaction(commitLog);
+	// Oldest commit logs need to be compacted first.
+	List<FlushedCommitLog> flushedCommitLogs = new ArrayList<>(storeVersion.getFlushedCommitLogs());
+	Collections.reverse(flushedCommitLogs);
+	for (FlushedCommitLog flushedCommitLog : flushedCommitLogs) {
+	    runCompaction(flushedCommitLog.getCommitLogFile(), flushedCommitLog.getLastOffset());
 	}
 	try {
 	    rolloverCommitLog();
@@ -267,72 +545,248 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
 	}
     }
 
-    private List<File> getCurrentCommitLogs() {
-	List<File> commitLogs = new ArrayList<>();
-	for (File commitLog : storage.list(directory, new UsableCommitLogFilenameFilter(storage))) {
-	    if (commitLog.equals(commitLogFile)) {
-		continue;
-	    }
-	    commitLogs.add(commitLog);
-	}
-	Collections.sort(commitLogs);
-	Collections.reverse(commitLogs);
-	return commitLogs;
-    }
-
-    private void runCompaction(File commitLogFile) {
+    /**
+     * Queues the compaction of a commit log.
+     *
+     * @param commitLogFile
+     *            is the commit log to be compacted.
+     * @param commitLogSize
+     *            is the number of bytes written to the commit log. It is counted
+     *            as pending compaction bytes by the {@link WriteController}. The
+     *            file length is not used, because segments are preallocated.
+     */
+    private void runCompaction(File commitLogFile, long commitLogSize) {
 	if (runCompactions) {
+	    if (pendingCompactions.putIfAbsent(commitLogFile, commitLogSize) != null) {
+		// The compaction is queued already.
+		return;
+	    }
 	    compactionExecutor.submit(new Runnable() {
 		@Override
 		public void run() {
 		    try {
 			Context time = compactionTime.time();
-			Compactor.run(storage, directory, commitLogFile, configuration.getBufferSize(),
-				configuration.getMaxDataFileSize(), configuration.getMaxFileGenerations());
-			openDataFiles();
+			File metadataFile = Compactor.run(storage, directory, commitLogFile,
+				configuration.getBufferSize(), configuration.getMaxDataFileSize(),
+				configuration.getMaxFileGenerations(), configuration.getBloomFilterBitsPerKey(),
+				configuration.getDataBlockSize(), blockCodec, configuration.isMd5Files(),
+				mergeOperator);
+			publishCompaction(commitLogFile, new DataFileSet(readStorage, directory, metadataFile,
+				usefulBloomFilterProbes, uselessBloomFilterProbes, configuration.isVerifyChecksums()));
 			deleteCommitLogFiles(commitLogFile);
 			compactionCounter.inc();
-			time.stop();
+			commitLogSizePolicy.compactionFinished(TimeUnit.NANOSECONDS.toMillis(time.stop()));
 		    } catch (Exception e) {
 			logger.error("Could not run compaction.", e);
+		    } finally {
+			pendingCompactions.remove(commitLogFile);
+			writeController.signal();
 		    }
 		}
 	    });
 	}
     }
 
+    /**
+     * The rows written before the ingestion must not shadow the ingested rows.
+     * So the memtable is rolled over first. The ingestion is queued on the
+     * compaction thread by the flusher after the flush of the memtable, so it
+     * runs after the compactions of all commit logs written before. It is never
+     * interleaved with a compaction. In case one of these commit logs could not
+     * be flushed or compacted, the ingestion is rejected.
+     */
+    @Override
+    public void ingestFiles(File metadataFile) {
+	rolloverCommitLog();
+	Set<File> olderCommitLogs = getUncompactedCommitLogs(storeVersion);
+	Future<Future<?>> queued = memtableFlushExecutor.submit(() -> compactionExecutor.submit(() -> {
+	    if (!Collections.disjoint(olderCommitLogs, getUncompactedCommitLogs(storeVersion))) {
+		throw new StorageException("Could not ingest '" + metadataFile
+			+ "', because commit logs written before are not compacted.");
+	    }
+	    File ingestedMetadataFile = FileIngestion.run(storage, directory, metadataFile,
+		    configuration.getBufferSize(), configuration.getMaxDataFileSize(),
+		    configuration.getMaxFileGenerations(), configuration.getBloomFilterBitsPerKey(),
+		    configuration.getDataBlockSize(), blockCodec, configuration.isMd5Files());
+	    if (ingestedMetadataFile != null) {
+		publishIngestion(new DataFileSet(readStorage, directory, ingestedMetadataFile,
+			usefulBloomFilterProbes, uselessBloomFilterProbes, configuration.isVerifyChecksums()));
+	    }
+	}));
+	try {
+	    queued.get().get();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new StorageException("Ingestion of '" + metadataFile + "' was interrupted.", e);
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof RuntimeException) {
+		throw (RuntimeException) e.getCause();
+	    }
+	    throw new StorageException("Could not ingest '" + metadataFile + "'.", e.getCause());
+	}
+    }
+
+    /**
+     * Returns the commit logs of the version which are not compacted into its
+     * data files, yet.
+     */
+    private static Set<File> getUncompactedCommitLogs(StoreVersion version) {
+	Set<File> commitLogs = new HashSet<>();
+	version.getImmutableMemtables()
+		.forEach(immutableMemtable -> commitLogs.add(immutableMemtable.getCommitLogFile()));
+	version.getFlushedCommitLogs().forEach(flushedCommitLog -> commitLogs.add(flushedCommitLog.getCommitLogFile()));
+	return commitLogs;
+    }
+
     private void deleteCommitLogFiles(File commitLogFile) throws IOException {
 	try (StorageOutputStream compacted = storage.create(LogStructuredStore.getCompactedName(commitLogFile))) {
 	    compacted.write(Bytes.fromInstant(Instant.now()));
 	}
     }
 
+    private void rolloverCommitLogIfFull() {
+	rolloverCommitLog(true);
+    }
+
+    /**
+     * The rollover is triggered by the memory footprint of the memtable. The
+     * commit log size of the {@link CommitLogSizePolicy} is kept as upper bound,
+     * because the commit log also grows with overwrites of the same rows which do
+     * not grow the memtable.
+     */
+    private boolean isRolloverNeeded() {
+	return (storeVersion.getMemtable().getSizeInBytes() >= configuration.getMaxMemtableSize())
+		|| (commitLogWriter.getPosition() >= commitLogSizePolicy.getCommitLogSize());
+    }
+
     private void rolloverCommitLog() {
+	rolloverCommitLog(false);
+    }
+
+    /**
+     * This method replaces the current memtable and commit log by new ones. The
+     * former memtable becomes immutable, stays visible for reads and is flushed in
+     * background. The writers are only blocked for switching the memtables, or if
+     * the maximum number of immutable memtables is reached until the flusher
+     * catches up.
+     * 
+     * @param onlyIfFull
+     *            is to be set to <code>true</code> to roll over only in case the
+     *            memtable or commit log is full.
+     */
+    private void rolloverCommitLog(boolean onlyIfFull) {
+	try {
+	    immutableMemtableSlots.acquire();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new StorageException("Interrupted while waiting for memtable flush.", e);
+	}
+	boolean rolledOver = false;
+	writeLock.lock();
+	commitLock.lock();
 	try {
 	    if (commitLogWriter == null) {
 		return;
 	    }
-	    logger.info("Roll over " + commitLogFile.getName() + " with " + configuration.getMaxCommitLogSize()
-		    + " bytes.");
-	    if (commitLogWriter.getPosition() == 0) {
-		logger.info("Do not roll over " + commitLogFile.getName() + " because size is 0 bytes.");
+	    if (onlyIfFull && !isRolloverNeeded()) {
 		return;
 	    }
-	    File commitLogFileSave = this.commitLogFile;
-	    createIndexFile();
+	    logger.info("Roll over " + commitLogFile.getName() + " with " + commitLogWriter.getPosition() + " bytes.");
+	    if (commitLogWriter.isEmpty()) {
+		logger.info("Do not roll over " + commitLogFile.getName() + " because it is empty.");
+		return;
+	    }
+	    Memtable memtable = storeVersion.getMemtable();
+	    commitLogSizePolicy.commitLogRolledOver(commitLogWriter.getPosition(),
+		    System.currentTimeMillis() - commitLogCreationTime, memtable.getSizeInBytes());
+	    ImmutableMemtable immutableMemtable = new ImmutableMemtable(commitLogFile, commitLogWriter.getPosition(),
+		    memtable);
+	    publishRollover(immutableMemtable);
 	    createEmptyCommitLog();
-	    runCompaction(commitLogFileSave);
-	} catch (IOException e) {
-	    throw new StorageException("Could not rollover " + commitLogFile.getName(), e);
+	    memtableFlushExecutor.submit(() -> flushMemtable(immutableMemtable));
+	    rolledOver = true;
+	} finally {
+	    commitLock.unlock();
+	    writeLock.unlock();
+	    if (!rolledOver) {
+		immutableMemtableSlots.release();
+	    }
+	}
+    }
+
+    /**
+     * This method is run by the flusher to write the index file of the commit log
+     * of an immutable memtable. Afterwards, the memtable is dropped, because the
+     * rows are readable from the commit log, and the compaction is started. A
+     * failed flush is retried with growing delays. If it fails for good, the
+     * store rejects writes and the commit log is indexed on next start. The
+     * memtables rolled over afterwards are not flushed either, because their
+     * commit logs must not be compacted before the failed one.
+     */
+    private void flushMemtable(ImmutableMemtable immutableMemtable) {
+	File commitLog = immutableMemtable.getCommitLogFile();
+	try {
+	    if (flushFailure != null) {
+		logger.warn("Do not flush memtable of " + commitLog.getName() + " after a failed flush.");
+		return;
+	    }
+	    long delay = MEMTABLE_FLUSH_RETRY_DELAY;
+	    for (int retry = 0;; ++retry) {
+		try {
+		    Memtable flushedMemtable = immutableMemtable.getMemtable();
+		    createIndexFile(commitLog, flushedMemtable);
+		    CommitLogRecovery.deleteCheckpoint(storage, commitLog);
+		    publishFlush(immutableMemtable, FlushedCommitLog.create(readStorage, segmentManager, commitLog,
+			    flushedMemtable, flushedMemtable.size()));
+		    runCompaction(commitLog, immutableMemtable.getCommitLogSize());
+		    return;
+		} catch (IOException | StorageException e) {
+		    if (retry == MEMTABLE_FLUSH_RETRIES) {
+			logger.error("Could not flush memtable of " + commitLog.getName() + ", reject writes.", e);
+			flushFailure = new StorageException(
+				"Could not flush memtable of " + commitLog.getName() + ".", e);
+			return;
+		    }
+		    logger.warn("Could not flush memtable of " + commitLog.getName() + ", retry in " + delay + "ms.",
+			    e);
+		    deleteIndexFile(commitLog);
+		    TimeUnit.MILLISECONDS.sleep(delay);
+		    delay *= 2;
+		}
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    flushFailure = new StorageException("Flush of memtable of " + commitLog.getName() + " was interrupted.",
+		    e);
+	} finally {
+	    immutableMemtableSlots.release();
+	    writeController.signal();
+	}
+    }
+
+    /**
+     * Removes the index file and Bloom filter of a failed flush, so the flush can
+     * be retried.
+     */
+    private void deleteIndexFile(File commitLog) {
+	for (File file : new File[] { DataFileSet.getIndexName(commitLog), BloomFilter.getBloomFilterName(commitLog) }) {
+	    try {
+		if (storage.exists(file)) {
+		    storage.delete(file);
+		}
+	    } catch (RuntimeException e) {
+		logger.warn("Could not delete " + file.getName() + ".", e);
+	    }
 	}
     }
 
-    private void createIndexFile() throws IOException, StorageException {
+    private void createIndexFile(File commitLog, Memtable flushedMemtable) throws IOException, StorageException {
 	logger.info("Creating new SSTtable index...");
 	Context timer = sstableGenerationTimer.time();
-	File indexFile = DataFileSet.getIndexName(commitLogFile);
-	try (IndexFileWriter indexFileWriter = new IndexFileWriter(storage, indexFile, commitLogFile)) {
-	    for (IndexEntry indexEntry : memtable) {
+	File indexFile = DataFileSet.getIndexName(commitLog);
+	try (IndexFileWriter indexFileWriter = new IndexFileWriter(storage, indexFile, commitLog,
+		configuration.getBloomFilterBitsPerKey())) {
+	    for (IndexEntry indexEntry : flushedMemtable) {
 		indexFileWriter.writeIndexEntry(indexEntry.getRowKey(), indexEntry.getOffset());
 	    }
 	    indexFileWriter.flush();
@@ -343,86 +797,279 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
 
     @Override
     public void put(Key rowKey, byte[] data) {
-	writeLock.lock();
+	writeCommitLog(rowKey, null, data);
+    }
+
+    @Override
+    public void merge(Key rowKey, byte[] operand) {
+	if (mergeOperator == null) {
+	    throw new StorageException("No merge operator is set for '" + toString() + "'.");
+	}
+	writeCommitLog(new CommitLogEntry(new Row(rowKey, null, operand, true)));
+    }
+
+    @Override
+    public byte[] mergeAndGet(Key rowKey, byte[] operand) {
+	if (mergeOperator == null) {
+	    throw new StorageException("No merge operator is set for '" + toString() + "'.");
+	}
+	CommitLogEntry entry = new CommitLogEntry(new Row(rowKey, null, operand, true), true);
 	try {
-	    writeCommitLog(rowKey, null, data);
+	    writeCommitLog(entry);
+	    Row row = entry.getWrittenRow();
+	    if (!row.isMergeOperand()) {
+		return row.getData();
+	    }
+	    StoreVersion version = entry.getWrittenVersion();
+	    if (version == null) {
+		throw new StorageException("Store '" + directory + "' is closed.");
+	    }
+	    /*
+	     * The written operand contains all operands of the memtable it was written
+	     * to. The older versions of the row are immutable, so the result does not
+	     * depend on later writes.
+	     */
+	    RowMerger rowMerger = new RowMerger(rowKey, mergeOperator);
+	    rowMerger.add(row);
+	    readOlderRows(version, rowKey, rowMerger);
+	    return rowMerger.getRow().getData();
 	} finally {
-	    writeLock.unlock();
+	    entry.releaseWrittenVersion();
 	}
     }
 
     @Override
     public byte[] get(Key rowKey) {
-	readLock.lock();
+	StoreVersion version = acquireVersion();
+	try {
+	    RowMerger rowMerger = new RowMerger(rowKey, mergeOperator);
+	    readRow(version, rowKey, rowMerger);
+	    Row row = rowMerger.getRow();
+	    return (row == null) || row.wasDeleted() ? null : row.getData();
+	} finally {
+	    version.release();
+	}
+    }
+
+    @Override
+    public List<byte[]> get(Collection<Key> rowKeys) {
+	Key[] sortedKeys = sortKeys(rowKeys);
+	return inRequestOrder(rowKeys, sortedKeys, readRows(sortedKeys, 0, sortedKeys.length));
+    }
+
+    @Override
+    public List<byte[]> get(Collection<Key> rowKeys, ExecutorService executorService) {
+	Key[] sortedKeys = sortKeys(rowKeys);
+	int taskCount = Math.max(1,
+		Math.min(Runtime.getRuntime().availableProcessors(), sortedKeys.length / MIN_KEYS_PER_GET_TASK));
+	if (taskCount == 1) {
+	    return inRequestOrder(rowKeys, sortedKeys, readRows(sortedKeys, 0, sortedKeys.length));
+	}
+	List<Future<byte[][]>> futures = new ArrayList<>(taskCount);
+	for (int task = 0; task < taskCount; ++task) {
+	    int start = (int) ((long) sortedKeys.length * task / taskCount);
+	    int end = (int) ((long) sortedKeys.length * (task + 1) / taskCount);
+	    futures.add(executorService.submit(() -> readRows(sortedKeys, start, end)));
+	}
+	byte[][] values = new byte[sortedKeys.length][];
+	try {
+	    int start = 0;
+	    for (Future<byte[][]> future : futures) {
+		byte[][] rangeValues = future.get();
+		System.arraycopy(rangeValues, 0, values, start, rangeValues.length);
+		start += rangeValues.length;
+	    }
+	} catch (InterruptedException e) {
+	    futures.forEach(future -> future.cancel(true));
+	    Thread.currentThread().interrupt();
+	    throw new StorageException("Reading of rows was interrupted.", e);
+	} catch (ExecutionException e) {
+	    futures.forEach(future -> future.cancel(true));
+	    if (e.getCause() instanceof StorageException) {
+		throw (StorageException) e.getCause();
+	    }
+	    throw new StorageException("Could not read rows.", e.getCause());
+	}
+	return inRequestOrder(rowKeys, sortedKeys, values);
+    }
+
+    private static Key[] sortKeys(Collection<Key> rowKeys) {
+	return new TreeSet<>(rowKeys).toArray(new Key[0]);
+    }
+
+    private static List<byte[]> inRequestOrder(Collection<Key> rowKeys, Key[] sortedKeys, byte[][] values) {
+	List<byte[]> result = new ArrayList<>(rowKeys.size());
+	for (Key rowKey : rowKeys) {
+	    result.add(values[Arrays.binarySearch(sortedKeys, rowKey)]);
+	}
+	return result;
+    }
+
+    /**
+     * Reads the rows of a range of sorted keys like
+     * {@link #readRow(StoreVersion, Key, RowMerger)},
+     * but every part of the store is probed for all keys before the next older
+     * part is probed.
+     *
+     * @return The values of the keys between start (inclusive) and end
+     *         (exclusive) are returned.
+     */
+    private byte[][] readRows(Key[] sortedKeys, int start, int end) {
+	StoreVersion version = acquireVersion();
 	try {
-	    // Read from memtable
-	    {
-		Row row = readFromMemtable(rowKey);
-		if (row != null) {
-		    return row.wasDeleted() ? null : row.getData();
+	    int count = end - start;
+	    RowMerger[] rowMergers = new RowMerger[count];
+	    boolean[] resolved = new boolean[count];
+	    for (int i = 0; i < count; ++i) {
+		rowMergers[i] = new RowMerger(sortedKeys[start + i], mergeOperator);
+		resolved[i] = rowMergers[i].add(version.getMemtable().getRow(sortedKeys[start + i]));
+	    }
+	    for (ImmutableMemtable immutableMemtable : version.getImmutableMemtables()) {
+		for (int i = 0; i < count; ++i) {
+		    if (!resolved[i]) {
+			resolved[i] = rowMergers[i].add(immutableMemtable.getMemtable().getRow(sortedKeys[start + i]));
+		    }
+		}
+	    }
+	    for (FlushedCommitLog commitLog : version.getFlushedCommitLogs()) {
+		readFromCommitLog(commitLog, sortedKeys, start, rowMergers, resolved);
+	    }
+	    List<Key> unresolvedKeys = new ArrayList<>();
+	    List<RowMerger> unresolvedRowMergers = new ArrayList<>();
+	    for (int i = 0; i < count; ++i) {
+		if (!resolved[i]) {
+		    unresolvedKeys.add(sortedKeys[start + i]);
+		    unresolvedRowMergers.add(rowMergers[i]);
 		}
 	    }
-	    // Read from commit logs
-	    {
-		Row row = readFromCommitLogs(rowKey);
-		if (row != null) {
-		    return row.wasDeleted() ? null : row.getData();
+	    if (!unresolvedKeys.isEmpty()) {
+		List<Row> rows = version.getDataSet().getRows(unresolvedKeys);
+		for (int i = 0; i < rows.size(); ++i) {
+		    unresolvedRowMergers.get(i).add(rows.get(i));
 		}
 	    }
-	    // Read from data files
-	    {
-		Row row = readFromDataFiles(rowKey);
-		return row != null ? row.getData() : null;
+	    byte[][] values = new byte[count][];
+	    for (int i = 0; i < count; ++i) {
+		Row row = rowMergers[i].getRow();
+		values[i] = (row == null) || row.wasDeleted() ? null : row.getData();
 	    }
+	    return values;
+	} catch (IOException e) {
+	    throw new StorageException("Could not read data.", e);
 	} finally {
-	    readLock.unlock();
+	    version.release();
 	}
     }
 
-    private Row readFromMemtable(Key rowKey) {
-	IndexEntry indexEntry = memtable.get(rowKey);
-	if (indexEntry == null) {
-	    return null;
+    /**
+     * Reads the unresolved rows from a flushed commit log. The rows are read in
+     * the order of their offsets, so the commit log is read forward.
+     */
+    private void readFromCommitLog(FlushedCommitLog commitLog, Key[] sortedKeys, int start, RowMerger[] rowMergers,
+	    boolean[] resolved) throws IOException {
+	BloomFilter bloomFilter = commitLog.getBloomFilter();
+	int[] positions = new int[rowMergers.length];
+	long[] offsets = new long[rowMergers.length];
+	int count = 0;
+	for (int i = 0; i < rowMergers.length; ++i) {
+	    if (resolved[i]) {
+		continue;
+	    }
+	    Key rowKey = sortedKeys[start + i];
+	    if ((bloomFilter != null) && !bloomFilter.mightContain(rowKey)) {
+		usefulBloomFilterProbes.inc();
+		continue;
+	    }
+	    long offset = commitLog.getOffset(rowKey);
+	    if (offset < 0) {
+		if (bloomFilter != null) {
+		    uselessBloomFilterProbes.inc();
+		}
+		continue;
+	    }
+	    positions[count] = i;
+	    offsets[count] = offset;
+	    count++;
 	}
-	try (DataFileReader dataFileReader = new DataFileReader(storage, commitLogFile)) {
-	    dataFileReader.seek(indexEntry.getOffset());
-	    Row row = dataFileReader.readRow();
-	    return row == null || row.wasDeleted() ? null : row;
-	} catch (IOException e) {
-	    throw new StorageException("Could not read data from current commit log '" + commitLogFile + "'.", e);
+	if (count == 0) {
+	    return;
+	}
+	Integer[] order = new Integer[count];
+	for (int i = 0; i < count; ++i) {
+	    order[i] = i;
+	}
+	Arrays.sort(order, Comparator.comparingLong(i -> offsets[i]));
+	long[] sortedOffsets = new long[count];
+	for (int i = 0; i < count; ++i) {
+	    sortedOffsets[i] = offsets[order[i]];
+	}
+	Row[] rows = commitLog.readRows(sortedOffsets);
+	for (int i = 0; i < count; ++i) {
+	    int position = positions[order[i]];
+	    resolved[position] = rowMergers[position].add(rows[i]);
+	}
+    }
+
+    /**
+     * Reads the versions of a row from the newest to the oldest until the row is
+     * resolved. Merge operands need the older versions of the row. All parts are
+     * read from the same version, so no row is read twice.
+     */
+    private void readRow(StoreVersion version, Key rowKey, RowMerger rowMerger) {
+	// Read from memtable
+	if (rowMerger.add(version.getMemtable().getRow(rowKey))) {
+	    return;
+	}
+	readOlderRows(version, rowKey, rowMerger);
+    }
+
+    /**
+     * Reads the versions of a row which are older than the active memtable of
+     * the version until the row is resolved.
+     */
+    private void readOlderRows(StoreVersion version, Key rowKey, RowMerger rowMerger) {
+	// Read from immutable memtables
+	for (ImmutableMemtable immutableMemtable : version.getImmutableMemtables()) {
+	    if (rowMerger.add(immutableMemtable.getMemtable().getRow(rowKey))) {
+		return;
+	    }
+	}
+	// Read from commit logs
+	if (readFromCommitLogs(rowKey, version.getFlushedCommitLogs(), rowMerger)) {
+	    return;
 	}
+	// Read from data files
+	rowMerger.add(readFromDataFiles(version, rowKey));
     }
 
-    private Row readFromDataFiles(Key rowKey) {
+    private Row readFromDataFiles(StoreVersion version, Key rowKey) {
 	try {
-	    return dataSet.getRow(rowKey);
+	    return version.getDataSet().getRow(rowKey);
 	} catch (IOException e) {
 	    throw new StorageException("Could not read data.", e);
 	}
     }
 
-    private Row readFromCommitLogs(Key rowKey) {
+    private boolean readFromCommitLogs(Key rowKey, List<FlushedCommitLog> commitLogs, RowMerger rowMerger) {
 	try {
-	    List<File> commitLogs = getCurrentCommitLogs();
-	    for (File commitLog : commitLogs) {
-		IndexEntry indexEntry = null;
-		try (IndexFileReader reader = new IndexFileReader(storage, DataFileSet.getIndexName(commitLog))) {
-		    indexEntry = reader.get(rowKey);
-		} catch (FileNotFoundException e) {
-		    logger.warn("Could not find index file.", e);
+	    for (FlushedCommitLog commitLog : commitLogs) {
+		BloomFilter bloomFilter = commitLog.getBloomFilter();
+		if ((bloomFilter != null) && !bloomFilter.mightContain(rowKey)) {
+		    usefulBloomFilterProbes.inc();
+		    continue;
 		}
-		if (indexEntry != null) {
-		    try (DataFileReader reader = new DataFileReader(storage, commitLog)) {
-			Row row = reader.readRow(indexEntry);
-			if (row != null) {
-			    return row;
-			}
-		    } catch (FileNotFoundException e) {
-			logger.warn("Could not find commit log.", e);
+		long offset = commitLog.getOffset(rowKey);
+		if (offset < 0) {
+		    if (bloomFilter != null) {
+			uselessBloomFilterProbes.inc();
 		    }
+		    continue;
+		}
+		if (rowMerger.add(commitLog.readRow(offset))) {
+		    return true;
 		}
 	    }
-	    return null;
+	    return false;
 	} catch (IOException e) {
 	    throw new StorageException("Could not read commit log.", e);
 	}
@@ -431,18 +1078,24 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
     @Override
     public RowScanner getScanner(Key startRowKey, Key endRowKey) {
 	try {
-	    Memtable memtableCopy = new Memtable();
-	    List<File> currentCommitLogs;
-	    DataFileSet dataFiles;
-	    readLock.lock();
+	    /*
+	     * The scanner keeps the references to the commit logs and data files of
+	     * the version until it is closed, so they are neither recycled nor closed.
+	     * The memtable is replaced on rollover and never cleared. Its iterators are
+	     * weakly consistent, so the scanner can iterate it while writes continue.
+	     */
+	    StoreVersion version = acquireVersion();
+	    List<Memtable> currentImmutableMemtables = new ArrayList<>();
+	    version.getImmutableMemtables()
+		    .forEach(immutableMemtable -> currentImmutableMemtables.add(immutableMemtable.getMemtable()));
 	    try {
-		currentCommitLogs = getCurrentCommitLogs();
-		dataFiles = new DataFileSet(storage, directory);
-		memtable.forEach(entry -> memtableCopy.put(entry));
-	    } finally {
-		readLock.unlock();
+		return new RowScannerImpl(version.getMemtable(), currentImmutableMemtables,
+			version.getFlushedCommitLogs(), version.getDataSet(), startRowKey, endRowKey, mergeOperator,
+			() -> version.release());
+	    } catch (IOException e) {
+		version.release();
+		throw e;
 	    }
-	    return new RowScannerImpl(storage, memtableCopy, currentCommitLogs, dataFiles, startRowKey, endRowKey);
 	} catch (IOException e) {
 	    throw new StorageException("Could not create ColumnFamilyScanner.", e);
 	}
@@ -450,25 +1103,236 @@ public class LogStructuredStoreImpl implements LogStructuredStore {
 
     @Override
     public void delete(Key rowKey) {
-	writeLock.lock();
+	writeCommitLog(rowKey, Instant.now(), Bytes.empty());
+    }
+
+    /**
+     * This method writes a row into the commit log. The row is queued and the
+     * first writer getting the commit lock appends all queued rows as one group
+     * to the commit log (group commit). Depending on the
+     * {@link CommitLogDurability} the commit log is flushed per write, per group
+     * or periodically.
+     * 
+     * @param rowKey
+     *            is the key of the row to be written.
+     * @param tombstone
+     *            is the tombstone of the row or <code>null</code>.
+     * @param values
+     *            is the data of the row.
+     */
+    public void writeCommitLog(Key rowKey, Instant tombstone, byte[] values) {
+	writeCommitLog(new CommitLogEntry(rowKey, tombstone, values));
+    }
+
+    @Override
+    public void write(WriteBatch writeBatch) {
+	if (writeBatch.isEmpty()) {
+	    return;
+	}
+	if ((mergeOperator == null) && writeBatch.getRows().stream().anyMatch(row -> row.isMergeOperand())) {
+	    throw new StorageException("No merge operator is set for '" + toString() + "'.");
+	}
+	Context timer = writeBatchTimer.time();
 	try {
-	    writeCommitLog(rowKey, Instant.now(), Bytes.empty());
+	    writeCommitLog(new CommitLogEntry(writeBatch));
+	    writeBatchSize.update(writeBatch.size());
 	} finally {
-	    writeLock.unlock();
+	    timer.stop();
 	}
     }
 
-    public void writeCommitLog(Key rowKey, Instant tombstone, byte[] values) {
+    private void writeCommitLog(CommitLogEntry entry) {
+	if (closed) {
+	    throw new StorageException("Store '" + directory + "' is closed.");
+	}
+	if (flushFailure != null) {
+	    throw new StorageException("Store '" + directory + "' rejects writes after a failed memtable flush.",
+		    flushFailure);
+	}
+	writeController.awaitWrite();
+	commitQueue.add(entry);
+	boolean commitLogFull;
+	commitLock.lock();
+	try {
+	    if (!entry.isCommitted()) {
+		commitQueuedEntries();
+	    }
+	    commitLogFull = (commitLogWriter != null) && isRolloverNeeded();
+	} finally {
+	    commitLock.unlock();
+	}
+	Throwable failure = entry.getFailure();
+	if (failure instanceof StorageException) {
+	    throw (StorageException) failure;
+	} else if (failure != null) {
+	    throw new StorageException("Could not write " + commitLogFile.getName() + ".", failure);
+	}
+	if (commitLogFull) {
+	    rolloverCommitLogIfFull();
+	}
+    }
+
+    /**
+     * Appends all queued rows to the commit log. This method is only to be called
+     * with the commit lock held. If the group cannot be written completely, all
+     * of its entries fail. Rows appended before the failure are not put into the
+     * memtable, so they only reappear in case the commit log is recovered.
+     */
+    private void commitQueuedEntries() {
+	CommitLogDurability durability = configuration.getCommitLogDurability();
+	List<CommitLogEntry> group = new ArrayList<>();
+	CommitLogEntry entry = commitQueue.poll();
+	while (entry != null) {
+	    group.add(entry);
+	    entry = commitQueue.poll();
+	}
+	if (commitLogWriter == null) {
+	    // The store was closed while the entries were queued.
+	    StorageException failure = new StorageException("Store '" + directory + "' is closed.");
+	    group.forEach(commitLogEntry -> commitLogEntry.setFailed(failure));
+	    return;
+	}
+	try {
+	    List<IndexEntry> indexEntries = new ArrayList<>();
+	    List<Row> writtenRows = new ArrayList<>();
+	    Map<Key, Row> groupRows = new HashMap<>();
+	    for (CommitLogEntry commitLogEntry : group) {
+		List<Row> rows = commitLogEntry.getRows();
+		if (commitLogEntry.isBatch()) {
+		    commitLogWriter.writeBatchMarker(rows.size());
+		}
+		for (Row row : rows) {
+		    long offset;
+		    if (row.isMergeOperand()) {
+			row = foldMergeOperand(row, groupRows);
+		    }
+		    if (row.isMergeOperand()) {
+			offset = commitLogWriter.writeMergeOperand(row.getKey(), row.getData());
+		    } else {
+			offset = commitLogWriter.writeRow(row.getKey(), row.getTombstone(), row.getData());
+		    }
+		    indexEntries.add(new IndexEntry(row.getKey(), commitLogFile, offset));
+		    writtenRows.add(row);
+		    groupRows.put(row.getKey(), row);
+		    if (commitLogEntry.isResultRequested()) {
+			commitLogEntry.setWritten(row, retainForResult(row));
+		    }
+		}
+		if (commitLogEntry.isBatch()) {
+		    commitLogWriter.writeBatchMarker(0);
+		}
+		if (durability == CommitLogDurability.FLUSH_PER_WRITE) {
+		    flushCommitLogWriter();
+		}
+	    }
+	    if (durability == CommitLogDurability.GROUP) {
+		flushCommitLogWriter();
+	    }
+	    Memtable memtable = storeVersion.getMemtable();
+	    for (int i = 0; i < writtenRows.size(); i++) {
+		Row row = writtenRows.get(i);
+		memtable.put(indexEntries.get(i), row.getTombstone(), row.getData(), row.isMergeOperand());
+	    }
+	    uncheckpointedEntries.addAll(indexEntries);
+	    long checkpointInterval = configuration.getCommitLogCheckpointInterval();
+	    if ((checkpointInterval > 0) && (commitLogWriter.getPosition() - checkpointPosition >= checkpointInterval)) {
+		checkpointCommitLog();
+	    }
+	    group.forEach(commitLogEntry -> commitLogEntry.setCommitted());
+	} catch (IOException | RuntimeException e) {
+	    group.forEach(commitLogEntry -> {
+		commitLogEntry.releaseWrittenVersion();
+		commitLogEntry.setFailed(e);
+	    });
+	}
+    }
+
+    /**
+     * Acquires the current store version for the result of an unresolved merge
+     * operand. Compactions may replace the version concurrently, but the active
+     * memtable is only replaced by the rollover, which needs the commit lock. So
+     * the version contains the memtable the operand is written to.
+     *
+     * @return The acquired {@link StoreVersion} is returned or <code>null</code>
+     *         in case no version is needed or the store is closed.
+     */
+    private StoreVersion retainForResult(Row row) {
+	if (!row.isMergeOperand()) {
+	    return null;
+	}
+	try {
+	    return acquireVersion();
+	} catch (StorageException e) {
+	    // The store is closed, so the result cannot be read anymore.
+	    return null;
+	}
+    }
+
+    /**
+     * This method folds a merge operand with the former version of the row in
+     * the current group or memtable. A put or delete leads to a full row, a former
+     * operand to a combined operand. The folded row is written to the commit log
+     * instead of the operand, so the commit log row always equals the memtable
+     * entry and the index entries stay valid. Without former version in the
+     * memtable, the operand is written unchanged and folded on read.
+     */
+    private Row foldMergeOperand(Row operand, Map<Key, Row> groupRows) {
+	Key rowKey = operand.getKey();
+	Row previous = groupRows.get(rowKey);
+	if (previous == null) {
+	    previous = storeVersion.getMemtable().getRow(rowKey);
+	    if (previous == null) {
+		return operand;
+	    }
+	}
+	if (previous.isMergeOperand()) {
+	    return new Row(rowKey, null, mergeOperator.mergeOperands(previous.getData(), operand.getData()), true);
+	}
+	byte[] value = previous.wasDeleted() ? null : previous.getData();
+	return new Row(rowKey, null, mergeOperator.merge(value, operand.getData()));
+    }
+
+    /**
+     * This method flushes the commit log and hands the index entries written since
+     * the last checkpoint over to the flusher, which appends them as checkpoint
+     * record. This method is only to be called with the commit lock held.
+     */
+    private void checkpointCommitLog() throws IOException {
+	if (uncheckpointedEntries.isEmpty()) {
+	    return;
+	}
+	if (commitLogWriter.getPosition() > flushedCommitLogPosition) {
+	    flushCommitLogWriter();
+	}
+	File commitLog = commitLogFile;
+	long position = commitLogWriter.getPosition();
+	List<IndexEntry> entries = uncheckpointedEntries;
+	uncheckpointedEntries = new ArrayList<>();
+	checkpointPosition = position;
+	memtableFlushExecutor.submit(() -> {
+	    try {
+		CommitLogRecovery.writeCheckpoint(storage, commitLog, position, entries);
+	    } catch (IOException e) {
+		logger.warn("Could not write checkpoint for " + commitLog.getName() + ".", e);
+	    }
+	});
+    }
+
+    private void flushCommitLogWriter() throws IOException {
+	commitLogWriter.flush();
+	flushedCommitLogPosition = commitLogWriter.getPosition();
+    }
+
+    private void flushCommitLog() {
+	commitLock.lock();
 	try {
-	    long offset = commitLogWriter.getPosition();
-	    commitLogWriter.writeRow(rowKey, tombstone, values);
-	    commitLogWriter.flush();
-	    memtable.put(new IndexEntry(rowKey, commitLogFile, offset));
-	    if (commitLogWriter.getPosition() >= configuration.getMaxCommitLogSize()) {
-		rolloverCommitLog();
+	    if ((commitLogWriter != null) && (commitLogWriter.getPosition() > flushedCommitLogPosition)) {
+		flushCommitLogWriter();
 	    }
 	} catch (IOException e) {
-	    throw new StorageException("Could not write " + commitLogFile.getName() + ".", e);
+	    logger.warn("Could not flush " + commitLogFile.getName() + ".", e);
+	} finally {
+	    commitLock.unlock();
 	}
     }
 
@@ -12,6 +12,20 @@ public enum LogStructuredStoreMetric {
     COMPACTION_TIMER, //
     COMPACTION_COUNTER, //
     SSTABLE_GENERATION_TIMER, //
+    WRITE_BATCH_SIZE, //
+    WRITE_BATCH_TIMER, //
+    COMMIT_LOG_SEGMENTS_ALLOCATED, //
+    COMMIT_LOG_SEGMENTS_RECYCLED, //
+    WRITE_CONTROLLER_STATE, //
+    WRITE_DELAY, //
+    WRITE_DELAYED_COUNTER, //
+    WRITE_STOPPED_TIMER, //
+    COMMIT_LOG_SIZE, //
+    BLOOM_FILTER_USEFUL, //
+    BLOOM_FILTER_USELESS, //
+    BLOCK_CACHE_HITS, //
+    BLOCK_CACHE_MISSES, //
+    BLOCK_CACHE_EVICTIONS, //
     ;
 
 }
@@ -0,0 +1,42 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+/**
+ * This interface is implemented by merge operators. Merge operands are written
+ * with {@link LogStructuredStore#merge(Key, byte[])} without reading the row
+ * first. They are folded with the older version of the row on read, in the
+ * memtable and during compaction, so the data files never contain operands.
+ * 
+ * Operands of the same row may be combined with
+ * {@link #mergeOperands(byte[], byte[])} before the value they are applied to
+ * is known. Therefore, the operator needs to be associative:
+ * <code>merge(merge(v, a), b)</code> has to equal
+ * <code>merge(v, mergeOperands(a, b))</code>.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
+public interface MergeOperator {
+
+    /**
+     * Applies an operand to a value.
+     * 
+     * @param value
+     *            is the current value of the row or <code>null</code> in case the
+     *            row does not exist or was deleted.
+     * @param operand
+     *            is the operand to be applied.
+     * @return The new value of the row is returned.
+     */
+    public byte[] merge(byte[] value, byte[] operand);
+
+    /**
+     * Combines two operands of the same row into one operand.
+     * 
+     * @param olderOperand
+     *            is the operand written first.
+     * @param newerOperand
+     *            is the operand written afterwards.
+     * @return An operand is returned which has the effect of both operands.
+     */
+    public byte[] mergeOperands(byte[] olderOperand, byte[] newerOperand);
+
+}
@@ -12,12 +12,24 @@ public class Row {
     private final Key key;
     private final Instant tombstone;
     private final byte[] data;
+    private final boolean mergeOperand;
 
     public Row(Key key, Instant tombstone, byte[] value) {
+	this(key, tombstone, value, false);
+    }
+
+    /**
+     * @param mergeOperand
+     *            defines whether the data is a merge operand, which needs to be
+     *            folded with the older versions of the row by a
+     *            {@link MergeOperator}.
+     */
+    public Row(Key key, Instant tombstone, byte[] value, boolean mergeOperand) {
 	super();
 	this.key = key;
 	this.tombstone = tombstone;
 	this.data = value;
+	this.mergeOperand = mergeOperand;
     }
 
     public Key getKey() {
@@ -36,4 +48,8 @@ public class Row {
 	return tombstone != null;
     }
 
+    public boolean isMergeOperand() {
+	return mergeOperand;
+    }
+
 }
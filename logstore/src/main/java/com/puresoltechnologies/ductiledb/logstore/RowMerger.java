@@ -0,0 +1,72 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.puresoltechnologies.ductiledb.storage.api.StorageException;
+
+/**
+ * This class resolves a row from its versions. The versions are added from the
+ * newest to the oldest until a version is added which is not a merge operand.
+ * The collected operands are folded with this version afterwards.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class RowMerger {
+
+    private final Key rowKey;
+    private final MergeOperator mergeOperator;
+    /**
+     * The merge operands collected so far, the newest first.
+     */
+    private final List<byte[]> operands = new ArrayList<>();
+    private Row base = null;
+
+    RowMerger(Key rowKey, MergeOperator mergeOperator) {
+	super();
+	this.rowKey = rowKey;
+	this.mergeOperator = mergeOperator;
+    }
+
+    /**
+     * Adds the next older version of the row.
+     *
+     * @param row
+     *            is the version or <code>null</code> in case the source does not
+     *            contain the row.
+     * @return <code>true</code> is returned in case the row is resolved and no
+     *         older versions are needed anymore.
+     */
+    boolean add(Row row) {
+	if (row == null) {
+	    return false;
+	}
+	if (row.isMergeOperand()) {
+	    operands.add(row.getData());
+	    return false;
+	}
+	base = row;
+	return true;
+    }
+
+    /**
+     * Returns the resolved row.
+     *
+     * @return The {@link Row} is returned including deleted rows with tombstone.
+     *         <code>null</code> is returned in case no version was found.
+     */
+    Row getRow() {
+	if (operands.isEmpty()) {
+	    return base;
+	}
+	if (mergeOperator == null) {
+	    throw new StorageException("Row '" + rowKey + "' contains merge operands, but no merge operator is set.");
+	}
+	byte[] value = (base == null) || base.wasDeleted() ? null : base.getData();
+	for (int i = operands.size() - 1; i >= 0; --i) {
+	    value = mergeOperator.merge(value, operands.get(i));
+	}
+	return new Row(rowKey, null, value);
+    }
+
+}
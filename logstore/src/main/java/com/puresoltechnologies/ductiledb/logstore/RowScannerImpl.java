@@ -12,69 +12,63 @@ import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.puresoltechnologies.ductiledb.logstore.data.DataFileReader;
 import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexEntry;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexEntryIterator;
-import com.puresoltechnologies.ductiledb.logstore.index.IndexFileReader;
 import com.puresoltechnologies.ductiledb.logstore.index.Memtable;
-import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.logstore.index.MemtableEntry;
+import com.puresoltechnologies.ductiledb.logstore.io.SSTableIndexIterator.BlockRowEntry;
 
 public class RowScannerImpl implements RowScanner {
 
     private static final Logger logger = LoggerFactory.getLogger(RowScannerImpl.class);
 
-    private final Storage storage;
     private final IndexEntryIterator memtableIterator;
-    private final Map<File, DataFileReader> dataFileReaders = new HashMap<>();
-    private final List<IndexFileReader> commitLogIndexFileReaders = new ArrayList<>();
+    private final Map<File, FlushedCommitLog> commitLogs = new HashMap<>();
     private final List<IndexEntryIterator> commitLogIndexIterators = new ArrayList<>();
     private final DataFileSet dataFiles;
     private final IndexEntryIterator dataFilesIndexIterator;
     private final Key startRowKey;
     private final Key endRowKey;
+    private final MergeOperator mergeOperator;
+    private Runnable closeHandler;
     private Row nextRow = null;
 
-    public RowScannerImpl(Storage storage, Memtable memtable, List<File> commitLogs, DataFileSet dataFiles,
-	    Key startRowKey, Key endRowKey) throws IOException {
+    /**
+     * Creates the scanner. The caller needs to hold the references of the
+     * commit logs and data files until the close handler is run.
+     */
+    RowScannerImpl(Memtable memtable, List<Memtable> immutableMemtables, List<FlushedCommitLog> commitLogs,
+	    DataFileSet dataFiles, Key startRowKey, Key endRowKey, MergeOperator mergeOperator,
+	    Runnable closeHandler) throws IOException {
 	super();
-	this.storage = storage;
+	this.mergeOperator = mergeOperator;
+	this.closeHandler = closeHandler;
 	this.memtableIterator = memtable.iterator(startRowKey, endRowKey);
 	this.dataFiles = dataFiles;
 	this.startRowKey = startRowKey;
 	this.endRowKey = endRowKey;
 	this.dataFilesIndexIterator = dataFiles.getIndexIterator(startRowKey, endRowKey);
 
-	for (File commitLog : commitLogs) {
-	    System.out.println("CommitLog:" + commitLog);
-	    File indexFile = DataFileSet.getIndexName(commitLog);
-	    IndexFileReader indexFileReader = new IndexFileReader(storage, indexFile);
-	    commitLogIndexFileReaders.add(indexFileReader);
-	    IndexEntryIterator iterator = indexFileReader.iterator();
-	    iterator.gotoStart(startRowKey);
-	    commitLogIndexIterators.add(iterator);
+	// Immutable memtables are newer than the commit logs and take precedence.
+	for (Memtable immutableMemtable : immutableMemtables) {
+	    commitLogIndexIterators.add(immutableMemtable.iterator(startRowKey, endRowKey));
+	}
+
+	// The commit logs are iterated with their in-memory indizes.
+	for (FlushedCommitLog commitLog : commitLogs) {
+	    this.commitLogs.put(commitLog.getCommitLogFile(), commitLog);
+	    commitLogIndexIterators.add(commitLog.iterator(startRowKey, endRowKey));
 	}
 
     }
 
     @Override
     public void close() throws IOException {
-	dataFileReaders.values().forEach(reader -> {
-	    try {
-		reader.close();
-	    } catch (IOException e) {
-		logger.warn("Could not close reader.", e);
-	    }
-	});
-	dataFileReaders.clear();
-	commitLogIndexFileReaders.forEach(iterable -> {
-	    try {
-		iterable.close();
-	    } catch (IOException e) {
-		logger.warn("Could not close index iterable.", e);
-	    }
-	});
-	commitLogIndexFileReaders.clear();
+	if (closeHandler != null) {
+	    closeHandler.run();
+	    closeHandler = null;
+	}
     }
 
     @Override
@@ -112,79 +106,87 @@ public class RowScannerImpl implements RowScanner {
 	return nextRow;
     }
 
+    /**
+     * Reads the next row which was not deleted. All versions of the row are
+     * collected from the newest to the oldest source, so merge operands can be
+     * folded with the older versions.
+     */
     private void readNextRow() {
 	nextRow = null;
-	IndexEntry minimum = null;
-	do {
-	    minimum = null;
-	    if (memtableIterator.hasNext()) {
-		minimum = memtableIterator.peek();
+	while (nextRow == null) {
+	    Key rowKey = findMinimumRowKey();
+	    if (rowKey == null) {
+		return;
 	    }
-	    Set<IndexEntryIterator> toBeDeleted = new HashSet<>();
+	    List<IndexEntry> entries = new ArrayList<>();
+	    pollEntry(memtableIterator, rowKey, entries);
 	    for (IndexEntryIterator iterator : commitLogIndexIterators) {
-		if (iterator.hasNext()) {
-		    int compareResult = minimum != null ? minimum.compareTo(iterator.peek()) : 1;
-		    if (compareResult == 0) {
-			iterator.skip();
-		    } else if (compareResult > 0) {
-			minimum = iterator.peek();
-		    }
-		} else {
-		    toBeDeleted.add(iterator);
-		}
+		pollEntry(iterator, rowKey, entries);
 	    }
-	    toBeDeleted.forEach(entry -> commitLogIndexIterators.remove(entry));
-	    if (dataFilesIndexIterator.hasNext()) {
-		int compareResult = minimum != null ? minimum.compareTo(dataFilesIndexIterator.peek()) : -1;
-		if (compareResult == 0) {
-		    dataFilesIndexIterator.skip();
-		} else if (compareResult < 0) {
-		    minimum = dataFilesIndexIterator.peek();
+	    pollEntry(dataFilesIndexIterator, rowKey, entries);
+	    RowMerger rowMerger = new RowMerger(rowKey, mergeOperator);
+	    for (IndexEntry entry : entries) {
+		if (rowMerger.add(readRow(entry))) {
+		    break;
 		}
 	    }
-	    if (minimum != null) {
-		readNextEntryFromIndexEntry(minimum);
-		if (memtableIterator.hasNext()) {
-		    if (memtableIterator.peek().equals(minimum)) {
-			memtableIterator.skip();
-		    }
-		}
-		for (IndexEntryIterator iterator : commitLogIndexIterators) {
-		    if (iterator.hasNext()) {
-			if (iterator.peek().equals(minimum)) {
-			    iterator.skip();
-			}
-		    }
-		}
-		if (dataFilesIndexIterator.hasNext()) {
-		    if (dataFilesIndexIterator.peek().equals(minimum)) {
-			dataFilesIndexIterator.skip();
-		    }
-		}
+	    Row row = rowMerger.getRow();
+	    if ((row != null) && !row.wasDeleted()) {
+		nextRow = row;
 	    }
-	} while ((minimum != null) && ((nextRow == null) || ((nextRow != null) && (nextRow.wasDeleted()))));
+	}
     }
 
-    private void readNextEntryFromIndexEntry(IndexEntry minimum) {
-	DataFileReader fileReader = dataFileReaders.get(minimum.getDataFile());
-	if (fileReader == null) {
-	    try {
-		fileReader = new DataFileReader(storage, minimum.getDataFile());
-	    } catch (IOException e) {
-		logger.error("Could not read file.", e);
-	    }
-	    dataFileReaders.put(minimum.getDataFile(), fileReader);
-	}
-	if (fileReader != null) {
-	    try {
-		fileReader.seek(minimum.getOffset());
-		Row row = fileReader.readRow(minimum);
-		if (!row.wasDeleted()) {
-		    nextRow = row;
+    private Key findMinimumRowKey() {
+	Key minimum = null;
+	if (memtableIterator.hasNext()) {
+	    minimum = memtableIterator.peek().getRowKey();
+	}
+	Set<IndexEntryIterator> toBeDeleted = new HashSet<>();
+	for (IndexEntryIterator iterator : commitLogIndexIterators) {
+	    if (iterator.hasNext()) {
+		Key rowKey = iterator.peek().getRowKey();
+		if ((minimum == null) || (rowKey.compareTo(minimum) < 0)) {
+		    minimum = rowKey;
 		}
-	    } catch (IOException e) {
-		logger.error("Could not read file.", e);
+	    } else {
+		toBeDeleted.add(iterator);
 	    }
 	}
+	toBeDeleted.forEach(entry -> commitLogIndexIterators.remove(entry));
+	if (dataFilesIndexIterator.hasNext()) {
+	    Key rowKey = dataFilesIndexIterator.peek().getRowKey();
+	    if ((minimum == null) || (rowKey.compareTo(minimum) < 0)) {
+		minimum = rowKey;
+	    }
+	}
+	return minimum;
+    }
+
+    private void pollEntry(IndexEntryIterator iterator, Key rowKey, List<IndexEntry> entries) {
+	if (iterator.hasNext() && iterator.peek().getRowKey().equals(rowKey)) {
+	    entries.add(iterator.next());
+	}
+    }
+
+    private Row readRow(IndexEntry indexEntry) {
+	if (indexEntry instanceof MemtableEntry) {
+	    return ((MemtableEntry) indexEntry).getRow();
+	}
+	if (indexEntry instanceof BlockRowEntry) {
+	    // The data files index iterator read the block of the row already.
+	    return ((BlockRowEntry) indexEntry).getRow();
+	}
+	// The scanner holds the references, so the shared readers are open.
+	try {
+	    FlushedCommitLog commitLog = commitLogs.get(indexEntry.getDataFile());
+	    if (commitLog != null) {
+		return commitLog.readRow(indexEntry.getOffset());
+	    }
+	    return dataFiles.readRow(indexEntry);
+	} catch (IOException e) {
+	    logger.error("Could not read file.", e);
+	    return null;
+	}
     }
 }
@@ -0,0 +1,212 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
+import com.puresoltechnologies.ductiledb.logstore.index.Memtable;
+
+/**
+ * This immutable class describes the state read by gets and scanners: the
+ * active memtable, the immutable memtables, the flushed commit logs and the
+ * data files. All of them are published with one assignment, so a read never
+ * sees the rows of a commit log twice, once in its memtable or the commit log
+ * itself and once in the data files, and never misses them, because the active
+ * memtable is replaced together with becoming immutable. This is needed for
+ * merge operands, which would otherwise be applied twice.
+ *
+ * A commit log moves from the immutable memtables to the flushed commit logs
+ * when its index file is written and is dropped from the flushed commit logs
+ * when the data files of its compaction are published, so reads never need to
+ * list the directory for commit logs.
+ *
+ * The flushed commit logs and the data files are reference counted and shared
+ * by all gets and scanners reading this version. They are retired by the
+ * compaction replacing them and their readers are closed when the last get or
+ * scanner using them is finished. A read takes its references with
+ * {@link #retain()} without any lock and retries with the next version in case
+ * a compaction retired a part of the version in the meantime.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class StoreVersion {
+
+    private final Memtable memtable;
+    private final List<ImmutableMemtable> immutableMemtables;
+    private final List<FlushedCommitLog> flushedCommitLogs;
+    private final DataFileSet dataSet;
+
+    StoreVersion(Memtable memtable, DataFileSet dataSet) {
+	this(memtable, Collections.emptyList(), Collections.emptyList(), dataSet);
+    }
+
+    private StoreVersion(Memtable memtable, List<ImmutableMemtable> immutableMemtables,
+	    List<FlushedCommitLog> flushedCommitLogs, DataFileSet dataSet) {
+	super();
+	this.memtable = memtable;
+	this.immutableMemtables = immutableMemtables;
+	this.flushedCommitLogs = flushedCommitLogs;
+	this.dataSet = dataSet;
+    }
+
+    /**
+     * Returns the memtable of the current commit log, which receives the writes.
+     */
+    Memtable getMemtable() {
+	return memtable;
+    }
+
+    /**
+     * Returns the memtables replaced on rollover which are not flushed, yet.
+     *
+     * @return An unmodifiable list is returned with the newest memtable first.
+     */
+    List<ImmutableMemtable> getImmutableMemtables() {
+	return immutableMemtables;
+    }
+
+    /**
+     * Returns the commit logs which were flushed, but not compacted into the data
+     * files of this version, yet.
+     *
+     * @return An unmodifiable list is returned with the newest commit log first.
+     */
+    List<FlushedCommitLog> getFlushedCommitLogs() {
+	return flushedCommitLogs;
+    }
+
+    DataFileSet getDataSet() {
+	return dataSet;
+    }
+
+    /**
+     * Creates the version after a commit log rollover.
+     *
+     * @param immutableMemtable
+     *            is the former active memtable.
+     * @param memtable
+     *            is the memtable of the new commit log.
+     * @return A new {@link StoreVersion} is returned.
+     */
+    StoreVersion rolledOver(ImmutableMemtable immutableMemtable, Memtable memtable) {
+	List<ImmutableMemtable> memtables = new ArrayList<>(immutableMemtables.size() + 1);
+	memtables.add(immutableMemtable);
+	memtables.addAll(immutableMemtables);
+	return new StoreVersion(memtable, Collections.unmodifiableList(memtables), flushedCommitLogs, dataSet);
+    }
+
+    /**
+     * Creates the version after the index file of the commit log of an immutable
+     * memtable was written. The commit log is read instead of the memtable
+     * afterwards.
+     *
+     * @param immutableMemtable
+     *            is the memtable which was flushed.
+     * @param flushedCommitLog
+     *            is the commit log of the memtable.
+     * @return A new {@link StoreVersion} is returned.
+     */
+    StoreVersion flushed(ImmutableMemtable immutableMemtable, FlushedCommitLog flushedCommitLog) {
+	List<ImmutableMemtable> memtables = new ArrayList<>(immutableMemtables);
+	memtables.remove(immutableMemtable);
+	return new StoreVersion(memtable, Collections.unmodifiableList(memtables),
+		withFlushedCommitLog(flushedCommitLog), dataSet);
+    }
+
+    /**
+     * Creates the version with a commit log which was flushed before the store
+     * was opened.
+     */
+    StoreVersion recovered(FlushedCommitLog flushedCommitLog) {
+	return new StoreVersion(memtable, immutableMemtables, withFlushedCommitLog(flushedCommitLog), dataSet);
+    }
+
+    private List<FlushedCommitLog> withFlushedCommitLog(FlushedCommitLog flushedCommitLog) {
+	List<FlushedCommitLog> commitLogs = new ArrayList<>(flushedCommitLogs.size() + 1);
+	commitLogs.addAll(flushedCommitLogs);
+	commitLogs.add(flushedCommitLog);
+	// The names of the commit logs contain their creation time.
+	commitLogs.sort((l, r) -> r.getCommitLogFile().compareTo(l.getCommitLogFile()));
+	return Collections.unmodifiableList(commitLogs);
+    }
+
+    /**
+     * Creates the version after a compaction.
+     *
+     * @param dataSet
+     *            is the new data file set.
+     * @param commitLog
+     *            is the commit log which was compacted into the new data files.
+     * @return A new {@link StoreVersion} is returned.
+     */
+    StoreVersion compacted(DataFileSet dataSet, File commitLog) {
+	List<FlushedCommitLog> commitLogs = new ArrayList<>(flushedCommitLogs);
+	commitLogs.removeIf(flushedCommitLog -> flushedCommitLog.getCommitLogFile().equals(commitLog));
+	return new StoreVersion(memtable, immutableMemtables, Collections.unmodifiableList(commitLogs), dataSet);
+    }
+
+    /**
+     * Creates the version after data files were ingested.
+     *
+     * @param dataSet
+     *            is the new data file set containing the ingested data files.
+     * @return A new {@link StoreVersion} is returned.
+     */
+    StoreVersion ingested(DataFileSet dataSet) {
+	return new StoreVersion(memtable, immutableMemtables, flushedCommitLogs, dataSet);
+    }
+
+    /**
+     * Returns the flushed commit log of the given file.
+     *
+     * @return A {@link FlushedCommitLog} is returned or <code>null</code> in case
+     *         the commit log is not part of this version.
+     */
+    FlushedCommitLog getFlushedCommitLog(File commitLog) {
+	for (FlushedCommitLog flushedCommitLog : flushedCommitLogs) {
+	    if (flushedCommitLog.getCommitLogFile().equals(commitLog)) {
+		return flushedCommitLog;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Takes references to the flushed commit logs and the data files, so they can
+     * be read until {@link #release()} is called.
+     *
+     * @return <code>false</code> is returned in case a part of this version was
+     *         retired already. No reference is held then and the current version
+     *         needs to be used instead.
+     */
+    boolean retain() {
+	if ((dataSet != null) && !dataSet.retain()) {
+	    return false;
+	}
+	for (int i = 0; i < flushedCommitLogs.size(); ++i) {
+	    if (!flushedCommitLogs.get(i).retain()) {
+		for (int j = 0; j < i; ++j) {
+		    flushedCommitLogs.get(j).release();
+		}
+		if (dataSet != null) {
+		    dataSet.release();
+		}
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Releases the references taken with {@link #retain()}.
+     */
+    void release() {
+	flushedCommitLogs.forEach(flushedCommitLog -> flushedCommitLog.release());
+	if (dataSet != null) {
+	    dataSet.release();
+	}
+    }
+
+}
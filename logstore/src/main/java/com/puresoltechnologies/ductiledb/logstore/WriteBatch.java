@@ -0,0 +1,60 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+
+/**
+ * This class collects puts, merges and deletes which are applied together with
+ * {@link LogStructuredStore#write(WriteBatch)}. A batch is appended as one
+ * contiguous block to the commit log and flushed once. On recovery either all
+ * rows of a batch are replayed or none of them.
+ *
+ * The operations are applied in the order they were added, so the last put or
+ * delete on a row key wins and the merges added afterwards are applied to it.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class WriteBatch {
+
+    private final List<Row> rows = new ArrayList<>();
+
+    public WriteBatch put(Key rowKey, byte[] data) {
+	rows.add(new Row(rowKey, null, data));
+	return this;
+    }
+
+    /**
+     * Adds a merge operand for the row. See
+     * {@link LogStructuredStore#merge(Key, byte[])}.
+     */
+    public WriteBatch merge(Key rowKey, byte[] operand) {
+	rows.add(new Row(rowKey, null, operand, true));
+	return this;
+    }
+
+    public WriteBatch delete(Key rowKey) {
+	rows.add(new Row(rowKey, Instant.now(), Bytes.empty()));
+	return this;
+    }
+
+    public int size() {
+	return rows.size();
+    }
+
+    public boolean isEmpty() {
+	return rows.isEmpty();
+    }
+
+    public void clear() {
+	rows.clear();
+    }
+
+    List<Row> getRows() {
+	return Collections.unmodifiableList(rows);
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.Timer.Context;
+import com.puresoltechnologies.ductiledb.storage.api.StorageException;
+
+/**
+ * This class applies backpressure to writers in case the background work of
+ * the store falls behind. It watches the commit logs waiting for compaction,
+ * their size and the immutable memtables waiting for their flush:
+ * <ul>
+ * <li>Below the slowdown thresholds writes are not delayed.</li>
+ * <li>Between the slowdown and the stop thresholds each write is delayed. The
+ * delay grows with the distance to the stop threshold up to the configured
+ * maximum write delay.</li>
+ * <li>At the stop thresholds writers are blocked until the compactions caught
+ * up.</li>
+ * </ul>
+ * The immutable memtables only delay writers, because a rollover waits for a
+ * free memtable slot anyway.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class WriteController {
+
+    enum State {
+	NORMAL, DELAYED, STOPPED;
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteController.class);
+
+    /**
+     * Stopped writers re-check the state at least with this period, in case a
+     * signal was missed.
+     */
+    private static final long STOP_RECHECK_MILLIS = 100;
+
+    /**
+     * This is the pressure applied while all immutable memtable slots are in use.
+     */
+    private static final double IMMUTABLE_MEMTABLE_PRESSURE = 0.1;
+
+    private final LogStoreConfiguration configuration;
+    private final IntSupplier pendingCompactions;
+    private final LongSupplier pendingCompactionBytes;
+    private final IntSupplier immutableMemtables;
+    private final Counter delayedWrites;
+    private final Timer stoppedWrites;
+
+    private volatile State state = State.NORMAL;
+    private volatile long writeDelay = 0;
+
+    WriteController(LogStoreConfiguration configuration, IntSupplier pendingCompactions,
+	    LongSupplier pendingCompactionBytes, IntSupplier immutableMemtables, MetricRegistry registry) {
+	super();
+	this.configuration = configuration;
+	this.pendingCompactions = pendingCompactions;
+	this.pendingCompactionBytes = pendingCompactionBytes;
+	this.immutableMemtables = immutableMemtables;
+	registry.register(LogStructuredStoreMetric.WRITE_CONTROLLER_STATE.name(), (Gauge<String>) () -> state.name());
+	registry.register(LogStructuredStoreMetric.WRITE_DELAY.name(), (Gauge<Long>) () -> writeDelay);
+	delayedWrites = registry.counter(LogStructuredStoreMetric.WRITE_DELAYED_COUNTER.name());
+	stoppedWrites = registry.timer(LogStructuredStoreMetric.WRITE_STOPPED_TIMER.name());
+    }
+
+    State getState() {
+	return state;
+    }
+
+    /**
+     * Returns the delay in microseconds applied to the last write.
+     *
+     * @return The delay is returned.
+     */
+    long getWriteDelay() {
+	return writeDelay;
+    }
+
+    /**
+     * This method is called by writers before they write. It delays or blocks
+     * the writer depending on the current state. It must not be called with the
+     * commit lock held.
+     */
+    void awaitWrite() {
+	double pressure = update();
+	if (state == State.NORMAL) {
+	    return;
+	}
+	try {
+	    if (state == State.STOPPED) {
+		Context timer = stoppedWrites.time();
+		try {
+		    synchronized (this) {
+			while (state == State.STOPPED) {
+			    wait(STOP_RECHECK_MILLIS);
+			    pressure = update();
+			}
+		    }
+		} finally {
+		    timer.stop();
+		}
+		if (state == State.NORMAL) {
+		    return;
+		}
+	    }
+	    delayedWrites.inc();
+	    long delay = (long) (TimeUnit.MILLISECONDS.toMicros(configuration.getMaxWriteDelay()) * pressure);
+	    writeDelay = delay;
+	    if (delay > 0) {
+		TimeUnit.MICROSECONDS.sleep(delay);
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new StorageException("Interrupted while write was delayed.", e);
+	}
+    }
+
+    /**
+     * This method is called when background work finished to wake up stopped
+     * writers.
+     */
+    void signal() {
+	update();
+	synchronized (this) {
+	    notifyAll();
+	}
+    }
+
+    /**
+     * Updates the state and returns the pressure between 0 (slowdown threshold)
+     * and 1 (stop threshold).
+     */
+    private double update() {
+	double pressure = Math.max(
+		pressure(pendingCompactions.getAsInt(), configuration.getSlowdownPendingCompactions(),
+			configuration.getStopPendingCompactions()),
+		pressure(pendingCompactionBytes.getAsLong(), configuration.getSlowdownPendingCompactionBytes(),
+			configuration.getStopPendingCompactionBytes()));
+	if ((pressure < 1.0) && (immutableMemtables.getAsInt() >= configuration.getMaxImmutableMemtables())) {
+	    pressure = Math.max(pressure, IMMUTABLE_MEMTABLE_PRESSURE);
+	}
+	State newState;
+	if (pressure >= 1.0) {
+	    newState = State.STOPPED;
+	} else if (pressure >= 0.0) {
+	    newState = State.DELAYED;
+	} else {
+	    newState = State.NORMAL;
+	    writeDelay = 0;
+	}
+	if (newState != state) {
+	    logger.info("Write controller changes state from " + state + " to " + newState + ".");
+	    state = newState;
+	}
+	return pressure;
+    }
+
+    /**
+     * Calculates the pressure of a single signal. Values below the slowdown
+     * threshold result in a negative pressure. A slowdown threshold less or equal
+     * to 0 disables the signal. In case the stop threshold is not above the
+     * slowdown threshold, writers are stopped at the slowdown threshold.
+     */
+    private static double pressure(long value, long slowdown, long stop) {
+	if ((slowdown <= 0) || (value < slowdown)) {
+	    return -1.0;
+	}
+	if ((stop <= slowdown) || (value >= stop)) {
+	    return 1.0;
+	}
+	return (double) (value - slowdown) / (stop - slowdown);
+    }
+
+}
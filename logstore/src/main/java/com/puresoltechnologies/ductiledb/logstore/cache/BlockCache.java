@@ -0,0 +1,229 @@
+package com.puresoltechnologies.ductiledb.logstore.cache;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+
+/**
+ * This is the cache of file blocks read by the stores. The blocks are
+ * identified by the file and the offset of the block, which is a multiple of
+ * {@link #BLOCK_SIZE}. Only files which are not changed anymore are allowed to
+ * be read via the cache.
+ *
+ * The cache is split into segments by the hash of the block to reduce lock
+ * contention. Each segment uses a segmented LRU eviction policy: New blocks are
+ * put into a probation area and are only moved into the protected area if they
+ * are hit again. Blocks are evicted from the probation area first, so a scan
+ * reading many blocks once does not evict the frequently used blocks.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class BlockCache {
+
+    public static final int BLOCK_SIZE = 16 * 1024;
+
+    private static final int SEGMENT_COUNT = 16;
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private static final Map<Storage, BlockCache> sharedCaches = new WeakHashMap<>();
+
+    /**
+     * Returns the cache shared by all stores of the given storage. The cache is
+     * created with the given size by the first store asking for it.
+     *
+     * @param storage
+     *            is the storage the stores are located in.
+     * @param size
+     *            is the size of the cache in bytes.
+     * @return A {@link BlockCache} is returned.
+     */
+    public static synchronized BlockCache getSharedInstance(Storage storage, long size) {
+	BlockCache blockCache = sharedCaches.get(storage);
+	if (blockCache == null) {
+	    blockCache = new BlockCache(size);
+	    sharedCaches.put(storage, blockCache);
+	}
+	return blockCache;
+    }
+
+    private static class BlockKey {
+
+	private final File file;
+	private final long offset;
+	private final int hashCode;
+
+	BlockKey(File file, long offset) {
+	    this.file = file;
+	    this.offset = offset;
+	    this.hashCode = 31 * file.hashCode() + Long.hashCode(offset);
+	}
+
+	@Override
+	public int hashCode() {
+	    return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (this == obj)
+		return true;
+	    if ((obj == null) || (getClass() != obj.getClass()))
+		return false;
+	    BlockKey other = (BlockKey) obj;
+	    return (offset == other.offset) && file.equals(other.file);
+	}
+    }
+
+    private static class Block {
+
+	private final byte[] data;
+	private final BlockCacheMetrics owner;
+
+	Block(byte[] data, BlockCacheMetrics owner) {
+	    this.data = data;
+	    this.owner = owner;
+	}
+    }
+
+    /**
+     * This is a segment of the cache with its own segmented LRU.
+     */
+    private static class Segment {
+
+	private final long capacity;
+	private final long protectedCapacity;
+	private final LinkedHashMap<BlockKey, Block> probationBlocks = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<BlockKey, Block> protectedBlocks = new LinkedHashMap<>(16, 0.75f, true);
+	private long probationSize = 0;
+	private long protectedSize = 0;
+
+	Segment(long capacity) {
+	    this.capacity = capacity;
+	    this.protectedCapacity = (long) (capacity * PROTECTED_RATIO);
+	}
+
+	synchronized byte[] get(BlockKey key) {
+	    Block block = protectedBlocks.get(key);
+	    if (block != null) {
+		return block.data;
+	    }
+	    block = probationBlocks.remove(key);
+	    if (block == null) {
+		return null;
+	    }
+	    // The second hit protects the block.
+	    probationSize -= block.data.length;
+	    protectedBlocks.put(key, block);
+	    protectedSize += block.data.length;
+	    Iterator<Entry<BlockKey, Block>> iterator = protectedBlocks.entrySet().iterator();
+	    while (protectedSize > protectedCapacity) {
+		Entry<BlockKey, Block> eldest = iterator.next();
+		iterator.remove();
+		protectedSize -= eldest.getValue().data.length;
+		probationBlocks.put(eldest.getKey(), eldest.getValue());
+		probationSize += eldest.getValue().data.length;
+	    }
+	    return block.data;
+	}
+
+	synchronized void put(BlockKey key, Block block) {
+	    if (protectedBlocks.containsKey(key) || probationBlocks.containsKey(key)) {
+		return;
+	    }
+	    probationBlocks.put(key, block);
+	    probationSize += block.data.length;
+	    evict(probationBlocks, true);
+	    evict(protectedBlocks, false);
+	}
+
+	private void evict(LinkedHashMap<BlockKey, Block> blocks, boolean probation) {
+	    Iterator<Block> iterator = blocks.values().iterator();
+	    while ((probationSize + protectedSize > capacity) && iterator.hasNext()) {
+		Block eldest = iterator.next();
+		iterator.remove();
+		if (probation) {
+		    probationSize -= eldest.data.length;
+		} else {
+		    protectedSize -= eldest.data.length;
+		}
+		eldest.owner.getEvictions().inc();
+	    }
+	}
+
+	synchronized long getSize() {
+	    return probationSize + protectedSize;
+	}
+    }
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    /**
+     * Creates a new cache.
+     *
+     * @param size
+     *            is the size of the cache in bytes.
+     */
+    public BlockCache(long size) {
+	super();
+	for (int i = 0; i < SEGMENT_COUNT; ++i) {
+	    segments[i] = new Segment(size / SEGMENT_COUNT);
+	}
+    }
+
+    private Segment getSegment(BlockKey key) {
+	return segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENT_COUNT];
+    }
+
+    /**
+     * Returns a cached block.
+     *
+     * @param file
+     *            is the file of the block.
+     * @param offset
+     *            is the offset of the block in the file.
+     * @return The content of the block is returned or <code>null</code> in case
+     *         the block is not cached. The content must not be modified.
+     */
+    public byte[] get(File file, long offset) {
+	BlockKey key = new BlockKey(file, offset);
+	return getSegment(key).get(key);
+    }
+
+    /**
+     * Puts a block into the cache.
+     *
+     * @param file
+     *            is the file of the block.
+     * @param offset
+     *            is the offset of the block in the file.
+     * @param data
+     *            is the content of the block, which is shorter than
+     *            {@link #BLOCK_SIZE} only for the last block of the file.
+     * @param owner
+     *            is the {@link BlockCacheMetrics} of the store which read the
+     *            block.
+     */
+    public void put(File file, long offset, byte[] data, BlockCacheMetrics owner) {
+	BlockKey key = new BlockKey(file, offset);
+	getSegment(key).put(key, new Block(data, owner));
+    }
+
+    /**
+     * Returns the number of bytes currently cached.
+     *
+     * @return The size in bytes is returned.
+     */
+    public long getSize() {
+	long size = 0;
+	for (Segment segment : segments) {
+	    size += segment.getSize();
+	}
+	return size;
+    }
+
+}
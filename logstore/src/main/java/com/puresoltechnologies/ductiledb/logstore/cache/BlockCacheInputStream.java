@@ -0,0 +1,126 @@
+package com.puresoltechnologies.ductiledb.logstore.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageInputStream;
+
+/**
+ * This input stream reads a file block by block via the {@link BlockCache}.
+ * Missing blocks are read from the storage. The file is only opened on the
+ * first miss and is kept open for the following misses of sequential reads.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class BlockCacheInputStream extends InputStream {
+
+    private final Storage storage;
+    private final File file;
+    private final BlockCache blockCache;
+    private final BlockCacheMetrics metrics;
+    private StorageInputStream fileStream = null;
+    private long position = 0;
+    private byte[] block = null;
+    private long blockOffset = -1;
+
+    BlockCacheInputStream(Storage storage, File file, BlockCache blockCache, BlockCacheMetrics metrics) {
+	super();
+	this.storage = storage;
+	this.file = file;
+	this.blockCache = blockCache;
+	this.metrics = metrics;
+    }
+
+    /**
+     * Makes the block of the current position available.
+     *
+     * @return <code>false</code> is returned at the end of the file.
+     */
+    private boolean loadBlock() throws IOException {
+	long offset = position - (position % BlockCache.BLOCK_SIZE);
+	if (offset != blockOffset) {
+	    block = blockCache.get(file, offset);
+	    if (block != null) {
+		metrics.getHits().inc();
+	    } else {
+		metrics.getMisses().inc();
+		block = readBlock(offset);
+		if (block.length > 0) {
+		    blockCache.put(file, offset, block, metrics);
+		}
+	    }
+	    blockOffset = offset;
+	}
+	return position - blockOffset < block.length;
+    }
+
+    private byte[] readBlock(long offset) throws IOException {
+	if ((fileStream != null) && (fileStream.getPosition() > offset)) {
+	    fileStream.close();
+	    fileStream = null;
+	}
+	if (fileStream == null) {
+	    fileStream = storage.open(file);
+	}
+	fileStream.seek(offset);
+	byte[] buffer = new byte[BlockCache.BLOCK_SIZE];
+	int length = 0;
+	while (length < buffer.length) {
+	    int len = fileStream.read(buffer, length, buffer.length - length);
+	    if (len < 0) {
+		byte[] lastBlock = new byte[length];
+		System.arraycopy(buffer, 0, lastBlock, 0, length);
+		return lastBlock;
+	    }
+	    length += len;
+	}
+	return buffer;
+    }
+
+    @Override
+    public int read() throws IOException {
+	if (!loadBlock()) {
+	    return -1;
+	}
+	return block[(int) (position++ - blockOffset)] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+	if (len == 0) {
+	    return 0;
+	}
+	int count = 0;
+	while ((count < len) && loadBlock()) {
+	    int blockPosition = (int) (position - blockOffset);
+	    int length = Math.min(len - count, block.length - blockPosition);
+	    System.arraycopy(block, blockPosition, b, off + count, length);
+	    count += length;
+	    position += length;
+	}
+	return count > 0 ? count : -1;
+    }
+
+    /**
+     * Skips without reading, so seeks within cached files need no IO.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+	if (n <= 0) {
+	    return 0;
+	}
+	position += n;
+	return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+	if (fileStream != null) {
+	    fileStream.close();
+	    fileStream = null;
+	}
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.puresoltechnologies.ductiledb.logstore.cache;
+
+import com.codahale.metrics.Counter;
+
+/**
+ * This class keeps the counters of the {@link BlockCache} accesses of one
+ * store. The cache is shared, so the evictions are counted for the store which
+ * loaded the evicted block.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class BlockCacheMetrics {
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public BlockCacheMetrics(Counter hits, Counter misses, Counter evictions) {
+	super();
+	this.hits = hits;
+	this.misses = misses;
+	this.evictions = evictions;
+    }
+
+    public Counter getHits() {
+	return hits;
+    }
+
+    public Counter getMisses() {
+	return misses;
+    }
+
+    public Counter getEvictions() {
+	return evictions;
+    }
+
+}
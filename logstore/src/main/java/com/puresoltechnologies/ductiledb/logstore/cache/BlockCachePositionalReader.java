@@ -0,0 +1,94 @@
+package com.puresoltechnologies.ductiledb.logstore.cache;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StoragePositionalReader;
+
+/**
+ * This reader reads the blocks of a file via the {@link BlockCache}. Missing
+ * blocks are read with a positional reader of the storage, which is only opened
+ * on the first miss. Like the reader of the storage, it can be used by many
+ * threads in parallel.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class BlockCachePositionalReader implements StoragePositionalReader {
+
+    private final Storage storage;
+    private final File file;
+    private final BlockCache blockCache;
+    private final BlockCacheMetrics metrics;
+    private volatile StoragePositionalReader fileReader = null;
+
+    BlockCachePositionalReader(Storage storage, File file, BlockCache blockCache, BlockCacheMetrics metrics) {
+	super();
+	this.storage = storage;
+	this.file = file;
+	this.blockCache = blockCache;
+	this.metrics = metrics;
+    }
+
+    private byte[] getBlock(long offset) throws IOException {
+	byte[] block = blockCache.get(file, offset);
+	if (block != null) {
+	    metrics.getHits().inc();
+	    return block;
+	}
+	metrics.getMisses().inc();
+	byte[] buffer = new byte[BlockCache.BLOCK_SIZE];
+	int length = getFileReader().read(offset, buffer, 0, buffer.length);
+	if (length < buffer.length) {
+	    block = new byte[Math.max(length, 0)];
+	    System.arraycopy(buffer, 0, block, 0, block.length);
+	} else {
+	    block = buffer;
+	}
+	if (block.length > 0) {
+	    blockCache.put(file, offset, block, metrics);
+	}
+	return block;
+    }
+
+    private StoragePositionalReader getFileReader() throws IOException {
+	StoragePositionalReader reader = fileReader;
+	if (reader == null) {
+	    synchronized (this) {
+		reader = fileReader;
+		if (reader == null) {
+		    reader = storage.openPositionalReader(file);
+		    fileReader = reader;
+		}
+	    }
+	}
+	return reader;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+	int count = 0;
+	while (count < length) {
+	    long current = position + count;
+	    long blockOffset = current - (current % BlockCache.BLOCK_SIZE);
+	    byte[] block = getBlock(blockOffset);
+	    int blockPosition = (int) (current - blockOffset);
+	    if (blockPosition >= block.length) {
+		break;
+	    }
+	    int len = Math.min(length - count, block.length - blockPosition);
+	    System.arraycopy(block, blockPosition, buffer, offset + count, len);
+	    count += len;
+	}
+	return (count == 0) && (length > 0) ? -1 : count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+	if (fileReader != null) {
+	    fileReader.close();
+	    fileReader = null;
+	}
+    }
+
+}
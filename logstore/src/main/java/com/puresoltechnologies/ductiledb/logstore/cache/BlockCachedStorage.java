@@ -0,0 +1,133 @@
+package com.puresoltechnologies.ductiledb.logstore.cache;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
+import java.io.IOException;
+
+import com.puresoltechnologies.ductiledb.storage.spi.FileStatus;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageConfiguration;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageInputStream;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
+import com.puresoltechnologies.ductiledb.storage.spi.StoragePositionalReader;
+
+/**
+ * This {@link Storage} reads the files opened with {@link #open(File)} and
+ * {@link #openPositionalReader(File)} via a {@link BlockCache}. All other
+ * operations are delegated. It is only handed to the readers of data files,
+ * index files and flushed commit logs, which are not changed anymore.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class BlockCachedStorage implements Storage {
+
+    private final Storage storage;
+    private final BlockCache blockCache;
+    private final BlockCacheMetrics metrics;
+
+    public BlockCachedStorage(Storage storage, BlockCache blockCache, BlockCacheMetrics metrics) {
+	super();
+	this.storage = storage;
+	this.blockCache = blockCache;
+	this.metrics = metrics;
+    }
+
+    @Override
+    public StorageInputStream open(File file) throws IOException {
+	if (!storage.exists(file)) {
+	    throw new FileNotFoundException("File '" + file + "' does not exist.");
+	}
+	return new StorageInputStream(new BlockCacheInputStream(storage, file, blockCache, metrics),
+		storage.getConfiguration().getBlockSize());
+    }
+
+    @Override
+    public StoragePositionalReader openPositionalReader(File file) throws IOException {
+	if (!storage.exists(file)) {
+	    throw new FileNotFoundException("File '" + file + "' does not exist.");
+	}
+	return new BlockCachePositionalReader(storage, file, blockCache, metrics);
+    }
+
+    @Override
+    public void close() throws IOException {
+	// The delegate is closed by its owner.
+    }
+
+    @Override
+    public StorageConfiguration getConfiguration() {
+	return storage.getConfiguration();
+    }
+
+    @Override
+    public File getStorageDirectory() {
+	return storage.getStorageDirectory();
+    }
+
+    @Override
+    public void initialize() throws IOException {
+	storage.initialize();
+    }
+
+    @Override
+    public void createDirectory(File directory) throws IOException {
+	storage.createDirectory(directory);
+    }
+
+    @Override
+    public void removeDirectory(File directory, boolean recursive) throws FileNotFoundException, IOException {
+	storage.removeDirectory(directory, recursive);
+    }
+
+    @Override
+    public Iterable<File> list(File directory) {
+	return storage.list(directory);
+    }
+
+    @Override
+    public Iterable<File> list(File directory, FilenameFilter filter) {
+	return storage.list(directory, filter);
+    }
+
+    @Override
+    public boolean exists(File file) {
+	return storage.exists(file);
+    }
+
+    @Override
+    public boolean isDirectory(File directory) {
+	return storage.isDirectory(directory);
+    }
+
+    @Override
+    public FileStatus getFileStatus(File file) {
+	return storage.getFileStatus(file);
+    }
+
+    @Override
+    public StorageOutputStream create(File file) throws IOException {
+	return storage.create(file);
+    }
+
+    @Override
+    public StorageOutputStream append(File file) throws IOException {
+	return storage.append(file);
+    }
+
+    @Override
+    public StorageOutputStream overwrite(File file) throws IOException {
+	return storage.overwrite(file);
+    }
+
+    @Override
+    public void rename(File source, File target) throws IOException {
+	storage.rename(source, target);
+    }
+
+    @Override
+    public void delete(File file) {
+	storage.delete(file);
+    }
+
+}
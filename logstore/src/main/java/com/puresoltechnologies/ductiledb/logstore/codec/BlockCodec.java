@@ -0,0 +1,65 @@
+package com.puresoltechnologies.ductiledb.logstore.codec;
+
+import java.io.IOException;
+
+/**
+ * This is the SPI for the compression of the blocks of data files. The codec
+ * of a column family is selected by its name in the
+ * {@link com.puresoltechnologies.ductiledb.logstore.LogStoreConfiguration}. The
+ * id of the codec is stored with each block, so the blocks are decoded with the
+ * codec they were written with, whatever codec is configured at the time of
+ * reading.
+ *
+ * Additional codecs are provided as Java services of this interface (see
+ * {@link BlockCodecs}). Implementations need to be thread-safe.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public interface BlockCodec {
+
+    /**
+     * Returns the id of the codec which is stored in the blocks. The ids 0 to 15
+     * are reserved for the codecs of DuctileDB.
+     *
+     * @return The id between 0 and 127 is returned.
+     */
+    public int getId();
+
+    /**
+     * Returns the name of the codec used in the configuration.
+     *
+     * @return The name is returned.
+     */
+    public String getName();
+
+    /**
+     * Encodes a block.
+     *
+     * @param block
+     *            is the buffer containing the block.
+     * @param offset
+     *            is the offset of the block in the buffer.
+     * @param length
+     *            is the length of the block.
+     * @return The encoded block is returned.
+     */
+    public byte[] encode(byte[] block, int offset, int length);
+
+    /**
+     * Decodes a block.
+     *
+     * @param encoded
+     *            is the buffer containing the encoded block.
+     * @param offset
+     *            is the offset of the encoded block in the buffer.
+     * @param length
+     *            is the length of the encoded block.
+     * @param blockLength
+     *            is the length of the decoded block.
+     * @return The decoded block is returned.
+     * @throws IOException
+     *             is thrown in case the encoded block is broken.
+     */
+    public byte[] decode(byte[] encoded, int offset, int length, int blockLength) throws IOException;
+
+}
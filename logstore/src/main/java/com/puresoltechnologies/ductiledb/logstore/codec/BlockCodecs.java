@@ -0,0 +1,79 @@
+package com.puresoltechnologies.ductiledb.logstore.codec;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is the registry of the {@link BlockCodec}s. The codecs
+ * {@value NoneBlockCodec#NAME} and {@value DeflateBlockCodec#NAME} are built
+ * in. Further codecs are loaded via SPI on first use.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class BlockCodecs {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockCodecs.class);
+
+    private static final BlockCodec[] codecsById = new BlockCodec[128];
+    private static final Map<String, BlockCodec> codecsByName = new HashMap<>();
+
+    static {
+	register(new NoneBlockCodec());
+	register(new DeflateBlockCodec());
+	for (BlockCodec codec : ServiceLoader.load(BlockCodec.class)) {
+	    register(codec);
+	}
+    }
+
+    private static void register(BlockCodec codec) {
+	int id = codec.getId();
+	if ((id < 0) || (id >= codecsById.length)) {
+	    throw new IllegalStateException("Block codec '" + codec.getName() + "' has invalid id " + id + ".");
+	}
+	if ((codecsById[id] != null) || codecsByName.containsKey(codec.getName())) {
+	    throw new IllegalStateException("Block codec '" + codec.getName() + "' with id " + id
+		    + " clashes with block codec '"
+		    + (codecsById[id] != null ? codecsById[id] : codecsByName.get(codec.getName())).getName() + "'.");
+	}
+	codecsById[id] = codec;
+	codecsByName.put(codec.getName(), codec);
+	logger.debug("Block codec '" + codec.getName() + "' with id " + id + " registered.");
+    }
+
+    /**
+     * Returns the codec configured by its name.
+     *
+     * @param name
+     *            is the name of the codec.
+     * @return The {@link BlockCodec} is returned.
+     * @throws IllegalArgumentException
+     *             is thrown in case the codec is not available.
+     */
+    public static BlockCodec get(String name) {
+	BlockCodec codec = codecsByName.get(name);
+	if (codec == null) {
+	    throw new IllegalArgumentException("Block codec '" + name + "' is not available.");
+	}
+	return codec;
+    }
+
+    /**
+     * Returns the codec of a block.
+     *
+     * @param id
+     *            is the id of the codec stored in the block.
+     * @return The {@link BlockCodec} is returned or <code>null</code> in case the
+     *         codec is not available.
+     */
+    public static BlockCodec get(int id) {
+	if ((id < 0) || (id >= codecsById.length)) {
+	    return null;
+	}
+	return codecsById[id];
+    }
+
+}
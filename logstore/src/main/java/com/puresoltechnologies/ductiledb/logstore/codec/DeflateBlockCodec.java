@@ -0,0 +1,78 @@
+package com.puresoltechnologies.ductiledb.logstore.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This {@link BlockCodec} compresses the blocks with the {@link Deflater} of
+ * the JDK. It trades write speed for a good compression of values with
+ * repeated strings like the serialized properties of vertices.
+ *
+ * The deflaters and inflaters keep native memory, so they are reused per
+ * thread instead of being created for each block.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class DeflateBlockCodec implements BlockCodec {
+
+    public static final int ID = 1;
+    public static final String NAME = "deflate";
+
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal
+	    .withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    @Override
+    public int getId() {
+	return ID;
+    }
+
+    @Override
+    public String getName() {
+	return NAME;
+    }
+
+    @Override
+    public byte[] encode(byte[] block, int offset, int length) {
+	Deflater deflater = deflaters.get();
+	deflater.reset();
+	deflater.setInput(block, offset, length);
+	deflater.finish();
+	ByteArrayOutputStream encoded = new ByteArrayOutputStream(length / 2 + 16);
+	byte[] buffer = new byte[Math.max(256, Math.min(length, 64 * 1024))];
+	while (!deflater.finished()) {
+	    int len = deflater.deflate(buffer);
+	    encoded.write(buffer, 0, len);
+	}
+	return encoded.toByteArray();
+    }
+
+    @Override
+    public byte[] decode(byte[] encoded, int offset, int length, int blockLength) throws IOException {
+	Inflater inflater = inflaters.get();
+	inflater.reset();
+	inflater.setInput(encoded, offset, length);
+	byte[] block = new byte[blockLength];
+	try {
+	    int position = 0;
+	    while (position < blockLength) {
+		int len = inflater.inflate(block, position, blockLength - position);
+		if ((len == 0) && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+		    break;
+		}
+		position += len;
+	    }
+	    if (position < blockLength) {
+		throw new IOException("Could not inflate block to " + blockLength
+			+ " bytes. It is maybe a broken data file.");
+	    }
+	} catch (DataFormatException e) {
+	    throw new IOException("Could not inflate block. It is maybe a broken data file.", e);
+	}
+	return block;
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.puresoltechnologies.ductiledb.logstore.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This {@link BlockCodec} stores the blocks as they are. It is also used for
+ * blocks which do not compress well with the configured codec.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class NoneBlockCodec implements BlockCodec {
+
+    public static final int ID = 0;
+    public static final String NAME = "none";
+
+    @Override
+    public int getId() {
+	return ID;
+    }
+
+    @Override
+    public String getName() {
+	return NAME;
+    }
+
+    @Override
+    public byte[] encode(byte[] block, int offset, int length) {
+	return Arrays.copyOfRange(block, offset, offset + length);
+    }
+
+    @Override
+    public byte[] decode(byte[] encoded, int offset, int length, int blockLength) throws IOException {
+	if (length != blockLength) {
+	    throw new IOException("Uncompressed block has a length of " + length + " instead of " + blockLength
+		    + ". It is maybe a broken data file.");
+	}
+	return Arrays.copyOfRange(encoded, offset, offset + length);
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.puresoltechnologies.ductiledb.logstore.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodec;
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodecs;
+import com.puresoltechnologies.ductiledb.logstore.codec.NoneBlockCodec;
+import com.puresoltechnologies.ductiledb.logstore.io.DuctileDBOutputStream;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+
+/**
+ * This class writes data files of format version 2. The rows are packed into
+ * prefix compressed blocks described at {@link DataBlock}. The rows need to be
+ * written in key order.
+ *
+ * Each block is encoded with the configured {@link BlockCodec}. Blocks which
+ * do not shrink by at least an eighth are stored uncompressed, because the
+ * decoding costs would not pay off. The statistics of the rows and the sizes
+ * of the blocks before and after compression are written into the footer of
+ * the file (see {@link DataFileStatistics}).
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class BlockDataFileWriter implements Closeable {
+
+    private final DuctileDBOutputStream outputStream;
+    private final int blockSize;
+    private final BlockCodec codec;
+    private final DataBlockBuilder blockBuilder = new DataBlockBuilder();
+    private final DataFileStatisticsBuilder statistics;
+    private long blockOffset;
+
+    /**
+     * Creates a new data file.
+     *
+     * @param storage
+     *            is the storage to write to.
+     * @param dataFile
+     *            is the data file to be created.
+     * @param blockSize
+     *            is the size in bytes from which on a block is written.
+     * @param codec
+     *            is the codec to compress the blocks with.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public BlockDataFileWriter(Storage storage, File dataFile, int blockSize, BlockCodec codec) throws IOException {
+	super();
+	this.outputStream = new DuctileDBOutputStream(storage.create(dataFile));
+	this.blockSize = blockSize;
+	this.codec = codec;
+	this.statistics = new DataFileStatisticsBuilder(codec.getId());
+	outputStream.writeData(Bytes.fromInt(DataBlock.FILE_MAGIC));
+	outputStream.writeData(Bytes.fromInt(DataBlock.FORMAT_VERSION));
+	blockOffset = outputStream.getPosition();
+    }
+
+    /**
+     * Writes a row into the current block.
+     *
+     * @return The offset of the block of the row is returned, which is to be put
+     *         into the index.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public synchronized long writeRow(Key rowKey, Instant tombstone, byte[] data) throws IOException {
+	long offset = blockOffset;
+	blockBuilder.add(rowKey, tombstone, data);
+	statistics.addRow(rowKey, tombstone, data);
+	if (blockBuilder.getSize() >= blockSize) {
+	    writeBlock();
+	}
+	return offset;
+    }
+
+    private void writeBlock() throws IOException {
+	if (!blockBuilder.isEmpty()) {
+	    byte[] block = blockBuilder.finish();
+	    BlockCodec blockCodec = codec;
+	    byte[] encoded = codec.encode(block, 0, block.length);
+	    if (encoded.length > block.length - block.length / 8) {
+		blockCodec = BlockCodecs.get(NoneBlockCodec.ID);
+		encoded = block;
+	    }
+	    byte[] stored = new byte[DataBlock.BLOCK_HEADER_SIZE + encoded.length];
+	    Bytes.putInt(stored, stored.length - 4, 0);
+	    stored[8] = (byte) blockCodec.getId();
+	    Bytes.putInt(stored, block.length, 9);
+	    System.arraycopy(encoded, 0, stored, DataBlock.BLOCK_HEADER_SIZE, encoded.length);
+	    Bytes.putInt(stored, DataBlock.checksum(stored, 8, stored.length - 8), 4);
+	    outputStream.writeData(stored);
+	    blockOffset = outputStream.getPosition();
+	    statistics.addBlock(block.length, encoded.length);
+	}
+    }
+
+    /**
+     * Returns the size of the data file including the current block before
+     * compression.
+     */
+    public synchronized long getPosition() {
+	return outputStream.getPosition()
+		+ (blockBuilder.isEmpty() ? 0 : DataBlock.BLOCK_HEADER_SIZE + blockBuilder.getSize());
+    }
+
+    /**
+     * Returns the statistics of the rows and blocks written so far. They are
+     * complete after {@link #close()}.
+     */
+    public synchronized DataFileStatistics getStatistics() {
+	return statistics.build();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+	try {
+	    writeBlock();
+	    byte[] statistics = getStatistics().toBytes();
+	    outputStream.writeData(Bytes.fromInt(0));
+	    outputStream.writeData(statistics);
+	    outputStream.writeData(Bytes.fromInt(statistics.length));
+	    outputStream.writeData(Bytes.fromInt(DataFileStatistics.FOOTER_MAGIC));
+	} finally {
+	    outputStream.close();
+	}
+    }
+
+}
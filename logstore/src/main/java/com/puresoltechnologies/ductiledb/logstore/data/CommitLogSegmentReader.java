@@ -0,0 +1,156 @@
+package com.puresoltechnologies.ductiledb.logstore.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.Row;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageInputStream;
+import com.puresoltechnologies.streaming.streams.MultiStreamSeekableInputStream;
+
+/**
+ * This class reads a commit log sequentially for recovery. Segments written by
+ * {@link CommitLogSegmentWriter} are read up to the first frame which is
+ * incomplete or fails the CRC check. Commit logs without segment header, which
+ * were written before segments were introduced, are read as plain data files.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class CommitLogSegmentReader implements Closeable {
+
+    private final MultiStreamSeekableInputStream<StorageInputStream> inputStream;
+    private final long fileLength;
+    private final boolean framed;
+    private final byte[] segmentId;
+    private final CRC32 crc = new CRC32();
+    private long rowOffset = -1;
+
+    public CommitLogSegmentReader(Storage storage, File commitLog) throws IOException {
+	super();
+	inputStream = new MultiStreamSeekableInputStream<>(10, () -> storage.open(commitLog));
+	fileLength = storage.getFileStatus(commitLog).getLength();
+	byte[] header = readFully(CommitLogSegmentWriter.HEADER_SIZE);
+	if ((header != null) && (Bytes.toInt(header) == CommitLogSegmentWriter.MAGIC)) {
+	    int version = Bytes.toInt(header, 4);
+	    if (version != CommitLogSegmentWriter.VERSION) {
+		throw new IOException(
+			"Commit log segment '" + commitLog + "' has unsupported version " + version + ".");
+	    }
+	    framed = true;
+	    segmentId = new byte[8];
+	    System.arraycopy(header, 8, segmentId, 0, 8);
+	} else {
+	    framed = false;
+	    segmentId = null;
+	    inputStream.seek(0);
+	}
+    }
+
+    /**
+     * Returns whether the commit log is a framed segment.
+     *
+     * @return <code>true</code> is returned for segments and <code>false</code>
+     *         for commit logs written as plain data files.
+     */
+    public boolean isFramed() {
+	return framed;
+    }
+
+    public long getPosition() {
+	return inputStream.getPosition();
+    }
+
+    public void seek(long position) throws IOException {
+	inputStream.seek(position);
+    }
+
+    /**
+     * Returns the offset of the last row read, which is to be used for its index
+     * entry.
+     *
+     * @return The offset is returned.
+     */
+    public long getRowOffset() {
+	return rowOffset;
+    }
+
+    /**
+     * This method reads the next row and reports the write batch markers found
+     * in front of it.
+     *
+     * @param batchMarkerConsumer
+     *            is called with the row count of each batch marker read.
+     * @return The next {@link Row} is returned or <code>null</code> at the end of
+     *         the valid records.
+     * @throws IOException
+     *             is thrown in case of IO issues or a truncated row in a plain
+     *             commit log.
+     */
+    public Row readRow(IntConsumer batchMarkerConsumer) throws IOException {
+	if (!framed) {
+	    rowOffset = inputStream.getPosition();
+	    return DataFileReader.readRow(inputStream, rowCount -> {
+		batchMarkerConsumer.accept(rowCount);
+		rowOffset = inputStream.getPosition();
+	    });
+	}
+	while (true) {
+	    byte[] payload = readFrame();
+	    if (payload == null) {
+		return null;
+	    }
+	    if (Bytes.toInt(payload) == 0) {
+		batchMarkerConsumer.accept(Bytes.toInt(payload, 4));
+		continue;
+	    }
+	    rowOffset = inputStream.getPosition() - payload.length;
+	    return DataFileReader.readRow(new ByteArrayInputStream(payload), null);
+	}
+    }
+
+    private byte[] readFrame() throws IOException {
+	byte[] frameHeader = readFully(CommitLogSegmentWriter.FRAME_HEADER_SIZE);
+	if (frameHeader == null) {
+	    return null;
+	}
+	int length = Bytes.toInt(frameHeader);
+	if ((length < 8) || (length > fileLength - inputStream.getPosition())) {
+	    return null;
+	}
+	byte[] payload = readFully(length);
+	if (payload == null) {
+	    return null;
+	}
+	crc.reset();
+	crc.update(segmentId);
+	crc.update(payload);
+	if ((int) crc.getValue() != Bytes.toInt(frameHeader, 4)) {
+	    return null;
+	}
+	return payload;
+    }
+
+    private byte[] readFully(int length) throws IOException {
+	byte[] buffer = new byte[length];
+	int read = 0;
+	while (read < length) {
+	    int len = inputStream.read(buffer, read, length - read);
+	    if (len < 0) {
+		return null;
+	    }
+	    read += len;
+	}
+	return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+	inputStream.close();
+    }
+
+}
@@ -0,0 +1,170 @@
+package com.puresoltechnologies.ductiledb.logstore.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.zip.CRC32;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
+
+/**
+ * This class writes commit log segments. A segment starts with a header and
+ * contains framed records:
+ *
+ * <pre>
+ * header: [int magic][int version][long segment id]
+ * record: [int payload length][int crc][payload]
+ * </pre>
+ *
+ * The payload is either a row in the format of {@link DataFileWriter}, a merge
+ * operand or a write batch marker. The CRC32 is calculated over the segment id
+ * and the payload. Segments are preallocated and recycled, so the file may contain
+ * zeros or records of a former use behind the last written record. As the
+ * segment id changes with each use, these stale records fail the CRC check and
+ * the valid tail of a segment is found at the first invalid frame.
+ *
+ * Index entries point to the payload of a row, so rows of a segment can be read
+ * with {@link DataFileReader#readRow(long)}.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class CommitLogSegmentWriter implements Closeable {
+
+    public static final int MAGIC = 0x44434C53; // "DCLS"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int FRAME_HEADER_SIZE = 8;
+
+    private final StorageOutputStream outputStream;
+    private final byte[] segmentId;
+    private final CRC32 crc = new CRC32();
+    private byte[] payload = new byte[256];
+    private int payloadLength = 0;
+
+    /**
+     * Creates a writer and writes the segment header. The stream needs to be
+     * positioned at the beginning of the segment.
+     *
+     * @param outputStream
+     *            is the stream of the segment.
+     * @param segmentId
+     *            is the id of the segment, which needs to differ from the ids
+     *            of former uses of the same file.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public CommitLogSegmentWriter(StorageOutputStream outputStream, long segmentId) throws IOException {
+	super();
+	this.outputStream = outputStream;
+	this.segmentId = Bytes.fromLong(segmentId);
+	outputStream.write(Bytes.fromInt(MAGIC));
+	outputStream.write(Bytes.fromInt(VERSION));
+	outputStream.write(this.segmentId);
+    }
+
+    /**
+     * This method writes a row.
+     *
+     * @return The offset of the row payload is returned, which is to be used for
+     *         the index entry.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public synchronized long writeRow(Key rowKey, Instant tombstone, byte[] data) throws IOException {
+	byte[] key = rowKey.getBytes();
+	payloadLength = 0;
+	appendPayload(Bytes.fromInt(key.length));
+	appendPayload(key);
+	appendPayload(tombstone == null ? new byte[12] : Bytes.fromInstant(tombstone));
+	appendPayload(Bytes.fromInt(data.length));
+	appendPayload(data);
+	return writeFrame();
+    }
+
+    /**
+     * This method writes a merge operand. Merge operands are rows with a negative
+     * row key length and without tombstone.
+     *
+     * @return The offset of the row payload is returned, which is to be used for
+     *         the index entry.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public synchronized long writeMergeOperand(Key rowKey, byte[] operand) throws IOException {
+	byte[] key = rowKey.getBytes();
+	payloadLength = 0;
+	appendPayload(Bytes.fromInt(-key.length));
+	appendPayload(key);
+	appendPayload(new byte[12]);
+	appendPayload(Bytes.fromInt(operand.length));
+	appendPayload(operand);
+	return writeFrame();
+    }
+
+    /**
+     * This method writes a write batch marker as its own record. See
+     * {@link DataFileWriter#writeBatchMarker(int)} for the marker format.
+     *
+     * @param rowCount
+     *            is the number of rows in the batch or 0 for the end marker.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public synchronized void writeBatchMarker(int rowCount) throws IOException {
+	payloadLength = 0;
+	appendPayload(Bytes.fromInt(0));
+	appendPayload(Bytes.fromInt(rowCount));
+	writeFrame();
+    }
+
+    private void appendPayload(byte[] bytes) {
+	if (payloadLength + bytes.length > payload.length) {
+	    byte[] newPayload = new byte[Math.max(payload.length * 2, payloadLength + bytes.length)];
+	    System.arraycopy(payload, 0, newPayload, 0, payloadLength);
+	    payload = newPayload;
+	}
+	System.arraycopy(bytes, 0, payload, payloadLength, bytes.length);
+	payloadLength += bytes.length;
+    }
+
+    private long writeFrame() throws IOException {
+	crc.reset();
+	crc.update(segmentId);
+	crc.update(payload, 0, payloadLength);
+	outputStream.write(Bytes.fromInt(payloadLength));
+	outputStream.write(Bytes.fromInt((int) crc.getValue()));
+	long offset = outputStream.getPosition();
+	outputStream.write(payload, 0, payloadLength);
+	return offset;
+    }
+
+    /**
+     * Returns the number of bytes written to the segment, including the header.
+     *
+     * @return The position is returned.
+     */
+    public long getPosition() {
+	return outputStream.getPosition();
+    }
+
+    /**
+     * Returns whether records were written to the segment.
+     *
+     * @return <code>true</code> is returned in case no record was written, yet.
+     */
+    public boolean isEmpty() {
+	return outputStream.getPosition() <= HEADER_SIZE;
+    }
+
+    public void flush() throws IOException {
+	outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+	outputStream.close();
+    }
+
+}
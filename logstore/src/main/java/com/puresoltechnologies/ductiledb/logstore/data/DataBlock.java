@@ -0,0 +1,399 @@
+package com.puresoltechnologies.ductiledb.logstore.data;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.Row;
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodec;
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodecs;
+import com.puresoltechnologies.ductiledb.storage.spi.StoragePositionalReader;
+
+/**
+ * This is a block of a data file of format version 2. Data files of this
+ * format start with a header of {@link #FILE_MAGIC} and the format version,
+ * followed by the blocks:
+ *
+ * <pre>
+ * [block length][checksum][codec id][decoded length][encoded block]
+ * </pre>
+ *
+ * The checksum is the CRC32 of the codec id, the decoded length and the encoded
+ * block. It is verified on read, unless verification is switched off, and by
+ * the {@link DataFileVerifier}. The block is encoded with the
+ * {@link BlockCodec} of the codec id. The decoded block looks like:
+ *
+ * <pre>
+ * [entries...][restart offsets...][restart count]
+ * </pre>
+ *
+ * The row keys are prefix compressed: each entry only contains the suffix of
+ * its key, which differs from the key of the entry before. Every
+ * {@link #RESTART_INTERVAL}th entry is a restart point with the full key, so a
+ * row is found by a binary search over the restart points and a scan of at most
+ * {@link #RESTART_INTERVAL} entries. An entry looks like:
+ *
+ * <pre>
+ * [shared key length][unshared key length][value length][flags][tombstone][unshared key bytes][value]
+ * </pre>
+ *
+ * The lengths are written as variable length integers and the tombstone is only
+ * present if its flag is set.
+ *
+ * The index only contains an entry for the first row of each block, which
+ * points to the offset of the block. The blocks are followed by the footer with
+ * the {@link DataFileStatistics}. Data files of version 1 start with the first
+ * row and have no blocks.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class DataBlock {
+
+    /**
+     * This is the marker of data files with blocks. It is negative, so it can be
+     * distinguished from the key length of the first row of version 1 files.
+     */
+    public static final int FILE_MAGIC = 0xD1B1DA7A;
+    public static final int FORMAT_VERSION = 2;
+    public static final int FILE_HEADER_SIZE = 8;
+    static final int BLOCK_HEADER_SIZE = 4 + 4 + 1 + 4;
+    static final int RESTART_INTERVAL = 16;
+    static final int TOMBSTONE_FLAG = 0x01;
+
+    /**
+     * Reads the format version from the header of a data file.
+     *
+     * @param header
+     *            are the first {@link #FILE_HEADER_SIZE} bytes of the data file.
+     * @param length
+     *            is the number of bytes read.
+     * @return The format version is returned. Files without header have version
+     *         1.
+     * @throws IOException
+     *             is thrown in case the version is not supported.
+     */
+    static int getFormatVersion(byte[] header, int length) throws IOException {
+	if ((length < FILE_HEADER_SIZE) || (Bytes.toInt(header, 0) != FILE_MAGIC)) {
+	    return 1;
+	}
+	int version = Bytes.toInt(header, 4);
+	if (version != FORMAT_VERSION) {
+	    throw new IOException("Data file format version " + version + " is not supported.");
+	}
+	return version;
+    }
+
+    /**
+     * Reads the format version of a data file.
+     *
+     * @param reader
+     *            is the reader of the data file.
+     * @return The format version is returned.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public static int readFormatVersion(StoragePositionalReader reader) throws IOException {
+	byte[] header = new byte[FILE_HEADER_SIZE];
+	int length = 0;
+	while (length < header.length) {
+	    int len = reader.read(length, header, length, header.length - length);
+	    if (len <= 0) {
+		break;
+	    }
+	    length += len;
+	}
+	return getFormatVersion(header, length);
+    }
+
+    /**
+     * Reads the block at the given offset.
+     *
+     * @param reader
+     *            is the reader of the data file.
+     * @param dataFile
+     *            is the data file.
+     * @param offset
+     *            is the offset of the block.
+     * @param verifyChecksum
+     *            specifies whether the checksum of the block is verified.
+     * @return The {@link DataBlock} is returned.
+     * @throws IOException
+     *             is thrown in case of IO issues or a checksum mismatch.
+     */
+    public static DataBlock read(StoragePositionalReader reader, File dataFile, long offset, boolean verifyChecksum)
+	    throws IOException {
+	byte[] lengthBytes = new byte[4];
+	readFully(reader, offset, lengthBytes);
+	byte[] stored = new byte[checkLength(Bytes.toInt(lengthBytes), dataFile, offset)];
+	readFully(reader, offset + 4, stored);
+	return decode(dataFile, offset, stored, verifyChecksum);
+    }
+
+    static void readFully(StoragePositionalReader reader, long position, byte[] buffer) throws IOException {
+	int length = 0;
+	while (length < buffer.length) {
+	    int len = reader.read(position + length, buffer, length, buffer.length - length);
+	    if (len <= 0) {
+		throw new EOFException("Could not read full data block. It is maybe a broken data file.");
+	    }
+	    length += len;
+	}
+    }
+
+    /**
+     * Reads the next block of a stream.
+     *
+     * @param inputStream
+     *            is the stream positioned at the start of a block.
+     * @param dataFile
+     *            is the data file.
+     * @param offset
+     *            is the position of the stream.
+     * @param verifyChecksum
+     *            specifies whether the checksum of the block is verified.
+     * @return The {@link DataBlock} is returned or <code>null</code> at the end
+     *         of the file.
+     * @throws IOException
+     *             is thrown in case of IO issues or a checksum mismatch.
+     */
+    static DataBlock read(InputStream inputStream, File dataFile, long offset, boolean verifyChecksum)
+	    throws IOException {
+	byte[] lengthBytes = new byte[4];
+	int len = readFully(inputStream, lengthBytes);
+	if (len == 0) {
+	    return null;
+	} else if (len < lengthBytes.length) {
+	    throw new EOFException("Could not read full data block. It is maybe a broken data file.");
+	}
+	int length = Bytes.toInt(lengthBytes);
+	if (length == 0) {
+	    // The footer follows the blocks (see DataFileStatistics).
+	    return null;
+	}
+	byte[] stored = new byte[checkLength(length, dataFile, offset)];
+	if (readFully(inputStream, stored) < stored.length) {
+	    throw new EOFException("Could not read full data block. It is maybe a broken data file.");
+	}
+	return decode(dataFile, offset, stored, verifyChecksum);
+    }
+
+    private static int checkLength(int length, File dataFile, long offset) throws IOException {
+	if (length < BLOCK_HEADER_SIZE - 4) {
+	    throw new IOException("Data block at offset " + offset + " of '" + dataFile + "' has invalid length "
+		    + length + ". It is maybe a broken data file.");
+	}
+	return length;
+    }
+
+    /**
+     * Calculates the checksum of a block from the codec id on.
+     */
+    static int checksum(byte[] buffer, int offset, int length) {
+	CRC32 crc32 = new CRC32();
+	crc32.update(buffer, offset, length);
+	return (int) crc32.getValue();
+    }
+
+    private static DataBlock decode(File dataFile, long offset, byte[] stored, boolean verifyChecksum)
+	    throws IOException {
+	if (verifyChecksum) {
+	    int expected = Bytes.toInt(stored, 0);
+	    int actual = checksum(stored, 4, stored.length - 4);
+	    if (expected != actual) {
+		throw new IOException("Data block at offset " + offset + " of '" + dataFile + "' has checksum "
+			+ Integer.toHexString(actual) + " instead of " + Integer.toHexString(expected)
+			+ ". It is maybe a broken data file.");
+	    }
+	}
+	int codecId = stored[4] & 0xFF;
+	BlockCodec codec = BlockCodecs.get(codecId);
+	if (codec == null) {
+	    throw new IOException("Data block with unknown codec id " + codecId
+		    + " found. It is maybe a broken data file or the codec is not available.");
+	}
+	int length = Bytes.toInt(stored, 5);
+	byte[] data = codec.decode(stored, 9, stored.length - 9, length);
+	return new DataBlock(dataFile, offset, 4 + stored.length, data);
+    }
+
+    private static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+	int length = 0;
+	while (length < buffer.length) {
+	    int len = inputStream.read(buffer, length, buffer.length - length);
+	    if (len < 0) {
+		break;
+	    }
+	    length += len;
+	}
+	return length;
+    }
+
+    private final File dataFile;
+    private final long offset;
+    private final int size;
+    private final byte[] data;
+    private final int restartsPosition;
+    private final int restartCount;
+
+    private DataBlock(File dataFile, long offset, int size, byte[] data) throws IOException {
+	super();
+	this.dataFile = dataFile;
+	this.offset = offset;
+	this.size = size;
+	this.data = data;
+	if (data.length < 4) {
+	    throw new IOException("Data block without trailer found. It is maybe a broken data file.");
+	}
+	this.restartCount = Bytes.toInt(data, data.length - 4);
+	this.restartsPosition = data.length - 4 - 4 * restartCount;
+	if ((restartCount < 0) || (restartsPosition < 0)) {
+	    throw new IOException("Data block with invalid trailer found. It is maybe a broken data file.");
+	}
+    }
+
+    /**
+     * Returns the size of the block in the data file.
+     */
+    public int getSize() {
+	return size;
+    }
+
+    /**
+     * Returns the size of the decoded block.
+     */
+    public int getBlockLength() {
+	return data.length;
+    }
+
+    /**
+     * Checks whether this is the block at the given offset of the data file.
+     */
+    public boolean isAt(File dataFile, long offset) {
+	return (this.offset == offset) && this.dataFile.equals(dataFile);
+    }
+
+    /**
+     * Looks up a row in this block.
+     *
+     * @param rowKey
+     *            is the key of the row.
+     * @return The {@link Row} is returned or <code>null</code> in case the block
+     *         does not contain the row.
+     */
+    public Row find(Key rowKey) {
+	// Find the last restart point with a key less or equal to the row key.
+	int low = 0;
+	int high = restartCount - 1;
+	int restart = 0;
+	while (low <= high) {
+	    int mid = (low + high) >>> 1;
+	    Cursor cursor = new Cursor(getRestartPosition(mid), null);
+	    cursor.next();
+	    if (Key.of(cursor.key).compareTo(rowKey) <= 0) {
+		restart = mid;
+		low = mid + 1;
+	    } else {
+		high = mid - 1;
+	    }
+	}
+	Cursor cursor = new Cursor(getRestartPosition(restart), null);
+	while (cursor.next()) {
+	    int compareResult = Key.of(cursor.key).compareTo(rowKey);
+	    if (compareResult == 0) {
+		return cursor.getRow();
+	    } else if (compareResult > 0) {
+		return null;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Decodes all rows of this block.
+     *
+     * @return A list of the rows in key order is returned.
+     */
+    public List<Row> getRows() {
+	List<Row> rows = new ArrayList<>();
+	Cursor cursor = new Cursor(0, null);
+	while (cursor.next()) {
+	    rows.add(cursor.getRow());
+	}
+	return rows;
+    }
+
+    private int getRestartPosition(int restart) {
+	return Bytes.toInt(data, restartsPosition + 4 * restart);
+    }
+
+    /**
+     * This cursor decodes the entries of the block one by one.
+     */
+    private class Cursor {
+
+	private int position;
+	private byte[] key;
+	private Instant tombstone;
+	private int valuePosition;
+	private int valueLength;
+
+	Cursor(int position, byte[] key) {
+	    this.position = position;
+	    this.key = key;
+	}
+
+	boolean next() {
+	    if (position >= restartsPosition) {
+		return false;
+	    }
+	    int shared = readVarInt();
+	    int unshared = readVarInt();
+	    valueLength = readVarInt();
+	    int flags = data[position++];
+	    if ((flags & TOMBSTONE_FLAG) != 0) {
+		byte[] tombstoneBytes = new byte[12];
+		System.arraycopy(data, position, tombstoneBytes, 0, 12);
+		tombstone = Bytes.toTombstone(tombstoneBytes);
+		position += 12;
+	    } else {
+		tombstone = null;
+	    }
+	    byte[] nextKey = new byte[shared + unshared];
+	    if (shared > 0) {
+		System.arraycopy(key, 0, nextKey, 0, shared);
+	    }
+	    System.arraycopy(data, position, nextKey, shared, unshared);
+	    position += unshared;
+	    key = nextKey;
+	    valuePosition = position;
+	    position += valueLength;
+	    return true;
+	}
+
+	Row getRow() {
+	    byte[] value = new byte[valueLength];
+	    System.arraycopy(data, valuePosition, value, 0, valueLength);
+	    return new Row(Key.of(key), tombstone, value);
+	}
+
+	private int readVarInt() {
+	    int value = 0;
+	    int shift = 0;
+	    int b;
+	    do {
+		b = data[position++];
+		value |= (b & 0x7F) << shift;
+		shift += 7;
+	    } while ((b & 0x80) != 0);
+	    return value;
+	}
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.puresoltechnologies.ductiledb.logstore.data;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.Key;
+
+/**
+ * This class builds the blocks of data files of format version 2 described at
+ * {@link DataBlock}. The rows need to be added in key order.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class DataBlockBuilder {
+
+    private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+    private int[] restarts = new int[16];
+    private int restartCount = 0;
+    private int entryCount = 0;
+    private byte[] lastKey = null;
+
+    /**
+     * Adds a row to the block.
+     */
+    void add(Key rowKey, Instant tombstone, byte[] data) {
+	byte[] key = rowKey.getBytes();
+	int shared = 0;
+	if (entryCount % DataBlock.RESTART_INTERVAL == 0) {
+	    if (restartCount == restarts.length) {
+		int[] newRestarts = new int[restarts.length * 2];
+		System.arraycopy(restarts, 0, newRestarts, 0, restarts.length);
+		restarts = newRestarts;
+	    }
+	    restarts[restartCount++] = entries.size();
+	} else {
+	    int maxShared = Math.min(lastKey.length, key.length);
+	    while ((shared < maxShared) && (lastKey[shared] == key[shared])) {
+		shared++;
+	    }
+	}
+	writeVarInt(shared);
+	writeVarInt(key.length - shared);
+	writeVarInt(data.length);
+	if (tombstone != null) {
+	    entries.write(DataBlock.TOMBSTONE_FLAG);
+	    byte[] tombstoneBytes = Bytes.fromInstant(tombstone);
+	    entries.write(tombstoneBytes, 0, tombstoneBytes.length);
+	} else {
+	    entries.write(0);
+	}
+	entries.write(key, shared, key.length - shared);
+	entries.write(data, 0, data.length);
+	lastKey = key;
+	entryCount++;
+    }
+
+    private void writeVarInt(int value) {
+	while ((value & ~0x7F) != 0) {
+	    entries.write((value & 0x7F) | 0x80);
+	    value >>>= 7;
+	}
+	entries.write(value);
+    }
+
+    boolean isEmpty() {
+	return entryCount == 0;
+    }
+
+    /**
+     * Returns the size of the block returned by {@link #finish()}.
+     */
+    int getSize() {
+	return entries.size() + 4 * restartCount + 4;
+    }
+
+    /**
+     * Returns the block with the trailer of restart points and resets the
+     * builder for the next block. The block is framed and encoded by the
+     * {@link BlockDataFileWriter}.
+     */
+    byte[] finish() {
+	byte[] block = new byte[getSize()];
+	byte[] entryBytes = entries.toByteArray();
+	System.arraycopy(entryBytes, 0, block, 0, entryBytes.length);
+	int position = entryBytes.length;
+	for (int i = 0; i < restartCount; ++i) {
+	    Bytes.putInt(block, restarts[i], position);
+	    position += 4;
+	}
+	Bytes.putInt(block, restartCount, position);
+	entries.reset();
+	restartCount = 0;
+	entryCount = 0;
+	lastKey = null;
+	return block;
+    }
+
+}
@@ -4,6 +4,9 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.IntConsumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,9 +22,16 @@ import com.puresoltechnologies.streaming.StreamIterator;
 import com.puresoltechnologies.streaming.streams.InputStreamIterator;
 import com.puresoltechnologies.streaming.streams.MultiStreamSeekableInputStream;
 
+/**
+ * This class reads data files and commit logs. The format version of data
+ * files is negotiated from their header: files of version 2 are read block by
+ * block (see {@link DataBlock}), files of version 1 and commit logs row by row.
+ *
+ * @author Rick-Rainer Ludwig
+ */
 public class DataFileReader implements CloseableIterable<Row> {
 
-    private static Row readRow(InputStream inputStream) throws IOException {
+    static Row readRow(InputStream inputStream, IntConsumer batchMarkerConsumer) throws IOException {
 	byte[] buffer = new byte[12];
 	// Read row key
 	int len = inputStream.read(buffer, 0, 4);
@@ -31,6 +41,29 @@ public class DataFileReader implements CloseableIterable<Row> {
 	    throw new IOException("Could not read full number of bytes needed. It is maybe a broken data file.");
 	}
 	int length = Bytes.toInt(buffer);
+	while (length == 0) {
+	    // Write batch marker (see DataFileWriter#writeBatchMarker(int))
+	    len = inputStream.read(buffer, 0, 4);
+	    if (len < 4) {
+		throw new IOException("Could not read full number of bytes needed. It is maybe a broken data file.");
+	    }
+	    if (batchMarkerConsumer != null) {
+		batchMarkerConsumer.accept(Bytes.toInt(buffer));
+	    }
+	    len = inputStream.read(buffer, 0, 4);
+	    if (len == -1) {
+		return null;
+	    } else if (len < 4) {
+		throw new IOException("Could not read full number of bytes needed. It is maybe a broken data file.");
+	    }
+	    length = Bytes.toInt(buffer);
+	}
+	// Merge operands have a negative row key length (see
+	// CommitLogSegmentWriter#writeMergeOperand(Key, byte[]))
+	boolean mergeOperand = length < 0;
+	if (mergeOperand) {
+	    length = -length;
+	}
 	byte[] rowKeyBytes = new byte[length];
 	len = inputStream.read(rowKeyBytes);
 	if (len < length) {
@@ -56,18 +89,67 @@ public class DataFileReader implements CloseableIterable<Row> {
 	if (len < length) {
 	    throw new IOException("Could not read full number of bytes needed. It is maybe a broken data file.");
 	}
-	return new Row(rowKey, tombstone, rowDataBytes);
+	return new Row(rowKey, tombstone, rowDataBytes, mergeOperand);
     }
 
     private static final Logger logger = LoggerFactory.getLogger(DataFileReader.class);
     private final Storage storage;
     private final File dataFile;
     private final MultiStreamSeekableInputStream<StorageInputStream> inputStream;
+    private final int formatVersion;
+    private final boolean verifyChecksums;
+    /**
+     * These are the rows of the current block of a version 2 file, which are not
+     * read, yet.
+     */
+    private List<Row> blockRows = Collections.emptyList();
+    private int blockRowIndex = 0;
 
     public DataFileReader(Storage storage, File dataFile) throws IOException {
+	this(storage, dataFile, true);
+    }
+
+    /**
+     * Opens a data file or commit log.
+     * 
+     * @param storage
+     *            is the storage of the file.
+     * @param dataFile
+     *            is the file to be read.
+     * @param verifyChecksums
+     *            specifies whether the checksums of the blocks of version 2 files
+     *            are verified.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public DataFileReader(Storage storage, File dataFile, boolean verifyChecksums) throws IOException {
 	this.storage = storage;
 	this.dataFile = dataFile;
+	this.verifyChecksums = verifyChecksums;
 	inputStream = new MultiStreamSeekableInputStream<>(10, () -> storage.open(dataFile));
+	byte[] header = new byte[DataBlock.FILE_HEADER_SIZE];
+	int length = 0;
+	while (length < header.length) {
+	    int len = inputStream.read(header, length, header.length - length);
+	    if (len < 0) {
+		break;
+	    }
+	    length += len;
+	}
+	formatVersion = DataBlock.getFormatVersion(header, length);
+	if (formatVersion == 1) {
+	    inputStream.seek(0);
+	}
+    }
+
+    /**
+     * Returns the format version of the file read.
+     * 
+     * @return 2 is returned for data files with blocks, 1 for older data files
+     *         and commit logs.
+     */
+    public int getFormatVersion() {
+	return formatVersion;
     }
 
     public long getPosition() {
@@ -76,18 +158,71 @@ public class DataFileReader implements CloseableIterable<Row> {
 
     public void seek(long offset) throws IOException {
 	inputStream.seek(offset);
+	blockRows = Collections.emptyList();
     }
 
+    /**
+     * Reads the next row. For version 2 files, the next block is read when the
+     * rows of the current block are consumed.
+     * 
+     * @return The next {@link Row} is returned or <code>null</code> at the end of
+     *         the file.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
     public Row readRow() throws IOException {
-	return readRow(inputStream);
+	if (formatVersion == 1) {
+	    return readRow(inputStream, null);
+	}
+	while (blockRowIndex >= blockRows.size()) {
+	    DataBlock block = DataBlock.read(inputStream, dataFile, inputStream.getPosition(), verifyChecksums);
+	    if (block == null) {
+		return null;
+	    }
+	    blockRows = block.getRows();
+	    blockRowIndex = 0;
+	}
+	return blockRows.get(blockRowIndex++);
     }
 
+    /**
+     * This method reads the next row like {@link #readRow()}, but reports the
+     * write batch markers found in front of the row. This is used to recover
+     * commit logs.
+     * 
+     * @param batchMarkerConsumer
+     *            is called with the row count of each batch marker read.
+     * @return The next {@link Row} is returned or <code>null</code> at the end of
+     *         the file.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public Row readRow(IntConsumer batchMarkerConsumer) throws IOException {
+	if (formatVersion == 1) {
+	    return readRow(inputStream, batchMarkerConsumer);
+	}
+	return readRow();
+    }
+
+    /**
+     * Reads the row of an index entry. For version 2 files, the index entry
+     * points to the block of the row, which is searched for the row key.
+     */
     public Row readRow(IndexEntry indexEntry) throws IOException {
-	return readRow(indexEntry.getOffset());
+	if (formatVersion == 1) {
+	    return readRow(indexEntry.getOffset());
+	}
+	seek(indexEntry.getOffset());
+	DataBlock block = DataBlock.read(inputStream, dataFile, indexEntry.getOffset(), verifyChecksums);
+	return block != null ? block.find(indexEntry.getRowKey()) : null;
     }
 
+    /**
+     * Reads the row at the given offset. For version 2 files, the offset is the
+     * one of a block and the first row of the block is returned.
+     */
     public Row readRow(long offset) throws IOException {
-	inputStream.seek(offset);
+	seek(offset);
 	return readRow();
     }
 
@@ -103,7 +238,7 @@ public class DataFileReader implements CloseableIterable<Row> {
     }
 
     public Row readRow(Key rowKey, long startOffset, long endOffset) throws IOException {
-	inputStream.seek(startOffset);
+	seek(startOffset);
 	Row row = readRow();
 	while ((inputStream.getPosition() <= endOffset) && (row != null)) {
 	    if (row.getKey().equals(rowKey)) {
@@ -118,7 +253,7 @@ public class DataFileReader implements CloseableIterable<Row> {
     public StreamIterator<Row> iterator() {
 	return new InputStreamIterator<>(inputStream, i -> {
 	    try {
-		return readRow(i);
+		return readRow();
 	    } catch (IOException e) {
 		logger.error("Could not read column family row.", e);
 		return null;
@@ -1,24 +1,36 @@
 package com.puresoltechnologies.ductiledb.logstore.data;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
-import java.util.TreeMap;
+import java.util.Objects;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Counter;
 import com.puresoltechnologies.ductiledb.logstore.Key;
 import com.puresoltechnologies.ductiledb.logstore.LogStructuredStore;
 import com.puresoltechnologies.ductiledb.logstore.Row;
+import com.puresoltechnologies.ductiledb.logstore.index.BloomFilter;
 import com.puresoltechnologies.ductiledb.logstore.index.Index;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexEntry;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexEntryIterator;
@@ -27,11 +39,17 @@ import com.puresoltechnologies.ductiledb.logstore.index.OffsetRange;
 import com.puresoltechnologies.ductiledb.logstore.io.SSTableIndexIterator;
 import com.puresoltechnologies.ductiledb.logstore.io.filter.MetadataFilenameFilter;
 import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StoragePositionalReader;
 
 public class DataFileSet implements Closeable {
 
     private static final Pattern pattern = Pattern.compile("DB-(\\d*)-(\\d+)\\.data");
     private static final Logger logger = LoggerFactory.getLogger(DataFileSet.class);
+    /**
+     * This is the number of bytes read at once for a row. Most rows fit, so a
+     * row is usually read with one positional read.
+     */
+    private static final int ROW_BUFFER_SIZE = 1024;
 
     public static File getIndexName(File dataFile) {
 	return new File(dataFile.getParent(),
@@ -69,35 +87,146 @@ public class DataFileSet implements Closeable {
     private final Index index;
     private final NavigableSet<File> dataFiles = new TreeSet<>();
     private final NavigableSet<File> indexFiles = new TreeSet<>();
-    private final NavigableMap<File, IndexFileReader> indexReaders = new TreeMap<>();
-    private final NavigableMap<File, DataFileReader> dataReaders = new TreeMap<>();
+    private final NavigableMap<File, IndexFileReader> indexReaders = new ConcurrentSkipListMap<>();
+    /**
+     * These are the readers of the data files. Positional reads need no shared
+     * file position, so concurrent gets can read the same data file in parallel.
+     */
+    private final NavigableMap<File, StoragePositionalReader> dataReaders = new ConcurrentSkipListMap<>();
+    /**
+     * These are the format versions of the data files read so far.
+     */
+    private final Map<File, Integer> formatVersions = new ConcurrentHashMap<>();
+    /**
+     * These are the Bloom filters of the data files. Data files written without
+     * filter are missing.
+     */
+    private final Map<File, BloomFilter> bloomFilters = new HashMap<>();
+    /**
+     * These are the statistics of the footers of the data files. Data files
+     * without footer are missing.
+     */
+    private final Map<File, DataFileStatistics> statistics = new HashMap<>();
+    private final Counter usefulBloomFilterProbes;
+    private final Counter uselessBloomFilterProbes;
+    private final boolean verifyChecksums;
 
     private final Map<Integer, File> numToIndexFile = new HashMap<>();
     private final Map<File, Integer> indexFileToNum = new HashMap<>();
+    /**
+     * The readers are reference counted: the store holds one reference until the
+     * set is replaced by a compaction, each get holds one while it uses the
+     * readers and each scanner holds one until it is closed. This way, memory
+     * mapped files are not unmapped while they are read.
+     */
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicBoolean retired = new AtomicBoolean(false);
 
     public DataFileSet(Storage storage, File directory) {
 	this(storage, directory, getLatestMetaDataFile(storage, directory));
     }
 
+    /**
+     * Opens the latest data files and counts the probes of their Bloom filters.
+     * 
+     * @param storage
+     *            is the storage of the data files.
+     * @param directory
+     *            is the directory of the data files.
+     * @param usefulBloomFilterProbes
+     *            counts the probes which saved the reading of a data file.
+     * @param uselessBloomFilterProbes
+     *            counts the probes which were false positives.
+     * @param verifyChecksums
+     *            specifies whether the checksums of the blocks read are verified.
+     */
+    public DataFileSet(Storage storage, File directory, Counter usefulBloomFilterProbes,
+	    Counter uselessBloomFilterProbes, boolean verifyChecksums) {
+	this(storage, directory, getLatestMetaDataFile(storage, directory), usefulBloomFilterProbes,
+		uselessBloomFilterProbes, verifyChecksums);
+    }
+
     public DataFileSet(Storage storage, File directory, File metadataFile) {
+	this(storage, directory, metadataFile, new Counter(), new Counter(), true);
+    }
+
+    /**
+     * Opens the data files of the given metadata file and counts the probes of
+     * their Bloom filters. This is used after a compaction, which knows the
+     * metadata file it wrote, so the directory does not need to be listed.
+     * 
+     * @param storage
+     *            is the storage of the data files.
+     * @param directory
+     *            is the directory of the data files.
+     * @param metadataFile
+     *            is the metadata file of the data files.
+     * @param usefulBloomFilterProbes
+     *            counts the probes which saved the reading of a data file.
+     * @param uselessBloomFilterProbes
+     *            counts the probes which were false positives.
+     * @param verifyChecksums
+     *            specifies whether the checksums of the blocks read are verified.
+     */
+    public DataFileSet(Storage storage, File directory, File metadataFile, Counter usefulBloomFilterProbes,
+	    Counter uselessBloomFilterProbes, boolean verifyChecksums) {
 	super();
 	this.storage = storage;
 	this.metadataFile = metadataFile;
 	this.index = Index.open(storage, directory, metadataFile);
+	this.usefulBloomFilterProbes = usefulBloomFilterProbes;
+	this.uselessBloomFilterProbes = uselessBloomFilterProbes;
+	this.verifyChecksums = verifyChecksums;
 
-	index.forEach(indexEntry -> dataFiles.add(indexEntry.getDataFile()));
-	dataFiles.forEach(file -> {
+	/*
+	 * The data files are numbered in the order of their keys, so scanners
+	 * continue with the next data file in key order. Data files shared by
+	 * several generations keep the names of the generation which wrote them, so
+	 * the numbers of the names are not used.
+	 */
+	List<File> orderedDataFiles = new ArrayList<>();
+	index.forEach(indexEntry -> {
+	    File dataFile = indexEntry.getDataFile();
+	    if (dataFiles.add(dataFile)) {
+		orderedDataFiles.add(dataFile);
+	    }
+	});
+	for (int num = 0; num < orderedDataFiles.size(); ++num) {
+	    File file = orderedDataFiles.get(num);
 	    Matcher matcher = pattern.matcher(file.getName());
 	    if (matcher.matches()) {
 		File indexName = getIndexName(file);
 		indexFiles.add(indexName);
-		int num = Integer.parseInt(matcher.group(2));
 		numToIndexFile.put(num, indexName);
 		indexFileToNum.put(indexName, num);
 	    } else {
 		logger.error("Invalid data file found: " + file);
 	    }
-	});
+	    readBloomFilter(file);
+	    readStatistics(file);
+	}
+    }
+
+    private void readStatistics(File dataFile) {
+	try {
+	    DataFileStatistics dataFileStatistics = DataFileStatistics.read(storage, dataFile);
+	    if (dataFileStatistics != null) {
+		statistics.put(dataFile, dataFileStatistics);
+	    }
+	} catch (IOException e) {
+	    logger.warn("Could not read statistics of '" + dataFile + "'.", e);
+	}
+    }
+
+    private void readBloomFilter(File dataFile) {
+	try {
+	    BloomFilter bloomFilter = BloomFilter.read(storage, dataFile);
+	    if (bloomFilter != null) {
+		bloomFilters.put(dataFile, bloomFilter);
+	    }
+	} catch (IOException e) {
+	    logger.warn("Could not read bloom filter of '" + dataFile + "'.", e);
+	}
     }
 
     public DataFileSet(Storage storage, File directory, String timestamp) {
@@ -112,8 +241,79 @@ public class DataFileSet implements Closeable {
 	return storage;
     }
 
+    /**
+     * Returns the statistics of the data files loaded when the set was opened.
+     * 
+     * @return An unmodifiable map is returned. Data files without statistics
+     *         are missing.
+     */
+    public Map<File, DataFileStatistics> getStatistics() {
+	return Collections.unmodifiableMap(statistics);
+    }
+
+    /**
+     * Returns the number of rows of all data files including tombstones. Data
+     * files without statistics are not counted.
+     */
+    public long getRowCount() {
+	return statistics.values().stream().mapToLong(DataFileStatistics::getRowCount).sum();
+    }
+
+    /**
+     * Estimates the number of distinct row keys of all data files from their key
+     * sketches.
+     */
+    public long estimateDistinctKeys() {
+	DistinctKeySketch sketch = new DistinctKeySketch();
+	statistics.values().forEach(dataFileStatistics -> {
+	    if (dataFileStatistics.getDistinctKeys() != null) {
+		sketch.merge(dataFileStatistics.getDistinctKeys());
+	    }
+	});
+	return sketch.estimate();
+    }
+
+    /**
+     * Releases the reference of the store. The readers are closed as soon as
+     * the running gets are finished. Gets started afterwards use temporary
+     * readers.
+     */
     @Override
     public void close() throws IOException {
+	if (retired.compareAndSet(false, true)) {
+	    release();
+	}
+    }
+
+    /**
+     * Takes a reference, so the readers stay open until {@link #release()} is
+     * called.
+     * 
+     * @return <code>false</code> is returned in case the set was retired and its
+     *         readers are closed already.
+     */
+    public boolean retain() {
+	while (true) {
+	    int count = references.get();
+	    if (count == 0) {
+		return false;
+	    }
+	    if (references.compareAndSet(count, count + 1)) {
+		return true;
+	    }
+	}
+    }
+
+    /**
+     * Releases a reference taken with {@link #retain()}.
+     */
+    public void release() {
+	if (references.decrementAndGet() == 0) {
+	    closeReaders();
+	}
+    }
+
+    private void closeReaders() {
 	dataReaders.values().forEach(stream -> {
 	    try {
 		stream.close();
@@ -137,7 +337,13 @@ public class DataFileSet implements Closeable {
 
     }
 
-    public Row getRow(Key rowKey) throws IOException {
+    /**
+     * Returns the data file which might contain the row.
+     * 
+     * @return The data file is returned or <code>null</code> in case the key is
+     *         outside of all data files.
+     */
+    private File findDataFile(Key rowKey) {
 	OffsetRange offsetRange = index.find(rowKey);
 	if (offsetRange == null) {
 	    return null;
@@ -150,15 +356,64 @@ public class DataFileSet implements Closeable {
 	    throw new IllegalStateException(
 		    "File overlapping index range for key '" + rowKey + "':\n" + startOffset + "\n" + endOffset);
 	}
-	IndexEntry indexEntry = findEntry(rowKey, dataFile);
-	if (indexEntry == null) {
+	return dataFile;
+    }
+
+    public Row getRow(Key rowKey) throws IOException {
+	File dataFile = findDataFile(rowKey);
+	if (dataFile == null) {
 	    return null;
 	}
-	return readRow(dataFile, indexEntry);
+	BloomFilter bloomFilter = bloomFilters.get(dataFile);
+	if (bloomFilter != null) {
+	    if (!bloomFilter.mightContain(rowKey)) {
+		usefulBloomFilterProbes.inc();
+		return null;
+	    }
+	}
+	if (!retain()) {
+	    /*
+	     * The set was replaced by a compaction published after the get started.
+	     * Its files are kept for the next file generations.
+	     */
+	    return readRowWithTemporaryReaders(rowKey, dataFile, bloomFilter);
+	}
+	try {
+	    IndexEntry indexEntry = findEntry(rowKey, dataFile);
+	    Row row = indexEntry != null ? readRow(dataFile, rowKey, indexEntry) : null;
+	    if ((row == null) && (bloomFilter != null)) {
+		uselessBloomFilterProbes.inc();
+	    }
+	    return row;
+	} finally {
+	    release();
+	}
+    }
+
+    private Row readRowWithTemporaryReaders(Key rowKey, File dataFile, BloomFilter bloomFilter) throws IOException {
+	try (IndexFileReader indexReader = new IndexFileReader(storage, getIndexName(dataFile));
+		StoragePositionalReader dataReader = storage.openPositionalReader(dataFile)) {
+	    IndexEntry indexEntry = findEntry(indexReader, rowKey, DataBlock.readFormatVersion(dataReader));
+	    Row row = indexEntry != null ? readRow(dataFile, dataReader, rowKey, indexEntry) : null;
+	    if ((row == null) && (bloomFilter != null)) {
+		uselessBloomFilterProbes.inc();
+	    }
+	    return row;
+	}
+    }
+
+    /**
+     * Looks up the index entry of a row. The index of a version 2 data file only
+     * contains the first row of each block, so the entry of the block which
+     * might contain the row is returned. The index of a version 1 data file
+     * contains all rows.
+     */
+    private static IndexEntry findEntry(IndexFileReader indexReader, Key rowKey, int formatVersion)
+	    throws IOException {
+	return formatVersion > 1 ? indexReader.findFloor(rowKey) : indexReader.find(rowKey);
     }
 
     private IndexEntry findEntry(Key rowKey, File dataFile) throws IOException {
-	IndexEntry indexEntry;
 	File indexFile = getIndexName(dataFile);
 	IndexFileReader indexReader = indexReaders.get(indexFile);
 	if (indexReader == null) {
@@ -170,26 +425,174 @@ public class DataFileSet implements Closeable {
 			indexReaders.put(indexFile, indexReader);
 		    } catch (FileNotFoundException e) {
 			logger.warn("Could not find index file.", e);
-			indexEntry = null;
+			return null;
 		    }
 		}
 	    }
 	}
-	synchronized (indexReader) {
-	    indexReader.seek(0);
-	    indexEntry = indexReader.get(rowKey);
+	StoragePositionalReader dataReader = getDataReader(dataFile);
+	if (dataReader == null) {
+	    return null;
 	}
-	return indexEntry;
+	return findEntry(indexReader, rowKey, getFormatVersion(dataFile, dataReader));
     }
 
-    private Row readRow(File dataFile, IndexEntry indexEntry) throws IOException {
-	DataFileReader dataReader = dataReaders.get(dataFile);
+    /**
+     * Reads the rows of many keys. The keys of a data file are looked up in key
+     * order and their rows are read in one forward pass over the data file.
+     * 
+     * @param rowKeys
+     *            are the keys of the rows sorted ascending.
+     * @return A list of the rows in the order of the keys is returned. It
+     *         contains <code>null</code> for the rows not found.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public List<Row> getRows(List<Key> rowKeys) throws IOException {
+	List<Row> rows = new ArrayList<>(Collections.nCopies(rowKeys.size(), null));
+	if (!retain()) {
+	    // The set was replaced, so every row is read with temporary readers.
+	    for (int i = 0; i < rowKeys.size(); ++i) {
+		rows.set(i, getRow(rowKeys.get(i)));
+	    }
+	    return rows;
+	}
+	try {
+	    File[] files = new File[rowKeys.size()];
+	    for (int i = 0; i < files.length; ++i) {
+		files[i] = findDataFile(rowKeys.get(i));
+	    }
+	    int start = 0;
+	    while (start < files.length) {
+		int end = start + 1;
+		while ((end < files.length) && Objects.equals(files[start], files[end])) {
+		    end++;
+		}
+		if (files[start] != null) {
+		    readRows(files[start], rowKeys, start, end, rows);
+		}
+		start = end;
+	    }
+	    return rows;
+	} finally {
+	    release();
+	}
+    }
+
+    /**
+     * Reads the rows of the keys between start (inclusive) and end (exclusive),
+     * which are all located in the given data file.
+     */
+    private void readRows(File dataFile, List<Key> rowKeys, int start, int end, List<Row> rows)
+	    throws IOException {
+	BloomFilter bloomFilter = bloomFilters.get(dataFile);
+	int[] positions = new int[end - start];
+	long[] offsets = new long[end - start];
+	int count = 0;
+	for (int i = start; i < end; ++i) {
+	    Key rowKey = rowKeys.get(i);
+	    if ((bloomFilter != null) && !bloomFilter.mightContain(rowKey)) {
+		usefulBloomFilterProbes.inc();
+		continue;
+	    }
+	    IndexEntry indexEntry = findEntry(rowKey, dataFile);
+	    if (indexEntry == null) {
+		if (bloomFilter != null) {
+		    uselessBloomFilterProbes.inc();
+		}
+		continue;
+	    }
+	    positions[count] = i;
+	    offsets[count] = indexEntry.getOffset();
+	    count++;
+	}
+	if (count == 0) {
+	    return;
+	}
+	StoragePositionalReader dataReader = getDataReader(dataFile);
+	if (dataReader == null) {
+	    return;
+	}
+	if (getFormatVersion(dataFile, dataReader) > 1) {
+	    // Rows of the same block share the offset, so each block is read once.
+	    DataBlock block = null;
+	    for (int i = 0; i < count; ++i) {
+		if ((block == null) || !block.isAt(dataFile, offsets[i])) {
+		    block = DataBlock.read(dataReader, dataFile, offsets[i], verifyChecksums);
+		}
+		rows.set(positions[i], block.find(rowKeys.get(positions[i])));
+	    }
+	    return;
+	}
+	// The rows are sorted by key in the data file, so the offsets ascend.
+	try (ForwardInputStream inputStream = new ForwardInputStream(
+		dataReader.openInputStream(offsets[0], ROW_BUFFER_SIZE), offsets[0])) {
+	    for (int i = 0; i < count; ++i) {
+		inputStream.skipTo(offsets[i]);
+		rows.set(positions[i], DataFileReader.readRow(inputStream, null));
+	    }
+	}
+    }
+
+    /**
+     * This stream keeps track of its position in the data file, so it can skip
+     * forward to the next row to be read.
+     */
+    private static class ForwardInputStream extends FilterInputStream {
+
+	private long position;
+
+	ForwardInputStream(InputStream inputStream, long position) {
+	    super(inputStream);
+	    this.position = position;
+	}
+
+	void skipTo(long offset) throws IOException {
+	    if (offset < position) {
+		throw new IOException("Cannot skip back from " + position + " to " + offset + ".");
+	    }
+	    while (position < offset) {
+		long skipped = skip(offset - position);
+		if (skipped <= 0) {
+		    throw new EOFException("Could not skip to offset " + offset + ".");
+		}
+	    }
+	}
+
+	@Override
+	public int read() throws IOException {
+	    int b = super.read();
+	    if (b >= 0) {
+		position++;
+	    }
+	    return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+	    int count = super.read(b, off, len);
+	    if (count > 0) {
+		position += count;
+	    }
+	    return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+	    long skipped = super.skip(n);
+	    position += skipped;
+	    return skipped;
+	}
+    }
+
+    private StoragePositionalReader getDataReader(File dataFile) throws IOException {
+	StoragePositionalReader dataReader = dataReaders.get(dataFile);
 	if (dataReader == null) {
 	    synchronized (dataReaders) {
 		dataReader = dataReaders.get(dataFile);
 		if (dataReader == null) {
 		    try {
-			dataReader = new DataFileReader(storage, dataFile);
+			dataReader = storage.openPositionalReader(dataFile);
 			dataReaders.put(dataFile, dataReader);
 		    } catch (FileNotFoundException e) {
 			logger.warn("Could not find data file.", e);
@@ -198,12 +601,83 @@ public class DataFileSet implements Closeable {
 		}
 	    }
 	}
-	Row row;
-	synchronized (dataReader) {
-	    dataReader.seek(indexEntry.getOffset());
-	    row = dataReader.readRow();
+	return dataReader;
+    }
+
+    /**
+     * Checks whether the data file is part of this set.
+     */
+    public boolean contains(File dataFile) {
+	return dataFiles.contains(dataFile);
+    }
+
+    /**
+     * Reads a row of a data file of this set with the shared readers. The caller
+     * needs to hold a reference taken with {@link #retain()}.
+     * 
+     * @param indexEntry
+     *            is the index entry of the row.
+     * @return The {@link Row} is returned or <code>null</code> in case the data
+     *         file was not found.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public Row readRow(IndexEntry indexEntry) throws IOException {
+	return readRow(indexEntry.getDataFile(), indexEntry.getRowKey(), indexEntry);
+    }
+
+    private Row readRow(File dataFile, Key rowKey, IndexEntry indexEntry) throws IOException {
+	StoragePositionalReader dataReader = getDataReader(dataFile);
+	if (dataReader == null) {
+	    return null;
+	}
+	return readRow(dataFile, dataReader, rowKey, indexEntry);
+    }
+
+    /**
+     * Reads a row with the reader. Rows of version 1 files are read with a stream
+     * of the reader, so memory mapped files are decoded directly from the
+     * mapping. For version 2 files, the block of the index entry is read and
+     * searched for the row key.
+     */
+    private Row readRow(File dataFile, StoragePositionalReader dataReader, Key rowKey, IndexEntry indexEntry)
+	    throws IOException {
+	if (getFormatVersion(dataFile, dataReader) > 1) {
+	    return DataBlock.read(dataReader, dataFile, indexEntry.getOffset(), verifyChecksums).find(rowKey);
+	}
+	try (InputStream inputStream = dataReader.openInputStream(indexEntry.getOffset(), ROW_BUFFER_SIZE)) {
+	    return DataFileReader.readRow(inputStream, null);
+	}
+    }
+
+    private int getFormatVersion(File dataFile, StoragePositionalReader dataReader) throws IOException {
+	Integer formatVersion = formatVersions.get(dataFile);
+	if (formatVersion == null) {
+	    formatVersion = DataBlock.readFormatVersion(dataReader);
+	    formatVersions.put(dataFile, formatVersion);
+	}
+	return formatVersion;
+    }
+
+    /**
+     * Reads the block of a row of a version 2 data file of this set with the
+     * shared readers. Scanners keep the block to read the following rows from
+     * it. The caller needs to hold a reference taken with {@link #retain()}.
+     * 
+     * @param indexEntry
+     *            is the index entry of the row.
+     * @return The {@link DataBlock} is returned or <code>null</code> in case the
+     *         data file has no blocks or was not found.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public DataBlock readBlock(IndexEntry indexEntry) throws IOException {
+	File dataFile = indexEntry.getDataFile();
+	StoragePositionalReader dataReader = getDataReader(dataFile);
+	if ((dataReader == null) || (getFormatVersion(dataFile, dataReader) == 1)) {
+	    return null;
 	}
-	return row;
+	return DataBlock.read(dataReader, dataFile, indexEntry.getOffset(), verifyChecksums);
     }
 
     public File getNextIndexFile(File indexFile) {
@@ -0,0 +1,328 @@
+package com.puresoltechnologies.ductiledb.logstore.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StoragePositionalReader;
+
+/**
+ * This class contains the statistics of a data file of format version 2. They
+ * are written as footer behind the blocks:
+ *
+ * <pre>
+ * [0][statistics...][statistics length][{@link #FOOTER_MAGIC}]
+ * </pre>
+ *
+ * The leading 0 is read as block of length 0 and ends the blocks for readers
+ * streaming the file. Data files without footer have no statistics.
+ *
+ * Besides the sizes of the blocks, the statistics describe the rows: their
+ * number, the number of tombstones, the key range, the key and value sizes and
+ * a {@link DistinctKeySketch}. Statistics of version 1 only contain the block
+ * sizes; their row statistics are empty.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class DataFileStatistics {
+
+    public static final int FOOTER_MAGIC = 0xD1B1F007;
+    private static final int STATISTICS_VERSION = 2;
+    private static final int MIN_STATISTICS_SIZE = 4 + 4 + 3 * 8;
+
+    /**
+     * Reads the statistics from the footer of a data file.
+     *
+     * @param storage
+     *            is the storage of the data file.
+     * @param dataFile
+     *            is the data file.
+     * @return The {@link DataFileStatistics} are returned or <code>null</code>
+     *         in case the data file has no footer.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public static DataFileStatistics read(Storage storage, File dataFile) throws IOException {
+	long length = storage.getFileStatus(dataFile).getLength();
+	if (length < DataBlock.FILE_HEADER_SIZE + 8) {
+	    return null;
+	}
+	try (StoragePositionalReader reader = storage.openPositionalReader(dataFile)) {
+	    byte[] trailer = new byte[8];
+	    DataBlock.readFully(reader, length - trailer.length, trailer);
+	    if (Bytes.toInt(trailer, 4) != FOOTER_MAGIC) {
+		return null;
+	    }
+	    int statisticsLength = Bytes.toInt(trailer, 0);
+	    if ((statisticsLength < MIN_STATISTICS_SIZE)
+		    || (statisticsLength > length - DataBlock.FILE_HEADER_SIZE - trailer.length)) {
+		throw new IOException("Data file footer has invalid length " + statisticsLength
+			+ ". It is maybe a broken data file.");
+	    }
+	    byte[] statistics = new byte[statisticsLength];
+	    DataBlock.readFully(reader, length - trailer.length - statisticsLength, statistics);
+	    return fromBytes(statistics);
+	}
+    }
+
+    static DataFileStatistics fromBytes(byte[] bytes) throws IOException {
+	try {
+	    int version = Bytes.toInt(bytes, 0);
+	    if ((version < 1) || (version > STATISTICS_VERSION)) {
+		throw new IOException("Data file statistics version " + version + " is not supported.");
+	    }
+	    int codecId = Bytes.toInt(bytes, 4);
+	    long blockCount = Bytes.toLong(bytes, 8);
+	    long blockBytes = Bytes.toLong(bytes, 16);
+	    long storedBlockBytes = Bytes.toLong(bytes, 24);
+	    if (version == 1) {
+		return new DataFileStatistics(codecId, blockCount, blockBytes, storedBlockBytes, 0, 0, 0, 0, null, null,
+			new SizeHistogram(), new SizeHistogram(), null);
+	    }
+	    int[] position = new int[] { 32 };
+	    long rowCount = readLong(bytes, position);
+	    long tombstoneCount = readLong(bytes, position);
+	    long keyBytes = readLong(bytes, position);
+	    long valueBytes = readLong(bytes, position);
+	    byte[] minKey = readBytes(bytes, position);
+	    byte[] maxKey = readBytes(bytes, position);
+	    int bucketCount = readInt(bytes, position);
+	    long[] keySizes = new long[bucketCount];
+	    for (int i = 0; i < bucketCount; ++i) {
+		keySizes[i] = readLong(bytes, position);
+	    }
+	    bucketCount = readInt(bytes, position);
+	    long[] valueSizes = new long[bucketCount];
+	    for (int i = 0; i < bucketCount; ++i) {
+		valueSizes[i] = readLong(bytes, position);
+	    }
+	    byte[] registers = readBytes(bytes, position);
+	    if ((registers != null) && (registers.length != DistinctKeySketch.REGISTER_COUNT)) {
+		throw new IOException("Data file statistics contain a key sketch with " + registers.length
+			+ " registers. It is maybe a broken data file.");
+	    }
+	    return new DataFileStatistics(codecId, blockCount, blockBytes, storedBlockBytes, rowCount, tombstoneCount,
+		    keyBytes, valueBytes, minKey != null ? Key.of(minKey) : null,
+		    maxKey != null ? Key.of(maxKey) : null, new SizeHistogram(keySizes),
+		    new SizeHistogram(valueSizes), registers != null ? new DistinctKeySketch(registers) : null);
+	} catch (IndexOutOfBoundsException | NegativeArraySizeException e) {
+	    throw new IOException("Data file statistics are truncated. It is maybe a broken data file.", e);
+	}
+    }
+
+    private static int readInt(byte[] bytes, int[] position) {
+	int value = Bytes.toInt(bytes, position[0]);
+	position[0] += 4;
+	return value;
+    }
+
+    private static long readLong(byte[] bytes, int[] position) {
+	long value = Bytes.toLong(bytes, position[0]);
+	position[0] += 8;
+	return value;
+    }
+
+    private static byte[] readBytes(byte[] bytes, int[] position) {
+	int length = readInt(bytes, position);
+	if (length < 0) {
+	    return null;
+	}
+	if (position[0] + length > bytes.length) {
+	    throw new IndexOutOfBoundsException("Byte array exceeds statistics.");
+	}
+	byte[] value = new byte[length];
+	System.arraycopy(bytes, position[0], value, 0, length);
+	position[0] += length;
+	return value;
+    }
+
+    private final int codecId;
+    private final long blockCount;
+    private final long blockBytes;
+    private final long storedBlockBytes;
+    private final long rowCount;
+    private final long tombstoneCount;
+    private final long keyBytes;
+    private final long valueBytes;
+    private final Key minKey;
+    private final Key maxKey;
+    private final SizeHistogram keySizes;
+    private final SizeHistogram valueSizes;
+    private final DistinctKeySketch distinctKeys;
+
+    DataFileStatistics(int codecId, long blockCount, long blockBytes, long storedBlockBytes, long rowCount,
+	    long tombstoneCount, long keyBytes, long valueBytes, Key minKey, Key maxKey, SizeHistogram keySizes,
+	    SizeHistogram valueSizes, DistinctKeySketch distinctKeys) {
+	super();
+	this.codecId = codecId;
+	this.blockCount = blockCount;
+	this.blockBytes = blockBytes;
+	this.storedBlockBytes = storedBlockBytes;
+	this.rowCount = rowCount;
+	this.tombstoneCount = tombstoneCount;
+	this.keyBytes = keyBytes;
+	this.valueBytes = valueBytes;
+	this.minKey = minKey;
+	this.maxKey = maxKey;
+	this.keySizes = keySizes;
+	this.valueSizes = valueSizes;
+	this.distinctKeys = distinctKeys;
+    }
+
+    /**
+     * Returns the id of the codec configured when the file was written. Blocks
+     * which did not compress well are stored without compression nevertheless.
+     */
+    public int getCodecId() {
+	return codecId;
+    }
+
+    public long getBlockCount() {
+	return blockCount;
+    }
+
+    /**
+     * Returns the size of all blocks before compression.
+     *
+     * @return The size in bytes is returned.
+     */
+    public long getBlockBytes() {
+	return blockBytes;
+    }
+
+    /**
+     * Returns the size of all blocks as stored in the data file.
+     *
+     * @return The size in bytes is returned.
+     */
+    public long getStoredBlockBytes() {
+	return storedBlockBytes;
+    }
+
+    /**
+     * Returns the ratio of the stored block size to the size before
+     * compression.
+     *
+     * @return A ratio is returned, which is less than 1 if the blocks were
+     *         compressed. 1 is returned for files without blocks.
+     */
+    public double getCompressionRatio() {
+	return blockBytes > 0 ? (double) storedBlockBytes / (double) blockBytes : 1.0;
+    }
+
+    /**
+     * Returns the number of rows including the tombstones.
+     */
+    public long getRowCount() {
+	return rowCount;
+    }
+
+    public long getTombstoneCount() {
+	return tombstoneCount;
+    }
+
+    /**
+     * Returns the size of all row keys.
+     *
+     * @return The size in bytes is returned.
+     */
+    public long getKeyBytes() {
+	return keyBytes;
+    }
+
+    /**
+     * Returns the size of all values.
+     *
+     * @return The size in bytes is returned.
+     */
+    public long getValueBytes() {
+	return valueBytes;
+    }
+
+    /**
+     * Returns the smallest row key.
+     *
+     * @return The {@link Key} is returned or <code>null</code> in case the file
+     *         is empty or the statistics contain no keys.
+     */
+    public Key getMinKey() {
+	return minKey;
+    }
+
+    /**
+     * Returns the largest row key.
+     *
+     * @return The {@link Key} is returned or <code>null</code> in case the file
+     *         is empty or the statistics contain no keys.
+     */
+    public Key getMaxKey() {
+	return maxKey;
+    }
+
+    public SizeHistogram getKeySizes() {
+	return keySizes;
+    }
+
+    public SizeHistogram getValueSizes() {
+	return valueSizes;
+    }
+
+    /**
+     * Returns the sketch of the row keys, which can be merged with the sketches
+     * of other data files.
+     *
+     * @return The {@link DistinctKeySketch} is returned or <code>null</code> in
+     *         case the statistics contain no sketch.
+     */
+    public DistinctKeySketch getDistinctKeys() {
+	return distinctKeys;
+    }
+
+    byte[] toBytes() {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	write(bytes, Bytes.fromInt(STATISTICS_VERSION));
+	write(bytes, Bytes.fromInt(codecId));
+	write(bytes, Bytes.fromLong(blockCount));
+	write(bytes, Bytes.fromLong(blockBytes));
+	write(bytes, Bytes.fromLong(storedBlockBytes));
+	write(bytes, Bytes.fromLong(rowCount));
+	write(bytes, Bytes.fromLong(tombstoneCount));
+	write(bytes, Bytes.fromLong(keyBytes));
+	write(bytes, Bytes.fromLong(valueBytes));
+	writeBytes(bytes, minKey != null ? minKey.getBytes() : null);
+	writeBytes(bytes, maxKey != null ? maxKey.getBytes() : null);
+	for (SizeHistogram histogram : new SizeHistogram[] { keySizes, valueSizes }) {
+	    long[] counts = histogram.getCounts();
+	    write(bytes, Bytes.fromInt(counts.length));
+	    for (long count : counts) {
+		write(bytes, Bytes.fromLong(count));
+	    }
+	}
+	writeBytes(bytes, distinctKeys != null ? distinctKeys.getRegisters() : null);
+	return bytes.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream bytes, byte[] value) {
+	bytes.write(value, 0, value.length);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream bytes, byte[] value) {
+	if (value == null) {
+	    write(bytes, Bytes.fromInt(-1));
+	} else {
+	    write(bytes, Bytes.fromInt(value.length));
+	    write(bytes, value);
+	}
+    }
+
+    @Override
+    public String toString() {
+	return "rows=" + rowCount + ", tombstones=" + tombstoneCount + ", keyBytes=" + keyBytes + ", valueBytes="
+		+ valueBytes + ", blocks=" + blockCount + ", blockBytes=" + blockBytes + ", storedBlockBytes="
+		+ storedBlockBytes + ", compressionRatio=" + String.format("%.3f", getCompressionRatio());
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.puresoltechnologies.ductiledb.logstore.data;
+
+import java.time.Instant;
+
+import com.puresoltechnologies.ductiledb.logstore.Key;
+
+/**
+ * This class collects the {@link DataFileStatistics} of a data file while its
+ * rows and blocks are written or verified. The rows need to be added in key
+ * order.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class DataFileStatisticsBuilder {
+
+    private final int codecId;
+    private long blockCount = 0;
+    private long blockBytes = 0;
+    private long storedBlockBytes = 0;
+    private long rowCount = 0;
+    private long tombstoneCount = 0;
+    private long keyBytes = 0;
+    private long valueBytes = 0;
+    private Key minKey = null;
+    private Key maxKey = null;
+    private final SizeHistogram keySizes = new SizeHistogram();
+    private final SizeHistogram valueSizes = new SizeHistogram();
+    private final DistinctKeySketch distinctKeys = new DistinctKeySketch();
+
+    DataFileStatisticsBuilder(int codecId) {
+	super();
+	this.codecId = codecId;
+    }
+
+    void addRow(Key rowKey, Instant tombstone, byte[] data) {
+	int keyLength = rowKey.getBytes().length;
+	rowCount++;
+	if (tombstone != null) {
+	    tombstoneCount++;
+	}
+	keyBytes += keyLength;
+	valueBytes += data.length;
+	if (minKey == null) {
+	    minKey = rowKey;
+	}
+	maxKey = rowKey;
+	keySizes.add(keyLength);
+	valueSizes.add(data.length);
+	distinctKeys.add(rowKey);
+    }
+
+    void addBlock(int blockLength, int storedLength) {
+	blockCount++;
+	blockBytes += blockLength;
+	storedBlockBytes += storedLength;
+    }
+
+    /**
+     * Returns the statistics collected so far. The histograms and the sketch are
+     * shared with this builder.
+     */
+    DataFileStatistics build() {
+	return new DataFileStatistics(codecId, blockCount, blockBytes, storedBlockBytes, rowCount, tombstoneCount,
+		keyBytes, valueBytes, minKey, maxKey, keySizes, valueSizes, distinctKeys);
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.puresoltechnologies.ductiledb.logstore.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.LogStructuredStore;
+import com.puresoltechnologies.ductiledb.logstore.Row;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageInputStream;
+import com.puresoltechnologies.streaming.streams.MultiStreamSeekableInputStream;
+
+/**
+ * This class verifies data files offline, for instance after a crash or
+ * before a backup. All blocks of a data file are read, their checksums are
+ * verified and their rows are decoded and checked to be in key order. The
+ * statistics of the footer are compared with the blocks and rows found.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class DataFileVerifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataFileVerifier.class);
+
+    /**
+     * Verifies a data file.
+     *
+     * @param storage
+     *            is the storage of the data file.
+     * @param dataFile
+     *            is the data file to verify.
+     * @return The {@link DataFileStatistics} calculated from the blocks are
+     *         returned or <code>null</code> for data files of version 1, which
+     *         have no checksums.
+     * @throws IOException
+     *             is thrown in case of IO issues or in case the data file is
+     *             broken. The message names the broken block.
+     */
+    public static DataFileStatistics verify(Storage storage, File dataFile) throws IOException {
+	int formatVersion;
+	try (DataFileReader reader = new DataFileReader(storage, dataFile)) {
+	    formatVersion = reader.getFormatVersion();
+	}
+	if (formatVersion == 1) {
+	    return null;
+	}
+	DataFileStatistics footer = DataFileStatistics.read(storage, dataFile);
+	DataFileStatisticsBuilder statisticsBuilder = new DataFileStatisticsBuilder(
+		footer != null ? footer.getCodecId() : -1);
+	Key lastKey = null;
+	try (MultiStreamSeekableInputStream<StorageInputStream> inputStream = new MultiStreamSeekableInputStream<>(
+		10, () -> storage.open(dataFile))) {
+	    inputStream.seek(DataBlock.FILE_HEADER_SIZE);
+	    while (true) {
+		long offset = inputStream.getPosition();
+		DataBlock block = DataBlock.read(inputStream, dataFile, offset, true);
+		if (block == null) {
+		    break;
+		}
+		List<Row> rows = block.getRows();
+		for (Row row : rows) {
+		    if ((lastKey != null) && (lastKey.compareTo(row.getKey()) >= 0)) {
+			throw new IOException("Data block at offset " + offset + " of '" + dataFile + "' contains key '"
+				+ row.getKey() + "' out of order. It is maybe a broken data file.");
+		    }
+		    lastKey = row.getKey();
+		    statisticsBuilder.addRow(row.getKey(), row.getTombstone(), row.getData());
+		}
+		statisticsBuilder.addBlock(block.getBlockLength(), block.getSize() - DataBlock.BLOCK_HEADER_SIZE);
+	    }
+	}
+	DataFileStatistics statistics = statisticsBuilder.build();
+	if ((footer != null) && !matches(footer, statistics)) {
+	    throw new IOException("Statistics of data file '" + dataFile + "' (" + footer
+		    + ") do not match its blocks (" + statistics + "). It is maybe a broken data file.");
+	}
+	return statistics;
+    }
+
+    private static boolean matches(DataFileStatistics footer, DataFileStatistics statistics) {
+	if ((footer.getBlockCount() != statistics.getBlockCount())
+		|| (footer.getBlockBytes() != statistics.getBlockBytes())
+		|| (footer.getStoredBlockBytes() != statistics.getStoredBlockBytes())) {
+	    return false;
+	}
+	if (footer.getDistinctKeys() == null) {
+	    // Statistics of version 1 describe the blocks only.
+	    return true;
+	}
+	return (footer.getRowCount() == statistics.getRowCount())
+		&& (footer.getTombstoneCount() == statistics.getTombstoneCount())
+		&& (footer.getKeyBytes() == statistics.getKeyBytes())
+		&& (footer.getValueBytes() == statistics.getValueBytes())
+		&& Objects.equals(footer.getMinKey(), statistics.getMinKey())
+		&& Objects.equals(footer.getMaxKey(), statistics.getMaxKey());
+    }
+
+    /**
+     * Verifies all data files of a store directory. Problems are logged.
+     *
+     * @param storage
+     *            is the storage of the store.
+     * @param directory
+     *            is the directory of the store.
+     * @return A list of the broken data files is returned. It is empty in case
+     *         all data files are fine.
+     */
+    public static List<File> verifyDirectory(Storage storage, File directory) {
+	List<File> brokenFiles = new ArrayList<>();
+	for (File file : storage.list(directory,
+		(dir, name) -> name.startsWith(LogStructuredStore.DB_FILE_PREFIX)
+			&& name.endsWith(LogStructuredStore.DATA_FILE_SUFFIX))) {
+	    try {
+		DataFileStatistics statistics = verify(storage, file);
+		logger.info("Data file '" + file + "' verified: " + (statistics != null ? statistics : "version 1"));
+	    } catch (IOException e) {
+		logger.error("Data file '" + file + "' is broken.", e);
+		brokenFiles.add(file);
+	    }
+	}
+	return brokenFiles;
+    }
+
+}
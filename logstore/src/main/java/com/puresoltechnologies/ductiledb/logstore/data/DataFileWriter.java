@@ -3,7 +3,6 @@ package com.puresoltechnologies.ductiledb.logstore.data;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.security.MessageDigest;
 import java.time.Instant;
 
 import com.puresoltechnologies.ductiledb.commons.Bytes;
@@ -42,6 +41,22 @@ public class DataFileWriter implements Closeable {
 	outputStream.writeData(data);
     }
 
+    /**
+     * This method writes a write batch marker into a commit log. Markers have a
+     * row key length of 0 which is not possible for rows, because row keys must
+     * not be empty. The marker in front of a batch contains the number of rows of
+     * the batch, the marker behind the batch contains 0.
+     * 
+     * @param rowCount
+     *            is the number of rows in the batch or 0 for the end marker.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public synchronized void writeBatchMarker(int rowCount) throws IOException {
+	outputStream.writeData(Bytes.fromInt(0));
+	outputStream.writeData(Bytes.fromInt(rowCount));
+    }
+
     public void writeTombstone(Instant tombstone) throws IOException {
 	if (tombstone == null) {
 	    outputStream.writeData(new byte[12]);
@@ -55,10 +70,6 @@ public class DataFileWriter implements Closeable {
 	outputStream.close();
     }
 
-    public MessageDigest getMessageDigest() {
-	return outputStream.getMessageDigest();
-    }
-
     public long getPosition() {
 	return outputStream.getPosition();
     }
@@ -0,0 +1,88 @@
+package com.puresoltechnologies.ductiledb.logstore.data;
+
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.index.BloomFilter;
+
+/**
+ * This is a HyperLogLog sketch to estimate the number of distinct row keys.
+ * The sketches of several data files can be merged to estimate the distinct
+ * keys of all of them, so the overlap of data files can be estimated without
+ * reading them. With {@value #REGISTER_COUNT} registers the standard error is
+ * about 3%.
+ *
+ * The keys are hashed with {@link BloomFilter#hash(Key)}.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class DistinctKeySketch {
+
+    private static final int PRECISION = 10;
+    static final int REGISTER_COUNT = 1 << PRECISION;
+
+    private final byte[] registers;
+
+    public DistinctKeySketch() {
+	this(new byte[REGISTER_COUNT]);
+    }
+
+    DistinctKeySketch(byte[] registers) {
+	super();
+	this.registers = registers;
+    }
+
+    /**
+     * Adds a row key to the sketch.
+     */
+    public void add(Key rowKey) {
+	add(BloomFilter.hash(rowKey));
+    }
+
+    void add(long hash) {
+	int register = (int) (hash >>> (64 - PRECISION));
+	// The remaining bits are shifted to the top; the marker bit limits the rank.
+	long remainder = (hash << PRECISION) | (1l << (PRECISION - 1));
+	byte rank = (byte) (Long.numberOfLeadingZeros(remainder) + 1);
+	if (registers[register] < rank) {
+	    registers[register] = rank;
+	}
+    }
+
+    /**
+     * Merges another sketch into this sketch.
+     */
+    public void merge(DistinctKeySketch sketch) {
+	for (int i = 0; i < REGISTER_COUNT; ++i) {
+	    if (registers[i] < sketch.registers[i]) {
+		registers[i] = sketch.registers[i];
+	    }
+	}
+    }
+
+    /**
+     * Estimates the number of distinct row keys added.
+     *
+     * @return The estimated number of keys is returned.
+     */
+    public long estimate() {
+	double sum = 0.0;
+	int zeros = 0;
+	for (byte register : registers) {
+	    sum += 1.0 / (1l << register);
+	    if (register == 0) {
+		zeros++;
+	    }
+	}
+	double alpha = 0.7213 / (1.0 + 1.079 / REGISTER_COUNT);
+	double estimate = alpha * REGISTER_COUNT * REGISTER_COUNT / sum;
+	if ((estimate <= 2.5 * REGISTER_COUNT) && (zeros > 0)) {
+	    // Linear counting is more accurate for small cardinalities.
+	    estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / zeros);
+	}
+	return Math.round(estimate);
+    }
+
+    byte[] getRegisters() {
+	return registers;
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.puresoltechnologies.ductiledb.logstore.data;
+
+import java.util.Arrays;
+
+/**
+ * This is a histogram of key or value sizes with buckets of powers of two.
+ * Bucket 0 counts the empty entries and bucket i counts the sizes from
+ * 2<sup>i-1</sup> to 2<sup>i</sup>-1 bytes.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class SizeHistogram {
+
+    private long[] counts;
+
+    public SizeHistogram() {
+	this(new long[0]);
+    }
+
+    SizeHistogram(long[] counts) {
+	super();
+	this.counts = counts;
+    }
+
+    /**
+     * Returns the bucket of a size.
+     */
+    public static int getBucket(int size) {
+	return 32 - Integer.numberOfLeadingZeros(size);
+    }
+
+    /**
+     * Counts an entry.
+     *
+     * @param size
+     *            is the size of the entry in bytes.
+     */
+    public void add(int size) {
+	int bucket = getBucket(size);
+	if (bucket >= counts.length) {
+	    counts = Arrays.copyOf(counts, bucket + 1);
+	}
+	counts[bucket]++;
+    }
+
+    /**
+     * Returns the number of buckets up to the last non-empty bucket.
+     */
+    public int getBucketCount() {
+	return counts.length;
+    }
+
+    /**
+     * Returns the number of entries in a bucket.
+     */
+    public long getCount(int bucket) {
+	return bucket < counts.length ? counts[bucket] : 0;
+    }
+
+    /**
+     * Returns the largest size counted by a bucket.
+     *
+     * @return The size in bytes is returned.
+     */
+    public static long getUpperBound(int bucket) {
+	return (1l << bucket) - 1;
+    }
+
+    /**
+     * Returns the number of entries counted.
+     */
+    public long getTotalCount() {
+	long total = 0;
+	for (long count : counts) {
+	    total += count;
+	}
+	return total;
+    }
+
+    /**
+     * Estimates the size which is not exceeded by the given share of the
+     * entries.
+     *
+     * @param percentile
+     *            is the share of the entries between 0 and 1.
+     * @return The upper bound of the bucket containing the percentile is
+     *         returned or 0 for an empty histogram.
+     */
+    public long getPercentile(double percentile) {
+	long threshold = (long) Math.ceil(getTotalCount() * percentile);
+	long count = 0;
+	for (int bucket = 0; bucket < counts.length; ++bucket) {
+	    count += counts[bucket];
+	    if ((count >= threshold) && (count > 0)) {
+		return getUpperBound(bucket);
+	    }
+	}
+	return 0;
+    }
+
+    long[] getCounts() {
+	return counts;
+    }
+
+    @Override
+    public String toString() {
+	return Arrays.toString(counts);
+    }
+
+}
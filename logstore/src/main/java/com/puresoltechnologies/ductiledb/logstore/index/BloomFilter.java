@@ -0,0 +1,168 @@
+package com.puresoltechnologies.ductiledb.logstore.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.LogStructuredStore;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+
+/**
+ * This is the Bloom filter of the row keys of a data file or commit log. It is
+ * written next to the index file and is checked before the index or the data
+ * are read, so lookups of row keys not contained in the file do not need any
+ * IO.
+ *
+ * The filter uses double hashing of a 64 bit hash of the row key to derive the
+ * probe positions.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class BloomFilter {
+
+    public static File getBloomFilterName(File dataFile) {
+	return new File(dataFile.getParent(), dataFile.getName().replace(LogStructuredStore.DATA_FILE_SUFFIX,
+		LogStructuredStore.BLOOM_FILTER_SUFFIX));
+    }
+
+    /**
+     * Reads the Bloom filter of the given data file.
+     *
+     * @param storage
+     *            is the storage of the data file.
+     * @param dataFile
+     *            is the data file or commit log.
+     * @return A {@link BloomFilter} is returned or <code>null</code> in case the
+     *         data file has no filter.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public static BloomFilter read(Storage storage, File dataFile) throws IOException {
+	File bloomFilterFile = getBloomFilterName(dataFile);
+	if (!storage.exists(bloomFilterFile)) {
+	    return null;
+	}
+	try (InputStream inputStream = storage.open(bloomFilterFile)) {
+	    byte[] header = readFully(inputStream, 8);
+	    int numHashes = Bytes.toInt(header, 0);
+	    int numWords = Bytes.toInt(header, 4);
+	    byte[] words = readFully(inputStream, numWords * 8);
+	    long[] bits = new long[numWords];
+	    for (int i = 0; i < numWords; ++i) {
+		bits[i] = Bytes.toLong(words, i * 8);
+	    }
+	    return new BloomFilter(numHashes, bits);
+	}
+    }
+
+    private static byte[] readFully(InputStream inputStream, int length) throws IOException {
+	byte[] buffer = new byte[length];
+	int pos = 0;
+	while (pos < length) {
+	    int len = inputStream.read(buffer, pos, length - pos);
+	    if (len < 0) {
+		throw new IOException("Could not read full number of bytes needed. It is maybe a broken bloom filter.");
+	    }
+	    pos += len;
+	}
+	return buffer;
+    }
+
+    /**
+     * Calculates the 64 bit hash of a row key used for the probes.
+     */
+    public static long hash(Key rowKey) {
+	// FNV-1a with the final mix of MurmurHash3 for a better bit distribution
+	long hash = 0xcbf29ce484222325L;
+	for (byte b : rowKey.getBytes()) {
+	    hash ^= b & 0xff;
+	    hash *= 0x100000001b3L;
+	}
+	hash ^= hash >>> 33;
+	hash *= 0xff51afd7ed558ccdL;
+	hash ^= hash >>> 33;
+	hash *= 0xc4ceb9fe1a85ec53L;
+	hash ^= hash >>> 33;
+	return hash;
+    }
+
+    /**
+     * Creates a filter for the given key hashes.
+     *
+     * @param hashes
+     *            are the hashes calculated with {@link #hash(Key)}.
+     * @param count
+     *            is the number of hashes to be used from the array.
+     * @param bitsPerKey
+     *            is the number of bits per key which defines the false positive
+     *            rate.
+     * @return A {@link BloomFilter} is returned.
+     */
+    static BloomFilter create(long[] hashes, int count, int bitsPerKey) {
+	// k = ln(2) * bits per key is optimal for the false positive rate
+	int numHashes = Math.max(1, Math.min(30, (int) Math.round(bitsPerKey * 0.69)));
+	long numBits = Math.max(64L, (long) count * bitsPerKey);
+	int numWords = (int) Math.min(Integer.MAX_VALUE / 8, (numBits + 63) / 64);
+	BloomFilter bloomFilter = new BloomFilter(numHashes, new long[numWords]);
+	for (int i = 0; i < count; ++i) {
+	    bloomFilter.add(hashes[i]);
+	}
+	return bloomFilter;
+    }
+
+    private final int numHashes;
+    private final long[] bits;
+    private final long numBits;
+
+    private BloomFilter(int numHashes, long[] bits) {
+	super();
+	this.numHashes = numHashes;
+	this.bits = bits;
+	this.numBits = (long) bits.length * 64;
+    }
+
+    private void add(long hash) {
+	int h1 = (int) hash;
+	int h2 = (int) (hash >>> 32);
+	for (int i = 1; i <= numHashes; ++i) {
+	    long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+	    bits[(int) (bit >>> 6)] |= 1L << bit;
+	}
+    }
+
+    /**
+     * Checks whether the row key might be contained.
+     *
+     * @param rowKey
+     *            is the row key to be checked.
+     * @return <code>false</code> is returned in case the row key is definitely
+     *         not contained. <code>true</code> is returned in case the row key is
+     *         contained or in case of a false positive.
+     */
+    public boolean mightContain(Key rowKey) {
+	long hash = hash(rowKey);
+	int h1 = (int) hash;
+	int h2 = (int) (hash >>> 32);
+	for (int i = 1; i <= numHashes; ++i) {
+	    long bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+	    if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    void write(OutputStream outputStream) throws IOException {
+	byte[] buffer = new byte[8 + bits.length * 8];
+	Bytes.putInt(buffer, numHashes, 0);
+	Bytes.putInt(buffer, bits.length, 4);
+	for (int i = 0; i < bits.length; ++i) {
+	    Bytes.putLong(buffer, bits[i], 8 + i * 8);
+	}
+	outputStream.write(buffer);
+    }
+
+}
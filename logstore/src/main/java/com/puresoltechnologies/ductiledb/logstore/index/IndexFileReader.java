@@ -1,5 +1,6 @@
 package com.puresoltechnologies.ductiledb.logstore.index;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -12,21 +13,33 @@ import com.puresoltechnologies.ductiledb.commons.Bytes;
 import com.puresoltechnologies.ductiledb.logstore.Key;
 import com.puresoltechnologies.ductiledb.storage.spi.Storage;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageInputStream;
+import com.puresoltechnologies.ductiledb.storage.spi.StoragePositionalReader;
 import com.puresoltechnologies.streaming.streams.MultiStreamSeekableInputStream;
 
+/**
+ * This class reads index files written by {@link IndexFileWriter}. The fence
+ * pointers of the index blocks are kept in memory, so {@link #get(Key)} only
+ * reads the block which might contain the row key. Old index files without
+ * fence pointers are read sequentially.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
 public class IndexFileReader implements CloseableIterable<IndexEntry> {
 
     private static final Logger logger = LoggerFactory.getLogger(IndexFileReader.class);
 
-    private static String readDataFile(InputStream inputStream) throws IOException {
+    private static int readInt(InputStream inputStream) throws IOException {
 	byte[] buffer = new byte[4];
 	int len = inputStream.read(buffer, 0, 4);
 	if (len < 4) {
 	    throw new IOException("Could not read full number of bytes needed. It is maybe a broken index file.");
 	}
-	int fileNameLength = Bytes.toInt(buffer);
+	return Bytes.toInt(buffer);
+    }
+
+    private static String readDataFile(InputStream inputStream, int fileNameLength) throws IOException {
 	byte[] fileName = new byte[fileNameLength];
-	len = inputStream.read(fileName);
+	int len = inputStream.read(fileName);
 	if (len < fileNameLength) {
 	    throw new IOException("Could not read full number of bytes needed. It is maybe a broken index file.");
 	}
@@ -59,12 +72,99 @@ public class IndexFileReader implements CloseableIterable<IndexEntry> {
     private final File indexFile;
     private final File dataFile;
     private final MultiStreamSeekableInputStream<StorageInputStream> inputStream;
+    private final long firstEntryPosition;
+    /**
+     * This is the position behind the last index entry. It is
+     * {@link Long#MAX_VALUE} for old index files.
+     */
+    private final long endPosition;
+    /**
+     * These are the first row keys of the index blocks. They are
+     * <code>null</code> for old index files.
+     */
+    private final Key[] fenceKeys;
+    private final long[] fencePositions;
+    /**
+     * This reader is used by {@link #find(Key)}. It is opened on first use.
+     */
+    private volatile StoragePositionalReader positionalReader = null;
 
     public IndexFileReader(Storage storage, File indexFile) throws IOException {
 	this.storage = storage;
 	this.indexFile = indexFile;
 	this.inputStream = new MultiStreamSeekableInputStream<>(10, () -> storage.open(indexFile));
-	this.dataFile = new File(readDataFile(inputStream));
+	int header = readInt(inputStream);
+	if (header == IndexFileWriter.BLOCK_INDEX_MAGIC) {
+	    this.dataFile = new File(readDataFile(inputStream, readInt(inputStream)));
+	    this.firstEntryPosition = inputStream.getPosition();
+	    inputStream.seek(storage.getFileStatus(indexFile).getLength() - IndexFileWriter.FOOTER_SIZE);
+	    byte[] footer = new byte[IndexFileWriter.FOOTER_SIZE];
+	    if ((inputStream.read(footer) < footer.length)
+		    || (Bytes.toInt(footer, 12) != IndexFileWriter.BLOCK_INDEX_MAGIC)) {
+		throw new IOException(
+			"Index file '" + indexFile + "' has no valid footer. It is maybe a broken index file.");
+	    }
+	    this.endPosition = Bytes.toLong(footer, 0);
+	    int fenceCount = Bytes.toInt(footer, 8);
+	    this.fenceKeys = new Key[fenceCount];
+	    this.fencePositions = new long[fenceCount];
+	    inputStream.seek(endPosition);
+	    for (int i = 0; i < fenceCount; ++i) {
+		IndexEntry fence = readEntry(dataFile, inputStream);
+		if (fence == null) {
+		    throw new IOException("Could not read fence pointers. It is maybe a broken index file.");
+		}
+		fenceKeys[i] = fence.getRowKey();
+		fencePositions[i] = fence.getOffset();
+	    }
+	    inputStream.seek(firstEntryPosition);
+	} else {
+	    this.dataFile = new File(readDataFile(inputStream, header));
+	    this.firstEntryPosition = inputStream.getPosition();
+	    this.endPosition = Long.MAX_VALUE;
+	    this.fenceKeys = null;
+	    this.fencePositions = null;
+	}
+    }
+
+    private IndexEntry readEntry() throws IOException {
+	if (inputStream.getPosition() >= endPosition) {
+	    return null;
+	}
+	return readEntry(dataFile, inputStream);
+    }
+
+    /**
+     * Finds the index block which might contain the row key.
+     * 
+     * @return The index of the block is returned or -1 in case the row key is
+     *         before the first block.
+     */
+    private int findBlock(Key rowKey) {
+	int low = 0;
+	int high = fenceKeys.length - 1;
+	int block = -1;
+	while (low <= high) {
+	    int mid = (low + high) >>> 1;
+	    if (fenceKeys[mid].compareTo(rowKey) <= 0) {
+		block = mid;
+		low = mid + 1;
+	    } else {
+		high = mid - 1;
+	    }
+	}
+	return block;
+    }
+
+    /**
+     * This method moves the reader back to the first index entry behind the
+     * header.
+     * 
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public void reset() throws IOException {
+	inputStream.seek(firstEntryPosition);
     }
 
     public void seek(int position) throws IOException {
@@ -72,16 +172,35 @@ public class IndexFileReader implements CloseableIterable<IndexEntry> {
     }
 
     public IndexEntry get() throws IOException {
-	return readEntry(dataFile, inputStream);
+	return readEntry();
     }
 
     public IndexEntry get(long offset) throws IOException {
 	inputStream.seek(offset);
-	return readEntry(dataFile, inputStream);
+	return readEntry();
     }
 
+    /**
+     * Looks up the index entry of a row key. If the index file has fence
+     * pointers, only the block of the row key is read. Otherwise, the index is
+     * read sequentially from the current position.
+     * 
+     * @param rowKey
+     *            is the row key to look up.
+     * @return The {@link IndexEntry} is returned or <code>null</code> in case the
+     *         row key is not found.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
     public IndexEntry get(Key rowKey) throws IOException {
-	IndexEntry indexEntry = readEntry(dataFile, inputStream);
+	if (fenceKeys != null) {
+	    int block = findBlock(rowKey);
+	    if (block < 0) {
+		return null;
+	    }
+	    inputStream.seek(fencePositions[block]);
+	}
+	IndexEntry indexEntry = readEntry();
 	while (indexEntry != null) {
 	    int compareResult = indexEntry.getRowKey().compareTo(rowKey);
 	    if (compareResult == 0) {
@@ -89,11 +208,101 @@ public class IndexFileReader implements CloseableIterable<IndexEntry> {
 	    } else if (compareResult > 0) {
 		return null;
 	    }
-	    indexEntry = readEntry(dataFile, inputStream);
+	    indexEntry = readEntry();
 	}
 	return null;
     }
 
+    /**
+     * Looks up the index entry of a row key like {@link #get(Key)}, but without
+     * moving the position of this reader. The block of the row key is read with a
+     * positional read, so many threads can look up row keys in parallel. Index
+     * files without fence pointers are read sequentially under a lock.
+     * 
+     * @param rowKey
+     *            is the row key to look up.
+     * @return The {@link IndexEntry} is returned or <code>null</code> in case the
+     *         row key is not found.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public IndexEntry find(Key rowKey) throws IOException {
+	IndexEntry indexEntry = findFloor(rowKey);
+	return (indexEntry != null) && indexEntry.getRowKey().equals(rowKey) ? indexEntry : null;
+    }
+
+    /**
+     * Looks up the last index entry with a row key less or equal to the given
+     * row key like {@link #find(Key)}. The index of a data file only contains
+     * the first row key of each data block, so this is the entry of the data
+     * block which might contain the row.
+     * 
+     * @param rowKey
+     *            is the row key to look up.
+     * @return The {@link IndexEntry} is returned or <code>null</code> in case the
+     *         row key is less than the first row key of the index.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public IndexEntry findFloor(Key rowKey) throws IOException {
+	if (fenceKeys == null) {
+	    synchronized (this) {
+		reset();
+		return findFloor(rowKey, inputStream);
+	    }
+	}
+	int block = findBlock(rowKey);
+	if (block < 0) {
+	    return null;
+	}
+	long blockStart = fencePositions[block];
+	long blockEnd = (block + 1) < fencePositions.length ? fencePositions[block + 1] : endPosition;
+	byte[] blockBytes = new byte[(int) (blockEnd - blockStart)];
+	int len = getPositionalReader().read(blockStart, blockBytes, 0, blockBytes.length);
+	if (len < blockBytes.length) {
+	    throw new IOException("Could not read full index block. It is maybe a broken index file.");
+	}
+	try (ByteArrayInputStream blockStream = new ByteArrayInputStream(blockBytes)) {
+	    return findFloor(rowKey, blockStream);
+	}
+    }
+
+    /**
+     * Reads the entries of the stream up to the row key. Old index files without
+     * fence pointers end with their last entry, so their stream can be read
+     * directly.
+     */
+    private IndexEntry findFloor(Key rowKey, InputStream entryStream) throws IOException {
+	IndexEntry floor = null;
+	IndexEntry indexEntry = readEntry(dataFile, entryStream);
+	while (indexEntry != null) {
+	    int compareResult = indexEntry.getRowKey().compareTo(rowKey);
+	    if (compareResult > 0) {
+		break;
+	    }
+	    floor = indexEntry;
+	    if (compareResult == 0) {
+		break;
+	    }
+	    indexEntry = readEntry(dataFile, entryStream);
+	}
+	return floor;
+    }
+
+    private StoragePositionalReader getPositionalReader() throws IOException {
+	StoragePositionalReader reader = positionalReader;
+	if (reader == null) {
+	    synchronized (this) {
+		reader = positionalReader;
+		if (reader == null) {
+		    reader = storage.openPositionalReader(indexFile);
+		    positionalReader = reader;
+		}
+	    }
+	}
+	return reader;
+    }
+
     @Override
     public IndexEntryIterator iterator() {
 	return new IndexEntryIterator() {
@@ -111,7 +320,7 @@ public class IndexFileReader implements CloseableIterable<IndexEntry> {
 	    @Override
 	    protected IndexEntry findNext() {
 		try {
-		    return readEntry(dataFile, inputStream);
+		    return readEntry();
 		} catch (IOException e) {
 		    logger.error("Could not read next index entry.", e);
 		    return null;
@@ -121,7 +330,23 @@ public class IndexFileReader implements CloseableIterable<IndexEntry> {
 	};
     }
 
+    /**
+     * Returns an iterator starting at the current position. If the index file has
+     * fence pointers, the position is moved to the block of the start row key
+     * first, so {@link IndexEntryIterator#gotoStart(Key)} only needs to skip the
+     * entries of this block.
+     */
     public IndexEntryIterator iterator(Key startRowKey, Key stopRowKey) {
+	if ((fenceKeys != null) && (startRowKey != null)) {
+	    int block = findBlock(startRowKey);
+	    if (block > 0) {
+		try {
+		    inputStream.seek(fencePositions[block]);
+		} catch (IOException e) {
+		    logger.warn("Could not seek index block.", e);
+		}
+	    }
+	}
 	return new IndexEntryIterator() {
 
 	    @Override
@@ -137,7 +362,7 @@ public class IndexFileReader implements CloseableIterable<IndexEntry> {
 	    @Override
 	    protected IndexEntry findNext() {
 		try {
-		    return readEntry(dataFile, inputStream);
+		    return readEntry();
 		} catch (IOException e) {
 		    logger.error("Could not read next index entry.", e);
 		    return null;
@@ -150,6 +375,9 @@ public class IndexFileReader implements CloseableIterable<IndexEntry> {
     @Override
     public void close() throws IOException {
 	inputStream.close();
+	if (positionalReader != null) {
+	    positionalReader.close();
+	}
     }
 
 }
@@ -3,16 +3,48 @@ package com.puresoltechnologies.ductiledb.logstore.index;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import com.puresoltechnologies.ductiledb.commons.Bytes;
 import com.puresoltechnologies.ductiledb.logstore.Key;
 import com.puresoltechnologies.ductiledb.logstore.io.DuctileDBOutputStream;
 import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
 
+/**
+ * This class writes index files. The index entries are grouped into blocks of
+ * about {@link #INDEX_BLOCK_SIZE} bytes. The first row key and the position of
+ * each block are written as fence pointers behind the entries, so readers can
+ * binary search for the block of a row key and only need to read this block:
+ * 
+ * <pre>
+ * [magic][data file path][index entries...][fence pointers...][fence pointer position][fence pointer count][magic]
+ * </pre>
+ * 
+ * Index files written before start with the data file path and contain no fence
+ * pointers.
+ * 
+ * The index of a commit log contains an entry for each row. The index of a data
+ * file of format version 2 only contains an entry for each data block with the
+ * first row key and the offset of the block. The keys of the other rows are only
+ * added to the {@link BloomFilter} with {@link #addRowKey(Key)}.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
 public class IndexFileWriter implements Closeable {
 
+    /**
+     * This is the marker of index files with fence pointers. It is negative, so it
+     * can be distinguished from the path length found in old index files.
+     */
+    static final int BLOCK_INDEX_MAGIC = 0xD1B10C02;
+    static final int INDEX_BLOCK_SIZE = 4096;
+    static final int FOOTER_SIZE = 16;
+
     private static void writeDataFilePath(DuctileDBOutputStream outputStream, File dataFile) throws IOException {
+	outputStream.writeData(Bytes.fromInt(BLOCK_INDEX_MAGIC));
 	String path = dataFile.getPath();
 	outputStream.writeData(Bytes.fromInt(path.length()));
 	outputStream.writeData(Bytes.fromString(path));
@@ -24,11 +56,43 @@ public class IndexFileWriter implements Closeable {
 	outputStream.writeData(Bytes.fromLong(offset));
     }
 
+    private final Storage storage;
+    private final File dataFile;
     private final DuctileDBOutputStream outputStream;
+    private final int bloomFilterBitsPerKey;
+    private long[] keyHashes;
+    private int keyCount = 0;
+    private final List<Key> fenceKeys = new ArrayList<>();
+    private final List<Long> fencePositions = new ArrayList<>();
+    private long blockPosition = -1;
 
     public IndexFileWriter(Storage storage, File indexFile, File dataFile) throws IOException {
+	this(storage, indexFile, dataFile, 0);
+    }
+
+    /**
+     * Creates the writer of an index file.
+     * 
+     * @param storage
+     *            is the storage to write to.
+     * @param indexFile
+     *            is the index file to be created.
+     * @param dataFile
+     *            is the data file or commit log the index points to.
+     * @param bloomFilterBitsPerKey
+     *            is the number of bits per row key of the {@link BloomFilter}
+     *            written on close. A value less or equal to 0 writes no filter.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public IndexFileWriter(Storage storage, File indexFile, File dataFile, int bloomFilterBitsPerKey)
+	    throws IOException {
 	super();
+	this.storage = storage;
+	this.dataFile = dataFile;
 	this.outputStream = new DuctileDBOutputStream(storage.create(indexFile));
+	this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+	this.keyHashes = bloomFilterBitsPerKey > 0 ? new long[1024] : null;
 	writeDataFilePath(dataFile);
     }
 
@@ -37,19 +101,62 @@ public class IndexFileWriter implements Closeable {
     }
 
     public synchronized void writeIndexEntry(Key rowKey, long offset) throws IOException {
+	long position = outputStream.getPosition();
+	if ((blockPosition < 0) || (position - blockPosition >= INDEX_BLOCK_SIZE)) {
+	    fenceKeys.add(rowKey);
+	    fencePositions.add(position);
+	    blockPosition = position;
+	}
 	writeIndexEntry(outputStream, rowKey, offset);
+	addRowKey(rowKey);
     }
 
-    public MessageDigest getMessageDigest() {
-	return outputStream.getMessageDigest();
+    /**
+     * Adds the key of a row without an own index entry to the Bloom filter.
+     * 
+     * @param rowKey
+     *            is the key of a row of the data block of the last index entry.
+     */
+    public synchronized void addRowKey(Key rowKey) {
+	if (keyHashes != null) {
+	    if (keyCount == keyHashes.length) {
+		keyHashes = Arrays.copyOf(keyHashes, keyHashes.length * 2);
+	    }
+	    keyHashes[keyCount++] = BloomFilter.hash(rowKey);
+	}
     }
 
     public void flush() throws IOException {
 	outputStream.flush();
     }
 
+    private synchronized void writeFencePointers() throws IOException {
+	long fencePointerPosition = outputStream.getPosition();
+	for (int i = 0; i < fenceKeys.size(); ++i) {
+	    writeIndexEntry(outputStream, fenceKeys.get(i), fencePositions.get(i));
+	}
+	outputStream.writeData(Bytes.fromLong(fencePointerPosition));
+	outputStream.writeData(Bytes.fromInt(fenceKeys.size()));
+	outputStream.writeData(Bytes.fromInt(BLOCK_INDEX_MAGIC));
+    }
+
     @Override
     public void close() throws IOException {
+	writeFencePointers();
 	outputStream.close();
+	if (keyHashes != null) {
+	    writeBloomFilter();
+	}
+    }
+
+    private void writeBloomFilter() throws IOException {
+	File bloomFilterFile = BloomFilter.getBloomFilterName(dataFile);
+	if (storage.exists(bloomFilterFile)) {
+	    storage.delete(bloomFilterFile);
+	}
+	try (StorageOutputStream bloomFilterStream = storage.create(bloomFilterFile)) {
+	    BloomFilter.create(keyHashes, keyCount, bloomFilterBitsPerKey).write(bloomFilterStream);
+	}
+	keyHashes = null;
     }
 }
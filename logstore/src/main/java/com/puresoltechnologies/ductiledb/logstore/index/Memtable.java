@@ -1,107 +1,181 @@
 package com.puresoltechnologies.ductiledb.logstore.index;
 
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.puresoltechnologies.ductiledb.logstore.Key;
-import com.puresoltechnologies.streaming.StreamIterator;
-import com.puresoltechnologies.trees.RedBlackTree;
-import com.puresoltechnologies.trees.RedBlackTreeNode;
+import com.puresoltechnologies.ductiledb.logstore.Row;
 
 /**
- * Basic Memtable implementation.
+ * Memtable implementation based on a lock-free {@link ConcurrentSkipListMap}.
+ * Reads and iterations never block writers and vice versa.
+ * 
+ * The iterators are weakly consistent: They never throw
+ * {@link java.util.ConcurrentModificationException} and they reflect the state
+ * of the memtable at some point at or since the creation of the iterator.
+ * Therefore, scanners can use them safely while writes continue.
+ * 
+ * Rows put with {@link #put(IndexEntry, Instant, byte[])} keep their data in a
+ * {@link MemtableArena}, so that memtable hits do not need to read the commit
+ * log. The memory footprint is accounted in bytes with
+ * {@link #getSizeInBytes()}.
  * 
  * @author Rick-Rainer Ludwig
  */
 public class Memtable implements Iterable<IndexEntry> {
 
-    private final ReentrantReadWriteLock reentrantReadWriteLock = new ReentrantReadWriteLock(true);
-    private final ReadLock readLock = reentrantReadWriteLock.readLock();
-    private final WriteLock writeLock = reentrantReadWriteLock.writeLock();
+    /**
+     * This is the estimated number of bytes needed per entry for the skip list
+     * node, the entry and the key objects.
+     */
+    private static final int ENTRY_OVERHEAD = 96;
 
-    private final RedBlackTree<Key, IndexEntry> values = new RedBlackTree<>();
+    private final ConcurrentSkipListMap<Key, IndexEntry> values = new ConcurrentSkipListMap<>();
+    private final AtomicLong entriesSize = new AtomicLong();
+    private volatile MemtableArena arena;
 
     public Memtable() {
+	this(false);
+    }
+
+    /**
+     * @param offHeap
+     *            defines whether the row data is to be stored off-heap.
+     */
+    public Memtable(boolean offHeap) {
 	super();
+	this.arena = new MemtableArena(offHeap);
     }
 
     public void clear() {
-	writeLock.lock();
-	try {
-	    values.clear();
-	} finally {
-	    writeLock.unlock();
-	}
+	values.clear();
+	entriesSize.set(0);
+	arena = new MemtableArena(arena.isOffHeap());
     }
 
+    /**
+     * Returns the number of entries. <b>Attention:</b> This is not a constant time
+     * operation and the result is only an estimate in case of concurrent writes.
+     * 
+     * @return The number of entries is returned.
+     */
     public int size() {
-	readLock.lock();
-	try {
-	    return values.size();
-	} finally {
-	    readLock.unlock();
-	}
+	return values.size();
+    }
+
+    public boolean isEmpty() {
+	return values.isEmpty();
+    }
+
+    /**
+     * Returns the estimated memory footprint of the memtable.
+     * 
+     * @return The size in bytes is returned.
+     */
+    public long getSizeInBytes() {
+	return entriesSize.get() + arena.getAllocatedBytes();
     }
 
+    /**
+     * This method puts an index entry only. The row data needs to be read from
+     * the data file referenced.
+     * 
+     * @param indexEntry
+     *            is the entry to be put.
+     */
     public void put(IndexEntry indexEntry) {
-	writeLock.lock();
-	try {
-	    values.put(indexEntry.getRowKey(), indexEntry);
-	} finally {
-	    writeLock.unlock();
+	// An overwrite replaces the entry in its skip list node.
+	if (values.put(indexEntry.getRowKey(), indexEntry) == null) {
+	    entriesSize.addAndGet(indexEntry.getRowKey().getBytes().length + ENTRY_OVERHEAD);
 	}
     }
 
+    /**
+     * This method puts a row together with its commit log position into the
+     * memtable.
+     * 
+     * @param indexEntry
+     *            is the position of the row in the commit log.
+     * @param tombstone
+     *            is the tombstone of the row or <code>null</code>.
+     * @param data
+     *            is the data of the row.
+     */
+    public void put(IndexEntry indexEntry, Instant tombstone, byte[] data) {
+	put(indexEntry, tombstone, data, false);
+    }
+
+    /**
+     * This method puts a row like {@link #put(IndexEntry, Instant, byte[])}.
+     * 
+     * @param mergeOperand
+     *            defines whether the data is a merge operand.
+     */
+    public void put(IndexEntry indexEntry, Instant tombstone, byte[] data, boolean mergeOperand) {
+	MemtableArena arena = this.arena;
+	long address = arena.write(data);
+	put(new MemtableEntry(indexEntry.getRowKey(), indexEntry.getDataFile(), indexEntry.getOffset(), tombstone,
+		arena, address, data.length, mergeOperand));
+    }
+
     public IndexEntry get(Key rowKey) {
-	readLock.lock();
-	try {
-	    return values.get(rowKey);
-	} finally {
-	    readLock.unlock();
+	return values.get(rowKey);
+    }
+
+    /**
+     * This method returns the row kept in the memtable.
+     * 
+     * @param rowKey
+     *            is the key of the row.
+     * @return A {@link Row} is returned including deleted rows with tombstone.
+     *         <code>null</code> is returned in case the row is not in the memtable
+     *         or the memtable only contains its index entry.
+     */
+    public Row getRow(Key rowKey) {
+	IndexEntry indexEntry = values.get(rowKey);
+	if (indexEntry instanceof MemtableEntry) {
+	    return ((MemtableEntry) indexEntry).getRow();
 	}
+	return null;
     }
 
     public void delete(Key rowKey) {
-	writeLock.lock();
-	try {
-	    values.delete(rowKey);
-	} finally {
-	    writeLock.unlock();
+	if (values.remove(rowKey) != null) {
+	    entriesSize.addAndGet(-(rowKey.getBytes().length + ENTRY_OVERHEAD));
 	}
     }
 
     @Override
     public IndexEntryIterator iterator() {
-	return new IndexEntryIterator() {
-
-	    private final StreamIterator<RedBlackTreeNode<Key, IndexEntry>> iterator = values.iterator();
-
-	    @Override
-	    public Key getStartRowKey() {
-		return null;
-	    }
-
-	    @Override
-	    public Key getEndRowKey() {
-		return null;
-	    }
-
-	    @Override
-	    protected IndexEntry findNext() {
-		return iterator.hasNext() ? iterator.next().getValue() : null;
-
-	    }
-
-	};
+	return iterator(null, null);
     }
 
+    /**
+     * This method returns a weakly consistent iterator over the given key range.
+     * 
+     * @param startKey
+     *            is the first key to be returned (inclusive). <code>null</code> is
+     *            used to start at the first entry.
+     * @param endKey
+     *            is the last key to be returned (inclusive). <code>null</code> is
+     *            used to iterate to the last entry.
+     * @return An {@link IndexEntryIterator} is returned.
+     */
     public IndexEntryIterator iterator(Key startKey, Key endKey) {
+	NavigableMap<Key, IndexEntry> range = values;
+	if (startKey != null) {
+	    range = range.tailMap(startKey, true);
+	}
+	if (endKey != null) {
+	    range = range.headMap(endKey, true);
+	}
+	Iterator<Entry<Key, IndexEntry>> iterator = range.entrySet().iterator();
 	return new IndexEntryIterator() {
 
-	    private final StreamIterator<RedBlackTreeNode<Key, IndexEntry>> iterator = values.iterator(startKey,
-		    endKey);
-
 	    @Override
 	    public Key getStartRowKey() {
 		return startKey;
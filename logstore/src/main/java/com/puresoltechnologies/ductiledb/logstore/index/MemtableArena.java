@@ -0,0 +1,117 @@
+package com.puresoltechnologies.ductiledb.logstore.index;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This is a simple slab allocator for the row data kept in a {@link Memtable}.
+ * Row data is copied into large, pre-allocated slabs which can be kept on the
+ * heap or off-heap. This keeps the number of objects the garbage collector has
+ * to track small. The whole arena is released at once together with the
+ * memtable.
+ * 
+ * Data is written by one thread at a time (writes are synchronized), but can be
+ * read concurrently. Written regions are never changed afterwards.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
+public class MemtableArena {
+
+    public static final int DEFAULT_SLAB_SIZE = 256 * 1024;
+
+    private final int slabSize;
+    private final boolean offHeap;
+    private final List<ByteBuffer> slabs = new CopyOnWriteArrayList<>();
+    private int currentSlab = -1;
+    private int currentOffset = 0;
+    private volatile long allocatedBytes = 0;
+
+    public MemtableArena(boolean offHeap) {
+	this(DEFAULT_SLAB_SIZE, offHeap);
+    }
+
+    public MemtableArena(int slabSize, boolean offHeap) {
+	super();
+	this.slabSize = slabSize;
+	this.offHeap = offHeap;
+    }
+
+    public boolean isOffHeap() {
+	return offHeap;
+    }
+
+    /**
+     * Returns the number of bytes allocated for slabs.
+     * 
+     * @return The number of bytes is returned.
+     */
+    public long getAllocatedBytes() {
+	return allocatedBytes;
+    }
+
+    /**
+     * This method copies the provided data into the arena.
+     * 
+     * @param data
+     *            is the data to be copied.
+     * @return An address is returned which is used to read the data again with
+     *         {@link #read(long, int)}.
+     */
+    public synchronized long write(byte[] data) {
+	int slab;
+	int offset;
+	if (data.length > slabSize) {
+	    // Oversized data gets a slab of its own.
+	    slab = allocateSlab(data.length);
+	    offset = 0;
+	} else {
+	    if ((currentSlab < 0) || (currentOffset + data.length > slabSize)) {
+		currentSlab = allocateSlab(slabSize);
+		currentOffset = 0;
+	    }
+	    slab = currentSlab;
+	    offset = currentOffset;
+	    currentOffset += data.length;
+	}
+	ByteBuffer buffer = slabs.get(slab);
+	if (buffer.hasArray()) {
+	    System.arraycopy(data, 0, buffer.array(), buffer.arrayOffset() + offset, data.length);
+	} else {
+	    ByteBuffer duplicate = buffer.duplicate();
+	    duplicate.position(offset);
+	    duplicate.put(data);
+	}
+	return ((long) slab << 32) | offset;
+    }
+
+    /**
+     * This method reads data from the arena.
+     * 
+     * @param address
+     *            is the address returned by {@link #write(byte[])}.
+     * @param length
+     *            is the length of the data.
+     * @return A new byte array is returned containing the data.
+     */
+    public byte[] read(long address, int length) {
+	ByteBuffer buffer = slabs.get((int) (address >>> 32));
+	int offset = (int) address;
+	byte[] data = new byte[length];
+	if (buffer.hasArray()) {
+	    System.arraycopy(buffer.array(), buffer.arrayOffset() + offset, data, 0, length);
+	} else {
+	    ByteBuffer duplicate = buffer.duplicate();
+	    duplicate.position(offset);
+	    duplicate.get(data);
+	}
+	return data;
+    }
+
+    private int allocateSlab(int size) {
+	slabs.add(offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size));
+	allocatedBytes += size;
+	return slabs.size() - 1;
+    }
+
+}
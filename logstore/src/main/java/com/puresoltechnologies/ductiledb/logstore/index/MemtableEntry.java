@@ -0,0 +1,58 @@
+package com.puresoltechnologies.ductiledb.logstore.index;
+
+import java.io.File;
+import java.time.Instant;
+
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.Row;
+
+/**
+ * This is an {@link IndexEntry} kept in a {@link Memtable} which carries the
+ * row data, too. The data itself is stored in the {@link MemtableArena} of the
+ * memtable, so that reads do not need to access the commit log.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
+public class MemtableEntry extends IndexEntry {
+
+    private final Instant tombstone;
+    private final MemtableArena arena;
+    private final long address;
+    private final int length;
+    private final boolean mergeOperand;
+
+    MemtableEntry(Key rowKey, File dataFile, long offset, Instant tombstone, MemtableArena arena, long address,
+	    int length, boolean mergeOperand) {
+	super(rowKey, dataFile, offset);
+	this.tombstone = tombstone;
+	this.mergeOperand = mergeOperand;
+	this.arena = arena;
+	this.address = address;
+	this.length = length;
+    }
+
+    public Instant getTombstone() {
+	return tombstone;
+    }
+
+    public boolean wasDeleted() {
+	return tombstone != null;
+    }
+
+    public boolean isMergeOperand() {
+	return mergeOperand;
+    }
+
+    public int getDataLength() {
+	return length;
+    }
+
+    public byte[] getData() {
+	return arena.read(address, length);
+    }
+
+    public Row getRow() {
+	return new Row(getRowKey(), tombstone, getData(), mergeOperand);
+    }
+
+}
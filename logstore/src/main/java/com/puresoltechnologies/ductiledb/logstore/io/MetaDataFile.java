@@ -0,0 +1,95 @@
+package com.puresoltechnologies.ductiledb.logstore.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
+
+/**
+ * This class reads and writes the metadata file of a generation of data files.
+ * It contains the number of data files and for each data file its name and
+ * its first and last row key with their offsets:
+ *
+ * <pre>
+ * [file count]([name length][name]([key length][key][offset]){2})*
+ * </pre>
+ *
+ * An empty data file has no keys, so it can only be the last entry.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class MetaDataFile {
+
+    /**
+     * Reads all entries of a metadata file.
+     *
+     * @param storage
+     *            is the storage of the metadata file.
+     * @param metadataFile
+     *            is the metadata file to read.
+     * @return A list of {@link MetaDataEntry} is returned in the order of the
+     *         file.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public static List<MetaDataEntry> read(Storage storage, File metadataFile) throws IOException {
+	List<MetaDataEntry> entries = new ArrayList<>();
+	try (MetaDataEntryIterable metaDataEntryIterable = new MetaDataEntryIterable(
+		new DuctileDBInputStream(storage.open(metadataFile)))) {
+	    for (MetaDataEntry entry : metaDataEntryIterable) {
+		entries.add(entry);
+	    }
+	}
+	return entries;
+    }
+
+    /**
+     * Writes a metadata file. The entries are written in the order of their
+     * start keys and empty data files are written last.
+     *
+     * @param storage
+     *            is the storage of the metadata file.
+     * @param metadataFile
+     *            is the metadata file to create.
+     * @param entries
+     *            are the entries of the data files. At most one data file may be
+     *            empty.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public static void write(Storage storage, File metadataFile, Collection<MetaDataEntry> entries)
+	    throws IOException {
+	List<MetaDataEntry> sortedEntries = new ArrayList<>(entries);
+	sortedEntries.sort((l, r) -> {
+	    if (l.isEmptyDataFile() || r.isEmptyDataFile()) {
+		return Boolean.compare(l.isEmptyDataFile(), r.isEmptyDataFile());
+	    }
+	    return l.getStartKey().compareTo(r.getStartKey());
+	});
+	try (StorageOutputStream stream = storage.create(metadataFile)) {
+	    stream.write(Bytes.fromInt(sortedEntries.size())); // Number of files
+	    for (MetaDataEntry entry : sortedEntries) {
+		String fileName = entry.getFileName();
+		stream.write(Bytes.fromInt(fileName.length()));
+		stream.write(Bytes.fromString(fileName));
+		if (!entry.isEmptyDataFile()) {
+		    writeKey(stream, entry.getStartKey(), entry.getStartOffset());
+		    writeKey(stream, entry.getEndKey(), entry.getEndOffset());
+		}
+	    }
+	}
+    }
+
+    private static void writeKey(StorageOutputStream stream, Key rowKey, long offset) throws IOException {
+	stream.write(Bytes.fromInt(rowKey.getBytes().length));
+	stream.write(rowKey.getBytes());
+	stream.write(Bytes.fromLong(offset));
+    }
+
+}
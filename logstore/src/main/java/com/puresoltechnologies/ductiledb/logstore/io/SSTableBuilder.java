@@ -0,0 +1,225 @@
+package com.puresoltechnologies.ductiledb.logstore.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.LogStoreConfiguration;
+import com.puresoltechnologies.ductiledb.logstore.LogStructuredStore;
+import com.puresoltechnologies.ductiledb.logstore.Row;
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodec;
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodecs;
+import com.puresoltechnologies.ductiledb.storage.spi.Storage;
+
+/**
+ * This class writes a complete generation of data files from rows sorted by
+ * their keys: the data files with their index files and Bloom filters and the
+ * metadata file listing them. A new data file is started as soon as the
+ * current one reaches the maximum data file size. The data files are named
+ * <code>&lt;base filename&gt;-&lt;number&gt;</code> and the metadata file is
+ * named <code>&lt;base filename&gt;.metadata</code>.
+ *
+ * The compaction uses this builder to write the data files of the store.
+ * Outside of a store, it is used to build data files offline, which are added
+ * to a store with {@link LogStructuredStore#ingestFiles(File)}.
+ *
+ * The metadata file is only written by {@link #finish()}, so closing the
+ * builder without finishing it leaves no generation behind which could be
+ * opened.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+public class SSTableBuilder implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SSTableBuilder.class);
+
+    private final Storage storage;
+    private final File directory;
+    private final String baseFilename;
+    private final int bufferSize;
+    private final long maxDataFileSize;
+    private final int bloomFilterBitsPerKey;
+    private final int dataBlockSize;
+    private final BlockCodec blockCodec;
+    private final boolean md5Files;
+
+    private final List<MetaDataEntry> entries = new ArrayList<>();
+    private SSTableWriter writer = null;
+    private int fileCount = 0;
+    private Key lastRowKey = null;
+    private long rowCount = 0;
+    private File metadataFile = null;
+
+    /**
+     * Creates a builder with the settings of a store configuration.
+     *
+     * @param storage
+     *            is the storage to write to.
+     * @param directory
+     *            is the directory of the new files.
+     * @param baseFilename
+     *            is the base name of the new files.
+     * @param configuration
+     *            is the configuration of the store the files are written for.
+     */
+    public SSTableBuilder(Storage storage, File directory, String baseFilename,
+	    LogStoreConfiguration configuration) {
+	this(storage, directory, baseFilename, configuration.getBufferSize(), configuration.getMaxDataFileSize(),
+		configuration.getBloomFilterBitsPerKey(), configuration.getDataBlockSize(),
+		BlockCodecs.get(configuration.getBlockCodec()), configuration.isMd5Files());
+    }
+
+    public SSTableBuilder(Storage storage, File directory, String baseFilename, int bufferSize,
+	    long maxDataFileSize, int bloomFilterBitsPerKey, int dataBlockSize, BlockCodec blockCodec,
+	    boolean md5Files) {
+	super();
+	this.storage = storage;
+	this.directory = directory;
+	this.baseFilename = baseFilename;
+	this.bufferSize = bufferSize;
+	this.maxDataFileSize = maxDataFileSize;
+	this.bloomFilterBitsPerKey = bloomFilterBitsPerKey;
+	this.dataBlockSize = dataBlockSize;
+	this.blockCodec = blockCodec;
+	this.md5Files = md5Files;
+	this.writer = createWriter();
+    }
+
+    private SSTableWriter createWriter() {
+	return new SSTableWriter(storage, directory, baseFilename + "-" + fileCount, bufferSize,
+		bloomFilterBitsPerKey, dataBlockSize, blockCodec, md5Files);
+    }
+
+    /**
+     * Writes a row. The rows need to be written ascending by their keys.
+     *
+     * @param rowKey
+     *            is the key of the row.
+     * @param tombstone
+     *            is the time of deletion or <code>null</code>.
+     * @param data
+     *            is the value of the row.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     * @throws IllegalArgumentException
+     *             is thrown in case the row key is not greater than the key of
+     *             the row written before.
+     */
+    public void write(Key rowKey, Instant tombstone, byte[] data) throws IOException {
+	if (metadataFile != null) {
+	    throw new IllegalStateException("The builder for '" + baseFilename + "' was finished already.");
+	}
+	if ((lastRowKey != null) && (lastRowKey.compareTo(rowKey) >= 0)) {
+	    throw new IllegalArgumentException("Row key '" + rowKey + "' is not greater than the row key '"
+		    + lastRowKey + "' written before. The rows need to be sorted ascending without duplicates.");
+	}
+	writer.write(rowKey, tombstone, data);
+	lastRowKey = rowKey;
+	rowCount++;
+	if (writer.getDataFileSize() >= maxDataFileSize) {
+	    closeWriter();
+	    fileCount++;
+	    writer = createWriter();
+	}
+    }
+
+    public void write(Row row) throws IOException {
+	write(row.getKey(), row.getTombstone(), row.getData());
+    }
+
+    /**
+     * Writes all rows of an iterator.
+     *
+     * @see #write(Row)
+     */
+    public void write(Iterator<Row> rows) throws IOException {
+	while (rows.hasNext()) {
+	    write(rows.next());
+	}
+    }
+
+    private void closeWriter() throws IOException {
+	writer.close();
+	logger.debug("Data file '" + writer.getDataFile().getName() + "' written with codec '" + blockCodec.getName()
+		+ "': " + writer.getDataFileStatistics());
+	String fileName = writer.getDataFile().getName();
+	if (writer.hasIndexInformation()) {
+	    entries.add(new MetaDataEntry(fileName, writer.getStartRowKey(), writer.getStartOffset(),
+		    writer.getEndRowKey(), writer.getEndOffset()));
+	} else {
+	    entries.add(new MetaDataEntry(fileName, null, -1, null, -1));
+	}
+	writer = null;
+    }
+
+    /**
+     * Closes the last data file and writes the metadata file. If no row was
+     * written, the generation consists of one empty data file.
+     *
+     * @return The metadata file is returned.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public File finish() throws IOException {
+	if (metadataFile != null) {
+	    return metadataFile;
+	}
+	closeWriter();
+	File file = new File(directory, baseFilename + LogStructuredStore.METADATA_SUFFIX);
+	MetaDataFile.write(storage, file, entries);
+	metadataFile = file;
+	return metadataFile;
+    }
+
+    /**
+     * Closes the current data file. The metadata file is not written, if the
+     * builder was not finished before.
+     */
+    @Override
+    public void close() throws IOException {
+	if (writer != null) {
+	    closeWriter();
+	}
+    }
+
+    public File getDirectory() {
+	return directory;
+    }
+
+    public String getBaseFilename() {
+	return baseFilename;
+    }
+
+    /**
+     * Returns the metadata file written by {@link #finish()}.
+     *
+     * @return The metadata file is returned or <code>null</code> in case the
+     *         builder was not finished, yet.
+     */
+    public File getMetadataFile() {
+	return metadataFile;
+    }
+
+    /**
+     * Returns the entries of the data files closed so far.
+     *
+     * @return An unmodifiable list is returned.
+     */
+    public List<MetaDataEntry> getEntries() {
+	return Collections.unmodifiableList(entries);
+    }
+
+    public long getRowCount() {
+	return rowCount;
+    }
+
+}
@@ -3,11 +3,14 @@ package com.puresoltechnologies.ductiledb.logstore.io;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.Row;
+import com.puresoltechnologies.ductiledb.logstore.data.DataBlock;
 import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
 import com.puresoltechnologies.ductiledb.logstore.index.Index;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexEntry;
@@ -15,8 +18,35 @@ import com.puresoltechnologies.ductiledb.logstore.index.IndexEntryIterator;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexFileReader;
 import com.puresoltechnologies.ductiledb.storage.spi.Storage;
 
+/**
+ * This iterator provides an index entry for each row of the data files of a
+ * {@link DataFileSet} in key order. The index of a version 2 data file only
+ * contains the first row of each block, so the blocks are read and their rows
+ * are provided as {@link BlockRowEntry}s. The caller needs to hold a reference
+ * of the data file set taken with {@link DataFileSet#retain()}.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
 public class SSTableIndexIterator extends IndexEntryIterator implements Closeable {
 
+    /**
+     * This is the index entry of a row of a data block. It carries the row, so
+     * the block does not need to be read again.
+     */
+    public static class BlockRowEntry extends IndexEntry {
+
+	private final Row row;
+
+	public BlockRowEntry(Row row, File dataFile, long offset) {
+	    super(row.getKey(), dataFile, offset);
+	    this.row = row;
+	}
+
+	public Row getRow() {
+	    return row;
+	}
+    }
+
     private static final Logger logger = LoggerFactory.getLogger(SSTableIndexIterator.class);
 
     private final DataFileSet dataFileSet;
@@ -28,6 +58,9 @@ public class SSTableIndexIterator extends IndexEntryIterator implements Closeabl
     private File currentIndexFile;
     private IndexFileReader indexFileReader;
     private IndexEntryIterator indexIterator;
+    private DataBlock block = null;
+    private IndexEntry blockEntry = null;
+    private Iterator<Row> blockRows = null;
 
     public SSTableIndexIterator(DataFileSet dataFileSet, Key start, Key stop) throws IOException {
 	this.dataFileSet = dataFileSet;
@@ -64,6 +97,37 @@ public class SSTableIndexIterator extends IndexEntryIterator implements Closeabl
 
     @Override
     protected IndexEntry findNext() {
+	while ((blockRows == null) || !blockRows.hasNext()) {
+	    IndexEntry nextIndex = findNextIndexEntry();
+	    if (nextIndex == null) {
+		return null;
+	    }
+	    try {
+		if ((block != null) && block.isAt(nextIndex.getDataFile(), nextIndex.getOffset())) {
+		    // Indizes written before contain all rows of the block.
+		    continue;
+		}
+		DataBlock nextBlock = dataFileSet.readBlock(nextIndex);
+		if (nextBlock == null) {
+		    // Version 1 data files have an index entry for each row.
+		    return nextIndex;
+		}
+		block = nextBlock;
+		blockEntry = nextIndex;
+		blockRows = block.getRows().iterator();
+	    } catch (IOException e) {
+		logger.error("Could not read data block of '" + nextIndex + "'.", e);
+		return null;
+	    }
+	}
+	Row row = blockRows.next();
+	if ((stop != null) && (row.getKey().compareTo(stop) > 0)) {
+	    return null;
+	}
+	return new BlockRowEntry(row, blockEntry.getDataFile(), blockEntry.getOffset());
+    }
+
+    private IndexEntry findNextIndexEntry() {
 	if (indexIterator == null) {
 	    return null;
 	}
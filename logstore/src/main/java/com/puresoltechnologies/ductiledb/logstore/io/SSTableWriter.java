@@ -4,21 +4,34 @@ import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
 
 import com.puresoltechnologies.ductiledb.commons.Bytes;
 import com.puresoltechnologies.ductiledb.logstore.Key;
 import com.puresoltechnologies.ductiledb.logstore.LogStructuredStore;
 import com.puresoltechnologies.ductiledb.logstore.Row;
-import com.puresoltechnologies.ductiledb.logstore.data.DataFileWriter;
+import com.puresoltechnologies.ductiledb.logstore.codec.BlockCodec;
+import com.puresoltechnologies.ductiledb.logstore.data.BlockDataFileWriter;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileSet;
+import com.puresoltechnologies.ductiledb.logstore.data.DataFileStatistics;
 import com.puresoltechnologies.ductiledb.logstore.index.IndexFileWriter;
 import com.puresoltechnologies.ductiledb.storage.api.StorageException;
 import com.puresoltechnologies.ductiledb.storage.spi.Storage;
 
 /**
- * This class is used to write to a commit log provided via OutputStream.
+ * This class writes a data file with its index file. The data file is written
+ * in format version 2 with prefix compressed blocks. The index is sparse: it
+ * only contains the first row key and the offset of each block, because the
+ * whole block is read for a lookup anyway. The blocks are compressed with the given
+ * {@link BlockCodec} and carry their own checksums.
+ * 
+ * An MD5 file for the data and index file is only written on request. It is
+ * calculated from the written files on close, so the rows are not hashed while
+ * they are written.
  * 
  * @author Rick-Rainer Ludwig
  */
@@ -28,25 +41,24 @@ public class SSTableWriter implements Closeable {
     private final File indexFile;
 
     private final Storage storage;
-    private final File directory;
-    private final String baseFilename;
-    private final DataFileWriter dataFileWriter;
+    private final BlockDataFileWriter dataFileWriter;
     private final IndexFileWriter indexFileWriter;
+    private final boolean md5File;
     private Key startRowKey = null;
     private long startOffset = -1;
     private Key endRowKey = null;
     private long endOffset = -1;
 
-    public SSTableWriter(Storage storage, File directory, String baseFilename, int bufferSize) {
+    public SSTableWriter(Storage storage, File directory, String baseFilename, int bufferSize,
+	    int bloomFilterBitsPerKey, int dataBlockSize, BlockCodec blockCodec, boolean md5File) {
 	super();
 	try {
 	    this.storage = storage;
-	    this.directory = directory;
-	    this.baseFilename = baseFilename;
+	    this.md5File = md5File;
 	    this.dataFile = new File(directory, baseFilename + LogStructuredStore.DATA_FILE_SUFFIX);
 	    this.indexFile = new File(directory, baseFilename + LogStructuredStore.INDEX_FILE_SUFFIX);
-	    this.dataFileWriter = new DataFileWriter(storage, dataFile);
-	    this.indexFileWriter = new IndexFileWriter(storage, indexFile, dataFile);
+	    this.dataFileWriter = new BlockDataFileWriter(storage, dataFile, dataBlockSize, blockCodec);
+	    this.indexFileWriter = new IndexFileWriter(storage, indexFile, dataFile, bloomFilterBitsPerKey);
 	} catch (IOException e) {
 	    throw new StorageException("Could not initialize sstable writer.", e);
 	}
@@ -56,16 +68,50 @@ public class SSTableWriter implements Closeable {
     public void close() throws IOException {
 	dataFileWriter.close();
 	indexFileWriter.close();
-	writeMD5File();
+	if (md5File) {
+	    writeMD5File();
+	}
     }
 
     private void writeMD5File() throws IOException {
-	try (BufferedWriter md5Writer = new BufferedWriter(new OutputStreamWriter(
-		storage.create(new File(directory, baseFilename + LogStructuredStore.MD5_FILE_SUFFIX))))) {
-	    MessageDigest dataDigest = dataFileWriter.getMessageDigest();
-	    md5Writer.write(Bytes.toHexString(dataDigest.digest()) + "  " + dataFile.getName() + "\n");
-	    MessageDigest indexDigest = indexFileWriter.getMessageDigest();
-	    md5Writer.write(Bytes.toHexString(indexDigest.digest()) + "  " + indexFile.getName() + "\n");
+	writeMD5File(storage, dataFile, indexFile);
+    }
+
+    /**
+     * Writes the MD5 file of a data file and its index file. An existing MD5
+     * file is replaced.
+     * 
+     * @param storage
+     *            is the storage of the files.
+     * @param dataFile
+     *            is the data file.
+     * @param indexFile
+     *            is the index file of the data file.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public static void writeMD5File(Storage storage, File dataFile, File indexFile) throws IOException {
+	File md5File = DataFileSet.getMD5Name(dataFile);
+	if (storage.exists(md5File)) {
+	    storage.delete(md5File);
+	}
+	try (BufferedWriter md5Writer = new BufferedWriter(new OutputStreamWriter(storage.create(md5File)))) {
+	    md5Writer.write(Bytes.toHexString(calculateMD5(storage, dataFile)) + "  " + dataFile.getName() + "\n");
+	    md5Writer.write(Bytes.toHexString(calculateMD5(storage, indexFile)) + "  " + indexFile.getName() + "\n");
+	}
+    }
+
+    private static byte[] calculateMD5(Storage storage, File file) throws IOException {
+	try (InputStream inputStream = storage.open(file)) {
+	    MessageDigest digest = MessageDigest.getInstance("MD5");
+	    byte[] buffer = new byte[64 * 1024];
+	    int len;
+	    while ((len = inputStream.read(buffer)) >= 0) {
+		digest.update(buffer, 0, len);
+	    }
+	    return digest.digest();
+	} catch (NoSuchAlgorithmException e) {
+	    throw new IOException("Could not calculate MD5 sum of '" + file + "'.", e);
 	}
     }
 
@@ -81,6 +127,14 @@ public class SSTableWriter implements Closeable {
 	return dataFileWriter.getPosition();
     }
 
+    /**
+     * Returns the statistics of the data file, which are complete after
+     * {@link #close()}.
+     */
+    public final DataFileStatistics getDataFileStatistics() {
+	return dataFileWriter.getStatistics();
+    }
+
     public final Key getStartRowKey() {
 	return startRowKey;
     }
@@ -102,14 +156,19 @@ public class SSTableWriter implements Closeable {
     }
 
     public void write(Key rowKey, Instant tombstone, byte[] data) throws IOException {
+	long offset = dataFileWriter.writeRow(rowKey, tombstone, data);
 	if (startRowKey == null) {
 	    startRowKey = rowKey;
-	    startOffset = dataFileWriter.getPosition();
+	    startOffset = offset;
+	}
+	if (offset != endOffset) {
+	    // The row is the first one of a new block.
+	    indexFileWriter.writeIndexEntry(rowKey, offset);
+	} else {
+	    indexFileWriter.addRowKey(rowKey);
 	}
 	endRowKey = rowKey;
-	endOffset = dataFileWriter.getPosition();
-	dataFileWriter.writeRow(rowKey, tombstone, data);
-	indexFileWriter.writeIndexEntry(rowKey, endOffset);
+	endOffset = offset;
     }
 
     public void write(Row row) throws IOException {
@@ -0,0 +1,55 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CommitLogSizePolicyTest {
+
+    private static final long ONE_MEGABYTE = 1024 * 1024;
+
+    @Test
+    public void testStaticSizeOverride() {
+	LogStoreConfiguration configuration = new LogStoreConfiguration();
+	configuration.setMaxCommitLogSize(12345);
+	CommitLogSizePolicy policy = new CommitLogSizePolicy(configuration);
+	policy.commitLogRolledOver(ONE_MEGABYTE, 10, ONE_MEGABYTE);
+	assertEquals(12345, policy.getCommitLogSize());
+    }
+
+    @Test
+    public void testAdaptiveSizeBounds() {
+	LogStoreConfiguration configuration = new LogStoreConfiguration();
+	configuration.setMaxMemtableSize(1024 * ONE_MEGABYTE);
+	CommitLogSizePolicy policy = new CommitLogSizePolicy(configuration);
+	assertEquals(configuration.getMinCommitLogSize(), policy.getCommitLogSize());
+	// Slow writes keep the minimum.
+	policy.commitLogRolledOver(ONE_MEGABYTE, 3600000, ONE_MEGABYTE);
+	assertEquals(configuration.getMinCommitLogSize(), policy.getCommitLogSize());
+	// Fast writes grow the commit log up to the maximum.
+	for (int i = 0; i < 10; ++i) {
+	    policy.commitLogRolledOver(ONE_MEGABYTE, 1, ONE_MEGABYTE);
+	}
+	assertEquals(configuration.getMaxAdaptiveCommitLogSize(), policy.getCommitLogSize());
+    }
+
+    @Test
+    public void testAdaptiveSizeFollowsWriteRateAndCompactionCost() {
+	LogStoreConfiguration configuration = new LogStoreConfiguration();
+	configuration.setMaxMemtableSize(1024 * ONE_MEGABYTE);
+	CommitLogSizePolicy policy = new CommitLogSizePolicy(configuration);
+	// 1 kB per millisecond for the target interval
+	policy.commitLogRolledOver(1024 * 1000, 1000, 1024 * 1000);
+	assertEquals(1024 * CommitLogSizePolicy.TARGET_ROLLOVER_INTERVAL, policy.getCommitLogSize());
+	// Expensive compactions lead to larger commit logs.
+	policy.compactionFinished(CommitLogSizePolicy.TARGET_ROLLOVER_INTERVAL / 2);
+	assertEquals(1024 * CommitLogSizePolicy.COMPACTION_COST_FACTOR * CommitLogSizePolicy.TARGET_ROLLOVER_INTERVAL / 2,
+		policy.getCommitLogSize());
+	// The memtable needs to hold the commit log.
+	configuration.setMaxMemtableSize(2 * ONE_MEGABYTE);
+	policy.commitLogRolledOver(1024 * 1000, 1000, 1024 * 1000);
+	assertTrue(policy.getCommitLogSize() <= 2 * ONE_MEGABYTE);
+    }
+
+}
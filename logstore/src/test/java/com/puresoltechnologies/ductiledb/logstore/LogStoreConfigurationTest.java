@@ -8,6 +8,7 @@ import org.junit.Test;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.puresoltechnologies.ductiledb.logstore.codec.DeflateBlockCodec;
 import com.puresoltechnologies.ductiledb.logstore.utils.DefaultObjectMapper;
 
 public class LogStoreConfigurationTest {
@@ -20,8 +21,28 @@ public class LogStoreConfigurationTest {
 	LogStoreConfiguration configuration = new LogStoreConfiguration();
 	configuration.setMaxDataFileSize(12345678l);
 	configuration.setMaxCommitLogSize(1234567l);
+	configuration.setMinCommitLogSize(234567l);
+	configuration.setMaxAdaptiveCommitLogSize(34567890l);
 	configuration.setMaxFileGenerations(5);
 	configuration.setBufferSize(123456);
+	configuration.setCommitLogDurability(CommitLogDurability.PERIODIC);
+	configuration.setCommitLogFlushInterval(250);
+	configuration.setMaxMemtableSize(2345678l);
+	configuration.setMemtableOffHeap(true);
+	configuration.setMaxImmutableMemtables(4);
+	configuration.setCommitLogCheckpointInterval(4096);
+	configuration.setCommitLogPreallocation(false);
+	configuration.setSlowdownPendingCompactions(5);
+	configuration.setStopPendingCompactions(50);
+	configuration.setSlowdownPendingCompactionBytes(12345678l);
+	configuration.setStopPendingCompactionBytes(123456789l);
+	configuration.setMaxWriteDelay(42);
+	configuration.setBloomFilterBitsPerKey(16);
+	configuration.setBlockCacheSize(12345678l);
+	configuration.setDataBlockSize(16384);
+	configuration.setBlockCodec(DeflateBlockCodec.NAME);
+	configuration.setVerifyChecksums(false);
+	configuration.setMd5Files(true);
 
 	String jsonString = objectMapper.writeValueAsString(configuration);
 
@@ -0,0 +1,29 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+
+public class MergeOperatorTest {
+
+    @Test
+    public void testCounter() {
+	MergeOperator operator = new CounterMergeOperator();
+	assertEquals(5, Bytes.toLong(operator.merge(null, Bytes.fromLong(5))));
+	assertEquals(8, Bytes.toLong(operator.merge(Bytes.fromLong(5), Bytes.fromLong(3))));
+	byte[] operand = operator.mergeOperands(Bytes.fromLong(3), Bytes.fromLong(-1));
+	assertEquals(7, Bytes.toLong(operator.merge(Bytes.fromLong(5), operand)));
+    }
+
+    @Test
+    public void testAppend() {
+	MergeOperator operator = new AppendMergeOperator();
+	assertArrayEquals(new byte[] { 1 }, operator.merge(null, new byte[] { 1 }));
+	byte[] operand = operator.mergeOperands(new byte[] { 2 }, new byte[] { 3, 4 });
+	assertArrayEquals(new byte[] { 1, 2, 3, 4 }, operator.merge(new byte[] { 1 }, operand));
+    }
+
+}
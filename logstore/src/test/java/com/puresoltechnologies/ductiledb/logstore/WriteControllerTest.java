@@ -0,0 +1,54 @@
+package com.puresoltechnologies.ductiledb.logstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+public class WriteControllerTest {
+
+    @Test
+    public void testStates() throws InterruptedException {
+	LogStoreConfiguration configuration = new LogStoreConfiguration();
+	configuration.setSlowdownPendingCompactions(2);
+	configuration.setStopPendingCompactions(4);
+	configuration.setMaxWriteDelay(10);
+	AtomicInteger pendingCompactions = new AtomicInteger(0);
+	MetricRegistry registry = new MetricRegistry();
+	WriteController controller = new WriteController(configuration, () -> pendingCompactions.get(), () -> 0l,
+		() -> 0, registry);
+
+	controller.awaitWrite();
+	assertEquals(WriteController.State.NORMAL, controller.getState());
+	assertEquals(0, controller.getWriteDelay());
+
+	pendingCompactions.set(3);
+	controller.awaitWrite();
+	assertEquals(WriteController.State.DELAYED, controller.getState());
+	assertEquals(5000, controller.getWriteDelay());
+	assertEquals(1, ((Counter) registry.getMetrics().get(LogStructuredStoreMetric.WRITE_DELAYED_COUNTER.name()))
+		.getCount());
+
+	pendingCompactions.set(4);
+	Thread writer = new Thread(() -> controller.awaitWrite());
+	writer.start();
+	Thread.sleep(200);
+	assertTrue(writer.isAlive());
+	assertEquals(WriteController.State.STOPPED, controller.getState());
+
+	pendingCompactions.set(0);
+	controller.signal();
+	writer.join(1000);
+	assertTrue(!writer.isAlive());
+	assertEquals(WriteController.State.NORMAL, controller.getState());
+	assertEquals(1,
+		((Timer) registry.getMetrics().get(LogStructuredStoreMetric.WRITE_STOPPED_TIMER.name())).getCount());
+    }
+
+}
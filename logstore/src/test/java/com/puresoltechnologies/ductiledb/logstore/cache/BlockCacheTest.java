@@ -0,0 +1,68 @@
+package com.puresoltechnologies.ductiledb.logstore.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import com.codahale.metrics.Counter;
+
+public class BlockCacheTest {
+
+    private static final int BLOCKS_PER_SEGMENT = 10;
+
+    private final BlockCacheMetrics metrics = new BlockCacheMetrics(new Counter(), new Counter(), new Counter());
+
+    private BlockCache createCache() {
+	// 16 segments with 10 blocks each
+	return new BlockCache(16L * BLOCKS_PER_SEGMENT * BlockCache.BLOCK_SIZE);
+    }
+
+    @Test
+    public void testGetAndPut() {
+	BlockCache blockCache = createCache();
+	File file = new File("file.data");
+	assertNull(blockCache.get(file, 0));
+	byte[] block = new byte[BlockCache.BLOCK_SIZE];
+	blockCache.put(file, 0, block, metrics);
+	assertTrue(block == blockCache.get(file, 0));
+	assertNull(blockCache.get(file, BlockCache.BLOCK_SIZE));
+	assertNull(blockCache.get(new File("other.data"), 0));
+	assertEquals(BlockCache.BLOCK_SIZE, blockCache.getSize());
+    }
+
+    @Test
+    public void testSizeLimit() {
+	BlockCache blockCache = createCache();
+	File file = new File("file.data");
+	for (int i = 0; i < 1000; ++i) {
+	    blockCache.put(file, (long) i * BlockCache.BLOCK_SIZE, new byte[BlockCache.BLOCK_SIZE], metrics);
+	}
+	assertTrue(blockCache.getSize() <= 16L * BLOCKS_PER_SEGMENT * BlockCache.BLOCK_SIZE);
+	assertEquals(1000 - blockCache.getSize() / BlockCache.BLOCK_SIZE, metrics.getEvictions().getCount());
+    }
+
+    @Test
+    public void testScanResistance() {
+	BlockCache blockCache = createCache();
+	File hotFile = new File("hot.data");
+	// Hot blocks are read twice and get protected.
+	for (int i = 0; i < 10; ++i) {
+	    blockCache.put(hotFile, (long) i * BlockCache.BLOCK_SIZE, new byte[BlockCache.BLOCK_SIZE], metrics);
+	    assertNotNull(blockCache.get(hotFile, (long) i * BlockCache.BLOCK_SIZE));
+	}
+	// A scan reads many blocks only once.
+	File scannedFile = new File("scanned.data");
+	for (int i = 0; i < 10000; ++i) {
+	    blockCache.put(scannedFile, (long) i * BlockCache.BLOCK_SIZE, new byte[BlockCache.BLOCK_SIZE], metrics);
+	}
+	for (int i = 0; i < 10; ++i) {
+	    assertNotNull(blockCache.get(hotFile, (long) i * BlockCache.BLOCK_SIZE));
+	}
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.puresoltechnologies.ductiledb.logstore.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BlockCodecsTest {
+
+    private static byte[] createBlock() {
+	StringBuilder block = new StringBuilder();
+	for (int i = 0; i < 100; ++i) {
+	    block.append("com.puresoltechnologies.ductiledb.Vertex:name=vertex").append(i).append(';');
+	}
+	return block.toString().getBytes();
+    }
+
+    @Test
+    public void testBuiltInCodecs() {
+	assertEquals(NoneBlockCodec.ID, BlockCodecs.get(NoneBlockCodec.NAME).getId());
+	assertEquals(DeflateBlockCodec.ID, BlockCodecs.get(DeflateBlockCodec.NAME).getId());
+	assertEquals(NoneBlockCodec.NAME, BlockCodecs.get(NoneBlockCodec.ID).getName());
+	assertEquals(DeflateBlockCodec.NAME, BlockCodecs.get(DeflateBlockCodec.ID).getName());
+	assertNull(BlockCodecs.get(127));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownCodec() {
+	BlockCodecs.get("unknown");
+    }
+
+    @Test
+    public void testNoneCodec() throws IOException {
+	BlockCodec codec = BlockCodecs.get(NoneBlockCodec.NAME);
+	byte[] block = createBlock();
+	byte[] encoded = codec.encode(block, 0, block.length);
+	assertArrayEquals(block, encoded);
+	assertArrayEquals(block, codec.decode(encoded, 0, encoded.length, block.length));
+    }
+
+    @Test
+    public void testDeflateCodec() throws IOException {
+	BlockCodec codec = BlockCodecs.get(DeflateBlockCodec.NAME);
+	byte[] block = createBlock();
+	byte[] buffer = new byte[block.length + 10];
+	System.arraycopy(block, 0, buffer, 5, block.length);
+	byte[] encoded = codec.encode(buffer, 5, block.length);
+	assertTrue("Repeated strings are expected to compress well.", 4 * encoded.length < block.length);
+	byte[] storedBlock = new byte[encoded.length + 5];
+	System.arraycopy(encoded, 0, storedBlock, 5, encoded.length);
+	assertArrayEquals(block, codec.decode(storedBlock, 5, encoded.length, block.length));
+    }
+
+    @Test
+    public void testDeflateCodecWithIncompressibleBlock() throws IOException {
+	BlockCodec codec = BlockCodecs.get(DeflateBlockCodec.NAME);
+	byte[] block = new byte[4096];
+	new Random(42).nextBytes(block);
+	byte[] encoded = codec.encode(block, 0, block.length);
+	assertArrayEquals(block, codec.decode(encoded, 0, encoded.length, block.length));
+    }
+
+    @Test(expected = IOException.class)
+    public void testDeflateCodecWithBrokenBlock() throws IOException {
+	BlockCodec codec = BlockCodecs.get(DeflateBlockCodec.NAME);
+	byte[] block = createBlock();
+	byte[] encoded = codec.encode(block, 0, block.length);
+	codec.decode(encoded, 0, encoded.length / 2, block.length);
+    }
+
+}
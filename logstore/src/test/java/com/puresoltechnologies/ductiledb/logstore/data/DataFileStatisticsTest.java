@@ -0,0 +1,108 @@
+package com.puresoltechnologies.ductiledb.logstore.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.time.Instant;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.ductiledb.commons.Bytes;
+import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.codec.DeflateBlockCodec;
+
+public class DataFileStatisticsTest {
+
+    private static void assertEstimate(long expected, DistinctKeySketch sketch) {
+	long estimate = sketch.estimate();
+	assertTrue("Estimate " + estimate + " for " + expected,
+		Math.abs(estimate - expected) <= Math.max(2, expected / 10));
+    }
+
+    @Test
+    public void testSizeHistogram() {
+	SizeHistogram histogram = new SizeHistogram();
+	histogram.add(0);
+	histogram.add(1);
+	histogram.add(8);
+	histogram.add(15);
+	histogram.add(1000);
+	assertEquals(11, histogram.getBucketCount());
+	assertEquals(1, histogram.getCount(0));
+	assertEquals(1, histogram.getCount(1));
+	assertEquals(2, histogram.getCount(4));
+	assertEquals(1, histogram.getCount(10));
+	assertEquals(0, histogram.getCount(20));
+	assertEquals(5, histogram.getTotalCount());
+	assertEquals(15, histogram.getPercentile(0.8));
+	assertEquals(1023, histogram.getPercentile(1.0));
+	assertEquals(0, new SizeHistogram().getPercentile(0.5));
+    }
+
+    @Test
+    public void testDistinctKeySketch() {
+	DistinctKeySketch sketch = new DistinctKeySketch();
+	assertEquals(0, sketch.estimate());
+	for (int i = 0; i < 10; ++i) {
+	    sketch.add(Key.of(i));
+	}
+	assertEstimate(10, sketch);
+	for (int i = 0; i < 100000; ++i) {
+	    sketch.add(Key.of(i));
+	}
+	assertEstimate(100000, sketch);
+    }
+
+    @Test
+    public void testMergedDistinctKeySketches() {
+	DistinctKeySketch sketch1 = new DistinctKeySketch();
+	DistinctKeySketch sketch2 = new DistinctKeySketch();
+	for (int i = 0; i < 60000; ++i) {
+	    sketch1.add(Key.of(i));
+	}
+	for (int i = 40000; i < 100000; ++i) {
+	    sketch2.add(Key.of(i));
+	}
+	sketch1.merge(sketch2);
+	assertEstimate(100000, sketch1);
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+	DataFileStatisticsBuilder builder = new DataFileStatisticsBuilder(DeflateBlockCodec.ID);
+	for (int i = 0; i < 1000; ++i) {
+	    builder.addRow(Key.of(i), i % 4 == 0 ? Instant.ofEpochSecond(1000 + i) : null, Bytes.fromLong(i));
+	}
+	builder.addBlock(4096, 1024);
+	builder.addBlock(2048, 512);
+	DataFileStatistics statistics = DataFileStatistics.fromBytes(builder.build().toBytes());
+	assertEquals(DeflateBlockCodec.ID, statistics.getCodecId());
+	assertEquals(2, statistics.getBlockCount());
+	assertEquals(6144, statistics.getBlockBytes());
+	assertEquals(1536, statistics.getStoredBlockBytes());
+	assertEquals(0.25, statistics.getCompressionRatio(), 1e-9);
+	assertEquals(1000, statistics.getRowCount());
+	assertEquals(250, statistics.getTombstoneCount());
+	assertEquals(4000, statistics.getKeyBytes());
+	assertEquals(8000, statistics.getValueBytes());
+	assertEquals(Key.of(0), statistics.getMinKey());
+	assertEquals(Key.of(999), statistics.getMaxKey());
+	assertEquals(1000, statistics.getKeySizes().getCount(SizeHistogram.getBucket(4)));
+	assertEquals(1000, statistics.getValueSizes().getCount(SizeHistogram.getBucket(8)));
+	assertEstimate(1000, statistics.getDistinctKeys());
+    }
+
+    @Test
+    public void testSerializationOfEmptyFile() throws IOException {
+	DataFileStatistics statistics = DataFileStatistics
+		.fromBytes(new DataFileStatisticsBuilder(0).build().toBytes());
+	assertEquals(0, statistics.getRowCount());
+	assertNull(statistics.getMinKey());
+	assertNull(statistics.getMaxKey());
+	assertEquals(0, statistics.getKeySizes().getBucketCount());
+	assertEquals(0, statistics.getDistinctKeys().estimate());
+    }
+
+}
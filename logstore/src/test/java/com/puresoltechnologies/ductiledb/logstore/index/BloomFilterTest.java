@@ -0,0 +1,48 @@
+package com.puresoltechnologies.ductiledb.logstore.index;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.puresoltechnologies.ductiledb.logstore.Key;
+
+public class BloomFilterTest {
+
+    private static BloomFilter createFilter(int count, int bitsPerKey) {
+	long[] hashes = new long[count];
+	for (int i = 0; i < count; ++i) {
+	    hashes[i] = BloomFilter.hash(Key.of(i));
+	}
+	return BloomFilter.create(hashes, count, bitsPerKey);
+    }
+
+    @Test
+    public void testNoFalseNegatives() {
+	BloomFilter bloomFilter = createFilter(10000, 10);
+	for (int i = 0; i < 10000; ++i) {
+	    assertTrue(bloomFilter.mightContain(Key.of(i)));
+	}
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+	BloomFilter bloomFilter = createFilter(10000, 10);
+	int falsePositives = 0;
+	for (int i = 10000; i < 110000; ++i) {
+	    if (bloomFilter.mightContain(Key.of(i))) {
+		falsePositives++;
+	    }
+	}
+	// About 1% is expected for 10 bits per key.
+	assertTrue("False positives: " + falsePositives, falsePositives < 2000);
+    }
+
+    @Test
+    public void testEmptyFilter() {
+	BloomFilter bloomFilter = createFilter(0, 10);
+	for (int i = 0; i < 1000; ++i) {
+	    assertTrue(!bloomFilter.mightContain(Key.of(i)));
+	}
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.puresoltechnologies.ductiledb.logstore.index;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -8,6 +9,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -22,6 +24,7 @@ import org.junit.Test;
 import com.puresoltechnologies.commons.misc.StopWatch;
 import com.puresoltechnologies.ductiledb.commons.Bytes;
 import com.puresoltechnologies.ductiledb.logstore.Key;
+import com.puresoltechnologies.ductiledb.logstore.Row;
 
 public class MemtableTest {
 
@@ -103,6 +106,81 @@ public class MemtableTest {
 	assertFalse(iterator.hasNext());
     }
 
+    @Test
+    public void testValuesAndSize() {
+	testValuesAndSize(new Memtable(false));
+	testValuesAndSize(new Memtable(true));
+    }
+
+    private void testValuesAndSize(Memtable memtable) {
+	assertEquals(0, memtable.getSizeInBytes());
+	Instant tombstone = Instant.now();
+	memtable.put(new IndexEntry(Key.of(1l), new File("file"), 1l), null, new byte[] { 1, 2, 3 });
+	memtable.put(new IndexEntry(Key.of(2l), new File("file"), 2l), tombstone, new byte[0]);
+	long size = memtable.getSizeInBytes();
+	assertTrue(size > 0);
+
+	Row row = memtable.getRow(Key.of(1l));
+	assertNotNull(row);
+	assertFalse(row.wasDeleted());
+	assertArrayEquals(new byte[] { 1, 2, 3 }, row.getData());
+	row = memtable.getRow(Key.of(2l));
+	assertNotNull(row);
+	assertTrue(row.wasDeleted());
+	assertNull(memtable.getRow(Key.of(3l)));
+
+	memtable.put(new IndexEntry(Key.of(3l), new File("file"), 3l), null, new byte[1024]);
+	assertTrue(memtable.getSizeInBytes() > size);
+	size = memtable.getSizeInBytes();
+	memtable.put(new IndexEntry(Key.of(4l), new File("file"), 4l), null,
+		new byte[MemtableArena.DEFAULT_SLAB_SIZE + 1]);
+	assertTrue(memtable.getSizeInBytes() > size + MemtableArena.DEFAULT_SLAB_SIZE);
+	memtable.clear();
+	assertEquals(0, memtable.getSizeInBytes());
+    }
+
+    @Test
+    public void testOverwriteKeepsEntrySize() {
+	Memtable memtable = new Memtable();
+	memtable.put(new IndexEntry(Key.of(1l), new File("file"), 1l));
+	long size = memtable.getSizeInBytes();
+	for (int i = 0; i < 10; ++i) {
+	    memtable.put(new IndexEntry(Key.of(1l), new File("file"), 2l + i));
+	}
+	assertEquals(size, memtable.getSizeInBytes());
+	memtable.delete(Key.of(1l));
+	assertEquals(0, memtable.getSizeInBytes());
+    }
+
+    @Test
+    public void testRangeIteratorDuringWrites() throws InterruptedException, ExecutionException {
+	Memtable memtable = new Memtable();
+	File file = new File("file");
+	for (int i = 0; i < 500; ++i) {
+	    memtable.put(new IndexEntry(Key.of((long) (2 * i)), file, 2 * i));
+	}
+	ExecutorService writer = Executors.newSingleThreadExecutor();
+	Future<?> future = writer.submit(() -> {
+	    for (int i = 0; i < 500; ++i) {
+		memtable.put(new IndexEntry(Key.of((long) (2 * i + 1)), file, 2 * i + 1));
+	    }
+	});
+	IndexEntryIterator iterator = memtable.iterator(Key.of(100l), Key.of(400l));
+	long last = 99l;
+	int count = 0;
+	while (iterator.hasNext()) {
+	    long key = Bytes.toLong(iterator.next().getRowKey().getBytes());
+	    assertTrue(key > last);
+	    assertTrue(key <= 400l);
+	    last = key;
+	    count++;
+	}
+	future.get();
+	writer.shutdown();
+	assertTrue(count >= 151);
+	assertEquals(1000, memtable.size());
+    }
+
     @Test
     public void testConcurrency() throws InterruptedException, ExecutionException {
 	Memtable memtable = new Memtable();
@@ -121,4 +121,20 @@ public class HadoopStorage implements Storage {
 	return null;
     }
 
+    /**
+     * HDFS files are written once and can only be appended afterwards, so they
+     * cannot be overwritten. Commit log segments are not reused on this storage.
+     */
+    @Override
+    public StorageOutputStream overwrite(File file) throws IOException {
+	throw new UnsupportedOperationException(
+		"File '" + file + "' cannot be overwritten, because HDFS files can only be appended.");
+    }
+
+    @Override
+    public void rename(File source, File target) throws IOException {
+	throw new UnsupportedOperationException(
+		"File '" + source + "' cannot be renamed, because renaming is not implemented for Hadoop, yet.");
+    }
+
 }
@@ -1,11 +1,15 @@
 package com.puresoltechnologies.ductiledb.storage.os;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ClosedChannelException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -15,6 +19,7 @@ import org.junit.rules.ExpectedException;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageConfiguration;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageInputStream;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
+import com.puresoltechnologies.ductiledb.storage.spi.StoragePositionalReader;
 import com.puresoltechnologies.ductiledb.stores.os.OSStorage;
 
 public class OSStorageIT {
@@ -85,4 +90,121 @@ public class OSStorageIT {
 	}
 
     }
+
+    @Test
+    public void testPositionalReads() throws IOException, InterruptedException {
+	configuration.getProperties().setProperty(OSStorage.DIRECTORY_PROPERTY, "/tmp/test");
+	try (OSStorage storage = new OSStorage(configuration)) {
+	    storage.initialize();
+
+	    File file = new File("/positional.test");
+	    if (storage.exists(file)) {
+		storage.delete(file);
+	    }
+	    byte[] content = new byte[100000];
+	    for (int i = 0; i < content.length; ++i) {
+		content[i] = (byte) i;
+	    }
+	    try (StorageOutputStream created = storage.create(file)) {
+		created.write(content);
+	    }
+	    try (StoragePositionalReader reader = storage.openPositionalReader(file)) {
+		Thread[] threads = new Thread[4];
+		AtomicInteger failures = new AtomicInteger();
+		for (int t = 0; t < threads.length; ++t) {
+		    threads[t] = new Thread(() -> {
+			byte[] buffer = new byte[100];
+			try {
+			    for (int position = 0; position < content.length; position += 99) {
+				int len = reader.read(position, buffer, 0, buffer.length);
+				assertEquals(Math.min(buffer.length, content.length - position), len);
+				for (int i = 0; i < len; ++i) {
+				    assertEquals(content[position + i], buffer[i]);
+				}
+			    }
+			} catch (IOException | AssertionError e) {
+			    failures.incrementAndGet();
+			}
+		    });
+		    threads[t].start();
+		}
+		for (Thread thread : threads) {
+		    thread.join();
+		}
+		assertEquals(0, failures.get());
+		assertEquals(-1, reader.read(content.length, new byte[10], 0, 10));
+	    }
+	    storage.delete(file);
+	}
+    }
+
+    @Test
+    public void testMemoryMappedReads() throws IOException {
+	configuration.getProperties().setProperty(OSStorage.DIRECTORY_PROPERTY, "/tmp/test");
+	configuration.getProperties().setProperty(OSStorage.MEMORY_MAPPED_READS_PROPERTY, "true");
+	// Small segments let reads cross the borders of the mappings.
+	configuration.getProperties().setProperty(OSStorage.MEMORY_MAPPED_SEGMENT_SIZE_PROPERTY, "4096");
+	try (OSStorage storage = new OSStorage(configuration)) {
+	    storage.initialize();
+
+	    File file = new File("/mapped.test");
+	    if (storage.exists(file)) {
+		storage.delete(file);
+	    }
+	    byte[] content = new byte[100000];
+	    for (int i = 0; i < content.length; ++i) {
+		content[i] = (byte) i;
+	    }
+	    try (StorageOutputStream created = storage.create(file)) {
+		created.write(content);
+	    }
+	    InputStream inputStream;
+	    try (StoragePositionalReader reader = storage.openPositionalReader(file)) {
+		byte[] buffer = new byte[10000];
+		for (int position = 0; position < content.length; position += 999) {
+		    int len = reader.read(position, buffer, 0, buffer.length);
+		    assertEquals(Math.min(buffer.length, content.length - position), len);
+		    for (int i = 0; i < len; ++i) {
+			assertEquals(content[position + i], buffer[i]);
+		    }
+		}
+		assertEquals(-1, reader.read(content.length, buffer, 0, 10));
+		inputStream = reader.openInputStream(4000, 1024);
+	    }
+	    // The open stream keeps the mapping after the reader was closed.
+	    for (int i = 4000; i < content.length; ++i) {
+		assertEquals(content[i] & 0xff, inputStream.read());
+	    }
+	    assertEquals(-1, inputStream.read());
+	    inputStream.close();
+	    storage.delete(file);
+	    assertFalse(storage.exists(file));
+	}
+    }
+
+    @Test
+    public void testReadAfterCloseOfMemoryMappedReader() throws IOException {
+	configuration.getProperties().setProperty(OSStorage.DIRECTORY_PROPERTY, "/tmp/test");
+	configuration.getProperties().setProperty(OSStorage.MEMORY_MAPPED_READS_PROPERTY, "true");
+	try (OSStorage storage = new OSStorage(configuration)) {
+	    storage.initialize();
+
+	    File file = new File("/mapped.test");
+	    if (storage.exists(file)) {
+		storage.delete(file);
+	    }
+	    try (StorageOutputStream created = storage.create(file)) {
+		created.write(new byte[100]);
+	    }
+	    StoragePositionalReader reader = storage.openPositionalReader(file);
+	    reader.close();
+	    exception.expect(ClosedChannelException.class);
+	    try {
+		reader.read(0, new byte[10], 0, 10);
+	    } finally {
+		storage.delete(file);
+	    }
+	}
+    }
+
 }
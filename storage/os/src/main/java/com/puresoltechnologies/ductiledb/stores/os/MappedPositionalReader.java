@@ -0,0 +1,301 @@
+package com.puresoltechnologies.ductiledb.stores.os;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.puresoltechnologies.ductiledb.storage.spi.StoragePositionalReader;
+
+/**
+ * This reader maps a file into memory, so reads are copies from the mapping
+ * and streams decode directly from it. Only files which are not changed
+ * anymore are allowed to be mapped.
+ *
+ * A {@link MappedByteBuffer} is limited to {@link Integer#MAX_VALUE} bytes, so
+ * larger files are mapped in consecutive segments. Reads crossing the border
+ * of two segments are split.
+ *
+ * Accessing a mapping after it was unmapped crashes the JVM. Therefore, every
+ * read and every open stream holds a reference to the mappings, like the
+ * reader itself until it is closed. The mappings are unmapped when the last
+ * reference is released. Reads started after the reader was closed fail.
+ *
+ * The references are counted without a lock, so concurrent reads do not
+ * contend on a monitor. The sign bit of the counter marks the reader as
+ * closed.
+ *
+ * @author Rick-Rainer Ludwig
+ */
+class MappedPositionalReader implements StoragePositionalReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedPositionalReader.class);
+
+    /**
+     * This is the default size of the segments a file is mapped in.
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024 * 1024;
+
+    /**
+     * This bit of the reference counter is set when the reader is closed.
+     */
+    private static final int CLOSED = Integer.MIN_VALUE;
+
+    private static final Unmapper unmapper = createUnmapper();
+
+    /**
+     * Unmaps a buffer immediately instead of waiting for its garbage
+     * collection.
+     */
+    @FunctionalInterface
+    private interface Unmapper {
+	void unmap(ByteBuffer buffer) throws Exception;
+    }
+
+    /**
+     * Looks up the internal API to unmap buffers. Java 9 and later provide
+     * Unsafe.invokeCleaner, Java 8 provides the cleaner of the buffer.
+     *
+     * @return An {@link Unmapper} is returned or <code>null</code> in case
+     *         neither API is available. The mappings are released on garbage
+     *         collection then.
+     */
+    private static Unmapper createUnmapper() {
+	try {
+	    Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+	    Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+	    Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+	    theUnsafe.setAccessible(true);
+	    Object unsafe = theUnsafe.get(null);
+	    return buffer -> invokeCleaner.invoke(unsafe, buffer);
+	} catch (ReflectiveOperationException | RuntimeException e) {
+	    // Java 8 does not have invokeCleaner.
+	}
+	try {
+	    Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+	    Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+	    return buffer -> {
+		Object cleaner = cleanerMethod.invoke(buffer);
+		if (cleaner != null) {
+		    cleanMethod.invoke(cleaner);
+		}
+	    };
+	} catch (ReflectiveOperationException | RuntimeException e) {
+	    logger.warn("Mapped files cannot be unmapped explicitly and are unmapped on garbage collection.", e);
+	    return null;
+	}
+    }
+
+    /**
+     * Maps a file.
+     *
+     * @param path
+     *            is the path of the file in the file system.
+     * @param segmentSize
+     *            is the maximum number of bytes mapped in one piece.
+     * @param unmapListener
+     *            is called with the reader after its mappings were released.
+     * @return A {@link MappedPositionalReader} is returned.
+     * @throws IOException
+     *             is thrown in case the file cannot be mapped.
+     */
+    static MappedPositionalReader map(File path, int segmentSize, Consumer<MappedPositionalReader> unmapListener)
+	    throws IOException {
+	try (FileChannel channel = FileChannel.open(path.toPath(), StandardOpenOption.READ)) {
+	    long length = channel.size();
+	    int segmentCount = (int) ((length + segmentSize - 1) / segmentSize);
+	    MappedByteBuffer[] segments = new MappedByteBuffer[segmentCount];
+	    try {
+		for (int i = 0; i < segmentCount; ++i) {
+		    long position = (long) i * segmentSize;
+		    segments[i] = channel.map(MapMode.READ_ONLY, position, Math.min(segmentSize, length - position));
+		}
+	    } catch (IOException | RuntimeException e) {
+		unmap(segments);
+		throw e;
+	    }
+	    // The mappings stay valid after the channel is closed.
+	    return new MappedPositionalReader(path, segments, segmentSize, length, unmapListener);
+	}
+    }
+
+    private static void unmap(MappedByteBuffer[] segments) {
+	if (unmapper == null) {
+	    return;
+	}
+	for (MappedByteBuffer segment : segments) {
+	    if (segment != null) {
+		try {
+		    unmapper.unmap(segment);
+		} catch (Exception e) {
+		    logger.warn("Could not unmap segment.", e);
+		}
+	    }
+	}
+    }
+
+    private final File path;
+    private final MappedByteBuffer[] segments;
+    private final int segmentSize;
+    private final long length;
+    private final Consumer<MappedPositionalReader> unmapListener;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private MappedPositionalReader(File path, MappedByteBuffer[] segments, int segmentSize, long length,
+	    Consumer<MappedPositionalReader> unmapListener) {
+	super();
+	this.path = path;
+	this.segments = segments;
+	this.segmentSize = segmentSize;
+	this.length = length;
+	this.unmapListener = unmapListener;
+    }
+
+    private void acquire() throws ClosedChannelException {
+	while (true) {
+	    int count = references.get();
+	    if ((count & CLOSED) != 0) {
+		throw new ClosedChannelException();
+	    }
+	    if (references.compareAndSet(count, count + 1)) {
+		return;
+	    }
+	}
+    }
+
+    private void release() {
+	// Only the release of the last reference after closing sees the closed bit alone.
+	if (references.decrementAndGet() == CLOSED) {
+	    unmap(segments);
+	    logger.debug("Unmapped '" + path + "'.");
+	    unmapListener.accept(this);
+	}
+    }
+
+    /**
+     * Copies bytes from the mappings. The caller holds a reference.
+     */
+    private int copy(long position, byte[] buffer, int offset, int length) {
+	if (position >= this.length) {
+	    return -1;
+	}
+	int count = (int) Math.min(length, this.length - position);
+	int copied = 0;
+	while (copied < count) {
+	    long current = position + copied;
+	    // A duplicate has its own position, so concurrent reads do not interfere.
+	    ByteBuffer segment = segments[(int) (current / segmentSize)].duplicate();
+	    segment.position((int) (current % segmentSize));
+	    int len = Math.min(count - copied, segment.remaining());
+	    segment.get(buffer, offset + copied, len);
+	    copied += len;
+	}
+	return count;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+	if (length == 0) {
+	    return 0;
+	}
+	acquire();
+	try {
+	    return copy(position, buffer, offset, length);
+	} finally {
+	    release();
+	}
+    }
+
+    /**
+     * Opens a stream reading from the mappings without a buffer. The stream holds
+     * a reference until it is closed.
+     */
+    @Override
+    public InputStream openInputStream(long position, int bufferSize) throws IOException {
+	acquire();
+	return new InputStream() {
+
+	    private long streamPosition = position;
+	    private boolean streamClosed = false;
+
+	    @Override
+	    public int read() throws IOException {
+		if (streamClosed) {
+		    throw new ClosedChannelException();
+		}
+		if (streamPosition >= length) {
+		    return -1;
+		}
+		int b = segments[(int) (streamPosition / segmentSize)].get((int) (streamPosition % segmentSize));
+		streamPosition++;
+		return b & 0xff;
+	    }
+
+	    @Override
+	    public int read(byte[] b, int off, int len) throws IOException {
+		if (streamClosed) {
+		    throw new ClosedChannelException();
+		}
+		if (len == 0) {
+		    return 0;
+		}
+		int count = copy(streamPosition, b, off, len);
+		if (count > 0) {
+		    streamPosition += count;
+		}
+		return count;
+	    }
+
+	    @Override
+	    public long skip(long n) {
+		if (n <= 0) {
+		    return 0;
+		}
+		long skipped = Math.min(n, Math.max(0, length - streamPosition));
+		streamPosition += skipped;
+		return skipped;
+	    }
+
+	    @Override
+	    public int available() {
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(0, length - streamPosition));
+	    }
+
+	    @Override
+	    public void close() {
+		if (!streamClosed) {
+		    streamClosed = true;
+		    release();
+		}
+	    }
+	};
+    }
+
+    /**
+     * Releases the reference of the reader. The mappings are unmapped as soon as
+     * all reads and streams are finished.
+     */
+    @Override
+    public synchronized void close() {
+	int count = references.get();
+	if ((count & CLOSED) == 0) {
+	    while (!references.compareAndSet(count, count | CLOSED)) {
+		count = references.get();
+	    }
+	    release();
+	}
+    }
+
+}
@@ -1,11 +1,19 @@
 package com.puresoltechnologies.ductiledb.stores.os;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -16,6 +24,9 @@ import java.util.WeakHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.puresoltechnologies.ductiledb.storage.spi.StorageStreamListener;
 import com.puresoltechnologies.ductiledb.storage.spi.FileStatus;
 import com.puresoltechnologies.ductiledb.storage.spi.FileType;
@@ -23,12 +34,26 @@ import com.puresoltechnologies.ductiledb.storage.spi.Storage;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageConfiguration;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageInputStream;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageOutputStream;
+import com.puresoltechnologies.ductiledb.storage.spi.StoragePositionalReader;
 import com.puresoltechnologies.ductiledb.storage.spi.StorageStream;
 
 public class OSStorage implements Storage, StorageStreamListener {
 
+    private static final Logger logger = LoggerFactory.getLogger(OSStorage.class);
+
     public static final String DIRECTORY_PROPERTY = "storage.os.directory";
     public static final String DELETION_PERIOD_PROPERTY = "storage.os.deletion.period";
+    /**
+     * Set this property to <code>true</code> to read data and index files via
+     * memory mappings. The block cache of the stores should be disabled then,
+     * because the operating system caches the mapped files.
+     */
+    public static final String MEMORY_MAPPED_READS_PROPERTY = "storage.os.mmap";
+    /**
+     * This property sets the maximum number of bytes mapped in one piece. Larger
+     * files are mapped in multiple segments.
+     */
+    public static final String MEMORY_MAPPED_SEGMENT_SIZE_PROPERTY = "storage.os.mmap.segment.size";
     private static final int DEFAULT_DELETION_PERIOD = 10000;
 
     private final ReentrantReadWriteLock deletionLock = new ReentrantReadWriteLock();
@@ -36,12 +61,14 @@ public class OSStorage implements Storage, StorageStreamListener {
     private final ReentrantReadWriteLock.WriteLock deletionWriteLock = deletionLock.writeLock();
 
     private final Set<File> deletedFiles = new HashSet<>();
-    private final WeakHashMap<StorageStream, File> registeredStreams = new WeakHashMap<>();
+    private final WeakHashMap<Closeable, File> registeredStreams = new WeakHashMap<>();
 
     private final StorageConfiguration configuration;
     private final int blockSize;
     private final File rootDirectory;
     private final int deletionPeriod;
+    private final boolean memoryMappedReads;
+    private final int memoryMappedSegmentSize;
 
     private final Thread deletionThread;
 
@@ -62,6 +89,13 @@ public class OSStorage implements Storage, StorageStreamListener {
 	} else {
 	    this.deletionPeriod = Integer.parseInt(deletionPeriodString);
 	}
+	this.memoryMappedReads = Boolean.parseBoolean((String) properties.get(MEMORY_MAPPED_READS_PROPERTY));
+	String segmentSizeString = (String) properties.get(MEMORY_MAPPED_SEGMENT_SIZE_PROPERTY);
+	if (segmentSizeString == null) {
+	    this.memoryMappedSegmentSize = MappedPositionalReader.DEFAULT_SEGMENT_SIZE;
+	} else {
+	    this.memoryMappedSegmentSize = Integer.parseInt(segmentSizeString);
+	}
 
 	deletionThread = new Thread(new Runnable() {
 
@@ -119,6 +153,10 @@ public class OSStorage implements Storage, StorageStreamListener {
 
     @Override
     public void notifyClose(StorageStream closeable) {
+	unregisterStream(closeable);
+    }
+
+    private void unregisterStream(Object closeable) {
 	File file = registeredStreams.remove(closeable);
 	if (deletedFiles.contains(file)) {
 	    if (!registeredStreams.containsValue(file)) {
@@ -129,7 +167,7 @@ public class OSStorage implements Storage, StorageStreamListener {
 	}
     }
 
-    private boolean registerStream(File file, StorageStream stream) {
+    private boolean registerStream(File file, Closeable stream) {
 	deletionReadLock.lock();
 	try {
 	    if (!deletedFiles.contains(file)) {
@@ -274,6 +312,69 @@ public class OSStorage implements Storage, StorageStreamListener {
 	}
     }
 
+    /**
+     * Opens a {@link FileChannel}, which supports concurrent positional reads. In
+     * case memory mapped reads are enabled, the file is mapped instead. The file
+     * is read via the channel in case it cannot be mapped.
+     */
+    @Override
+    public StoragePositionalReader openPositionalReader(File file) throws IOException {
+	File path = new File(rootDirectory, file.getPath());
+	if (memoryMappedReads) {
+	    StoragePositionalReader reader = openMappedReader(file, path);
+	    if (reader != null) {
+		return reader;
+	    }
+	}
+	FileChannel channel = FileChannel.open(path.toPath(), StandardOpenOption.READ);
+	StoragePositionalReader reader = new StoragePositionalReader() {
+
+	    @Override
+	    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+		ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset, length);
+		while (byteBuffer.hasRemaining()) {
+		    int len = channel.read(byteBuffer, position + byteBuffer.position() - offset);
+		    if (len < 0) {
+			break;
+		    }
+		}
+		int count = byteBuffer.position() - offset;
+		return (count == 0) && (length > 0) ? -1 : count;
+	    }
+
+	    @Override
+	    public void close() throws IOException {
+		unregisterStream(this);
+		channel.close();
+	    }
+	};
+	if (registerStream(file, reader)) {
+	    return reader;
+	} else {
+	    channel.close();
+	    throw new IOException("File '" + file + "' was already deleted.");
+	}
+    }
+
+    private StoragePositionalReader openMappedReader(File file, File path) throws IOException {
+	MappedPositionalReader reader;
+	try {
+	    // The file is not deleted before the mappings are released.
+	    reader = MappedPositionalReader.map(path, memoryMappedSegmentSize, this::unregisterStream);
+	} catch (NoSuchFileException e) {
+	    throw e;
+	} catch (IOException e) {
+	    logger.warn("Could not map '" + file + "', it is read via a channel.", e);
+	    return null;
+	}
+	if (registerStream(file, reader)) {
+	    return reader;
+	} else {
+	    reader.close();
+	    throw new IOException("File '" + file + "' was already deleted.");
+	}
+    }
+
     @Override
     public StorageOutputStream create(File file) throws IOException {
 	File path = new File(rootDirectory, file.getPath());
@@ -348,6 +449,53 @@ public class OSStorage implements Storage, StorageStreamListener {
 	}
     }
 
+    @Override
+    public StorageOutputStream overwrite(File file) throws IOException {
+	File path = new File(rootDirectory, file.getPath());
+	if (!path.exists()) {
+	    throw new IOException("File '" + file + "' does not exist.");
+	}
+	FileChannel channel = FileChannel.open(path.toPath(), StandardOpenOption.WRITE);
+	StorageOutputStream storageOutputStream = new StorageOutputStream(Channels.newOutputStream(channel),
+		blockSize) {
+	    @Override
+	    protected void finalize() throws Throwable {
+		close();
+		super.finalize();
+	    }
+
+	    @Override
+	    public void close() throws IOException {
+		notifyClose(this);
+		super.close();
+	    }
+	};
+	if (registerStream(file, storageOutputStream)) {
+	    return storageOutputStream;
+	} else {
+	    storageOutputStream.close();
+	    throw new IOException("File '" + file + "' was already deleted.");
+	}
+    }
+
+    @Override
+    public void rename(File source, File target) throws IOException {
+	File sourcePath = new File(rootDirectory, source.getPath());
+	File targetPath = new File(rootDirectory, target.getPath());
+	if (targetPath.exists()) {
+	    throw new IOException("File '" + target + "' exists already.");
+	}
+	deletionWriteLock.lock();
+	try {
+	    if (deletedFiles.contains(source) || registeredStreams.containsValue(source)) {
+		throw new IOException("File '" + source + "' is in use and cannot be renamed.");
+	    }
+	    Files.move(sourcePath.toPath(), targetPath.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	} finally {
+	    deletionWriteLock.unlock();
+	}
+    }
+
     @Override
     public String toString() {
 	return rootDirectory.getPath();
@@ -0,0 +1,112 @@
+package com.puresoltechnologies.ductiledb.storage.spi;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This input stream reads a file from a start position with a
+ * {@link StoragePositionalReader}. The position is kept in the stream and not
+ * in the reader, so many of these streams can read the same file in parallel.
+ * Closing the stream does not close the reader. This is the default
+ * implementation of {@link StoragePositionalReader#openInputStream(long, int)}.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
+public class PositionalReaderInputStream extends InputStream {
+
+    private final StoragePositionalReader reader;
+    private final byte[] buffer;
+    private long position;
+    private int bufferPosition = 0;
+    private int bufferLength = 0;
+
+    /**
+     * Creates a new stream.
+     * 
+     * @param reader
+     *            is the reader of the file.
+     * @param position
+     *            is the position to start reading at.
+     * @param bufferSize
+     *            is the number of bytes read at once. It should be about the
+     *            size of the data usually read with the stream.
+     */
+    public PositionalReaderInputStream(StoragePositionalReader reader, long position, int bufferSize) {
+	super();
+	this.reader = reader;
+	this.position = position;
+	this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Fills the buffer if it was read completely.
+     * 
+     * @return <code>false</code> is returned at the end of the file.
+     */
+    private boolean fillBuffer() throws IOException {
+	if (bufferPosition < bufferLength) {
+	    return true;
+	}
+	int len = reader.read(position, buffer, 0, buffer.length);
+	if (len <= 0) {
+	    return false;
+	}
+	position += len;
+	bufferPosition = 0;
+	bufferLength = len;
+	return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+	if (!fillBuffer()) {
+	    return -1;
+	}
+	return buffer[bufferPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+	if (len == 0) {
+	    return 0;
+	}
+	int count = 0;
+	while (count < len) {
+	    if ((bufferPosition == bufferLength) && ((len - count) >= buffer.length)) {
+		// Large reads bypass the buffer.
+		int read = reader.read(position, b, off + count, len - count);
+		if (read <= 0) {
+		    break;
+		}
+		position += read;
+		count += read;
+	    } else {
+		if (!fillBuffer()) {
+		    break;
+		}
+		int length = Math.min(len - count, bufferLength - bufferPosition);
+		System.arraycopy(buffer, bufferPosition, b, off + count, length);
+		bufferPosition += length;
+		count += length;
+	    }
+	}
+	return count > 0 ? count : -1;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+	if (n <= 0) {
+	    return 0;
+	}
+	int buffered = bufferLength - bufferPosition;
+	if (n <= buffered) {
+	    bufferPosition += (int) n;
+	} else {
+	    position += n - buffered;
+	    bufferPosition = 0;
+	    bufferLength = 0;
+	}
+	return n;
+    }
+
+}
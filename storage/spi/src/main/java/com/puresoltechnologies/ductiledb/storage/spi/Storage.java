@@ -85,10 +85,59 @@ public interface Storage extends Closeable {
 
     public StorageInputStream open(File file) throws IOException;
 
+    /**
+     * This method opens a file for positional reads. Storages supporting
+     * concurrent reads of a file without a shared file pointer override this
+     * method. The default implementation serializes the reads on one
+     * {@link StorageInputStream}.
+     * 
+     * @param file
+     *            is the file to be read.
+     * @return A {@link StoragePositionalReader} is returned.
+     * @throws IOException
+     *             is thrown in case the file cannot be opened.
+     */
+    public default StoragePositionalReader openPositionalReader(File file) throws IOException {
+	return new StreamPositionalReader(this, file);
+    }
+
     public StorageOutputStream create(File file) throws IOException;
 
     public StorageOutputStream append(File file) throws IOException;
 
+    /**
+     * This method opens an existing file for writing from its beginning. In
+     * contrast to {@link #create(File)} the file is not truncated, so the content
+     * behind the written bytes stays untouched and the file keeps its allocated
+     * size.
+     * 
+     * @param file
+     *            is the file to be overwritten.
+     * @return A {@link StorageOutputStream} positioned at the beginning of the
+     *         file is returned.
+     * @throws IOException
+     *             is thrown in case the file does not exist or cannot be opened.
+     * @throws UnsupportedOperationException
+     *             is thrown in case the storage cannot overwrite files, like
+     *             append-only file systems.
+     */
+    public StorageOutputStream overwrite(File file) throws IOException;
+
+    /**
+     * This method renames a file. Files which are currently opened are not
+     * renamed.
+     * 
+     * @param source
+     *            is the file to be renamed.
+     * @param target
+     *            is the new name of the file, which must not exist.
+     * @throws IOException
+     *             is thrown in case the file is in use or cannot be renamed.
+     * @throws UnsupportedOperationException
+     *             is thrown in case the storage cannot rename files.
+     */
+    public void rename(File source, File target) throws IOException;
+
     /**
      * This method deletes the specified file.
      * 
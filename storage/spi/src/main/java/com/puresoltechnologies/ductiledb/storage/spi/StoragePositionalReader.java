@@ -0,0 +1,60 @@
+package com.puresoltechnologies.ductiledb.storage.spi;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This reader reads a file at given positions without a file pointer shared by
+ * the reads, like {@link FileChannel#read(ByteBuffer, long)}. Implementations
+ * are thread-safe, so many threads can read the same file in parallel.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
+public interface StoragePositionalReader extends Closeable {
+
+    /**
+     * Reads bytes starting at the given position of the file.
+     * 
+     * @param position
+     *            is the position in the file to start reading at.
+     * @param buffer
+     *            is the buffer to read into.
+     * @param offset
+     *            is the offset in the buffer.
+     * @param length
+     *            is the maximum number of bytes to read.
+     * @return The number of bytes read is returned. It is only less than length
+     *         at the end of the file. -1 is returned in case the position is at
+     *         or behind the end of the file.
+     * @throws IOException
+     *             is thrown in case of IO issues.
+     */
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Opens a stream reading the file from the given position. The stream keeps
+     * its own position, so many streams can read the file in parallel. Streams
+     * need to be closed before the reader is closed.
+     * 
+     * The default implementation reads the file with
+     * {@link #read(long, byte[], int, int)} into a buffer. Readers with the
+     * content of the file in memory override this method to read without the
+     * buffer.
+     * 
+     * @param position
+     *            is the position in the file to start reading at.
+     * @param bufferSize
+     *            is the number of bytes read at once. It should be about the
+     *            size of the data usually read with the stream.
+     * @return An {@link InputStream} is returned.
+     * @throws IOException
+     *             is thrown in case the stream cannot be opened.
+     */
+    public default InputStream openInputStream(long position, int bufferSize) throws IOException {
+	return new PositionalReaderInputStream(this, position, bufferSize);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.puresoltechnologies.ductiledb.storage.spi;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This is the {@link StoragePositionalReader} for storages without support of
+ * positional reads. It seeks a {@link StorageInputStream} and therefore
+ * serializes the reads.
+ * 
+ * @author Rick-Rainer Ludwig
+ */
+class StreamPositionalReader implements StoragePositionalReader {
+
+    private final Storage storage;
+    private final File file;
+    private StorageInputStream inputStream;
+
+    StreamPositionalReader(Storage storage, File file) throws IOException {
+	super();
+	this.storage = storage;
+	this.file = file;
+	this.inputStream = storage.open(file);
+    }
+
+    @Override
+    public synchronized int read(long position, byte[] buffer, int offset, int length) throws IOException {
+	if (inputStream.getPosition() > position) {
+	    // The stream can only seek forward.
+	    inputStream.close();
+	    inputStream = storage.open(file);
+	}
+	inputStream.seek(position);
+	int count = 0;
+	while (count < length) {
+	    int len = inputStream.read(buffer, offset + count, length - count);
+	    if (len < 0) {
+		break;
+	    }
+	    count += len;
+	}
+	return (count == 0) && (length > 0) ? -1 : count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+	inputStream.close();
+    }
+
+}